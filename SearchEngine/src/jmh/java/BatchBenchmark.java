@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares searching for every query line on its own with searching for all of
+ * them at once through {@link BatchSearch}, sharing the postings of the words
+ * they have in common, keeping the best 10 results of each. Every invocation
+ * searches for all of the query lines. The batch is checked to find the same
+ * results for every query as searching for it on its own.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BatchBenchmark extends IndexFixture {
+
+	/** How to score the results. */
+	@Param({ "COUNT", "TFIDF", "BM25" })
+	public Ranking ranking;
+
+	/** Whether to use exact or partial search. */
+	@Param({ "true", "false" })
+	public boolean exact;
+
+	/** The queries to search for. */
+	private List<SearchQuery> all;
+
+	@Override
+	protected void prepare() {
+		all = parsed();
+
+		TreeMap<String, List<InvertedIndex.SearchResult>> batch = batch();
+		for (SearchQuery query : all) {
+			verifyResults(query, frozen.search(query, exact, 10, ranking), batch.get(query.toString()));
+		}
+	}
+
+	/**
+	 * Searches for every query on its own.
+	 *
+	 * @return the best results of each query
+	 */
+	@Benchmark
+	public List<List<InvertedIndex.SearchResult>> single() {
+		List<List<InvertedIndex.SearchResult>> results = new ArrayList<>(all.size());
+		for (SearchQuery query : all) {
+			results.add(frozen.search(query, exact, 10, ranking));
+		}
+		return results;
+	}
+
+	/**
+	 * Searches for every query at once.
+	 *
+	 * @return the best results of each query
+	 */
+	@Benchmark
+	public TreeMap<String, List<InvertedIndex.SearchResult>> batch() {
+		return BatchSearch.search(frozen, all, exact, 10, ranking, null);
+	}
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building the original nested map and boxed {@link TreeSet} layout
+ * with building the compressed {@link PostingList} layout of
+ * {@link InvertedIndex}, and measures freezing the result. Run with
+ * {@code -prof gc} to compare how much each one allocates, and see
+ * {@link MemoryBenchmark} for how much each one keeps.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BuildBenchmark extends IndexFixture {
+
+	/**
+	 * Builds the original nested map and boxed set layout.
+	 *
+	 * @return the nested index
+	 * @throws IOException if unable to read a file
+	 */
+	@Benchmark
+	public TreeMap<String, TreeMap<String, TreeSet<Integer>>> boxed() throws IOException {
+		return nested();
+	}
+
+	/**
+	 * Builds the compressed layout.
+	 *
+	 * @return the index
+	 * @throws IOException if unable to read a file
+	 */
+	@Benchmark
+	public InvertedIndex compact() throws IOException {
+		InvertedIndex built = new InvertedIndex();
+		for (Path file : files) {
+			InvertedIndexBuilder.addFile(file, built);
+		}
+		return built;
+	}
+
+	/**
+	 * Freezes the index of the corpus.
+	 *
+	 * @return the frozen index
+	 */
+	@Benchmark
+	public FrozenIndex freeze() {
+		return index.freeze();
+	}
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how well a {@link ResultCache} of each size keeps up with a stream
+ * of partial searches where a few queries are far more popular than the rest,
+ * like the requests of a server. The n-th most popular query is asked for
+ * about 1 / n as often as the most popular one. The hit rate of the cache is
+ * printed after every iteration. Before timing, the whole stream is searched
+ * through a cache and checked against searching without it.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CacheBenchmark extends IndexFixture {
+
+	/**
+	 * The capacity of the cache as a share of the distinct queries, or -1 for
+	 * the default capacity.
+	 */
+	@Param({ "0", "0.05", "0.2", "-1" })
+	public double share;
+
+	/** The stream of queries asked for. */
+	private List<SearchQuery> stream;
+
+	/** The capacity of the cache. */
+	private int capacity;
+
+	/** The cache, emptied before every iteration. */
+	private ResultCache cache;
+
+	@Override
+	protected void prepare() {
+		List<SearchQuery> distinct = parsed();
+		Collections.shuffle(distinct, new Random(1));
+
+		double[] cumulative = new double[distinct.size()];
+		double total = 0;
+		for (int i = 0; i < cumulative.length; i++) {
+			total += 1.0 / (i + 1);
+			cumulative[i] = total;
+		}
+
+		Random random = new Random(2);
+		stream = new ArrayList<>();
+		for (int i = 0; i < 20 * distinct.size(); i++) {
+			int found = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+			stream.add(distinct.get(Math.min(found >= 0 ? found : -(found + 1), distinct.size() - 1)));
+		}
+
+		capacity = share < 0 ? ResultCache.DEFAULT_CAPACITY : (int) (share * distinct.size());
+
+		ResultCache checked = new ResultCache(capacity);
+		Map<SearchQuery, List<InvertedIndex.SearchResult>> uncached = new IdentityHashMap<>();
+		for (SearchQuery query : stream) {
+			List<InvertedIndex.SearchResult> expected = uncached.computeIfAbsent(query,
+					q -> frozen.search(q, false, 0, Ranking.COUNT));
+			verifyResults(query, expected, checked.search(frozen, query, false, 0, Ranking.COUNT, 0));
+		}
+	}
+
+	/**
+	 * Starts every iteration with an empty cache.
+	 */
+	@Setup(Level.Iteration)
+	public void clear() {
+		cache = new ResultCache(capacity);
+	}
+
+	/**
+	 * Prints how well the cache did during the iteration.
+	 */
+	@TearDown(Level.Iteration)
+	public void report() {
+		System.out.printf("capacity %d, hit rate %.1f%%, %d evicted, %d rejected%n", capacity,
+				cache.hitRate() * 100, cache.evictions(), cache.rejections());
+	}
+
+	/**
+	 * Searches for the next query of the stream through the cache.
+	 *
+	 * @return the sorted search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> search() {
+		return cache.search(frozen, next(stream), false, 0, Ranking.COUNT, 0);
+	}
+}
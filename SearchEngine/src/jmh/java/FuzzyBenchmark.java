@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures finding the words within a number of edits of a misspelled word in a
+ * large term dictionary, by walking its {@link TermTrie} with a
+ * {@link LevenshteinAutomaton}, compared to computing the edit distance to
+ * every word. Each query is a word of the dictionary with as many random edits.
+ * Latencies are sampled per query, so the percentiles are reported as well.
+ * Both ways are checked to find the same words for the first 20 queries, since
+ * computing every edit distance is too slow to check them all.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FuzzyBenchmark extends IndexFixture {
+
+	/** The most edits a match may be away from a query. */
+	@Param({ "1", "2" })
+	public int distance;
+
+	/** The number of words in the dictionary. */
+	@Param("1200000")
+	public int size;
+
+	/** The sorted words of the dictionary. */
+	private String[] terms;
+
+	/** The dictionary. */
+	private TermTrie dictionary;
+
+	/** The misspelled words to look up. */
+	private List<String> misspelled;
+
+	@Override
+	protected void prepare() {
+		Random random = new Random(1);
+		terms = dictionary(size, random);
+		dictionary = new TermTrie(terms);
+
+		misspelled = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			misspelled.add(misspell(terms[random.nextInt(terms.length)], random));
+		}
+
+		for (String query : misspelled.subList(0, 20)) {
+			verify(query, everyWord(query), automaton(query));
+		}
+	}
+
+	/**
+	 * Makes random edits to a word.
+	 *
+	 * @param word   the word
+	 * @param random the source of randomness
+	 * @return the misspelled word
+	 */
+	private String misspell(String word, Random random) {
+		StringBuilder builder = new StringBuilder(word);
+		for (int i = 0; i < distance; i++) {
+			int at = random.nextInt(builder.length() + 1);
+			char c = (char) ('a' + random.nextInt(26));
+			int edit = random.nextInt(3);
+			if (edit == 0 || at == builder.length()) {
+				builder.insert(at, c);
+			} else if (edit == 1 && builder.length() > 1) {
+				builder.deleteCharAt(at);
+			} else {
+				builder.setCharAt(at, c);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Finds the matches of the next misspelled word in the trie.
+	 *
+	 * @return the indices of the matching words
+	 */
+	@Benchmark
+	public List<Integer> automaton() {
+		return automaton(next(misspelled));
+	}
+
+	/**
+	 * Finds the matches of the next misspelled word by computing its edit distance
+	 * to every word.
+	 *
+	 * @return the indices of the matching words
+	 */
+	@Benchmark
+	public List<Integer> everyWord() {
+		return everyWord(next(misspelled));
+	}
+
+	/**
+	 * Finds the matches of a misspelled word in the trie.
+	 *
+	 * @param query the misspelled word
+	 * @return the indices of the matching words, in increasing order
+	 */
+	private List<Integer> automaton(String query) {
+		List<Integer> found = new ArrayList<>();
+		dictionary.fuzzy(new LevenshteinAutomaton(query, distance), (term, edits) -> found.add(term));
+		return found;
+	}
+
+	/**
+	 * Finds the matches of a misspelled word by computing its edit distance to
+	 * every word.
+	 *
+	 * @param query the misspelled word
+	 * @return the indices of the matching words, in increasing order
+	 */
+	private List<Integer> everyWord(String query) {
+		List<Integer> found = new ArrayList<>();
+		for (int term = 0; term < terms.length; term++) {
+			if (editDistance(query, terms[term]) <= distance) {
+				found.add(term);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Computes the edit distance between two words the usual way.
+	 *
+	 * @param first  the first word
+	 * @param second the second word
+	 * @return the number of insertions, deletions, and substitutions
+	 */
+	private static int editDistance(String first, String second) {
+		int[] previous = new int[second.length() + 1];
+		int[] current = new int[second.length() + 1];
+		for (int j = 0; j <= second.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= first.length(); i++) {
+			current[0] = i;
+			for (int j = 1; j <= second.length(); j++) {
+				int substitute = previous[j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+				current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[second.length()];
+	}
+}
@@ -0,0 +1,269 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The corpus and queries every benchmark shares, indexed once before each
+ * trial. Benchmarks extend this class and build whatever else they need in
+ * {@link #prepare()}. The benchmarks are kept out of the jar and are only
+ * compiled and run with the benchmark profile, for example:
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec -Djmh.args="TopK -p corpus=path/to/corpus -p queries=path/to/queries.txt"
+ * </pre>
+ *
+ * Any other JMH option can be passed the same way, such as {@code -prof gc} to
+ * compare how much the searches allocate.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+public abstract class IndexFixture {
+
+	/** The file or directory of text files to index. */
+	@Param("text")
+	public String corpus;
+
+	/** The query file, or empty to search for every single letter prefix. */
+	@Param("")
+	public String queries;
+
+	/** The files indexed. */
+	protected List<Path> files;
+
+	/** The index of every file. */
+	protected InvertedIndex index;
+
+	/** The frozen copy of the index. */
+	protected FrozenIndex frozen;
+
+	/** The non-empty stemmed query lines. */
+	protected List<Set<String>> lines;
+
+	/** The position of the next query returned by {@link #next(List)}. */
+	private int cursor;
+
+	/**
+	 * Indexes the corpus and reads the queries, then prepares the benchmark.
+	 *
+	 * @throws IOException if unable to read the corpus or the queries
+	 */
+	@Setup(Level.Trial)
+	public final void setup() throws IOException {
+		Path path = Path.of(corpus);
+		files = Files.isDirectory(path) ? TextFileFinder.list(path) : List.of(path);
+
+		index = new InvertedIndex();
+		for (Path file : files) {
+			InvertedIndexBuilder.addFile(file, index);
+		}
+		frozen = index.freeze();
+
+		lines = new ArrayList<>();
+		if (queries.isEmpty()) {
+			// single letter prefixes match the most locations, so they are the slowest
+			TreeSet<String> prefixes = new TreeSet<>();
+			for (String word : index.getWords()) {
+				prefixes.add(word.substring(0, 1));
+			}
+			for (String prefix : prefixes) {
+				lines.add(Set.of(prefix));
+			}
+		} else {
+			for (String line : Files.readAllLines(Path.of(queries), StandardCharsets.UTF_8)) {
+				Set<String> stems = TextFileStemmer.uniqueStems(line);
+				if (!stems.isEmpty()) {
+					lines.add(stems);
+				}
+			}
+		}
+
+		cursor = 0;
+		prepare();
+	}
+
+	/**
+	 * Builds whatever else a benchmark needs once the corpus is indexed.
+	 *
+	 * @throws IOException if unable to read or write a file
+	 */
+	protected void prepare() throws IOException {
+	}
+
+	/**
+	 * Returns the queries one after another, starting over after the last one, so
+	 * that a benchmark running one search per invocation spreads them over every
+	 * query.
+	 *
+	 * @param <T>  the type of query
+	 * @param list the queries
+	 * @return the next query
+	 */
+	protected <T> T next(List<T> list) {
+		if (cursor >= list.size()) {
+			cursor = 0;
+		}
+		return list.get(cursor++);
+	}
+
+	/**
+	 * Parses every query line into a query.
+	 *
+	 * @return the parsed queries
+	 */
+	protected List<SearchQuery> parsed() {
+		List<SearchQuery> parsed = new ArrayList<>();
+		for (Set<String> line : lines) {
+			parsed.add(new SearchQuery(line));
+		}
+		return parsed;
+	}
+
+	/**
+	 * Finds the words every query line matches in a partial search.
+	 *
+	 * @return the indices of the words matched by each query line
+	 */
+	protected List<int[]> matches() {
+		List<int[]> matches = new ArrayList<>();
+		for (Set<String> line : lines) {
+			matches.add(frozen.matches(line, false));
+		}
+		return matches;
+	}
+
+	/**
+	 * Builds a local index for every file, like the workers of a multithreaded
+	 * build do before merging them.
+	 *
+	 * @return the local index of each file
+	 * @throws IOException if unable to read a file
+	 */
+	protected List<InvertedIndex> locals() throws IOException {
+		List<InvertedIndex> locals = new ArrayList<>();
+		for (Path file : files) {
+			InvertedIndex local = new InvertedIndex();
+			InvertedIndexBuilder.addFile(file, local);
+			locals.add(local);
+		}
+		return locals;
+	}
+
+	/**
+	 * Checks that a search being benchmarked gives the same answer as the search
+	 * it is compared with, so that a faster search that gives different answers
+	 * fails the trial instead of winning it.
+	 *
+	 * @param query    the query, to report if the answers differ
+	 * @param expected the answer of the search compared with
+	 * @param actual   the answer of the search being benchmarked
+	 * @throws IllegalStateException if the answers differ
+	 */
+	protected static void verify(Object query, Object expected, Object actual) {
+		if (!expected.equals(actual)) {
+			throw new IllegalStateException("Different answers for " + query + ": " + expected + " and " + actual);
+		}
+	}
+
+	/**
+	 * Checks that two searches found the same locations in the same order, with
+	 * the same counts and the same scores to the decimal places written to the
+	 * results file.
+	 *
+	 * @param query    the query, to report if the results differ
+	 * @param expected the results of the search compared with
+	 * @param actual   the results of the search being benchmarked
+	 * @throws IllegalStateException if the results differ
+	 *
+	 * @see #verify(Object, Object, Object)
+	 */
+	protected static void verifyResults(Object query, List<InvertedIndex.SearchResult> expected,
+			List<InvertedIndex.SearchResult> actual) {
+		verify(query, summary(expected), summary(actual));
+	}
+
+	/**
+	 * Describes each search result the way the results file shows it.
+	 *
+	 * @param results the search results
+	 * @return the location, count, and score of each result
+	 */
+	private static List<String> summary(List<InvertedIndex.SearchResult> results) {
+		List<String> summary = new ArrayList<>(results.size());
+		for (InvertedIndex.SearchResult result : results) {
+			summary.add(String.format("%s %d %.8f", result.getWhere(), result.getCount(), result.getScore()));
+		}
+		return summary;
+	}
+
+	/**
+	 * Builds the original nested map and boxed set layout of the corpus, the way
+	 * the index stored its positions before {@link PostingList}.
+	 *
+	 * @return the nested index
+	 * @throws IOException if unable to read a file
+	 */
+	protected TreeMap<String, TreeMap<String, TreeSet<Integer>>> nested() throws IOException {
+		TreeMap<String, TreeMap<String, TreeSet<Integer>>> nested = new TreeMap<>();
+		Stemmer stemmer = new SnowballStemmer(InvertedIndexBuilder.DEFAULT);
+
+		for (Path file : files) {
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				String line;
+				int position = 1;
+				String location = file.toString();
+
+				while ((line = reader.readLine()) != null) {
+					for (String word : TextParser.parse(line)) {
+						nested.computeIfAbsent(stemmer.stem(word).toString(), k -> new TreeMap<>())
+								.computeIfAbsent(location, k -> new TreeSet<>()).add(position++);
+					}
+				}
+			}
+		}
+		return nested;
+	}
+
+	/**
+	 * Builds a large term dictionary: the words of the corpus, plus made up words
+	 * built from syllables until there are enough of them.
+	 *
+	 * @param count  the number of words in the dictionary
+	 * @param random the source of randomness
+	 * @return the sorted words
+	 */
+	protected String[] dictionary(int count, Random random) {
+		String consonants = "bcdfghklmnprstvwz";
+		String vowels = "aeiouy";
+		TreeSet<String> words = new TreeSet<>(index.getWords());
+		while (words.size() < count) {
+			StringBuilder word = new StringBuilder();
+			for (int syllables = 2 + random.nextInt(3); syllables > 0; syllables--) {
+				word.append(consonants.charAt(random.nextInt(consonants.length())));
+				word.append(vowels.charAt(random.nextInt(vowels.length())));
+				if (random.nextBoolean()) {
+					word.append(consonants.charAt(random.nextInt(consonants.length())));
+				}
+			}
+			words.add(word.toString());
+		}
+		return words.toArray(new String[0]);
+	}
+}
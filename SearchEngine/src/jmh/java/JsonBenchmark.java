@@ -0,0 +1,122 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares writing the index, counts, or results JSON file through a character
+ * {@link Writer} with writing it through a {@link ByteJsonWriter}. The results
+ * are every partial search of the queries ranked by bm25. Both ways are checked
+ * to write exactly the same bytes.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class JsonBenchmark extends IndexFixture {
+
+	/** The JSON file to write, either index, counts, or results. */
+	@Param({ "index", "counts", "results" })
+	public String file;
+
+	/** The search results written to the results file. */
+	private TreeMap<String, List<InvertedIndex.SearchResult>> results;
+
+	/** The file written to. */
+	private Path output;
+
+	@Override
+	protected void prepare() throws IOException {
+		results = new TreeMap<>();
+		for (SearchQuery query : parsed()) {
+			results.put(query.toString(), frozen.search(query, false, 0, Ranking.BM25));
+		}
+		output = Files.createTempFile(file, ".json");
+
+		Path expected = Files.createTempFile(file, ".json");
+		try {
+			Files.copy(characters(), expected, StandardCopyOption.REPLACE_EXISTING);
+			// the first byte that differs, or -1 if none do
+			verify(file, -1L, Files.mismatch(expected, bytes()));
+		} finally {
+			Files.delete(expected);
+		}
+	}
+
+	/**
+	 * Deletes the file written to.
+	 *
+	 * @throws IOException if unable to delete the file
+	 */
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		Files.deleteIfExists(output);
+	}
+
+	/**
+	 * Writes the file through a character writer.
+	 *
+	 * @return the file written
+	 * @throws IOException if unable to write the file
+	 */
+	@Benchmark
+	public Path characters() throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			switch (file) {
+				case "index":
+					SimpleJsonWriter.asFrozenIndex(frozen, writer, 0);
+					break;
+				case "counts":
+					SimpleJsonWriter.asMap(frozen.returnCountMap(), writer, 0);
+					break;
+				default:
+					SimpleJsonWriter.asFullResults(results, writer, 0);
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Writes the file through a byte writer.
+	 *
+	 * @return the file written
+	 * @throws IOException if unable to write the file
+	 */
+	@Benchmark
+	public Path bytes() throws IOException {
+		switch (file) {
+			case "index":
+				SimpleJsonWriter.asFrozenIndex(frozen, output);
+				break;
+			case "counts":
+				SimpleJsonWriter.asMap(frozen.returnCountMap(), output);
+				break;
+			default:
+				SimpleJsonWriter.asFullResults(results, output);
+		}
+		return output;
+	}
+}
@@ -0,0 +1,119 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the lock strategies under a mixed load, where reader threads keep
+ * calling the short accessors of a {@link ThreadSafeInvertedIndex} while writer
+ * threads add words to it. Reports how many reads and writes complete per
+ * millisecond. The readers only call
+ * {@link ThreadSafeInvertedIndex#contains(String)} and
+ * {@link ThreadSafeInvertedIndex#size(String)}, which read without locking with
+ * the optimistic strategy, so the comparison measures what optimistic reads
+ * save.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LockBenchmark extends IndexFixture {
+
+	/** The kind of lock the index uses. */
+	@Param({ "SIMPLE", "FAIR", "OPTIMISTIC" })
+	public LockStrategy strategy;
+
+	/** The words of the corpus, which the readers look up and writers add. */
+	private String[] words;
+
+	/** The index read and written. */
+	private ThreadSafeInvertedIndex shared;
+
+	@Override
+	protected void prepare() {
+		words = index.getWords().toArray(new String[0]);
+	}
+
+	/**
+	 * Starts every iteration with an empty index.
+	 */
+	@Setup(Level.Iteration)
+	public void clear() {
+		shared = new ThreadSafeInvertedIndex(ThreadSafeInvertedIndex.DEFAULT_SHARDS, 0, strategy);
+	}
+
+	/**
+	 * The words a writer thread adds, all to a location of its own so that the
+	 * positions it adds always increase.
+	 */
+	@State(Scope.Thread)
+	public static class Writer {
+
+		/** The number of writers so far, used to name their locations. */
+		private static final AtomicInteger WRITERS = new AtomicInteger();
+
+		/** The location this writer adds to. */
+		private final String location = "writer" + WRITERS.incrementAndGet();
+
+		/** The last position added. */
+		private int position;
+	}
+
+	/**
+	 * The words a reader thread looks up.
+	 */
+	@State(Scope.Thread)
+	public static class Reader {
+
+		/** The number of readers so far, used to spread out their words. */
+		private static final AtomicInteger READERS = new AtomicInteger();
+
+		/** The next word to look up. */
+		private int next = READERS.incrementAndGet() * 7919;
+	}
+
+	/**
+	 * Adds the next word for a writer.
+	 *
+	 * @param writer the writer
+	 */
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(2)
+	public void write(Writer writer) {
+		writer.position++;
+		shared.add(words[writer.position % words.length], writer.location, writer.position);
+	}
+
+	/**
+	 * Looks up the next word for a reader, optimistically if the strategy
+	 * supports it.
+	 *
+	 * @param reader the reader
+	 * @return the number of locations the word is in
+	 */
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public int read(Reader reader) {
+		String word = words[Math.floorMod(reader.next++, words.length)];
+		return shared.contains(word) ? shared.size(word) : 0;
+	}
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the retained heap of the original nested map and boxed
+ * {@link TreeSet} layout with the compressed {@link PostingList} layout of
+ * {@link InvertedIndex} on the same corpus, and with the {@link FrozenIndex} it
+ * freezes into. Every invocation builds one layout and, while it is still
+ * reachable, collects the garbage and reports how much more of the heap is in
+ * use than before the iteration through the {@link Footprint} counters. The
+ * times include the collections, so only the counters are meaningful; see
+ * {@link BuildBenchmark} for the build times.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class MemoryBenchmark extends IndexFixture {
+
+	/**
+	 * Builds the original nested map and boxed set layout and measures how much
+	 * of the heap it retains.
+	 *
+	 * @param footprint the counters to report the retained heap through
+	 * @return the nested index
+	 * @throws IOException if unable to read a file
+	 */
+	@Benchmark
+	public TreeMap<String, TreeMap<String, TreeSet<Integer>>> boxed(Footprint footprint) throws IOException {
+		TreeMap<String, TreeMap<String, TreeSet<Integer>>> boxed = nested();
+		footprint.retained();
+		return boxed;
+	}
+
+	/**
+	 * Builds the compressed layout and measures how much of the heap it retains.
+	 *
+	 * @param footprint the counters to report the retained heap through
+	 * @return the index
+	 * @throws IOException if unable to read a file
+	 */
+	@Benchmark
+	public InvertedIndex compact(Footprint footprint) throws IOException {
+		InvertedIndex built = build();
+		footprint.retained();
+		return built;
+	}
+
+	/**
+	 * Builds the compressed layout and freezes it, and measures how much of the
+	 * heap the frozen index retains once the mutable index is gone.
+	 *
+	 * @param footprint the counters to report the retained heap through
+	 * @return the frozen index
+	 * @throws IOException if unable to read a file
+	 */
+	@Benchmark
+	public FrozenIndex frozen(Footprint footprint) throws IOException {
+		FrozenIndex built = build().freeze();
+		footprint.retained();
+		return built;
+	}
+
+	/**
+	 * Builds the compressed layout of the corpus.
+	 *
+	 * @return the index
+	 * @throws IOException if unable to read a file
+	 */
+	private InvertedIndex build() throws IOException {
+		InvertedIndex built = new InvertedIndex();
+		for (Path file : files) {
+			InvertedIndexBuilder.addFile(file, built);
+		}
+		return built;
+	}
+
+	/**
+	 * The heap retained by the layout built during an iteration, reported by JMH
+	 * next to the time of the iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+
+		/** Number of bytes in a megabyte. */
+		private static final double MEGABYTE = 1024 * 1024;
+
+		/** The megabytes of heap retained by the layout. */
+		public double retainedMegabytes;
+
+		/** The heap in use before the iteration. */
+		private long baseline;
+
+		/**
+		 * Measures the heap in use before the layout is built.
+		 */
+		@Setup(Level.Iteration)
+		public void baseline() {
+			retainedMegabytes = 0;
+			baseline = usedMemory();
+		}
+
+		/**
+		 * Measures the heap in use once the layout is built, and reports the
+		 * difference. The layout must still be reachable when this is called.
+		 */
+		public void retained() {
+			retainedMegabytes = (usedMemory() - baseline) / MEGABYTE;
+		}
+
+		/**
+		 * Returns the heap currently in use after requesting garbage collection.
+		 *
+		 * @return the number of bytes in use
+		 */
+		private static long usedMemory() {
+			Runtime runtime = Runtime.getRuntime();
+			for (int i = 0; i < 5; i++) {
+				System.gc();
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return runtime.totalMemory() - runtime.freeMemory();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares how long it takes worker threads to merge the local index of every
+ * file into a single-lock index and a sharded {@link ThreadSafeInvertedIndex}.
+ * The files are parsed before the trial, so only the merging is measured, and
+ * the merged index is checked to be the same as the index of the whole corpus.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class MergeBenchmark extends IndexFixture {
+
+	/** The number of worker threads merging. */
+	@Param({ "1", "2", "4", "8", "16", "32" })
+	public int threads;
+
+	/** The number of shards in the index. */
+	@Param({ "1", "16" })
+	public int shards;
+
+	/** The local index of every file. */
+	private List<InvertedIndex> locals;
+
+	/** The index merged into. */
+	private ThreadSafeInvertedIndex merged;
+
+	/** The worker threads. */
+	private WorkQueue queue;
+
+	@Override
+	protected void prepare() throws IOException {
+		locals = locals();
+
+		// merging must give the same index as adding every file to one index
+		start();
+		try {
+			verify(corpus, json(frozen), json(merge().freeze()));
+		} finally {
+			stop();
+		}
+	}
+
+	/**
+	 * Writes an index as JSON.
+	 *
+	 * @param written the index to write
+	 * @return the JSON of the index
+	 * @throws IOException if unable to write the index
+	 */
+	private static String json(FrozenIndex written) throws IOException {
+		StringWriter writer = new StringWriter();
+		SimpleJsonWriter.asFrozenIndex(written, writer, 0);
+		return writer.toString();
+	}
+
+	/**
+	 * Starts every merge with an empty index and idle workers.
+	 */
+	@Setup(Level.Invocation)
+	public void start() {
+		merged = new ThreadSafeInvertedIndex(shards);
+		queue = new WorkQueue(threads);
+	}
+
+	/**
+	 * Stops the workers.
+	 */
+	@TearDown(Level.Invocation)
+	public void stop() {
+		queue.shutdown();
+	}
+
+	/**
+	 * Merges the local index of every file.
+	 *
+	 * @return the merged index
+	 */
+	@Benchmark
+	public ThreadSafeInvertedIndex merge() {
+		for (InvertedIndex local : locals) {
+			queue.execute(() -> merged.addAll(local));
+		}
+		queue.finish();
+		return merged;
+	}
+}
@@ -0,0 +1,75 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of partial searches split into more and more partitions
+ * searched in parallel (see {@link PartitionedSearch}). Every single letter is
+ * searched for along with the queries, since those are the searches that score
+ * the most postings. Latencies are sampled per query, so the percentiles are
+ * reported as well. Every query is checked to find the same results through
+ * the partitioned view as through the frozen index it splits.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PartitionBenchmark extends IndexFixture {
+
+	/** The number of partitions to split each search into. */
+	@Param({ "1", "2", "4", "8" })
+	public int partitions;
+
+	/** How to score the results. */
+	@Param({ "COUNT", "BM25" })
+	public Ranking ranking;
+
+	/** The most results to keep per query, or 0 for all of them. */
+	@Param({ "0", "10" })
+	public int limit;
+
+	/** The partitioned view of the index. */
+	private FrozenIndex view;
+
+	/** The queries to search for. */
+	private List<SearchQuery> all;
+
+	@Override
+	protected void prepare() {
+		view = frozen.partitioned(partitions);
+		all = parsed();
+		for (char letter = 'a'; letter <= 'z'; letter++) {
+			all.add(new SearchQuery(Set.of(String.valueOf(letter))));
+		}
+
+		for (SearchQuery query : all) {
+			verifyResults(query, frozen.search(query, false, limit, ranking),
+					view.search(query, false, limit, ranking));
+		}
+	}
+
+	/**
+	 * Searches for the next query.
+	 *
+	 * @return the sorted search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> search() {
+		return view.search(next(all), false, limit, ranking);
+	}
+}
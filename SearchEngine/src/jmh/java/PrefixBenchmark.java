@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares partial search latency for every prefix of the words in the index
+ * of a given length, between the mutable index (which walks its sorted map from
+ * the prefix) and the frozen index (which looks the prefix up in its
+ * {@link TermTrie}). Both are checked to find the same results for every prefix
+ * first.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PrefixBenchmark extends IndexFixture {
+
+	/** Which form of the index to search, either mutable or frozen. */
+	@Param({ "mutable", "frozen" })
+	public String layout;
+
+	/** The number of characters in each prefix. */
+	@Param({ "1", "2", "3" })
+	public int length;
+
+	/** The form of the index searched. */
+	private InvertedIndexInterface searched;
+
+	/** Every prefix of the given length, as a query. */
+	private List<Set<String>> prefixes;
+
+	@Override
+	protected void prepare() {
+		searched = layout.equals("frozen") ? frozen : index;
+
+		TreeSet<String> found = new TreeSet<>();
+		for (String word : index.getWords()) {
+			if (word.length() >= length) {
+				found.add(word.substring(0, length));
+			}
+		}
+
+		prefixes = new ArrayList<>();
+		for (String prefix : found) {
+			prefixes.add(Set.of(prefix));
+		}
+
+		for (Set<String> prefix : prefixes) {
+			verifyResults(prefix, index.search(prefix, false, 0), frozen.search(prefix, false, 0));
+		}
+	}
+
+	/**
+	 * Searches for the next prefix.
+	 *
+	 * @return the sorted search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> search() {
+		return searched.search(next(prefixes), false, 0);
+	}
+}
@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the latency of the kinds of queries the query syntax supports, built
+ * from every query line with more than one word: the words joined by OR like
+ * before, joined by AND, only the rarest word, the words as a phrase, and the
+ * words within 10 positions of each other. The AND queries are checked
+ * against intersecting the locations of their words, and the phrase and nearby
+ * word queries against counting their occurrences position by position in the
+ * mutable index.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class QueryBenchmark extends IndexFixture {
+
+	/** The kind of query to build from each line. */
+	@Param({ "or", "and", "rarest", "phrase", "near" })
+	public String kind;
+
+	/** The queries of that kind. */
+	private List<SearchQuery> built;
+
+	@Override
+	protected void prepare() {
+		built = new ArrayList<>();
+		for (Set<String> line : lines) {
+			if (line.size() > 1) {
+				SearchQuery query = build(line);
+				built.add(query);
+
+				if (kind.equals("and")) {
+					verify(query, intersection(line), counts(frozen.search(query, true, 0, Ranking.COUNT)).keySet());
+				} else if (kind.equals("phrase") || kind.equals("near")) {
+					int distance = kind.equals("near") ? 10 : 0;
+					verify(query, occurrences(new ArrayList<>(line), distance),
+							counts(frozen.search(query, true, 0, Ranking.COUNT)));
+				}
+			}
+		}
+
+		if (built.isEmpty()) {
+			throw new IllegalStateException("No query lines with more than one word in: " + queries);
+		}
+	}
+
+	/**
+	 * Builds a query of the benchmarked kind from the words of a query line.
+	 *
+	 * @param line the stemmed words of the query line
+	 * @return the query
+	 */
+	private SearchQuery build(Set<String> line) {
+		List<String> ordered = new ArrayList<>(line);
+		switch (kind) {
+			case "and":
+				List<SearchQuery.Clause> clauses = new ArrayList<>();
+				for (String word : ordered) {
+					clauses.add(new SearchQuery.Clause(word, false));
+				}
+				return new SearchQuery(List.of(clauses));
+			case "rarest":
+				String rarest = ordered.get(0);
+				for (String word : ordered) {
+					if (frozen.size(word) < frozen.size(rarest)) {
+						rarest = word;
+					}
+				}
+				return new SearchQuery(Set.of(rarest));
+			case "phrase":
+				return new SearchQuery(Set.of(), Set.of(new SearchQuery.Phrase(ordered, 0)));
+			case "near":
+				return new SearchQuery(Set.of(), Set.of(new SearchQuery.Phrase(ordered, 10)));
+			default:
+				return new SearchQuery(line);
+		}
+	}
+
+	/**
+	 * Finds the locations that have every word of a query line.
+	 *
+	 * @param line the stemmed words of the query line
+	 * @return the locations in sorted order
+	 */
+	private Set<String> intersection(Set<String> line) {
+		TreeSet<String> intersection = null;
+		for (String word : line) {
+			if (intersection == null) {
+				intersection = new TreeSet<>(index.getLocations(word));
+			} else {
+				intersection.retainAll(index.getLocations(word));
+			}
+		}
+		return intersection;
+	}
+
+	/**
+	 * Counts the occurrences of distinct words as a phrase, or close together, in
+	 * every location the slow way: every position of one of the words is a
+	 * possible start, and the positions of each word are looked up after it.
+	 *
+	 * @param words    the distinct words in order
+	 * @param distance the most positions the words may be apart, or 0 for a phrase
+	 * @return the number of occurrences in each location found
+	 */
+	private Map<String, Integer> occurrences(List<String> words, int distance) {
+		TreeSet<String> candidates = new TreeSet<>(index.getLocations(words.get(0)));
+		for (String word : words) {
+			candidates.retainAll(index.getLocations(word));
+		}
+
+		TreeMap<String, Integer> occurrences = new TreeMap<>();
+		for (String location : candidates) {
+			List<TreeSet<Integer>> positions = new ArrayList<>();
+			TreeSet<Integer> starts = new TreeSet<>();
+			for (String word : words) {
+				positions.add(new TreeSet<>(index.getPositions(word, location)));
+				starts.addAll(index.getPositions(word, location));
+			}
+
+			int count = 0;
+			for (int start : starts) {
+				boolean found = true;
+				for (int i = 0; found && i < words.size(); i++) {
+					found = distance == 0 ? positions.get(i).contains(start + i)
+							: !positions.get(i).subSet(start, true, start + distance, true).isEmpty();
+				}
+				if (found) {
+					count++;
+				}
+			}
+			if (count > 0) {
+				occurrences.put(location, count);
+			}
+		}
+		return occurrences;
+	}
+
+	/**
+	 * Collects the count of every search result by location.
+	 *
+	 * @param results the search results
+	 * @return the count of each location found
+	 */
+	private static Map<String, Integer> counts(List<InvertedIndex.SearchResult> results) {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (InvertedIndex.SearchResult result : results) {
+			counts.put(result.getWhere(), result.getCount());
+		}
+		return counts;
+	}
+
+	/**
+	 * Searches for the next query.
+	 *
+	 * @return the sorted search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> search() {
+		return frozen.search(next(built), true, 0, Ranking.COUNT);
+	}
+}
@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a full partial search that updates a search result object for every
+ * posting, like the searches used to, with adding up matches in a
+ * {@link ScoreAccumulator}, after checking that both find the same results for
+ * every query line. Run with {@code -prof gc} to compare how much each one
+ * allocates per query.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ScoringBenchmark extends IndexFixture {
+
+	/** The words each query line matches. */
+	private List<int[]> matches;
+
+	@Override
+	protected void prepare() {
+		matches = matches();
+
+		for (int i = 0; i < lines.size(); i++) {
+			verifyResults(lines.get(i), objects(matches.get(i)), accumulator(matches.get(i)));
+		}
+	}
+
+	/**
+	 * Searches by looking up and updating a search result object for every
+	 * posting.
+	 *
+	 * @return the sorted search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> objects() {
+		return objects(next(matches));
+	}
+
+	/**
+	 * Searches by adding up the matches of every posting in an accumulator.
+	 *
+	 * @return the sorted search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> accumulator() {
+		return accumulator(next(matches));
+	}
+
+	/**
+	 * Searches for some words by looking up and updating a search result object
+	 * for every posting.
+	 *
+	 * @param terms the indices of the words to search for
+	 * @return the sorted search results
+	 */
+	private List<InvertedIndex.SearchResult> objects(int[] terms) {
+		List<InvertedIndex.SearchResult> results = new ArrayList<>();
+		InvertedIndex.SearchResult[] lookup = new InvertedIndex.SearchResult[frozen.locations().size()];
+		for (int term : terms) {
+			for (int posting = frozen.start(term); posting < frozen.end(term); posting++) {
+				int id = frozen.id(posting);
+				if (lookup[id] == null) {
+					lookup[id] = new InvertedIndex.SearchResult(frozen.locations(), id);
+					results.add(lookup[id]);
+				}
+				lookup[id].update(frozen.frequency(posting));
+			}
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Searches for some words by adding up the matches of every posting in an
+	 * accumulator.
+	 *
+	 * @param terms the indices of the words to search for
+	 * @return the sorted search results
+	 */
+	private List<InvertedIndex.SearchResult> accumulator(int[] terms) {
+		ScoreAccumulator scores = ScoreAccumulator.get(frozen.locations().size());
+		for (int term : terms) {
+			for (int posting = frozen.start(term); posting < frozen.end(term); posting++) {
+				scores.add(frozen.id(posting), frozen.frequency(posting));
+			}
+		}
+		return scores.results(frozen.locations());
+	}
+}
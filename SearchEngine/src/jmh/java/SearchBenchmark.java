@@ -0,0 +1,60 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the search latency of the mutable index with its frozen form, for
+ * one query line at a time. Both forms are checked to find the same results
+ * for every query line first.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SearchBenchmark extends IndexFixture {
+
+	/** Which form of the index to search, either mutable or frozen. */
+	@Param({ "mutable", "frozen" })
+	public String layout;
+
+	/** Whether to use exact or partial search. */
+	@Param({ "true", "false" })
+	public boolean exact;
+
+	/** The form of the index searched. */
+	private InvertedIndexInterface searched;
+
+	@Override
+	protected void prepare() {
+		searched = layout.equals("frozen") ? frozen : index;
+
+		for (Set<String> line : lines) {
+			verifyResults(line, index.search(line, exact, 0), frozen.search(line, exact, 0));
+		}
+	}
+
+	/**
+	 * Searches for the next query line.
+	 *
+	 * @return the sorted search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> search() {
+		return searched.search(next(lines), exact, 0);
+	}
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the partial search latency of each ranking model when only the best
+ * few results are kept: through the usual search, by counting every posting,
+ * or by skipping the locations that cannot make it with {@link MaxScoreSearch}
+ * pruning. Sorting every result is measured by {@link SearchBenchmark}. The
+ * sorted results are first checked against scoring straight from the formulas
+ * of the ranking models, and every search is checked to keep their head.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TopKBenchmark extends IndexFixture {
+
+	/** How to score the results. */
+	@Param({ "COUNT", "TFIDF", "BM25" })
+	public Ranking ranking;
+
+	/** The most results to keep per query. */
+	@Param({ "100", "10", "1" })
+	public int limit;
+
+	/** The words each query line matches, in the same order as the lines. */
+	private List<int[]> matches;
+
+	@Override
+	protected void prepare() {
+		matches = matches();
+
+		// every search must keep the head of the fully sorted results
+		for (int i = 0; i < lines.size(); i++) {
+			Set<String> line = lines.get(i);
+			List<InvertedIndex.SearchResult> sorted = frozen.search(line, false, 0, ranking);
+			verifyResults(line, textbook(matches.get(i)), sorted);
+			List<InvertedIndex.SearchResult> best = sorted.subList(0, Math.min(limit, sorted.size()));
+			verifyResults(line, best, frozen.search(line, false, limit, ranking));
+			verifyResults(line, best, frozen.countingSearch(matches.get(i), limit, ranking, null));
+			verifyResults(line, best, MaxScoreSearch.search(frozen, matches.get(i), limit, ranking, null));
+		}
+	}
+
+	/**
+	 * Scores some words straight from the formulas of the ranking models, using
+	 * the counts of the mutable index instead of the precomputed statistics of
+	 * the frozen index.
+	 *
+	 * @param terms the indices of the words in the frozen index
+	 * @return the sorted search results
+	 */
+	private List<InvertedIndex.SearchResult> textbook(int[] terms) {
+		Map<String, Integer> lengths = index.returnCountMap();
+		double n = lengths.size();
+		long total = 0;
+		for (int length : lengths.values()) {
+			total += length;
+		}
+		double average = total / n;
+
+		// the arithmetic is in the same order as the index, so rounding agrees
+		Map<String, Integer> counts = new HashMap<>();
+		Map<String, Double> scores = new HashMap<>();
+		for (int term : terms) {
+			String word = frozen.term(term);
+			double df = index.size(word);
+			for (String location : index.getLocations(word)) {
+				int tf = index.size(word, location);
+				int length = lengths.get(location);
+				counts.merge(location, tf, Integer::sum);
+				if (ranking == Ranking.TFIDF) {
+					scores.merge(location, Math.log(1 + n / df) * tf / length, Double::sum);
+				} else if (ranking == Ranking.BM25) {
+					double weight = Math.log(1 + (n - df + 0.5) / (df + 0.5)) * (Ranking.K1 + 1);
+					double norm = Ranking.K1 * (1 - Ranking.B + Ranking.B * length / average);
+					scores.merge(location, weight * tf / (tf + norm), Double::sum);
+				} else {
+					scores.put(location, counts.get(location) / (double) length);
+				}
+			}
+		}
+
+		List<InvertedIndex.SearchResult> results = new ArrayList<>();
+		for (String location : counts.keySet()) {
+			int id = frozen.locations().lookup(location);
+			results.add(
+					new InvertedIndex.SearchResult(frozen.locations(), id, counts.get(location), scores.get(location)));
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Searches for the next query line.
+	 *
+	 * @return the best search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> search() {
+		Set<String> line = next(lines);
+		return frozen.search(line, false, limit, ranking);
+	}
+
+	/**
+	 * Counts every posting of the words the next query line matches.
+	 *
+	 * @return the best search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> counting() {
+		return frozen.countingSearch(next(matches), limit, ranking, null);
+	}
+
+	/**
+	 * Scores the words the next query line matches with MaxScore pruning.
+	 *
+	 * @return the best search results
+	 */
+	@Benchmark
+	public List<InvertedIndex.SearchResult> maxScore() {
+		return MaxScoreSearch.search(frozen, next(matches), limit, ranking, null);
+	}
+}
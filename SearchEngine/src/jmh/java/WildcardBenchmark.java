@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures finding the words that match wildcard patterns in a large term
+ * dictionary through its {@link TrigramIndex}, compared to matching a regular
+ * expression against every word. The patterns are taken from random words of
+ * the dictionary, in the shape of a suffix ({@code *ing}), an infix
+ * ({@code *ing*}), or a first letter with a suffix ({@code s*ing}). Latencies are
+ * sampled per pattern, so the percentiles are reported as well. Both ways are
+ * checked to find the same words for the first 20 patterns, since matching
+ * every word is too slow to check them all.
+ *
+ * @author sarah
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WildcardBenchmark extends IndexFixture {
+
+	/** The shape of the patterns. */
+	@Param({ "*ing", "*ing*", "s*ing" })
+	public String shape;
+
+	/** The number of words in the dictionary. */
+	@Param("1200000")
+	public int size;
+
+	/** The sorted words of the dictionary. */
+	private String[] terms;
+
+	/** The grams of the dictionary. */
+	private TrigramIndex grams;
+
+	/** The patterns to look up. */
+	private List<String> patterns;
+
+	@Override
+	protected void prepare() {
+		Random random = new Random(1);
+		terms = dictionary(size, random);
+		grams = new TrigramIndex(terms);
+
+		patterns = new ArrayList<>();
+		while (patterns.size() < 1000) {
+			String word = terms[random.nextInt(terms.length)];
+			if (word.length() >= 5) {
+				String end = word.substring(word.length() - 3);
+				String middle = word.substring(1, 4);
+				patterns.add(shape.equals("*ing") ? "*" + end
+						: shape.equals("*ing*") ? "*" + middle + "*" : word.charAt(0) + "*" + end);
+			}
+		}
+
+		for (String pattern : patterns.subList(0, 20)) {
+			verify(pattern, everyWord(pattern),
+					Arrays.stream(grams.find(pattern)).boxed().collect(Collectors.toList()));
+		}
+	}
+
+	/**
+	 * Finds the matches of the next pattern through the grams.
+	 *
+	 * @return the indices of the matching words
+	 */
+	@Benchmark
+	public int[] grams() {
+		return grams.find(next(patterns));
+	}
+
+	/**
+	 * Finds the matches of the next pattern by matching every word.
+	 *
+	 * @return the indices of the matching words
+	 */
+	@Benchmark
+	public List<Integer> everyWord() {
+		return everyWord(next(patterns));
+	}
+
+	/**
+	 * Finds the matches of a pattern by matching every word.
+	 *
+	 * @param pattern the wildcard pattern
+	 * @return the indices of the matching words, in increasing order
+	 */
+	private List<Integer> everyWord(String pattern) {
+		Pattern regex = Pattern.compile(pattern.replace("*", ".*"));
+		List<Integer> found = new ArrayList<>();
+		for (int term = 0; term < terms.length; term++) {
+			if (regex.matcher(terms[term]).matches()) {
+				found.add(term);
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * query parser that collects every query line first and then searches for all
+ * of them at once (see {@link BatchSearch}), so that a word in many queries
+ * only has its postings walked once. meant for evaluation runs with huge query
+ * files
+ *
+ * @author sarah
+ */
+public class BatchQueryParser implements QueryParserInterface {
+
+	/**
+	 * index to use
+	 */
+	private final FrozenIndex index;
+	/**
+	 * work queue to search on, or null to search in the calling thread
+	 */
+	private final WorkQueue workQueue;
+	/**
+	 * the search results of each query, sorted by query
+	 */
+	private final ResultSpool searchResults;
+	/**
+	 * the queries waiting to be searched, by the query as it is written in the
+	 * results
+	 */
+	private final LinkedHashMap<String, SearchQuery> pending;
+	/**
+	 * whether the waiting queries are exact or partial searches
+	 */
+	private boolean pendingExact;
+	/**
+	 * the most results to keep per query, or 0 for all of them
+	 */
+	private final int limit;
+	/**
+	 * how to score the results
+	 */
+	private final Ranking ranking;
+
+	/**
+	 * batch query parser constructor. misspelled words are never matched and
+	 * nothing is cached, so only the limit, ranking and results of the settings
+	 * are used
+	 *
+	 * @param index     the index to use for this class
+	 * @param workQueue the work queue to search on, or null to search in the
+	 *                  calling thread
+	 * @param settings  how many results to keep, how to rank them, and where to
+	 *                  keep the results
+	 */
+	public BatchQueryParser(FrozenIndex index, WorkQueue workQueue, QuerySettings settings) {
+		this.index = index;
+		this.workQueue = workQueue;
+		this.searchResults = settings.results();
+		this.pending = new LinkedHashMap<>();
+		this.pendingExact = false;
+		this.limit = settings.limit();
+		this.ranking = settings.ranking();
+	}
+
+	/**
+	 * collects every line of the query file, then searches for all of them
+	 */
+	@Override
+	public void parseQueryFile(Path path, boolean exact) throws IOException {
+		QueryParserInterface.super.parseQueryFile(path, exact);
+		finish();
+	}
+
+	/**
+	 * parses a single line of queries and saves it for the next batch. a line
+	 * with the same stems as a line before it is skipped
+	 */
+	@Override
+	public void parseQueryLine(String line, boolean exact) {
+		SearchQuery parsed = SearchQuery.parse(line);
+		String query = parsed.toString();
+
+		if (!parsed.isEmpty() && !searchResults.containsKey(query)) {
+			// a batch only has one kind of search
+			if (exact != pendingExact) {
+				finish();
+				pendingExact = exact;
+			}
+			pending.putIfAbsent(query, parsed);
+		}
+	}
+
+	/**
+	 * searches for every query line collected so far
+	 */
+	public void finish() {
+		if (!pending.isEmpty()) {
+			List<SearchQuery> queries = new ArrayList<>(pending.values());
+			pending.clear();
+			searchResults.putAll(BatchSearch.search(index, queries, pendingExact, limit, ranking, workQueue));
+		}
+	}
+
+	@Override
+	public void writeJson(Path path) throws IOException {
+		finish();
+		searchResults.writeJson(path);
+	}
+}
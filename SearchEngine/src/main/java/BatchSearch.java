@@ -0,0 +1,307 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Searches a frozen index for a whole batch of queries at once, such as every
+ * line of a query file, sharing the work the queries have in common. A word
+ * that is in many queries (or a prefix, which in a partial search stands for
+ * every word starting with it) only has its postings walked once:
+ *
+ * <ul>
+ * <li>When ranked by count, the matches of every word the query word stands
+ * for are merged into one list of locations and their number of matches, so a
+ * query adds one entry per location instead of one per posting.</li>
+ * <li>In the other ranking models, the postings are kept in the order the
+ * search walks them, along with their scores, so each query adds exactly what
+ * it would have added on its own and the results are exactly the same.</li>
+ * </ul>
+ *
+ * The shared lists take memory, so only the words used by more than one query
+ * are shared, the most used first, until they hold {@link #DEFAULT_BUDGET}
+ * entries. Every other word, and every query with phrases, wildcards or
+ * operators, is searched like before. Given a work queue, the shared lists are
+ * built and the queries are scored by its workers.
+ *
+ * @author sarah
+ */
+public class BatchSearch {
+
+	/** The default most entries to keep in shared lists, about 16 bytes each. */
+	public static final int DEFAULT_BUDGET = 1 << 23;
+
+	/** The index to search. */
+	private final FrozenIndex index;
+
+	/** Whether its exact or partial search. */
+	private final boolean exact;
+
+	/** The most results to return per query, or 0 (or less) for all of them. */
+	private final int limit;
+
+	/** How to score the results. */
+	private final Ranking ranking;
+
+	/** The shared matches of the words used by more than one query. */
+	private final HashMap<String, Shared> shared;
+
+	/**
+	 * Prepares a batch search.
+	 *
+	 * @param index   the index to search
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return per query, or 0 (or less) for all
+	 * @param ranking how to score the results
+	 */
+	private BatchSearch(FrozenIndex index, boolean exact, int limit, Ranking ranking) {
+		this.index = index;
+		this.exact = exact;
+		this.limit = limit;
+		this.ranking = ranking;
+		this.shared = new HashMap<>();
+	}
+
+	/**
+	 * Searches for every query of a batch.
+	 *
+	 * @param index     the index to search
+	 * @param queries   the parsed queries
+	 * @param exact     whether its exact or partial search
+	 * @param limit     the most results to return per query, or 0 (or less) for
+	 *                  all of them
+	 * @param ranking   how to score the results
+	 * @param workQueue the work queue to search on, or null to search in the
+	 *                  calling thread
+	 * @return the sorted results of each query, by the query as it is written in
+	 *         the results
+	 */
+	public static TreeMap<String, List<InvertedIndex.SearchResult>> search(FrozenIndex index,
+			List<SearchQuery> queries, boolean exact, int limit, Ranking ranking, WorkQueue workQueue) {
+		return search(index, queries, exact, limit, ranking, workQueue, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Searches for every query of a batch, keeping at most a number of entries in
+	 * shared lists.
+	 *
+	 * @param index     the index to search
+	 * @param queries   the parsed queries
+	 * @param exact     whether its exact or partial search
+	 * @param limit     the most results to return per query, or 0 (or less) for
+	 *                  all of them
+	 * @param ranking   how to score the results
+	 * @param workQueue the work queue to search on, or null to search in the
+	 *                  calling thread
+	 * @param budget    the most entries to keep in shared lists
+	 * @return the sorted results of each query, by the query as it is written in
+	 *         the results
+	 */
+	public static TreeMap<String, List<InvertedIndex.SearchResult>> search(FrozenIndex index,
+			List<SearchQuery> queries, boolean exact, int limit, Ranking ranking, WorkQueue workQueue, long budget) {
+		BatchSearch batch = new BatchSearch(index, exact, limit, ranking);
+		batch.share(queries, workQueue, budget);
+
+		// each task only sets its own element, so the list needs no lock
+		List<List<InvertedIndex.SearchResult>> results = new ArrayList<>(Collections.nCopies(queries.size(), null));
+		for (int i = 0; i < queries.size(); i++) {
+			int query = i;
+			run(workQueue, () -> results.set(query, batch.search(queries.get(query))));
+		}
+		if (workQueue != null) {
+			workQueue.finish();
+		}
+
+		TreeMap<String, List<InvertedIndex.SearchResult>> all = new TreeMap<>();
+		for (int i = 0; i < queries.size(); i++) {
+			all.put(queries.get(i).toString(), results.get(i));
+		}
+		return all;
+	}
+
+	/**
+	 * Runs a task on a work queue, or right away without one.
+	 *
+	 * @param workQueue the work queue, or null
+	 * @param task      the task
+	 */
+	private static void run(WorkQueue workQueue, Runnable task) {
+		if (workQueue != null) {
+			workQueue.execute(task);
+		} else {
+			task.run();
+		}
+	}
+
+	/**
+	 * Builds the shared lists of the words used by more than one query, the most
+	 * used first, while they fit in the budget.
+	 *
+	 * @param queries   the parsed queries
+	 * @param workQueue the work queue to build on, or null
+	 * @param budget    the most entries to keep in shared lists
+	 */
+	private void share(List<SearchQuery> queries, WorkQueue workQueue, long budget) {
+		HashMap<String, Integer> uses = new HashMap<>();
+		for (SearchQuery query : queries) {
+			if (query.isSimple()) {
+				for (String word : query.words()) {
+					uses.merge(word, 1, Integer::sum);
+				}
+			}
+		}
+
+		List<String> words = new ArrayList<>();
+		for (Map.Entry<String, Integer> entry : uses.entrySet()) {
+			if (entry.getValue() > 1) {
+				words.add(entry.getKey());
+			}
+		}
+		words.sort((a, b) -> Integer.compare(uses.get(b), uses.get(a)));
+
+		List<String> kept = new ArrayList<>();
+		for (String word : words) {
+			int[] terms = index.matches(Set.of(word), exact);
+			long postings = 0;
+			for (int term : terms) {
+				postings += index.end(term) - index.start(term);
+			}
+			if (postings > 0 && postings <= budget) {
+				kept.add(word);
+				budget -= postings;
+			}
+		}
+
+		Shared[] built = new Shared[kept.size()];
+		for (int i = 0; i < built.length; i++) {
+			int word = i;
+			run(workQueue, () -> built[word] = build(index.matches(Set.of(kept.get(word)), exact)));
+		}
+		if (workQueue != null) {
+			workQueue.finish();
+		}
+
+		for (int i = 0; i < built.length; i++) {
+			shared.put(kept.get(i), built[i]);
+		}
+	}
+
+	/**
+	 * Walks the postings of the words a query word stands for.
+	 *
+	 * @param terms the indices of the words, in the order a search adds them
+	 * @return the shared matches
+	 */
+	private Shared build(int[] terms) {
+		int size = 0;
+		for (int term : terms) {
+			size += index.end(term) - index.start(term);
+		}
+
+		if (ranking != Ranking.COUNT) {
+			int[] ids = new int[size];
+			int[] counts = new int[size];
+			double[] scores = new double[size];
+			double[] norms = index.statistics().norms(ranking);
+			int i = 0;
+			for (int term : terms) {
+				double weight = index.weight(term, ranking);
+				for (int posting = index.start(term); posting < index.end(term); posting++) {
+					ids[i] = index.id(posting);
+					counts[i] = index.frequency(posting);
+					scores[i] = ranking.score(weight, counts[i], norms[ids[i]]);
+					i++;
+				}
+			}
+			return new Shared(ids, counts, scores);
+		}
+
+		// merge the matches of every word by location, in location order
+		long[] merged = new long[size];
+		int i = 0;
+		for (int term : terms) {
+			for (int posting = index.start(term); posting < index.end(term); posting++) {
+				merged[i++] = ((long) index.id(posting) << 32) | index.frequency(posting);
+			}
+		}
+		if (terms.length > 1) {
+			Arrays.sort(merged);
+		}
+
+		int[] ids = new int[size];
+		int[] counts = new int[size];
+		int locations = 0;
+		for (long packed : merged) {
+			int id = (int) (packed >>> 32);
+			if (locations > 0 && ids[locations - 1] == id) {
+				counts[locations - 1] += (int) packed;
+			} else {
+				ids[locations] = id;
+				counts[locations] = (int) packed;
+				locations++;
+			}
+		}
+		return new Shared(Arrays.copyOf(ids, locations), Arrays.copyOf(counts, locations), null);
+	}
+
+	/**
+	 * Searches for one query of the batch, using the shared lists of its words.
+	 *
+	 * @param query the parsed query
+	 * @return a sorted list of at most limit search results
+	 */
+	private List<InvertedIndex.SearchResult> search(SearchQuery query) {
+		if (!query.isSimple()) {
+			return index.search(query, exact, limit, ranking);
+		}
+
+		ScoreAccumulator accumulator = ScoreAccumulator.get(index.locations().size());
+		for (String word : query.words()) {
+			Shared matches = shared.get(word);
+			if (matches == null) {
+				index.addMatches(index.matches(Set.of(word), exact), ranking, accumulator, null);
+			} else if (matches.scores == null) {
+				for (int i = 0; i < matches.ids.length; i++) {
+					accumulator.add(matches.ids[i], matches.counts[i]);
+				}
+			} else {
+				for (int i = 0; i < matches.ids.length; i++) {
+					accumulator.add(matches.ids[i], matches.counts[i], matches.scores[i]);
+				}
+			}
+		}
+		return limit > 0 ? accumulator.results(index.locations(), limit) : accumulator.results(index.locations());
+	}
+
+	/**
+	 * The matches of a query word, shared by every query it is in.
+	 */
+	private static class Shared {
+
+		/** The location of each entry. */
+		private final int[] ids;
+
+		/** The number of matches of each entry. */
+		private final int[] counts;
+
+		/** The score of each entry, or null if ranked by count. */
+		private final double[] scores;
+
+		/**
+		 * Initializes the shared matches.
+		 *
+		 * @param ids    the location of each entry
+		 * @param counts the number of matches of each entry
+		 * @param scores the score of each entry, or null if ranked by count
+		 */
+		private Shared(int[] ids, int[] counts, double[] scores) {
+			this.ids = ids;
+			this.counts = counts;
+			this.scores = scores;
+		}
+	}
+}
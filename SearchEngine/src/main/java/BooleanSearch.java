@@ -0,0 +1,461 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates a boolean query (see {@link SearchQuery}) against a frozen index.
+ *
+ * Every word and phrase is a list of location ids in increasing order: the
+ * postings of a word, the postings of every word starting with it in a partial
+ * search, or the locations of a phrase. The lists of a group joined by AND are
+ * intersected starting from the shortest, galloping ahead in the others, so a
+ * group costs about as much as its rarest word no matter how long the others
+ * are. The negated lists of the group are looked up the same way. The groups
+ * joined by OR are then merged, and only the locations that are left are scored
+ * by looking them up in the lists of the words and phrases that are not
+ * negated.
+ *
+ * Warning: This class is not thread-safe, but each search creates its own.
+ *
+ * @author sarah
+ */
+public class BooleanSearch {
+
+	/** The index to search. */
+	private final FrozenIndex index;
+
+	/** Whether words are matched exactly, or as prefixes. */
+	private final boolean exact;
+
+	/** The ids of deleted locations to skip, or null if none. */
+	private final BitSet deleted;
+
+	/** The location ids of every clause, by how the clause is written. */
+	private final Map<String, Cursor> cursors;
+
+	/**
+	 * Prepares a search.
+	 *
+	 * @param index   the index to search
+	 * @param exact   whether words are matched exactly, or as prefixes
+	 * @param deleted the ids of deleted locations to skip, or null if none
+	 */
+	private BooleanSearch(FrozenIndex index, boolean exact, BitSet deleted) {
+		this.index = index;
+		this.exact = exact;
+		this.deleted = deleted;
+		this.cursors = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Finds and scores the locations that satisfy a boolean query.
+	 *
+	 * @param index   the index to search
+	 * @param query   the boolean query
+	 * @param exact   whether words are matched exactly, or as prefixes
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @param deleted the ids of deleted locations to skip, or null if none
+	 * @return a sorted list of at most limit search results
+	 */
+	public static List<InvertedIndex.SearchResult> search(FrozenIndex index, SearchQuery query, boolean exact,
+			int limit, Ranking ranking, BitSet deleted) {
+		return new BooleanSearch(index, exact, deleted).run(query, limit, ranking);
+	}
+
+	/**
+	 * Evaluates the groups, and scores the locations that are left.
+	 *
+	 * @param query   the boolean query
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @return a sorted list of at most limit search results
+	 */
+	private List<InvertedIndex.SearchResult> run(SearchQuery query, int limit, Ranking ranking) {
+		int[] matched = new int[0];
+		for (List<SearchQuery.Clause> group : query.groups()) {
+			matched = union(matched, intersect(group));
+		}
+
+		LocationDictionary locations = index.locations();
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
+		if (matched.length > 0) {
+			BitSet allowed = new BitSet(locations.size());
+			for (int id : matched) {
+				allowed.set(id);
+			}
+
+			// every clause that is not negated adds its matches once
+			List<String> scored = new ArrayList<>();
+			for (List<SearchQuery.Clause> group : query.groups()) {
+				for (SearchQuery.Clause clause : group) {
+					if (!clause.isNegated() && !scored.contains(clause.toString())) {
+						scored.add(clause.toString());
+						score(clause, matched, allowed, ranking, accumulator);
+					}
+				}
+			}
+		}
+		return limit > 0 ? accumulator.results(locations, limit) : accumulator.results(locations);
+	}
+
+	/**
+	 * Finds the locations that match every clause of a group that is not negated,
+	 * and none of the negated ones.
+	 *
+	 * @param group the clauses joined by AND
+	 * @return the location ids in increasing order
+	 */
+	private int[] intersect(List<SearchQuery.Clause> group) {
+		List<Cursor> required = new ArrayList<>();
+		List<Cursor> excluded = new ArrayList<>();
+		for (SearchQuery.Clause clause : group) {
+			Cursor cursor = cursor(clause);
+			cursor.reset();
+			(clause.isNegated() ? excluded : required).add(cursor);
+		}
+		if (required.isEmpty()) {
+			return new int[0];
+		}
+		required.sort(Comparator.comparingInt(Cursor::size));
+
+		Cursor lead = required.get(0);
+		int[] found = new int[Math.min(lead.size(), 16)];
+		int size = 0;
+		while (!lead.done()) {
+			int id = lead.current();
+
+			int j = 1;
+			while (j < required.size() && required.get(j).advance(id)) {
+				j++;
+			}
+			if (j < required.size()) {
+				// the shortest list jumps ahead to where the other list is found next
+				if (required.get(j).done()) {
+					break;
+				}
+				lead.advance(required.get(j).current());
+				continue;
+			}
+
+			boolean keep = deleted == null || !deleted.get(id);
+			for (int k = 0; keep && k < excluded.size(); k++) {
+				keep = !excluded.get(k).advance(id);
+			}
+			if (keep) {
+				if (size == found.length) {
+					found = Arrays.copyOf(found, size * 2);
+				}
+				found[size++] = id;
+			}
+			lead.next();
+		}
+		return Arrays.copyOf(found, size);
+	}
+
+	/**
+	 * Merges two lists of location ids in increasing order.
+	 *
+	 * @param first  the first list
+	 * @param second the second list
+	 * @return the location ids in either list, in increasing order
+	 */
+	private static int[] union(int[] first, int[] second) {
+		if (first.length == 0) {
+			return second;
+		} else if (second.length == 0) {
+			return first;
+		}
+
+		int[] merged = new int[first.length + second.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < first.length || j < second.length) {
+			if (j == second.length || (i < first.length && first[i] < second[j])) {
+				merged[size++] = first[i++];
+			} else if (i == first.length || second[j] < first[i]) {
+				merged[size++] = second[j++];
+			} else {
+				merged[size++] = first[i++];
+				j++;
+			}
+		}
+		return Arrays.copyOf(merged, size);
+	}
+
+	/**
+	 * Adds the matches of a clause in the matched locations to the accumulator.
+	 * A word with fewer locations than were matched walks its postings, and any
+	 * other word looks each matched location up.
+	 *
+	 * @param clause      the clause to add matches for
+	 * @param matched     the matched location ids in increasing order
+	 * @param allowed     the matched location ids
+	 * @param ranking     how to score the matches
+	 * @param accumulator the accumulator to add matches to
+	 */
+	private void score(SearchQuery.Clause clause, int[] matched, BitSet allowed, Ranking ranking,
+			ScoreAccumulator accumulator) {
+		double[] norms = index.statistics().norms(ranking);
+
+		if (clause.phrase() != null) {
+			Cursor cursor = cursor(clause);
+			double weight = index.statistics().weight(ranking, cursor.size());
+			cursor.reset();
+			for (int id : matched) {
+				if (cursor.advance(id)) {
+					add(id, cursor.phrase.frequency(cursor.position), weight, norms, ranking, accumulator);
+				}
+			}
+			return;
+		}
+
+		int[] range = range(clause.word());
+		for (int term = range[0]; term < range[1]; term++) {
+			double weight = index.weight(term, ranking);
+			int start = index.start(term);
+			int end = index.end(term);
+
+			if (end - start <= matched.length) {
+				for (int posting = start; posting < end; posting++) {
+					int id = index.id(posting);
+					if (allowed.get(id)) {
+						add(id, index.frequency(posting), weight, norms, ranking, accumulator);
+					}
+				}
+			} else {
+				Cursor cursor = new Cursor(index, start, end);
+				for (int id : matched) {
+					if (cursor.advance(id)) {
+						add(id, index.frequency(cursor.position), weight, norms, ranking, accumulator);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the matches of a word or phrase in a location to the accumulator.
+	 *
+	 * @param id          the location id
+	 * @param frequency   the number of matches
+	 * @param weight      the weight of the word or phrase
+	 * @param norms       the norm of every location
+	 * @param ranking     how to score the matches
+	 * @param accumulator the accumulator to add matches to
+	 */
+	private static void add(int id, int frequency, double weight, double[] norms, Ranking ranking,
+			ScoreAccumulator accumulator) {
+		if (ranking == Ranking.COUNT) {
+			accumulator.add(id, frequency);
+		} else {
+			accumulator.add(id, frequency, ranking.score(weight, frequency, norms[id]));
+		}
+	}
+
+	/**
+	 * Returns the words a word of the query matches.
+	 *
+	 * @param word the stemmed word
+	 * @return the first matching word, and the word after the last one
+	 */
+	private int[] range(String word) {
+		if (exact) {
+			int term = index.find(word);
+			return term < 0 ? new int[] { 0, 0 } : new int[] { term, term + 1 };
+		}
+		int[] terms = index.matches(Set.of(word), false);
+		return terms.length == 0 ? new int[] { 0, 0 } : new int[] { terms[0], terms[terms.length - 1] + 1 };
+	}
+
+	/**
+	 * Returns the location ids of a clause, finding them the first time they are
+	 * needed.
+	 *
+	 * @param clause the clause
+	 * @return the location ids
+	 */
+	private Cursor cursor(SearchQuery.Clause clause) {
+		String key = clause.phrase() != null ? clause.phrase().toString() : clause.word();
+		Cursor cursor = cursors.get(key);
+		if (cursor != null) {
+			return cursor;
+		}
+
+		if (clause.phrase() != null) {
+			cursor = new Cursor(PhraseSearch.search(index, clause.phrase(), deleted));
+		} else {
+			int[] range = range(clause.word());
+			if (range[1] - range[0] <= 1) {
+				int start = range[0] < range[1] ? index.start(range[0]) : 0;
+				int end = range[0] < range[1] ? index.end(range[0]) : 0;
+				cursor = new Cursor(index, start, end);
+			} else {
+				// the postings of every word starting with a prefix are merged once
+				BitSet ids = new BitSet(index.locations().size());
+				for (int posting = index.start(range[0]); posting < index.end(range[1] - 1); posting++) {
+					ids.set(index.id(posting));
+				}
+				cursor = new Cursor(ids.stream().toArray());
+			}
+		}
+		cursors.put(key, cursor);
+		return cursor;
+	}
+
+	/**
+	 * A position in a list of location ids in increasing order, which is either
+	 * a range of postings, an array, or the locations of a phrase.
+	 */
+	private static class Cursor {
+
+		/** The index of the postings, or null if the ids are in an array. */
+		private final FrozenIndex index;
+
+		/** The location ids, or null if they are postings. */
+		private final int[] ids;
+
+		/** The locations of a phrase, or null if this is a word. */
+		private final PhraseSearch phrase;
+
+		/** The first posting or array index. */
+		private final int start;
+
+		/** The posting or array index after the last one. */
+		private final int end;
+
+		/** The current posting or array index. */
+		private int position;
+
+		/**
+		 * Initializes a cursor over a range of postings.
+		 *
+		 * @param index the index of the postings
+		 * @param start the first posting
+		 * @param end   the posting after the last one
+		 */
+		public Cursor(FrozenIndex index, int start, int end) {
+			this.index = index;
+			this.ids = null;
+			this.phrase = null;
+			this.start = start;
+			this.end = end;
+			this.position = start;
+		}
+
+		/**
+		 * Initializes a cursor over an array of ids.
+		 *
+		 * @param ids the location ids in increasing order
+		 */
+		public Cursor(int[] ids) {
+			this.index = null;
+			this.ids = ids;
+			this.phrase = null;
+			this.start = 0;
+			this.end = ids.length;
+			this.position = 0;
+		}
+
+		/**
+		 * Initializes a cursor over the locations of a phrase.
+		 *
+		 * @param phrase the locations of the phrase
+		 */
+		public Cursor(PhraseSearch phrase) {
+			this.index = null;
+			this.ids = null;
+			this.phrase = phrase;
+			this.start = 0;
+			this.end = phrase.size();
+			this.position = 0;
+		}
+
+		/**
+		 * Returns the location id at a posting or array index.
+		 *
+		 * @param i the posting or array index
+		 * @return the location id
+		 */
+		private int id(int i) {
+			if (index != null) {
+				return index.id(i);
+			}
+			return ids != null ? ids[i] : phrase.id(i);
+		}
+
+		/**
+		 * Returns the number of location ids.
+		 *
+		 * @return the number of location ids
+		 */
+		public int size() {
+			return end - start;
+		}
+
+		/**
+		 * Moves back to the first location id.
+		 */
+		public void reset() {
+			position = start;
+		}
+
+		/**
+		 * Determines whether every location id has been passed.
+		 *
+		 * @return true if there are no more location ids
+		 */
+		public boolean done() {
+			return position >= end;
+		}
+
+		/**
+		 * Returns the current location id.
+		 *
+		 * @return the location id
+		 */
+		public int current() {
+			return id(position);
+		}
+
+		/**
+		 * Moves to the next location id.
+		 */
+		public void next() {
+			position++;
+		}
+
+		/**
+		 * Moves to the first location id at or after a location, galloping ahead and
+		 * then searching back within the last jump.
+		 *
+		 * @param target the location id to move to
+		 * @return true if the location id is in the list
+		 */
+		public boolean advance(int target) {
+			int low = position;
+			int bound = 1;
+			while (low + bound < end && id(low + bound) < target) {
+				bound <<= 1;
+			}
+
+			int high = Math.min(low + bound, end - 1);
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (id(middle) < target) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			position = low;
+			return low < end && id(low) == target;
+		}
+	}
+}
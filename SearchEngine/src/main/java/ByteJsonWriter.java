@@ -0,0 +1,456 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Writes JSON text as UTF-8 bytes straight into a large buffer, which is
+ * written to a channel in big sequential writes whenever it fills up. This is
+ * the low-level half of {@link SimpleJsonWriter}: it knows how to write
+ * strings, numbers, and scores, and the JSON layouts are built from those.
+ *
+ * Nothing is allocated per value written:
+ *
+ * <ul>
+ * <li>Strings are encoded character by character into the buffer, and the
+ * encoding of each location (which is written once per posting or result) is
+ * cached the first time it is written.</li>
+ * <li>Numbers are written digit by digit.</li>
+ * <li>Scores are rounded to 8 decimal places from the exact binary value of the
+ * double, half to even, which is exactly what {@link DecimalFormat} does with
+ * the {@code 0.00000000} pattern, without creating a formatter or a string.</li>
+ * </ul>
+ *
+ * The bytes are exactly the same as writing the same text through a
+ * {@link java.io.BufferedWriter} in UTF-8, including failing on a string that
+ * is not valid UTF-16.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author sarah
+ */
+public class ByteJsonWriter implements Closeable {
+
+	/** The default size of the buffer, in bytes. */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	/** The number of decimal places of a score. */
+	private static final int DECIMALS = 8;
+
+	/** Ten to the number of decimal places of a score. */
+	private static final long SCALE = 100_000_000L;
+
+	/** The largest score formatted without a {@link DecimalFormat}. */
+	private static final double LARGEST = 1e10;
+
+	/** The channel to write to. */
+	private final WritableByteChannel channel;
+
+	/** The bytes not written to the channel yet. */
+	private final byte[] buffer;
+
+	/** The buffer, wrapped for writing to the channel. */
+	private final ByteBuffer wrapped;
+
+	/** The number of bytes in the buffer. */
+	private int size;
+
+	/** The encoding of every location written so far. */
+	private final HashMap<String, byte[]> locations;
+
+	/**
+	 * Whether numbers are written with plain digits and a period in the default
+	 * locale, or else scores are left to a {@link DecimalFormat}.
+	 */
+	private final boolean plain;
+
+	/**
+	 * Initializes a writer to a file, creating or truncating it.
+	 *
+	 * @param path the file to write to
+	 * @throws IOException if unable to open the file
+	 */
+	public ByteJsonWriter(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Initializes a writer to a channel.
+	 *
+	 * @param channel    the channel to write to, which is closed with this writer
+	 * @param bufferSize the size of the buffer, in bytes
+	 */
+	public ByteJsonWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = new byte[Math.max(16, bufferSize)];
+		this.wrapped = ByteBuffer.wrap(buffer);
+		this.size = 0;
+		this.locations = new HashMap<>();
+		this.plain = isPlain();
+	}
+
+	/**
+	 * Determines whether numbers are written with plain digits and a period in
+	 * the default locale.
+	 *
+	 * @return true if numbers are written with plain digits and a period
+	 */
+	private static boolean isPlain() {
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+		return symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.';
+	}
+
+	/**
+	 * Makes room in the buffer, writing it to the channel if needed.
+	 *
+	 * @param bytes the number of bytes to make room for, at most the buffer size
+	 * @throws IOException if unable to write
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (size + bytes > buffer.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffer to the channel and empties it.
+	 *
+	 * @throws IOException if unable to write
+	 */
+	public void flush() throws IOException {
+		wrapped.clear().limit(size);
+		while (wrapped.hasRemaining()) {
+			channel.write(wrapped);
+		}
+		size = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes an ASCII character.
+	 *
+	 * @param c the character
+	 * @throws IOException if unable to write
+	 */
+	public void write(char c) throws IOException {
+		ensure(1);
+		buffer[size++] = (byte) c;
+	}
+
+	/**
+	 * Writes text that is only ASCII characters, like the punctuation of JSON.
+	 *
+	 * @param ascii the text
+	 * @throws IOException if unable to write
+	 */
+	public void write(String ascii) throws IOException {
+		for (int i = 0; i < ascii.length(); i++) {
+			write(ascii.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes bytes that are already encoded, such as a part of the output
+	 * written earlier.
+	 *
+	 * @param bytes  the bytes
+	 * @param offset the first byte to write
+	 * @param length the number of bytes to write
+	 * @throws IOException if unable to write
+	 */
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		if (length > buffer.length) {
+			flush();
+			ByteBuffer direct = ByteBuffer.wrap(bytes, offset, length);
+			while (direct.hasRemaining()) {
+				channel.write(direct);
+			}
+			return;
+		}
+		ensure(length);
+		System.arraycopy(bytes, offset, buffer, size, length);
+		size += length;
+	}
+
+	/**
+	 * Writes a number of tabs.
+	 *
+	 * @param times the number of tabs
+	 * @throws IOException if unable to write
+	 */
+	public void indent(int times) throws IOException {
+		for (int i = 0; i < times; i++) {
+			write('\t');
+		}
+	}
+
+	/**
+	 * Writes text surrounded by quotation marks, as is.
+	 *
+	 * @param text the text
+	 * @throws IOException if unable to write, or the text is not valid UTF-16
+	 */
+	public void string(String text) throws IOException {
+		write('"');
+		encode(text, false);
+		write('"');
+	}
+
+	/**
+	 * Writes a location surrounded by quotation marks, as is, encoding it only
+	 * the first time it is written.
+	 *
+	 * @param location the location
+	 * @throws IOException if unable to write, or the location is not valid UTF-16
+	 */
+	public void location(String location) throws IOException {
+		byte[] encoded = locations.get(location);
+		if (encoded == null) {
+			encoded = location.getBytes(StandardCharsets.UTF_8);
+			if (!new String(encoded, StandardCharsets.UTF_8).equals(location)) {
+				throw new MalformedInputException(1);
+			}
+			locations.put(location, encoded);
+		}
+
+		write('"');
+		write(encoded, 0, encoded.length);
+		write('"');
+	}
+
+	/**
+	 * Writes a query as a key surrounded by quotation marks. The square brackets
+	 * and commas of the query are left out, and its quotation marks and
+	 * backslashes are escaped.
+	 *
+	 * @param query the query
+	 * @throws IOException if unable to write, or the query is not valid UTF-16
+	 */
+	public void query(String query) throws IOException {
+		write('"');
+		encode(query, true);
+		write('"');
+	}
+
+	/**
+	 * Encodes text into the buffer as UTF-8.
+	 *
+	 * @param text  the text
+	 * @param query whether to leave out square brackets and commas, and escape
+	 *              quotation marks and backslashes
+	 * @throws IOException if unable to write, or the text is not valid UTF-16
+	 */
+	private void encode(String text, boolean query) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			ensure(4);
+
+			if (c < 0x80) {
+				if (query) {
+					if (c == '[' || c == ']' || c == ',') {
+						continue;
+					}
+					if (c == '"' || c == '\\') {
+						buffer[size++] = '\\';
+					}
+				}
+				buffer[size++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[size++] = (byte) (0xc0 | (c >> 6));
+				buffer[size++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				if (!Character.isHighSurrogate(c) || i + 1 == text.length()
+						|| !Character.isLowSurrogate(text.charAt(i + 1))) {
+					throw new MalformedInputException(1);
+				}
+				int code = Character.toCodePoint(c, text.charAt(++i));
+				buffer[size++] = (byte) (0xf0 | (code >> 18));
+				buffer[size++] = (byte) (0x80 | ((code >> 12) & 0x3f));
+				buffer[size++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+				buffer[size++] = (byte) (0x80 | (code & 0x3f));
+			} else {
+				buffer[size++] = (byte) (0xe0 | (c >> 12));
+				buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[size++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	/**
+	 * Writes a whole number.
+	 *
+	 * @param value the number
+	 * @throws IOException if unable to write
+	 */
+	public void number(long value) throws IOException {
+		ensure(20);
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) {
+				write(Long.toString(value));
+				return;
+			}
+			buffer[size++] = '-';
+			value = -value;
+		}
+		digits(value, 1);
+	}
+
+	/**
+	 * Writes the digits of a number that is not negative, padded with zeros.
+	 *
+	 * @param value  the number
+	 * @param length the fewest digits to write
+	 */
+	private void digits(long value, int length) {
+		int count = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			count++;
+		}
+		count = Math.max(count, length);
+
+		for (int i = size + count - 1; i >= size; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		size += count;
+	}
+
+	/**
+	 * Writes a score rounded to 8 decimal places, exactly like
+	 * {@code new DecimalFormat("0.00000000").format(score)}.
+	 *
+	 * @param score the score
+	 * @throws IOException if unable to write
+	 */
+	public void score(double score) throws IOException {
+		long scaled = plain ? scale(score) : -1;
+		if (scaled < 0) {
+			encode(new DecimalFormat("0.00000000").format(score), false);
+			return;
+		}
+
+		ensure(32);
+		digits(scaled / SCALE, 1);
+		buffer[size++] = '.';
+		digits(scaled % SCALE, DECIMALS);
+	}
+
+	/**
+	 * Formats a score rounded to 8 decimal places, exactly like
+	 * {@code new DecimalFormat("0.00000000").format(score)} but without creating
+	 * a formatter for every score.
+	 *
+	 * @param score the score
+	 * @return the formatted score
+	 */
+	public static String format(double score) {
+		long scaled = isPlain() ? scale(score) : -1;
+		if (scaled < 0) {
+			return new DecimalFormat("0.00000000").format(score);
+		}
+
+		String decimals = Long.toString(scaled % SCALE);
+		StringBuilder builder = new StringBuilder(32);
+		builder.append(scaled / SCALE).append('.');
+		for (int i = decimals.length(); i < DECIMALS; i++) {
+			builder.append('0');
+		}
+		return builder.append(decimals).toString();
+	}
+
+	/**
+	 * Rounds a score times 10^8 to the nearest whole number, if it is simple to.
+	 *
+	 * @param score the score
+	 * @return the rounded score times 10^8, or -1 if it should be formatted
+	 *         instead because it is negative zero, negative, huge, infinite or
+	 *         not a number
+	 *
+	 * @see #scale(long)
+	 */
+	private static long scale(double score) {
+		long bits = Double.doubleToRawLongBits(score);
+		return bits >= 0 && score < LARGEST ? scale(bits) : -1;
+	}
+
+	/**
+	 * Rounds a positive double times 10^8 to the nearest whole number, half to
+	 * even. A double is a whole number times a power of two, so the product is
+	 * computed exactly in 128 bits and shifted back down, and the bits shifted
+	 * out decide the rounding.
+	 *
+	 * {@link DecimalFormat} rounds the shortest decimal digits that identify the
+	 * double instead of its exact value. Those digits are less than half a unit
+	 * in the last place of the double away from it, so both round the same way
+	 * unless the double is that close to halfway between two results, which is
+	 * left to the formatter. That includes every double whose units in the last
+	 * place are about as big as the last decimal place, like huge scores.
+	 *
+	 * @param bits the bits of the double, which is less than {@link #LARGEST}
+	 * @return the rounded double times 10^8, or -1 if it should be formatted
+	 */
+	private static long scale(long bits) {
+		int exponent = (int) (bits >>> 52) & 0x7ff;
+		long mantissa = bits & ((1L << 52) - 1);
+		if (exponent == 0) {
+			exponent = 1;
+		} else {
+			mantissa |= 1L << 52;
+		}
+
+		// the double is mantissa / 2^shift, and the product is less than 2^80
+		int shift = 1075 - exponent;
+		if (shift > 81) {
+			return 0;
+		}
+
+		long high = Math.multiplyHigh(mantissa, SCALE);
+		long low = mantissa * SCALE;
+
+		// the bits shifted out minus half of the shift, as long as that fits
+		long quotient;
+		long distance;
+		if (shift < 64) {
+			quotient = (high << (64 - shift)) | (low >>> shift);
+			distance = (low & ((1L << shift) - 1)) - (1L << (shift - 1));
+		} else if (shift == 64) {
+			quotient = high;
+			distance = low - (1L << 63);
+		} else {
+			quotient = high >>> (shift - 64);
+			long rest = high & ((1L << (shift - 64)) - 1);
+			long half = 1L << (shift - 65);
+			if (rest == half) {
+				distance = low < 0 ? Long.MAX_VALUE : low;
+			} else if (rest == half - 1) {
+				distance = low >= 0 ? Long.MIN_VALUE : low;
+			} else {
+				distance = rest > half ? Long.MAX_VALUE : Long.MIN_VALUE;
+			}
+		}
+
+		// one unit in the last place of the double is SCALE in these units
+		if (distance >= -SCALE && distance <= SCALE) {
+			return -1;
+		}
+		return distance > 0 ? quotient + 1 : quotient;
+	}
+}
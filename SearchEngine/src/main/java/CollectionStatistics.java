@@ -0,0 +1,84 @@
+/**
+ * The statistics of a frozen index that the ranking models need, computed once
+ * when the index is frozen or loaded instead of for every query: the number of
+ * locations, their average length, and the norm of every location for every
+ * ranking. The document frequency of a word is the length of its posting list,
+ * so it does not need to be stored.
+ *
+ * @author sarah
+ */
+public class CollectionStatistics {
+
+	/** The number of locations. */
+	private final int locations;
+
+	/** The average number of words in a location. */
+	private final double averageLength;
+
+	/** The norm of each location, indexed by ranking and then location id. */
+	private final double[][] norms;
+
+	/**
+	 * Computes the statistics of the locations of an index.
+	 *
+	 * @param dictionary the locations and their word counts
+	 */
+	public CollectionStatistics(LocationDictionary dictionary) {
+		this.locations = dictionary.size();
+
+		long total = 0;
+		for (int id = 0; id < locations; id++) {
+			total += dictionary.count(id);
+		}
+		this.averageLength = locations == 0 ? 0 : total / (double) locations;
+
+		Ranking[] rankings = Ranking.values();
+		this.norms = new double[rankings.length][];
+		for (Ranking ranking : rankings) {
+			double[] norm = new double[locations];
+			for (int id = 0; id < locations; id++) {
+				norm[id] = ranking.norm(dictionary.count(id), averageLength);
+			}
+			norms[ranking.ordinal()] = norm;
+		}
+	}
+
+	/**
+	 * Returns the number of locations.
+	 *
+	 * @return the number of locations
+	 */
+	public int locations() {
+		return locations;
+	}
+
+	/**
+	 * Returns the average number of words in a location.
+	 *
+	 * @return the average length
+	 */
+	public double averageLength() {
+		return averageLength;
+	}
+
+	/**
+	 * Returns the weight of a word.
+	 *
+	 * @param ranking   the ranking model
+	 * @param frequency the number of locations the word is found in
+	 * @return the weight of the word
+	 */
+	public double weight(Ranking ranking, int frequency) {
+		return ranking.weight(frequency, locations);
+	}
+
+	/**
+	 * Returns the norm of every location.
+	 *
+	 * @param ranking the ranking model
+	 * @return the norms, indexed by location id (do not modify)
+	 */
+	public double[] norms(Ranking ranking) {
+		return norms[ranking.ordinal()];
+	}
+}
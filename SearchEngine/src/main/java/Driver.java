@@ -36,9 +36,9 @@ public class Driver {
 		// store initial start time
 		Instant start = Instant.now();
 		ArgumentMap map = new ArgumentMap(args);
-		InvertedIndex index; // create index
-		QueryParserInterface queryParser;
-		ThreadSafeInvertedIndex threadSafe = null;
+		InvertedIndex index = null; // create index
+		QueryParserInterface queryParser = null;
+		ThreadSafeIndexInterface threadSafe = null;
 		WorkQueue workQueue = null;
 
 		int workerThreads = 5;
@@ -56,18 +56,28 @@ public class Driver {
 			// }
 
 			workQueue = new WorkQueue(workerThreads);
-			threadSafe = new ThreadSafeInvertedIndex();
-			index = threadSafe;
-			queryParser = new ThreadSafeQueryParser(threadSafe, workQueue);
+			if (map.hasFlag("-segments")) {
+				// build the index as small segments that are merged in the background
+				int flushSize = map.getInteger("-segments", SegmentedIndex.DEFAULT_FLUSH_SIZE);
+				threadSafe = new SegmentedIndex(flushSize, workQueue);
+			} else {
+				// pick how the index is locked, or use the original lock by default
+				LockStrategy strategy = LockStrategy.parse(map.getString("-lock"), LockStrategy.SIMPLE);
+				threadSafe = new ThreadSafeInvertedIndex(ThreadSafeInvertedIndex.DEFAULT_SHARDS, 0, strategy);
+			}
 
 		} else {
 			// no multithreading
 			index = new InvertedIndex(); // create index
-			queryParser = new QueryParser(index);
 		}
 		// log.debug("done with threads section");
 
-		if (map.hasFlag("-path")) {
+		// a saved index is loaded instead of building one
+		boolean load = map.hasFlag("-load");
+		// or a saved index is updated with only the files that changed
+		boolean incremental = map.hasFlag("-incremental") && map.hasFlag("-path");
+
+		if (map.hasFlag("-path") && !load && !incremental) {
 			log.debug("path flag found, beginning of path section");
 
 			Path path = map.getPath("-path");
@@ -90,7 +100,7 @@ public class Driver {
 		// log.debug("done with path section");
 
 		// if url flag, build index from seed url
-		if (map.hasFlag("-url")) {
+		if (map.hasFlag("-url") && !load && !incremental) {
 
 			// get number of URLs to crawl when building index
 			int total = 1;
@@ -114,6 +124,79 @@ public class Driver {
 			webCrawler.crawl(seed);
 		}
 
+		// the index is only read from here on, so compact it into its frozen form
+		FrozenIndex frozen;
+		if (incremental) {
+			Path path = map.getPath("-incremental", Path.of("index.bin"));
+			try {
+				frozen = IncrementalBuilder.update(map.getPath("-path"), path, workQueue);
+			} catch (IOException | NullPointerException e) {
+				System.out.println("unable to update index file " + path + " from path: " + map.getPath("-path"));
+				return;
+			}
+		} else if (load) {
+			Path path = map.getPath("-load", Path.of("index.bin"));
+			try {
+				// map the postings instead of reading them onto the heap if asked
+				frozen = map.hasFlag("-mmap") ? IndexFile.map(path) : IndexFile.load(path);
+			} catch (IOException e) {
+				System.out.println("unable to load index from file: " + path);
+				return;
+			}
+		} else if (threadSafe != null) {
+			// serve the snapshot the index publishes, which only freezes what changed
+			threadSafe.publish();
+			frozen = threadSafe.snapshot();
+		} else {
+			frozen = index.freeze();
+		}
+		// release the mutable index so it can be garbage collected
+		index = null;
+		threadSafe = null;
+
+		// save the index so later runs can load it instead of rebuilding
+		if (map.hasFlag("-save")) {
+			Path path = map.getPath("-save", Path.of("index.bin"));
+			try {
+				IndexFile.save(frozen, path);
+			} catch (IOException e) {
+				System.out.println("unable to save index to file: " + path);
+			}
+		}
+
+		// split the most expensive searches across a number of threads if asked to
+		if (map.hasFlag("-partitions")) {
+			int partitions = map.getInteger("-partitions", PartitionedSearch.DEFAULT_PARTITIONS);
+			frozen = frozen.partitioned(Math.max(1, partitions));
+		}
+
+		// only keep the best results of each query if asked to
+		QuerySettings settings = new QuerySettings().limit(map.getInteger("-limit", 0));
+		// rank the results by count (the default), tfidf or bm25
+		settings.ranking(Ranking.parse(map.getString("-rank"), Ranking.COUNT));
+		// also match misspelled words within 1 (the default) or 2 edits if asked to
+		if (map.hasFlag("-fuzzy")) {
+			settings.distance(Math.max(1, Math.min(map.getInteger("-fuzzy", 1), LevenshteinAutomaton.MAX_DISTANCE)));
+		}
+
+		// the query file and the server share the results of popular queries
+		ResultCache cache = new ResultCache(Math.max(0, map.getInteger("-cache", ResultCache.DEFAULT_CAPACITY)));
+		settings.cache(cache);
+
+		// spill sorted results to temporary files past a number of results if asked to
+		if (map.hasFlag("-stream")) {
+			settings.results(new ResultSpool(Math.max(1, map.getInteger("-stream", ResultSpool.DEFAULT_BUDGET))));
+		}
+
+		if (map.hasFlag("-batch") && settings.distance() == 0) {
+			// search every query line at once, sharing the postings of common words
+			queryParser = new BatchQueryParser(frozen, workQueue, settings);
+		} else if (workQueue != null) {
+			queryParser = new ThreadSafeQueryParser(frozen, workQueue, settings);
+		} else {
+			queryParser = new QueryParser(frozen, settings);
+		}
+
 		//launch a server (after build has occured)
 		if( map.hasFlag("-server")) {
 			int port = 8080;
@@ -123,9 +206,9 @@ public class Driver {
 			Server server = new Server(port); //setting up a socket connector
 			ServletHandler handler = new ServletHandler();
 			try {
-				handler.addServletWithMapping(new ServletHolder(new Servlet(threadSafe)), "/");
-				handler.addServletWithMapping(new ServletHolder(new LocationBrowserServlet(threadSafe)), "/locations");
-				handler.addServletWithMapping(new ServletHolder(new IndexBrowserServlet(threadSafe)), "/index");
+				handler.addServletWithMapping(new ServletHolder(new Servlet(frozen, cache)), "/");
+				handler.addServletWithMapping(new ServletHolder(new LocationBrowserServlet(frozen)), "/locations");
+				handler.addServletWithMapping(new ServletHolder(new IndexBrowserServlet(frozen)), "/index");
 			} catch (IOException e2) {
 				System.out.println("unable to create new servlet");
 			}
@@ -152,7 +235,7 @@ public class Driver {
 			Path path = map.getPath("-index", Path.of("index.json"));
 
 			try {
-				index.toJson(path);
+				frozen.toJson(path);
 			} catch (IOException e) {
 				System.out.println("unable to write inverted index to file: " + path.toString());
 			}
@@ -165,7 +248,7 @@ public class Driver {
 			// if path not provided, use default
 			Path path = map.getPath("-counts", Path.of("counts.json"));
 			try {
-				SimpleJsonWriter.asMap(index.returnCountMap(), path);
+				SimpleJsonWriter.asMap(frozen.returnCountMap(), path);
 			} catch (IOException e) {
 				System.out.println("unable to write counts to file: " + path.toString());
 			}
@@ -0,0 +1,157 @@
+import java.util.ConcurrentModificationException;
+
+/**
+ * A read/write lock that prefers writers. New readers wait while any writer is
+ * waiting for the lock, so a steady stream of readers (like servlet searches)
+ * cannot starve writers (like crawler merges). In exchange, a steady stream of
+ * writers can hold off readers.
+ *
+ * @see ReadWriteLock
+ *
+ * @author sarah
+ */
+public class FairReadWriteLock implements ReadWriteLockInterface {
+
+	/** The lock used for reading. */
+	private final SimpleLock readerLock;
+
+	/** The lock used for writing. */
+	private final SimpleLock writerLock;
+
+	/** The number of active readers. */
+	private int readers;
+
+	/** The number of active writers. */
+	private int writers;
+
+	/** The number of writers waiting for the lock. */
+	private int waitingWriters;
+
+	/** The thread holding the write lock, if any. */
+	private Thread writeLockHolder;
+
+	/** The lock object used for synchronized access of readers and writers. */
+	private final Object lock;
+
+	/**
+	 * Initializes a new writer-preferring read/write lock.
+	 */
+	public FairReadWriteLock() {
+		readerLock = new ReadLock();
+		writerLock = new WriteLock();
+
+		lock = new Object();
+
+		readers = 0;
+		writers = 0;
+		waitingWriters = 0;
+	}
+
+	@Override
+	public SimpleLock readLock() {
+		return readerLock;
+	}
+
+	@Override
+	public SimpleLock writeLock() {
+		return writerLock;
+	}
+
+	/**
+	 * Used to maintain simultaneous read operations.
+	 */
+	private class ReadLock implements SimpleLock {
+
+		/**
+		 * Waits until there are no active or waiting writers, then increases the
+		 * number of active readers.
+		 */
+		@Override
+		public void lock() {
+			synchronized (lock) {
+				while (writers > 0 || waitingWriters > 0) {
+					try {
+						lock.wait();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				readers++;
+			}
+		}
+
+		/**
+		 * Decreases the number of active readers and notifies any waiting threads if
+		 * this was the last reader.
+		 *
+		 * @throws IllegalStateException if no readers to unlock
+		 */
+		@Override
+		public void unlock() throws IllegalStateException {
+			synchronized (lock) {
+				if (readers == 0) {
+					throw new IllegalStateException();
+				}
+
+				readers--;
+				if (readers == 0) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Used to maintain exclusive write operations.
+	 */
+	private class WriteLock implements SimpleLock {
+
+		/**
+		 * Announces this writer, then waits until there are no active readers or
+		 * writers before taking the lock.
+		 */
+		@Override
+		public void lock() {
+			synchronized (lock) {
+				waitingWriters++;
+				try {
+					while (writers > 0 || readers > 0) {
+						try {
+							lock.wait();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				} finally {
+					waitingWriters--;
+				}
+				writers++;
+				writeLockHolder = Thread.currentThread();
+			}
+		}
+
+		/**
+		 * Decreases the number of active writers and notifies any waiting threads.
+		 *
+		 * @throws IllegalStateException           if no writers to unlock
+		 *
+		 * @throws ConcurrentModificationException if unlock is called by a thread that
+		 *                                         does not hold the write lock
+		 */
+		@Override
+		public void unlock() throws IllegalStateException, ConcurrentModificationException {
+			synchronized (lock) {
+				if (writers == 0) {
+					throw new IllegalStateException();
+				}
+				if (!ReadWriteLock.sameThread(writeLockHolder)) {
+					throw new ConcurrentModificationException();
+				}
+
+				writers--;
+				writeLockHolder = null;
+				lock.notifyAll();
+			}
+		}
+	}
+}
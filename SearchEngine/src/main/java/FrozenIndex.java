@@ -0,0 +1,1179 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable, read-optimized copy of an inverted index produced once the
+ * build is complete. The words are kept in a sorted array, indexed by a
+ * {@link TermTrie} so that every word starting with a prefix can be found
+ * without looking at any other word. The postings of every word are stored
+ * back to back in a {@link PostingStore}:
+ *
+ * <ul>
+ * <li>the postings of word {@code t} are {@code start(t)} to {@code end(t)}</li>
+ * <li>posting {@code p} has a location id, a frequency, and its encoded
+ * positions</li>
+ * </ul>
+ *
+ * A freshly frozen or loaded index keeps its postings in arrays on the heap,
+ * while a memory-mapped index decodes them straight from the mapped file (see
+ * {@link IndexFile#map(Path)}). Either way the words, term offsets, and
+ * locations stay on the heap.
+ *
+ * Location ids are renumbered in sorted location order while freezing, so the
+ * postings of every word are already in the order they are written to JSON.
+ * Nothing is modified after construction, so reads need no locking; the only
+ * exceptions are the score bounds and the grams of the words, which are each
+ * computed once under a lock the first time a search needs them (or, for the
+ * grams, carried forward from an earlier copy of the index). Each
+ * frozen index carries the generation it was published as, so that anything
+ * derived from it (like cached results) can tell when it is out of date.
+ *
+ * A partitioned view of the index (see {@link #partitioned(int)}) splits the
+ * searches that score every posting of many words across several threads (see
+ * {@link PartitionedSearch}), which lowers the latency of the most expensive
+ * queries without changing their results.
+ *
+ * @author sarah
+ */
+public class FrozenIndex implements InvertedIndexInterface {
+
+	/** The number of postings in each block with its own score bound. */
+	public static final int BLOCK_SIZE = 64;
+
+	/** The sorted words. */
+	private final String[] terms;
+
+	/** The term dictionary, which finds words and prefixes of words. */
+	private final TermTrie dictionary;
+
+	/** The first posting of each word, plus the total number of postings. */
+	private final int[] termOffsets;
+
+	/** The postings of every word. */
+	private final PostingStore postings;
+
+	/** The locations, with ids in sorted location order. */
+	private final LocationDictionary locations;
+
+	/** The generation number of this copy of the index. */
+	private final long generation;
+
+	/** The statistics the ranking models need. */
+	private final CollectionStatistics statistics;
+
+	/** The parts computed when first needed, shared with every view. */
+	private final Derived derived;
+
+	/** The number of partitions to split expensive searches into, or 1 for none. */
+	private final int partitions;
+
+	/**
+	 * Initializes an empty frozen index.
+	 */
+	public FrozenIndex() {
+		this(Collections.emptyMap(), new LocationDictionary(), 0);
+	}
+
+	/**
+	 * Compacts the words, postings, and locations of a mutable index as
+	 * generation 0.
+	 *
+	 * @param index     the sorted map of words to postings
+	 * @param locations the dictionary the postings use
+	 *
+	 * @see #FrozenIndex(Map, LocationDictionary, long)
+	 */
+	public FrozenIndex(Map<String, TermPostings> index, LocationDictionary locations) {
+		this(index, locations, 0);
+	}
+
+	/**
+	 * Compacts the words, postings, and locations of a mutable index.
+	 *
+	 * @param index      the sorted map of words to postings
+	 * @param locations  the dictionary the postings use
+	 * @param generation the generation number of this copy
+	 *
+	 * @see InvertedIndex#freeze()
+	 */
+	public FrozenIndex(Map<String, TermPostings> index, LocationDictionary locations, long generation) {
+		this.generation = generation;
+
+		// renumber the locations in sorted order
+		int[] sorted = locations.sortedIds();
+		int[] remap = new int[sorted.length];
+		this.locations = new LocationDictionary();
+		for (int i = 0; i < sorted.length; i++) {
+			remap[sorted[i]] = this.locations.add(locations.get(sorted[i]));
+			this.locations.updateCount(remap[sorted[i]], locations.count(sorted[i]));
+		}
+
+		int postingCount = 0;
+		long byteCount = 0;
+		for (TermPostings postings : index.values()) {
+			postingCount += postings.size();
+			for (int i = 0; i < postings.size(); i++) {
+				byteCount += postings.positions(i).encodedSize();
+			}
+		}
+
+		if (byteCount > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many positions to freeze on the heap: " + byteCount + " bytes");
+		}
+
+		this.terms = new String[index.size()];
+		this.termOffsets = new int[index.size() + 1];
+		int[] ids = new int[postingCount];
+		int[] frequencies = new int[postingCount];
+		int[] positionOffsets = new int[postingCount + 1];
+		byte[] positions = new byte[(int) byteCount];
+
+		int t = 0;
+		int p = 0;
+		int offset = 0;
+		for (Map.Entry<String, TermPostings> entry : index.entrySet()) {
+			TermPostings postings = entry.getValue();
+			terms[t] = entry.getKey();
+			termOffsets[t] = p;
+
+			// order the postings of this word by their new location ids
+			long[] order = new long[postings.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = ((long) remap[postings.id(i)] << 32) | i;
+			}
+			Arrays.sort(order);
+
+			for (long packed : order) {
+				PostingList list = postings.positions((int) packed);
+				ids[p] = (int) (packed >>> 32);
+				frequencies[p] = list.size();
+				positionOffsets[p] = offset;
+				list.copyTo(positions, offset);
+				offset += list.encodedSize();
+				p++;
+			}
+			t++;
+		}
+
+		termOffsets[t] = p;
+		positionOffsets[p] = offset;
+		this.dictionary = new TermTrie(terms);
+		this.postings = new HeapPostingStore(ids, frequencies, positionOffsets, positions);
+		this.statistics = new CollectionStatistics(this.locations);
+		this.derived = new Derived();
+		this.partitions = 1;
+	}
+
+	/**
+	 * Initializes a frozen index directly from its parts, such as when loading it
+	 * from a file. The arrays are used as is, not copied.
+	 *
+	 * @param terms       the sorted words
+	 * @param termOffsets the first posting of each word, plus the total
+	 * @param postings    the postings of every word
+	 * @param locations   the locations, with ids in sorted location order
+	 * @param generation  the generation number of this copy
+	 *
+	 * @see IndexFile#load(Path)
+	 */
+	FrozenIndex(String[] terms, int[] termOffsets, PostingStore postings, LocationDictionary locations,
+			long generation) {
+		this.terms = terms;
+		this.dictionary = new TermTrie(terms);
+		this.termOffsets = termOffsets;
+		this.postings = postings;
+		this.locations = locations;
+		this.generation = generation;
+		this.statistics = new CollectionStatistics(locations);
+		this.derived = new Derived();
+		this.partitions = 1;
+	}
+
+	/**
+	 * Initializes a view of another frozen index, sharing all of its parts, that
+	 * splits expensive searches into partitions.
+	 *
+	 * @param index      the index to view
+	 * @param partitions the number of partitions, or 1 for none
+	 *
+	 * @see #partitioned(int)
+	 */
+	private FrozenIndex(FrozenIndex index, int partitions) {
+		this.terms = index.terms;
+		this.dictionary = index.dictionary;
+		this.termOffsets = index.termOffsets;
+		this.postings = index.postings;
+		this.locations = index.locations;
+		this.generation = index.generation;
+		this.statistics = index.statistics;
+		this.derived = index.derived;
+		this.partitions = Math.max(1, partitions);
+	}
+
+	/**
+	 * Returns a view of this index that splits every search scoring enough
+	 * postings into ranges of locations searched in parallel (see
+	 * {@link PartitionedSearch}). The view shares everything with this index,
+	 * including its generation, and finds exactly the same results.
+	 *
+	 * @param partitions the number of partitions, or 1 to search in one thread
+	 * @return the partitioned view
+	 */
+	public FrozenIndex partitioned(int partitions) {
+		return new FrozenIndex(this, partitions);
+	}
+
+	/**
+	 * Returns the number of partitions expensive searches are split into.
+	 *
+	 * @return the number of partitions, or 1 for none
+	 */
+	public int partitions() {
+		return partitions;
+	}
+
+	/**
+	 * Returns the generation number of this copy of the index. Later snapshots of
+	 * the same index have larger generation numbers.
+	 *
+	 * @return the generation number
+	 */
+	@Override
+	public long generation() {
+		return generation;
+	}
+
+	/**
+	 * Returns the number of words.
+	 *
+	 * @return the number of words
+	 */
+	public int termCount() {
+		return terms.length;
+	}
+
+	/**
+	 * Returns the word at an index in sorted order.
+	 *
+	 * @param term the index of the word
+	 * @return the word
+	 */
+	public String term(int term) {
+		return terms[term];
+	}
+
+	/**
+	 * Finds the index of a word.
+	 *
+	 * @param word the word to find
+	 * @return the index of the word, or -1 if not found
+	 */
+	public int find(String word) {
+		return dictionary.find(word);
+	}
+
+	/**
+	 * Returns the number of nodes in the term dictionary, which is useful for
+	 * estimating memory use.
+	 *
+	 * @return the number of trie nodes
+	 */
+	public int dictionarySize() {
+		return dictionary.size();
+	}
+
+	/**
+	 * Returns the first posting of a word.
+	 *
+	 * @param term the index of the word
+	 * @return the index of its first posting
+	 */
+	public int start(int term) {
+		return termOffsets[term];
+	}
+
+	/**
+	 * Returns the posting after the last posting of a word.
+	 *
+	 * @param term the index of the word
+	 * @return the index after its last posting
+	 */
+	public int end(int term) {
+		return termOffsets[term + 1];
+	}
+
+	/**
+	 * Returns the location id of a posting.
+	 *
+	 * @param posting the index of the posting
+	 * @return the location id
+	 */
+	public int id(int posting) {
+		return postings.id(posting);
+	}
+
+	/**
+	 * Returns the number of positions in a posting.
+	 *
+	 * @param posting the index of the posting
+	 * @return the number of positions
+	 */
+	public int frequency(int posting) {
+		return postings.frequency(posting);
+	}
+
+	/**
+	 * Returns the statistics the ranking models need.
+	 *
+	 * @return the collection statistics
+	 */
+	public CollectionStatistics statistics() {
+		return statistics;
+	}
+
+	/**
+	 * Returns the weight of a word in a ranking model.
+	 *
+	 * @param term    the index of the word
+	 * @param ranking the ranking model
+	 * @return the weight of the word
+	 */
+	public double weight(int term, Ranking ranking) {
+		return statistics.weight(ranking, end(term) - start(term));
+	}
+
+	/**
+	 * Returns the most a word can add to the score of any location.
+	 *
+	 * @param term    the index of the word
+	 * @param ranking the ranking model
+	 * @return the highest score the word adds to a location
+	 */
+	public double scoreBound(int term, Ranking ranking) {
+		return weight(term, ranking) * scoreBounds(ranking).terms[term];
+	}
+
+	/**
+	 * Returns the most any posting in the same block as a posting adds to the
+	 * score of its location, before it is multiplied by the weight of its word.
+	 * Blocks are {@link #BLOCK_SIZE} postings long and may span more than one
+	 * word.
+	 *
+	 * @param posting the index of the posting
+	 * @param ranking the ranking model
+	 * @return the highest unweighted score a posting in its block adds
+	 */
+	public double blockBound(int posting, Ranking ranking) {
+		return scoreBounds(ranking).blocks[posting / BLOCK_SIZE];
+	}
+
+	/**
+	 * Returns the score bounds of a ranking, computing them the first time they
+	 * are needed so that loading an index does not have to read every posting.
+	 * They are only ever computed once, even if several searches need them at the
+	 * same time.
+	 *
+	 * @param ranking the ranking model
+	 * @return the score bounds
+	 */
+	private ScoreBounds scoreBounds(Ranking ranking) {
+		AtomicReferenceArray<ScoreBounds> all = derived.bounds;
+		ScoreBounds bounds = all.get(ranking.ordinal());
+		if (bounds == null) {
+			synchronized (all) {
+				bounds = all.get(ranking.ordinal());
+				if (bounds == null) {
+					bounds = new ScoreBounds(this, ranking);
+					all.set(ranking.ordinal(), bounds);
+				}
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Finds every word matching a wildcard pattern. The grams of the words are
+	 * indexed the first time this is called, so that freezing, loading or
+	 * publishing an index does not pay for wildcards it may never be asked about,
+	 * unless they were carried forward from an earlier copy (see
+	 * {@link #carryGrams(FrozenIndex)}). They are only ever indexed once, even if
+	 * several searches need them at the same time.
+	 *
+	 * @param pattern the pattern, where {@link TrigramIndex#WILDCARD} matches any
+	 *                number of characters
+	 * @return the indices of the matching words, in sorted order
+	 */
+	public int[] wildcard(String pattern) {
+		Grams grams = derived.grams;
+		if (grams == null) {
+			synchronized (derived) {
+				grams = derived.grams;
+				if (grams == null) {
+					grams = new Grams(new TrigramIndex(terms), null);
+					derived.grams = grams;
+				}
+			}
+		}
+
+		int[] found = grams.index.find(pattern);
+		if (grams.terms == null) {
+			return found;
+		}
+
+		int count = 0;
+		for (int id : found) {
+			if (grams.terms[id] >= 0) {
+				found[count++] = grams.terms[id];
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * Carries the grams of the words of an earlier copy of the index forward to
+	 * this one, if the earlier copy has them, so they are not indexed all over
+	 * again the first time a wildcard is searched for. The grams are shared with
+	 * the earlier copy, and only the words it does not have are added, the same
+	 * way a snapshot reuses the postings of the words that did not change. The
+	 * words of the earlier copy this one does not have keep their grams, but are
+	 * never found.
+	 *
+	 * @param earlier the earlier copy of the index
+	 */
+	void carryGrams(FrozenIndex earlier) {
+		Grams carried = earlier.derived.grams;
+		if (carried == null || derived.grams != null) {
+			return;
+		}
+
+		// merge the sorted words to find where each earlier word is now
+		TrigramIndex index = new TrigramIndex(carried.index);
+		int[] moved = new int[earlier.terms.length];
+		int[] order = new int[carried.index.size() + terms.length];
+		int e = 0;
+		for (int term = 0; term < terms.length; term++) {
+			while (e < earlier.terms.length && earlier.terms[e].compareTo(terms[term]) < 0) {
+				moved[e++] = -1;
+			}
+
+			if (e < earlier.terms.length && earlier.terms[e].equals(terms[term])) {
+				moved[e++] = term;
+			} else {
+				order[index.add(terms[term])] = term;
+			}
+		}
+		while (e < earlier.terms.length) {
+			moved[e++] = -1;
+		}
+
+		int gone = 0;
+		for (int id = 0; id < carried.index.size(); id++) {
+			int term = carried.terms == null ? id : carried.terms[id];
+			order[id] = term < 0 ? -1 : moved[term];
+			gone += order[id] < 0 ? 1 : 0;
+		}
+
+		// indexing the grams again is better than keeping mostly words that are gone
+		if (gone > terms.length) {
+			return;
+		}
+
+		synchronized (derived) {
+			if (derived.grams == null) {
+				derived.grams = new Grams(index, Arrays.copyOf(order, index.size()));
+			}
+		}
+	}
+
+	/**
+	 * The grams of the words of an index, and which word each id of the grams
+	 * stands for. Carried forward grams keep the ids their words were given when
+	 * first added, which are not the indices of the words in a later copy.
+	 */
+	private static class Grams {
+
+		/** The grams of the words. */
+		private final TrigramIndex index;
+
+		/**
+		 * The index of the word each id stands for, or -1 if the word is gone, or
+		 * null if every id is the index of its word.
+		 */
+		private final int[] terms;
+
+		/**
+		 * Initializes the grams.
+		 *
+		 * @param index the grams of the words
+		 * @param terms the index of the word each id stands for, or null if every
+		 *              id is the index of its word
+		 */
+		public Grams(TrigramIndex index, int[] terms) {
+			this.index = index;
+			this.terms = terms;
+		}
+	}
+
+	/**
+	 * The parts of an index that are computed the first time they are needed,
+	 * which every view of the index shares so they are only computed once.
+	 */
+	private static class Derived {
+
+		/** The score bounds of each ranking, or null until computed. */
+		private final AtomicReferenceArray<ScoreBounds> bounds;
+
+		/** The grams of the words, or null until indexed. */
+		private volatile Grams grams;
+
+		/**
+		 * Initializes the parts as not computed yet.
+		 */
+		public Derived() {
+			this.bounds = new AtomicReferenceArray<>(Ranking.values().length);
+			this.grams = null;
+		}
+	}
+
+	/**
+	 * The highest unweighted score each word and each block of postings adds to a
+	 * location in a ranking model.
+	 */
+	private static class ScoreBounds {
+
+		/** The bound of each word. */
+		private final double[] terms;
+
+		/** The bound of each block of postings. */
+		private final double[] blocks;
+
+		/**
+		 * Computes the bounds of an index.
+		 *
+		 * @param index   the index
+		 * @param ranking the ranking model
+		 */
+		public ScoreBounds(FrozenIndex index, Ranking ranking) {
+			this.terms = new double[index.terms.length];
+			this.blocks = new double[index.termOffsets[terms.length] / BLOCK_SIZE + 1];
+			double[] norms = index.statistics.norms(ranking);
+
+			for (int term = 0; term < terms.length; term++) {
+				for (int posting = index.start(term); posting < index.end(term); posting++) {
+					double score = ranking.score(1, index.frequency(posting), norms[index.id(posting)]);
+					terms[term] = Math.max(terms[term], score);
+					blocks[posting / BLOCK_SIZE] = Math.max(blocks[posting / BLOCK_SIZE], score);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns an iterator that decodes the positions of a posting.
+	 *
+	 * @param posting the index of the posting
+	 * @return the positions in increasing order
+	 */
+	public PrimitiveIterator.OfInt positions(int posting) {
+		return postings.positions(posting);
+	}
+
+	/**
+	 * Returns the first posting of every word, plus the total number of postings.
+	 *
+	 * @return the term offsets (do not modify)
+	 */
+	int[] termOffsets() {
+		return termOffsets;
+	}
+
+	/**
+	 * Returns where the postings are stored.
+	 *
+	 * @return the posting store
+	 */
+	PostingStore postings() {
+		return postings;
+	}
+
+	/**
+	 * Returns the dictionary of locations used by the postings.
+	 *
+	 * @return the location dictionary (do not modify)
+	 */
+	public LocationDictionary locations() {
+		return locations;
+	}
+
+	/**
+	 * Finds the posting of a word for a location.
+	 *
+	 * @param word     the word
+	 * @param location the location
+	 * @return the index of the posting, or -1 if not found
+	 */
+	private int findPosting(String word, String location) {
+		int term = find(word);
+		int id = locations.lookup(location);
+		if (term < 0 || id < 0) {
+			return -1;
+		}
+
+		int posting = postings.find(start(term), end(term), id);
+		return posting < 0 ? -1 : posting;
+	}
+
+	@Override
+	public int size() {
+		return terms.length;
+	}
+
+	@Override
+	public int size(String word) {
+		int term = find(word);
+		return term < 0 ? 0 : end(term) - start(term);
+	}
+
+	@Override
+	public int size(String word, String location) {
+		int posting = findPosting(word, location);
+		return posting < 0 ? 0 : frequency(posting);
+	}
+
+	@Override
+	public boolean contains(String stem) {
+		return find(stem) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return findPosting(word, location) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		int posting = findPosting(word, location);
+		return posting >= 0 && postings.contains(posting, position);
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException {
+		SimpleJsonWriter.asFrozenIndex(this, path);
+	}
+
+	@Override
+	public Set<String> getWords() {
+		return new AbstractSet<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return Collections.unmodifiableList(Arrays.asList(terms)).iterator();
+			}
+
+			@Override
+			public int size() {
+				return terms.length;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof String && find((String) o) >= 0;
+			}
+		};
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		int term = find(word);
+		if (term < 0) {
+			return Collections.emptySet();
+		}
+
+		int start = start(term);
+		int end = end(term);
+		return new AbstractSet<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					private int posting = start;
+
+					@Override
+					public boolean hasNext() {
+						return posting < end;
+					}
+
+					@Override
+					public String next() {
+						if (posting >= end) {
+							throw new NoSuchElementException();
+						}
+						return locations.get(id(posting++));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return end - start;
+			}
+		};
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		int posting = findPosting(word, location);
+		if (posting < 0) {
+			return Collections.emptySet();
+		}
+
+		return new AbstractSet<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return positions(posting);
+			}
+
+			@Override
+			public int size() {
+				return frequency(posting);
+			}
+		};
+	}
+
+	@Override
+	public int wordGetter(String word, String file) {
+		return size(word, file);
+	}
+
+	@Override
+	public int wordCountGetter(String filename) {
+		int id = locations.lookup(filename);
+		return id < 0 ? 0 : locations.count(id);
+	}
+
+	@Override
+	public Map<String, Integer> returnCountMap() {
+		return locations.asCountMap();
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> exactSearch(Set<String> words) {
+		return exactSearch(words, null);
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> partialSearch(Set<String> words) {
+		return partialSearch(words, null);
+	}
+
+	/**
+	 * performs an exact search, skipping any deleted locations
+	 *
+	 * @param words   the already parsed words from a single line of the query file
+	 * @param deleted the ids of deleted locations, or null if none
+	 * @return a sorted list of EXACT search results
+	 */
+	List<InvertedIndex.SearchResult> exactSearch(Set<String> words, BitSet deleted) {
+		if (partitions > 1) {
+			return countingSearch(matches(words, true), 0, Ranking.COUNT, deleted);
+		}
+
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
+
+		for (String query : words) {
+			int term = find(query);
+			if (term >= 0) {
+				commonSearch(term, start(term), end(term), accumulator, deleted);
+			}
+		}
+		return accumulator.results(locations);
+	}
+
+	/**
+	 * performs a partial search, skipping any deleted locations
+	 *
+	 * @param words   the already parsed words from a single line of the query file
+	 * @param deleted the ids of deleted locations, or null if none
+	 * @return a sorted list of PARTIAL search results
+	 */
+	List<InvertedIndex.SearchResult> partialSearch(Set<String> words, BitSet deleted) {
+		if (partitions > 1) {
+			return countingSearch(matches(words, false), 0, Ranking.COUNT, deleted);
+		}
+
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
+
+		for (String query : words) {
+			// the words starting with the query are one contiguous range
+			int node = dictionary.prefix(query);
+			if (node >= 0) {
+				for (int term = dictionary.start(node); term < dictionary.end(node); term++) {
+					commonSearch(term, start(term), end(term), accumulator, deleted);
+				}
+			}
+		}
+		return accumulator.results(locations);
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit) {
+		return search(words, exact, limit, Ranking.COUNT, null);
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit, Ranking ranking) {
+		return search(words, exact, limit, ranking, null);
+	}
+
+	/**
+	 * performs a ranked search that only returns the best results, skipping any
+	 * deleted locations. instead of scoring every location of every word, this
+	 * skips the locations that cannot make it into the results (see
+	 * {@link MaxScoreSearch}), unless the words are such that scoring every
+	 * posting is faster
+	 *
+	 * @param words   the already parsed words from a single line of the query file
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @param deleted the ids of deleted locations, or null if none
+	 * @return a sorted list of at most limit search results
+	 */
+	List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit, Ranking ranking,
+			BitSet deleted) {
+		if (limit <= 0 && ranking == Ranking.COUNT) {
+			return exact ? exactSearch(words, deleted) : partialSearch(words, deleted);
+		}
+		return search(matches(words, exact), limit, ranking, deleted);
+	}
+
+	/**
+	 * performs a ranked search for the matching words, skipping any deleted
+	 * locations, and pruning the locations that cannot make it into the results
+	 * if that is worthwhile
+	 *
+	 * @param matches the indices of the words to search for, in query order
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @param deleted the ids of deleted locations, or null if none
+	 * @return a sorted list of at most limit search results
+	 */
+	private List<InvertedIndex.SearchResult> search(int[] matches, int limit, Ranking ranking, BitSet deleted) {
+		if (limit > 0 && MaxScoreSearch.isWorthwhile(this, matches, ranking)) {
+			return MaxScoreSearch.search(this, matches, limit, ranking, deleted);
+		}
+		return countingSearch(matches, limit, ranking, deleted);
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> search(SearchQuery query, boolean exact, int limit, Ranking ranking) {
+		return search(query, exact, limit, ranking, null);
+	}
+
+	/**
+	 * performs a ranked search for the words, wildcards and phrases of a query
+	 * line, skipping any deleted locations. each wildcard matches every word that
+	 * fits it, like a partial search matches every word a prefix starts. each
+	 * phrase adds its occurrences to the matches of every location it is found
+	 * in, like a word does. a query with
+	 * operators only matches the locations that satisfy it (see
+	 * {@link BooleanSearch})
+	 *
+	 * @param query   the parsed query line
+	 * @param exact   whether its exact or partial search (for the words outside
+	 *                of phrases)
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @param deleted the ids of deleted locations, or null if none
+	 * @return a sorted list of at most limit search results
+	 */
+	List<InvertedIndex.SearchResult> search(SearchQuery query, boolean exact, int limit, Ranking ranking,
+			BitSet deleted) {
+		if (query.hasOperators()) {
+			return BooleanSearch.search(this, query, exact, limit, ranking, deleted);
+		} else if (query.isSimple()) {
+			return search(query.words(), exact, limit, ranking, deleted);
+		} else if (!query.hasPhrases()) {
+			return search(matches(query, exact), limit, ranking, deleted);
+		}
+
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
+		addMatches(matches(query, exact), ranking, accumulator, deleted);
+		for (SearchQuery.Phrase phrase : query.phrases()) {
+			phraseSearch(PhraseSearch.search(this, phrase, deleted), ranking, accumulator);
+		}
+		return limit > 0 ? accumulator.results(locations, limit) : accumulator.results(locations);
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> fuzzySearch(Set<String> words, int distance, int limit,
+			Ranking ranking) {
+		return fuzzySearch(words, distance, limit, ranking, null);
+	}
+
+	/**
+	 * performs a typo-tolerant search, skipping any deleted locations. every word
+	 * within the distance of a query word is found by walking a
+	 * {@link LevenshteinAutomaton} along the term dictionary, and is scored like
+	 * a partial search match, times 1 / (1 + edits) so closer words rank higher
+	 *
+	 * @param words    the already parsed words from a single line of the query file
+	 * @param distance the most edits a match may be away from a query word
+	 * @param limit    the most results to return, or 0 (or less) for all of them
+	 * @param ranking  how to score the results
+	 * @param deleted  the ids of deleted locations, or null if none
+	 * @return a sorted list of at most limit search results
+	 */
+	List<InvertedIndex.SearchResult> fuzzySearch(Set<String> words, int distance, int limit, Ranking ranking,
+			BitSet deleted) {
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
+		double[] norms = statistics.norms(ranking);
+
+		for (String query : words) {
+			dictionary.fuzzy(new LevenshteinAutomaton(query, distance), (term, edits) -> {
+				double weight = weight(term, ranking) / (1 + edits);
+				for (int posting = start(term); posting < end(term); posting++) {
+					int id = id(posting);
+					if (deleted == null || !deleted.get(id)) {
+						int frequency = frequency(posting);
+						accumulator.add(id, frequency, ranking.score(weight, frequency, norms[id]));
+					}
+				}
+			});
+		}
+		return limit > 0 ? accumulator.results(locations, limit) : accumulator.results(locations);
+	}
+
+	/**
+	 * finds every word matching a query line in query order, listing a word again
+	 * for each query it matches, like the full search counts it
+	 *
+	 * @param words the already parsed words from a single line of the query file
+	 * @param exact whether its exact or partial search
+	 * @return the indices of the matching words
+	 */
+	int[] matches(Set<String> words, boolean exact) {
+		int[] matches = new int[words.size()];
+		int size = 0;
+		for (String query : words) {
+			int first = -1;
+			int last = -1;
+			if (exact) {
+				first = find(query);
+				last = first + 1;
+			} else {
+				int node = dictionary.prefix(query);
+				if (node >= 0) {
+					first = dictionary.start(node);
+					last = dictionary.end(node);
+				}
+			}
+
+			for (int term = first; first >= 0 && term < last; term++) {
+				if (size == matches.length) {
+					matches = Arrays.copyOf(matches, size * 2);
+				}
+				matches[size++] = term;
+			}
+		}
+		return Arrays.copyOf(matches, size);
+	}
+
+	/**
+	 * finds every word matching the words and wildcards of a query line, listing
+	 * a word again for each word or wildcard it matches
+	 *
+	 * @param query the parsed query line
+	 * @param exact whether its exact or partial search (for the words)
+	 * @return the indices of the matching words
+	 */
+	int[] matches(SearchQuery query, boolean exact) {
+		int[] matches = matches(query.words(), exact);
+		for (String pattern : query.wildcards()) {
+			int[] found = wildcard(pattern);
+			int size = matches.length;
+			matches = Arrays.copyOf(matches, size + found.length);
+			System.arraycopy(found, 0, matches, size, found.length);
+		}
+		return matches;
+	}
+
+	/**
+	 * finds the best results by scoring every posting, which is faster than
+	 * pruning when nearly every posting would be scored anyway. in a partitioned
+	 * view, enough postings are scored by several threads at once
+	 *
+	 * @param matches the indices of the words to search for, in query order
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @param deleted the ids of deleted locations, or null if none
+	 * @return a sorted list of at most limit search results
+	 */
+	List<InvertedIndex.SearchResult> countingSearch(int[] matches, int limit, Ranking ranking, BitSet deleted) {
+		if (partitions > 1 && PartitionedSearch.isWorthwhile(this, matches)) {
+			return PartitionedSearch.search(this, matches, limit, ranking, deleted, partitions);
+		}
+
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
+		addMatches(matches, ranking, accumulator, deleted);
+		return limit > 0 ? accumulator.results(locations, limit) : accumulator.results(locations);
+	}
+
+	/**
+	 * adds the matches of every location of every word to the accumulator
+	 *
+	 * @param matches     the indices of the words to add matches for, in query
+	 *                    order
+	 * @param ranking     how to score the matches
+	 * @param accumulator the accumulator to add matches to
+	 * @param deleted     the ids of deleted locations to skip, or null if none
+	 */
+	void addMatches(int[] matches, Ranking ranking, ScoreAccumulator accumulator, BitSet deleted) {
+		for (int term : matches) {
+			if (ranking == Ranking.COUNT) {
+				commonSearch(term, start(term), end(term), accumulator, deleted);
+			} else {
+				rankedSearch(term, start(term), end(term), ranking, accumulator, deleted);
+			}
+		}
+	}
+
+	/**
+	 * adds the matches of the locations in a range of ids of every word to the
+	 * accumulator, finding where the range starts and ends in each word by
+	 * binary search
+	 *
+	 * @param matches     the indices of the words to add matches for, in query
+	 *                    order
+	 * @param ranking     how to score the matches
+	 * @param accumulator the accumulator to add matches to
+	 * @param deleted     the ids of deleted locations to skip, or null if none
+	 * @param first       the first location id of the range
+	 * @param last        the location id after the last one of the range
+	 */
+	void addMatches(int[] matches, Ranking ranking, ScoreAccumulator accumulator, BitSet deleted, int first,
+			int last) {
+		for (int term : matches) {
+			int start = seek(term, start(term), first);
+			int end = seek(term, start, last);
+			if (ranking == Ranking.COUNT) {
+				commonSearch(term, start, end, accumulator, deleted);
+			} else {
+				rankedSearch(term, start, end, ranking, accumulator, deleted);
+			}
+		}
+	}
+
+	/**
+	 * finds the first posting of a word with at least a location id, since the
+	 * postings of every word are sorted by location id
+	 *
+	 * @param term the index of the word
+	 * @param from the posting to start looking from
+	 * @param id   the location id to look for
+	 * @return the index of the posting, or end(term) if there is none
+	 */
+	private int seek(int term, int from, int id) {
+		int low = from;
+		int high = end(term);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (id(middle) < id) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * adds the occurrences of a phrase to the accumulator. in the ranking models,
+	 * a phrase is weighted by the number of locations it is found in, like a word
+	 *
+	 * @param phrase      the locations of the phrase
+	 * @param ranking     how to score the matches
+	 * @param accumulator the accumulator to add matches to
+	 */
+	private void phraseSearch(PhraseSearch phrase, Ranking ranking, ScoreAccumulator accumulator) {
+		double weight = statistics.weight(ranking, phrase.size());
+		double[] norms = statistics.norms(ranking);
+		for (int i = 0; i < phrase.size(); i++) {
+			int id = phrase.id(i);
+			int frequency = phrase.frequency(i);
+			if (ranking == Ranking.COUNT) {
+				accumulator.add(id, frequency);
+			} else {
+				accumulator.add(id, frequency, ranking.score(weight, frequency, norms[id]));
+			}
+		}
+	}
+
+	/**
+	 * adds the matches and scores of a range of postings of a word to the
+	 * accumulator
+	 *
+	 * @param term        the index of the word to add matches for
+	 * @param start       the first posting to add
+	 * @param end         the posting after the last one to add
+	 * @param ranking     how to score the matches
+	 * @param accumulator the accumulator to add matches to
+	 * @param deleted     the ids of deleted locations to skip, or null if none
+	 */
+	private void rankedSearch(int term, int start, int end, Ranking ranking, ScoreAccumulator accumulator,
+			BitSet deleted) {
+		double weight = weight(term, ranking);
+		double[] norms = statistics.norms(ranking);
+		for (int posting = start; posting < end; posting++) {
+			int id = id(posting);
+			if (deleted == null || !deleted.get(id)) {
+				int frequency = frequency(posting);
+				accumulator.add(id, frequency, ranking.score(weight, frequency, norms[id]));
+			}
+		}
+	}
+
+	/**
+	 * the common functionality present in both exact and partial search, adds
+	 * the matches of a range of postings of a word to the accumulator
+	 *
+	 * @param term        the index of the word to add matches for
+	 * @param start       the first posting to add
+	 * @param end         the posting after the last one to add
+	 * @param accumulator the accumulator to add matches to
+	 * @param deleted     the ids of deleted locations to skip, or null if none
+	 */
+	private void commonSearch(int term, int start, int end, ScoreAccumulator accumulator, BitSet deleted) {
+		for (int posting = start; posting < end; posting++) {
+			int id = id(posting);
+			if (deleted == null || !deleted.get(id)) {
+				accumulator.add(id, frequency(posting));
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		for (int term = 0; term < terms.length; term++) {
+			builder.append(term > 0 ? ", " : "").append(terms[term]).append("={");
+			for (int posting = start(term); posting < end(term); posting++) {
+				builder.append(posting > start(term) ? ", " : "").append(locations.get(id(posting))).append('=')
+						.append(getPositions(terms[term], locations.get(id(posting))));
+			}
+			builder.append('}');
+		}
+		return builder.append('}').toString();
+	}
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/**
+ * Keeps postings on the heap in flat primitive arrays.
+ *
+ * @author sarah
+ */
+public class HeapPostingStore implements PostingStore {
+
+	/** The location id of each posting. */
+	private final int[] ids;
+
+	/** The number of positions in each posting. */
+	private final int[] frequencies;
+
+	/** The first encoded byte of each posting, plus the total number of bytes. */
+	private final int[] positionOffsets;
+
+	/** The variable-byte encoded positions of every posting. */
+	private final byte[] positions;
+
+	/** The first skip entry of each posting, plus the total number of entries. */
+	private final int[] skipStarts;
+
+	/** The position of each skip entry. */
+	private final int[] skipPositions;
+
+	/** The byte offset just after the encoded position of each skip entry. */
+	private final int[] skipOffsets;
+
+	/**
+	 * Initializes the store with its arrays, which are used as is, not copied.
+	 * The skip table is built by decoding the positions of every posting that
+	 * has at least {@value #SKIP_INTERVAL} of them.
+	 *
+	 * @param ids             the location id of each posting
+	 * @param frequencies     the number of positions in each posting
+	 * @param positionOffsets the first encoded byte of each posting, plus the total
+	 * @param positions       the encoded positions of every posting
+	 */
+	public HeapPostingStore(int[] ids, int[] frequencies, int[] positionOffsets, byte[] positions) {
+		this.ids = ids;
+		this.frequencies = frequencies;
+		this.positionOffsets = positionOffsets;
+		this.positions = positions;
+
+		this.skipStarts = new int[ids.length + 1];
+		for (int posting = 0; posting < ids.length; posting++) {
+			skipStarts[posting + 1] = skipStarts[posting] + frequencies[posting] / SKIP_INTERVAL;
+		}
+		this.skipPositions = new int[skipStarts[ids.length]];
+		this.skipOffsets = new int[skipPositions.length];
+
+		for (int posting = 0; posting < ids.length; posting++) {
+			int offset = positionOffsets[posting];
+			int current = 0;
+			for (int skip = skipStarts[posting], i = 1; skip < skipStarts[posting + 1]; i++) {
+				int shift = 0;
+				byte b;
+				do {
+					b = positions[offset++];
+					current += (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				if (i % SKIP_INTERVAL == 0) {
+					skipPositions[skip] = current;
+					skipOffsets[skip] = offset;
+					skip++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Initializes the store with its arrays and an already built skip table, such
+	 * as when loading it from a file. The arrays are used as is, not copied.
+	 *
+	 * @param ids             the location id of each posting
+	 * @param frequencies     the number of positions in each posting
+	 * @param positionOffsets the first encoded byte of each posting, plus the total
+	 * @param positions       the encoded positions of every posting
+	 * @param skipStarts      the first skip entry of each posting, plus the total
+	 * @param skipPositions   the position of each skip entry
+	 * @param skipOffsets     the byte offset after the position of each skip entry
+	 */
+	public HeapPostingStore(int[] ids, int[] frequencies, int[] positionOffsets, byte[] positions, int[] skipStarts,
+			int[] skipPositions, int[] skipOffsets) {
+		this.ids = ids;
+		this.frequencies = frequencies;
+		this.positionOffsets = positionOffsets;
+		this.positions = positions;
+		this.skipStarts = skipStarts;
+		this.skipPositions = skipPositions;
+		this.skipOffsets = skipOffsets;
+	}
+
+	@Override
+	public int size() {
+		return ids.length;
+	}
+
+	@Override
+	public int id(int posting) {
+		return ids[posting];
+	}
+
+	@Override
+	public int frequency(int posting) {
+		return frequencies[posting];
+	}
+
+	@Override
+	public long positionOffset(int posting) {
+		return positionOffsets[posting];
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt positions(int posting) {
+		return PostingList.iterator(positions, positionOffsets[posting], positionOffsets[posting + 1]);
+	}
+
+	@Override
+	public int skipStart(int posting) {
+		return skipStarts[posting];
+	}
+
+	@Override
+	public int skipPosition(int skip) {
+		return skipPositions[skip];
+	}
+
+	@Override
+	public long skipOffset(int skip) {
+		return skipOffsets[skip];
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt positions(int posting, int skip) {
+		return PostingList.iterator(positions, skipOffsets[skip], positionOffsets[posting + 1], skipPositions[skip]);
+	}
+
+	@Override
+	public void copyPositions(long offset, byte[] destination, int start, int length) {
+		System.arraycopy(positions, (int) offset, destination, start, length);
+	}
+
+	@Override
+	public int find(int start, int end, int id) {
+		return Arrays.binarySearch(ids, start, end, id);
+	}
+}
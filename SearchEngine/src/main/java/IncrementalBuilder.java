@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Rebuilds a saved index from a directory, only re-indexing the files that
+ * changed since it was saved. The index file is stored along with a manifest
+ * (see {@link IndexManifest}) of every file it contains. A file whose size and
+ * last modified time still match the manifest is skipped without reading it.
+ * Otherwise its contents are hashed, and it is only re-indexed if the hash
+ * changed. Files that no longer exist are removed from the index.
+ *
+ * If nothing was added, changed, or removed, the saved index is returned as it
+ * is without saving it again. Otherwise the segments are merged straight from
+ * their frozen postings, and the index and manifest are saved so that a crash
+ * never leaves a manifest next to an index it does not describe: the old
+ * manifest is removed first, then each file is written to a temporary file and
+ * renamed into place. An index without a manifest is simply rebuilt.
+ *
+ * @author sarah
+ */
+public class IncrementalBuilder {
+
+	/** Logger to use for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Updates the index saved in a file to match a directory (or single file), then
+	 * saves the index and its manifest back to the file. If there is no saved
+	 * index or manifest yet, every file is indexed.
+	 *
+	 * @param path      the directory or file to index
+	 * @param indexFile the saved index file to update
+	 * @param workQueue the work queue to re-index files with, or null to re-index
+	 *                  them in this thread
+	 * @return the updated index
+	 * @throws IOException if unable to read a file or the saved index, or unable to
+	 *                     save the updated index
+	 */
+	public static FrozenIndex update(Path path, Path indexFile, WorkQueue workQueue) throws IOException {
+		Path manifestFile = IndexManifest.of(indexFile);
+		SegmentedIndex index = new SegmentedIndex(SegmentedIndex.DEFAULT_FLUSH_SIZE, workQueue);
+		IndexManifest manifest = new IndexManifest();
+		FrozenIndex saved = null;
+
+		// the old index is only usable with the manifest that describes it
+		if (Files.isRegularFile(indexFile) && Files.isRegularFile(manifestFile)) {
+			manifest = IndexManifest.read(manifestFile);
+			saved = IndexFile.load(indexFile);
+			index.addSegment(saved);
+		}
+
+		List<Path> files = Files.isDirectory(path) ? TextFileFinder.list(path) : List.of(path);
+		IndexManifest updated = new IndexManifest();
+		List<Path> changed = new ArrayList<>();
+		Set<String> seen = new HashSet<>();
+		boolean touched = false;
+
+		for (Path file : files) {
+			String location = file.toString();
+			seen.add(location);
+
+			IndexManifest.Entry old = manifest.get(location);
+			long size = Files.size(file);
+			long modified = Files.getLastModifiedTime(file).toMillis();
+
+			if (old != null && old.matches(size, modified)) {
+				updated.put(location, old);
+				continue;
+			}
+
+			// touched files whose contents did not change keep their postings
+			touched = true;
+			String hash = IndexManifest.hash(file);
+			updated.put(location, new IndexManifest.Entry(size, modified, hash));
+			if (old == null || !old.getHash().equals(hash)) {
+				changed.add(file);
+			}
+		}
+
+		int removed = 0;
+		for (String location : manifest.entries().keySet()) {
+			if (!seen.contains(location) && index.delete(location)) {
+				removed++;
+			}
+		}
+
+		Set<String> failed = Collections.synchronizedSet(new HashSet<>());
+		for (Path file : changed) {
+			// a file that no longer has any words would otherwise keep its old postings
+			index.delete(file.toString());
+			if (workQueue != null) {
+				workQueue.execute(new Task(file, index, failed));
+			} else {
+				new Task(file, index, failed).run();
+			}
+		}
+
+		if (workQueue != null) {
+			workQueue.finish();
+		}
+
+		// leave files that could not be read out of the manifest, so they are retried
+		for (String location : failed) {
+			updated.remove(location);
+		}
+
+		log.debug("re-indexed {} of {} files and removed {}", changed.size(), files.size(), removed);
+
+		if (saved != null && changed.isEmpty() && removed == 0) {
+			// the index is the same, so at most the manifest needs to be updated
+			if (touched || updated.size() != manifest.size()) {
+				write(updated, manifestFile);
+			}
+			return saved;
+		}
+
+		FrozenIndex frozen = index.freeze();
+		Files.deleteIfExists(manifestFile);
+		IndexFile.save(frozen, indexFile);
+		write(updated, manifestFile);
+		return frozen;
+	}
+
+	/**
+	 * Writes a manifest to a temporary file and renames it into place.
+	 *
+	 * @param manifest the manifest to write
+	 * @param path     the manifest file
+	 * @throws IOException if unable to write the file
+	 */
+	private static void write(IndexManifest manifest, Path path) throws IOException {
+		Path temporary = IndexFile.temporary(path);
+		try {
+			manifest.write(temporary);
+			IndexFile.replace(temporary, path);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Re-indexes a single file.
+	 */
+	private static class Task implements Runnable {
+
+		/** The file to index. */
+		private final Path file;
+
+		/** The index to add the file to. */
+		private final SegmentedIndex index;
+
+		/** The locations of the files that could not be read. */
+		private final Set<String> failed;
+
+		/**
+		 * Initializes this task.
+		 *
+		 * @param file   the file to index
+		 * @param index  the index to add the file to
+		 * @param failed the thread-safe set to add the location to if the file
+		 *               cannot be read
+		 */
+		public Task(Path file, SegmentedIndex index, Set<String> failed) {
+			this.file = file;
+			this.index = index;
+			this.failed = failed;
+		}
+
+		@Override
+		public void run() {
+			InvertedIndex local = new InvertedIndex();
+			try {
+				InvertedIndexBuilder.addFile(file, local);
+			} catch (IOException e) {
+				System.out.println("unable to re-index file: " + file);
+				failed.add(file.toString());
+				return;
+			}
+			index.addAll(local);
+		}
+	}
+}
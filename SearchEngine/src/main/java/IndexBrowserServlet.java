@@ -37,7 +37,7 @@ public class IndexBrowserServlet extends HttpServlet {
 	private final String htmlTemplate;
 
 	/** index to use **/
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndexInterface index;
 
 	/** The thread-safe data structure to use for storing messages. */
 	private final List<String> indexForHTML;
@@ -46,10 +46,10 @@ public class IndexBrowserServlet extends HttpServlet {
 	 * Initializes this servlet to be a web page displaying the locations of the
 	 * index
 	 * 
-	 * @param index the index to use/search
+	 * @param index the thread-safe index to use/search
 	 * @throws IOException if unable to read template
 	 */
-	public IndexBrowserServlet(ThreadSafeInvertedIndex index) throws IOException {
+	public IndexBrowserServlet(InvertedIndexInterface index) throws IOException {
 		super();
 		indexForHTML = new ArrayList<>();
 		htmlTemplate = Files.readString(Path.of("html", "entireIndex.html"), StandardCharsets.UTF_8);
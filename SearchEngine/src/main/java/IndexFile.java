@@ -0,0 +1,734 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a frozen index to a versioned binary file and loads it back again, so
+ * an index only needs to be built once. The file is written and read
+ * sequentially through a file channel, and is laid out as:
+ *
+ * <ul>
+ * <li>a header with the magic number, format version, generation, and the
+ * number of locations, words, postings, encoded position bytes, and skip
+ * entries</li>
+ * <li>the location table: every location and its word count, in id order</li>
+ * <li>the sorted words</li>
+ * <li>the term offsets, location ids, and frequencies (as ints)</li>
+ * <li>the position offsets (as longs, so the positions can pass 2 GB)</li>
+ * <li>the encoded positions</li>
+ * <li>the skip table: the first skip entry of each posting and the skipped
+ * positions (as ints), then the byte offsets after them (as longs)</li>
+ * <li>a CRC-32 checksum of everything before it</li>
+ * </ul>
+ *
+ * All numbers are big-endian, and strings are written as their length in bytes
+ * followed by their UTF-8 bytes.
+ *
+ * A file is saved to a temporary file next to it first, which is then renamed
+ * over it, so a crash never leaves a half-written index behind, and an index
+ * memory-mapped from the old file keeps reading the old file. Loading checks
+ * the checksum before decoding anything, and every count and offset is checked
+ * against the size of the file before anything is allocated for it, so a
+ * corrupt file is reported as an {@link IOException} instead of crashing.
+ *
+ * @author sarah
+ */
+public class IndexFile {
+
+	/** The magic number at the start of every index file ("SEIX"). */
+	public static final int MAGIC = 0x53454958;
+
+	/** The current version of the file format. */
+	public static final int VERSION = 3;
+
+	/** The size of the buffer used for reading and writing. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The size of the buffer used for verifying the checksum. */
+	private static final int CHECKSUM_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Saves a frozen index to a file, replacing the file if it already exists.
+	 * The index is written to a temporary file first, which then replaces the
+	 * file in one step.
+	 *
+	 * @param index the index to save
+	 * @param path  the file to save to
+	 * @throws IOException if unable to write the file
+	 */
+	public static void save(FrozenIndex index, Path path) throws IOException {
+		Path temporary = temporary(path);
+		try {
+			write(index, temporary);
+			replace(temporary, path);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Creates an empty temporary file in the same directory as a file, so it can
+	 * be renamed over the file. Unlike {@link Files#createTempFile}, the file gets
+	 * the usual permissions of a new file, which the renamed file keeps.
+	 *
+	 * @param path the file to be replaced
+	 * @return the temporary file
+	 * @throws IOException if unable to create the file
+	 */
+	static Path temporary(Path path) throws IOException {
+		Path absolute = path.toAbsolutePath();
+		String name = "." + absolute.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp";
+		return Files.createFile(absolute.resolveSibling(name));
+	}
+
+	/**
+	 * Renames a file over another one, atomically if the file system supports it.
+	 *
+	 * @param source the file to rename
+	 * @param target the file to replace
+	 * @throws IOException if unable to rename the file
+	 */
+	static void replace(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes a frozen index to a file.
+	 *
+	 * @param index the index to write
+	 * @param path  the file to write to
+	 * @throws IOException if unable to write the file
+	 */
+	private static void write(FrozenIndex index, Path path) throws IOException {
+		LocationDictionary locations = index.locations();
+		PostingStore postings = index.postings();
+		int size = postings.size();
+
+		try (Output output = new Output(path)) {
+			output.putInt(MAGIC);
+			output.putInt(VERSION);
+			output.putLong(index.generation());
+			output.putInt(locations.size());
+			output.putInt(index.termCount());
+			output.putInt(size);
+			output.putLong(postings.positionOffset(size));
+			output.putInt(postings.skipStart(size));
+
+			for (int id = 0; id < locations.size(); id++) {
+				output.putString(locations.get(id));
+				output.putInt(locations.count(id));
+			}
+
+			for (int term = 0; term < index.termCount(); term++) {
+				output.putString(index.term(term));
+			}
+
+			output.putInts(index.termOffsets());
+			for (int posting = 0; posting < size; posting++) {
+				output.putInt(postings.id(posting));
+			}
+			for (int posting = 0; posting < size; posting++) {
+				output.putInt(postings.frequency(posting));
+			}
+			for (int posting = 0; posting <= size; posting++) {
+				output.putLong(postings.positionOffset(posting));
+			}
+
+			byte[] chunk = new byte[BUFFER_SIZE];
+			long total = postings.positionOffset(size);
+			for (long offset = 0; offset < total; offset += chunk.length) {
+				int length = (int) Math.min(chunk.length, total - offset);
+				postings.copyPositions(offset, chunk, 0, length);
+				output.putBytes(chunk, length);
+			}
+
+			int skips = postings.skipStart(size);
+			for (int posting = 0; posting <= size; posting++) {
+				output.putInt(postings.skipStart(posting));
+			}
+			for (int skip = 0; skip < skips; skip++) {
+				output.putInt(postings.skipPosition(skip));
+			}
+			for (int skip = 0; skip < skips; skip++) {
+				output.putLong(postings.skipOffset(skip));
+			}
+		}
+	}
+
+	/**
+	 * Loads a frozen index from a file written by {@link #save(FrozenIndex, Path)}
+	 * onto the heap. The checksum of the whole file is verified before anything
+	 * is decoded.
+	 *
+	 * @param path the file to load from
+	 * @return the loaded index
+	 * @throws IOException if unable to read the file, the file is not a valid index
+	 *                     file of this version, or its postings are too large for
+	 *                     the heap
+	 */
+	public static FrozenIndex load(Path path) throws IOException {
+		try (Input input = new Input(path)) {
+			input.checksum();
+			Header header = new Header(input);
+			if (header.bytes > Integer.MAX_VALUE) {
+				throw new IOException("Index file is too large to load onto the heap, map it instead: " + path);
+			}
+
+			int[] ids = input.getInts(header.postings);
+			int[] frequencies = input.getInts(header.postings);
+			int[] positionOffsets = input.getOffsets(header.postings + 1);
+			byte[] positions = input.getBytes((int) header.bytes);
+			int[] skipStarts = input.getInts(header.postings + 1);
+			int[] skipPositions = input.getInts(header.skips);
+			int[] skipOffsets = input.getOffsets(header.skips);
+
+			for (int posting = 0; posting < header.postings; posting++) {
+				if (ids[posting] < 0 || ids[posting] >= header.locations.size() || frequencies[posting] < 0
+						|| positionOffsets[posting] > positionOffsets[posting + 1]) {
+					throw new IOException("Index file is corrupt: " + path);
+				}
+			}
+			if (positionOffsets[0] != 0 || positionOffsets[header.postings] != header.bytes) {
+				throw new IOException("Index file is corrupt: " + path);
+			}
+
+			// every posting has one skip entry for each full interval of positions
+			if (skipStarts[0] != 0 || skipStarts[header.postings] != header.skips) {
+				throw new IOException("Index file is corrupt: " + path);
+			}
+			for (int posting = 0; posting < header.postings; posting++) {
+				int first = skipStarts[posting];
+				int end = skipStarts[posting + 1];
+				if (end - first != frequencies[posting] / PostingStore.SKIP_INTERVAL) {
+					throw new IOException("Index file is corrupt: " + path);
+				}
+				for (int skip = first; skip < end; skip++) {
+					if (skipOffsets[skip] <= positionOffsets[posting]
+							|| skipOffsets[skip] > positionOffsets[posting + 1]) {
+						throw new IOException("Index file is corrupt: " + path);
+					}
+				}
+			}
+
+			PostingStore postings = new HeapPostingStore(ids, frequencies, positionOffsets, positions, skipStarts,
+					skipPositions, skipOffsets);
+			return new FrozenIndex(header.terms, header.termOffsets, postings, header.locations, header.generation);
+		} catch (RuntimeException e) {
+			throw new IOException("Index file is corrupt: " + path, e);
+		}
+	}
+
+	/**
+	 * Opens a frozen index from a file written by {@link #save(FrozenIndex, Path)}
+	 * without loading its postings onto the heap. Only the words, term offsets, and
+	 * locations are read; the postings are memory-mapped and decoded straight
+	 * from the file, so the operating system page cache decides how much of them
+	 * stays in memory. The checksum is not verified, since that would mean
+	 * reading the whole file.
+	 *
+	 * @param path the file to open
+	 * @return the memory-mapped index
+	 * @throws IOException if unable to read or map the file, or the file is not a
+	 *                     valid index file of this version
+	 */
+	public static FrozenIndex map(Path path) throws IOException {
+		try (Input input = new Input(path)) {
+			Header header = new Header(input);
+
+			long start = input.position();
+			long expected = start + 2L * Integer.BYTES * header.postings + Long.BYTES * (header.postings + 1L)
+					+ header.bytes + Integer.BYTES * (header.postings + 1L)
+					+ (long) (Integer.BYTES + Long.BYTES) * header.skips + Long.BYTES;
+			if (input.channel().size() != expected) {
+				throw new IOException("Index file is truncated or corrupt: " + path);
+			}
+
+			// the mapping stays valid after the channel is closed
+			PostingStore postings = new MappedPostingStore(input.channel(), start, header.postings, header.bytes,
+					header.skips);
+			return new FrozenIndex(header.terms, header.termOffsets, postings, header.locations, header.generation);
+		} catch (RuntimeException e) {
+			throw new IOException("Index file is corrupt: " + path, e);
+		}
+	}
+
+	/**
+	 * The parts of an index file that always stay on the heap: the header,
+	 * locations, words, and term offsets.
+	 */
+	private static class Header {
+
+		/** The generation number of the index. */
+		private final long generation;
+
+		/** The number of postings. */
+		private final int postings;
+
+		/** The number of encoded position bytes. */
+		private final long bytes;
+
+		/** The number of skip entries. */
+		private final int skips;
+
+		/** The locations. */
+		private final LocationDictionary locations;
+
+		/** The sorted words. */
+		private final String[] terms;
+
+		/** The first posting of each word, plus the total. */
+		private final int[] termOffsets;
+
+		/**
+		 * Reads everything up to the postings from an index file.
+		 *
+		 * @param input the file to read from
+		 * @throws IOException if unable to read, or the file is not a valid index file
+		 *                     of this version
+		 */
+		public Header(Input input) throws IOException {
+			if (input.getInt() != MAGIC) {
+				throw new IOException("Not an index file");
+			}
+
+			int version = input.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported index file version " + version);
+			}
+
+			generation = input.getLong();
+			int locationCount = input.getCount();
+			int termCount = input.getCount();
+			postings = input.getCount();
+			bytes = input.getLong();
+			if (bytes < 0 || bytes > input.channel().size()) {
+				throw new IOException("Index file is corrupt");
+			}
+			skips = input.getCount();
+
+			locations = new LocationDictionary();
+			for (int id = 0; id < locationCount; id++) {
+				locations.add(input.getString());
+				locations.updateCount(id, input.getInt());
+			}
+
+			terms = new String[termCount];
+			for (int term = 0; term < termCount; term++) {
+				terms[term] = input.getString();
+			}
+
+			termOffsets = input.getInts(termCount + 1);
+			if (termOffsets[0] != 0 || termOffsets[termCount] != postings) {
+				throw new IOException("Index file is corrupt");
+			}
+			for (int term = 0; term < termCount; term++) {
+				if (termOffsets[term] > termOffsets[term + 1]
+						|| (term > 0 && terms[term - 1].compareTo(terms[term]) >= 0)) {
+					throw new IOException("Index file is corrupt");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes values to a file through a buffer, keeping a checksum of everything
+	 * written. The checksum itself is written when closed.
+	 */
+	private static class Output implements Closeable {
+
+		/** The channel to write to. */
+		private final FileChannel channel;
+
+		/** The buffer of values not yet written. */
+		private final ByteBuffer buffer;
+
+		/** The checksum of the values written so far. */
+		private final CRC32 crc;
+
+		/**
+		 * Opens a file for writing.
+		 *
+		 * @param path the file to write
+		 * @throws IOException if unable to open the file
+		 */
+		public Output(Path path) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			this.crc = new CRC32();
+		}
+
+		/**
+		 * Makes sure the buffer has room for the number of bytes, writing out the
+		 * buffer if not.
+		 *
+		 * @param bytes the number of bytes needed
+		 * @throws IOException if unable to write
+		 */
+		private void reserve(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		/**
+		 * Writes out everything in the buffer, adding it to the checksum.
+		 *
+		 * @throws IOException if unable to write
+		 */
+		private void flush() throws IOException {
+			crc.update(buffer.array(), 0, buffer.position());
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Writes an int.
+		 *
+		 * @param value the value to write
+		 * @throws IOException if unable to write
+		 */
+		public void putInt(int value) throws IOException {
+			reserve(Integer.BYTES);
+			buffer.putInt(value);
+		}
+
+		/**
+		 * Writes a long.
+		 *
+		 * @param value the value to write
+		 * @throws IOException if unable to write
+		 */
+		public void putLong(long value) throws IOException {
+			reserve(Long.BYTES);
+			buffer.putLong(value);
+		}
+
+		/**
+		 * Writes every int in an array.
+		 *
+		 * @param values the values to write
+		 * @throws IOException if unable to write
+		 */
+		public void putInts(int[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				reserve(Integer.BYTES);
+				int count = Math.min(buffer.remaining() / Integer.BYTES, values.length - offset);
+				buffer.asIntBuffer().put(values, offset, count);
+				buffer.position(buffer.position() + count * Integer.BYTES);
+				offset += count;
+			}
+		}
+
+		/**
+		 * Writes every byte in an array.
+		 *
+		 * @param values the bytes to write
+		 * @throws IOException if unable to write
+		 */
+		public void putBytes(byte[] values) throws IOException {
+			putBytes(values, values.length);
+		}
+
+		/**
+		 * Writes the first bytes in an array.
+		 *
+		 * @param values the bytes to write
+		 * @param length the number of bytes to write
+		 * @throws IOException if unable to write
+		 */
+		public void putBytes(byte[] values, int length) throws IOException {
+			int offset = 0;
+			while (offset < length) {
+				reserve(1);
+				int count = Math.min(buffer.remaining(), length - offset);
+				buffer.put(values, offset, count);
+				offset += count;
+			}
+		}
+
+		/**
+		 * Writes a string as its length in bytes followed by its UTF-8 bytes.
+		 *
+		 * @param value the string to write
+		 * @throws IOException if unable to write
+		 */
+		public void putString(String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			putBytes(bytes);
+		}
+
+		/**
+		 * Writes out the rest of the buffer followed by the checksum, then closes the
+		 * file.
+		 *
+		 * @throws IOException if unable to write
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+				buffer.putLong(crc.getValue());
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads values from a file through a buffer, refusing to read past the end of
+	 * the file.
+	 */
+	private static class Input implements Closeable {
+
+		/** The channel to read from. */
+		private final FileChannel channel;
+
+		/** The buffer of values read but not yet used. */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Opens a file for reading.
+		 *
+		 * @param path the file to read
+		 * @throws IOException if unable to open the file
+		 */
+		public Input(Path path) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+			this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			this.buffer.flip();
+		}
+
+		/**
+		 * Returns the channel being read.
+		 *
+		 * @return the channel
+		 */
+		public FileChannel channel() {
+			return channel;
+		}
+
+		/**
+		 * Returns the position in the file of the next byte to be used.
+		 *
+		 * @return the file position
+		 * @throws IOException if unable to get the channel position
+		 */
+		public long position() throws IOException {
+			return channel.position() - buffer.remaining();
+		}
+
+		/**
+		 * Makes sure the buffer has at least the number of bytes available, reading
+		 * more from the file if not.
+		 *
+		 * @param bytes the number of bytes needed
+		 * @throws IOException if unable to read, or the file ends first
+		 */
+		private void require(int bytes) throws IOException {
+			if (buffer.remaining() >= bytes) {
+				return;
+			}
+
+			buffer.compact();
+			while (buffer.position() < bytes) {
+				if (channel.read(buffer) < 0) {
+					throw new EOFException("Index file is truncated");
+				}
+			}
+			buffer.flip();
+		}
+
+		/**
+		 * Makes sure the file has enough bytes left for an array, before it is
+		 * allocated.
+		 *
+		 * @param length the number of values in the array
+		 * @param size   the number of bytes of each value
+		 * @throws IOException if the file is too short for the array
+		 */
+		private void available(int length, int size) throws IOException {
+			if (length < 0 || (long) length * size > channel.size() - position()) {
+				throw new IOException("Index file is truncated or corrupt");
+			}
+		}
+
+		/**
+		 * Reads an int.
+		 *
+		 * @return the value read
+		 * @throws IOException if unable to read
+		 */
+		public int getInt() throws IOException {
+			require(Integer.BYTES);
+			return buffer.getInt();
+		}
+
+		/**
+		 * Reads an int that counts something, so cannot be negative or larger than
+		 * the file itself.
+		 *
+		 * @return the count read
+		 * @throws IOException if unable to read, or the count is impossible
+		 */
+		public int getCount() throws IOException {
+			int count = getInt();
+			if (count < 0 || count > channel.size()) {
+				throw new IOException("Index file is corrupt");
+			}
+			return count;
+		}
+
+		/**
+		 * Reads a long.
+		 *
+		 * @return the value read
+		 * @throws IOException if unable to read
+		 */
+		public long getLong() throws IOException {
+			require(Long.BYTES);
+			return buffer.getLong();
+		}
+
+		/**
+		 * Reads an array of ints.
+		 *
+		 * @param length the number of ints to read
+		 * @return the values read
+		 * @throws IOException if unable to read
+		 */
+		public int[] getInts(int length) throws IOException {
+			available(length, Integer.BYTES);
+			int[] values = new int[length];
+			int offset = 0;
+			while (offset < length) {
+				require(Integer.BYTES);
+				int count = Math.min(buffer.remaining() / Integer.BYTES, length - offset);
+				int start = buffer.position();
+				buffer.asIntBuffer().get(values, offset, count);
+				buffer.position(start + count * Integer.BYTES);
+				offset += count;
+			}
+			return values;
+		}
+
+		/**
+		 * Reads an array of long offsets that must each fit in an int.
+		 *
+		 * @param length the number of offsets to read
+		 * @return the offsets read
+		 * @throws IOException if unable to read, or an offset is out of range
+		 */
+		public int[] getOffsets(int length) throws IOException {
+			available(length, Long.BYTES);
+			int[] values = new int[length];
+			int offset = 0;
+			while (offset < length) {
+				require(Long.BYTES);
+				int count = Math.min(buffer.remaining() / Long.BYTES, length - offset);
+				for (int i = 0; i < count; i++) {
+					long value = buffer.getLong();
+					if (value < 0 || value > Integer.MAX_VALUE) {
+						throw new IOException("Index file is corrupt");
+					}
+					values[offset++] = (int) value;
+				}
+			}
+			return values;
+		}
+
+		/**
+		 * Reads an array of bytes.
+		 *
+		 * @param length the number of bytes to read
+		 * @return the bytes read
+		 * @throws IOException if unable to read
+		 */
+		public byte[] getBytes(int length) throws IOException {
+			available(length, Byte.BYTES);
+			byte[] values = new byte[length];
+			int offset = 0;
+			while (offset < length) {
+				require(1);
+				int count = Math.min(buffer.remaining(), length - offset);
+				buffer.get(values, offset, count);
+				offset += count;
+			}
+			return values;
+		}
+
+		/**
+		 * Reads a string written as its length in bytes followed by its UTF-8 bytes.
+		 *
+		 * @return the string read
+		 * @throws IOException if unable to read
+		 */
+		public String getString() throws IOException {
+			return new String(getBytes(getCount()), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Computes the checksum of the whole file except the checksum stored at the
+		 * end, and compares the two. This reads the file without moving the
+		 * position of the channel, so it can be done before reading anything else.
+		 *
+		 * @throws IOException if unable to read, or the checksums do not match
+		 */
+		public void checksum() throws IOException {
+			long end = channel.size() - Long.BYTES;
+			if (end < 0) {
+				throw new EOFException("Index file is truncated");
+			}
+
+			CRC32 crc = new CRC32();
+			ByteBuffer chunk = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+			for (long position = 0; position < end;) {
+				chunk.clear().limit((int) Math.min(chunk.capacity(), end - position));
+				int read = channel.read(chunk, position);
+				if (read < 0) {
+					throw new EOFException("Index file is truncated");
+				}
+				chunk.flip();
+				crc.update(chunk);
+				position += read;
+			}
+
+			ByteBuffer stored = ByteBuffer.allocate(Long.BYTES);
+			while (stored.hasRemaining()) {
+				if (channel.read(stored, end + stored.position()) < 0) {
+					throw new EOFException("Index file is truncated");
+				}
+			}
+			if (stored.getLong(0) != crc.getValue()) {
+				throw new IOException("Index file checksum does not match");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
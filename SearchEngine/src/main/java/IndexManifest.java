@@ -0,0 +1,263 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Records the size, last modified time, and content hash of every file in a
+ * saved index, so the next build can tell which files changed. The manifest is
+ * stored next to the index file as a text file with one tab-separated line per
+ * file:
+ *
+ * <pre>
+ * size	modified	hash	path
+ * </pre>
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author sarah
+ */
+public class IndexManifest {
+
+	/** The first line of every manifest file, which includes the format version. */
+	public static final String HEADER = "# index manifest v1";
+
+	/** The algorithm used to hash file contents. */
+	private static final String ALGORITHM = "SHA-256";
+
+	/** The entry for each location. */
+	private final TreeMap<String, Entry> entries;
+
+	/**
+	 * Initializes an empty manifest.
+	 */
+	public IndexManifest() {
+		this.entries = new TreeMap<>();
+	}
+
+	/**
+	 * The recorded state of one file.
+	 */
+	public static class Entry {
+
+		/** The size of the file in bytes. */
+		private final long size;
+
+		/** The last modified time of the file in milliseconds. */
+		private final long modified;
+
+		/** The hash of the file contents, in hex. */
+		private final String hash;
+
+		/**
+		 * Initializes an entry.
+		 *
+		 * @param size     the size of the file in bytes
+		 * @param modified the last modified time of the file in milliseconds
+		 * @param hash     the hash of the file contents, in hex
+		 */
+		public Entry(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		/**
+		 * Returns the size of the file.
+		 *
+		 * @return the size in bytes
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Returns the last modified time of the file.
+		 *
+		 * @return the last modified time in milliseconds
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * Returns the hash of the file contents.
+		 *
+		 * @return the hash, in hex
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		/**
+		 * Determines whether a file still has the size and last modified time that
+		 * was recorded, which almost always means it has not changed.
+		 *
+		 * @param size     the current size of the file
+		 * @param modified the current last modified time of the file
+		 * @return true if both match
+		 */
+		public boolean matches(long size, long modified) {
+			return this.size == size && this.modified == modified;
+		}
+
+		@Override
+		public String toString() {
+			return size + "\t" + modified + "\t" + hash;
+		}
+	}
+
+	/**
+	 * Returns the entry for a location.
+	 *
+	 * @param location the location
+	 * @return the entry, or null if the location is not in the manifest
+	 */
+	public Entry get(String location) {
+		return entries.get(location);
+	}
+
+	/**
+	 * Records the entry for a location, replacing any earlier entry.
+	 *
+	 * @param location the location
+	 * @param entry    the entry to record
+	 */
+	public void put(String location, Entry entry) {
+		entries.put(location, Objects.requireNonNull(entry));
+	}
+
+	/**
+	 * Removes the entry for a location.
+	 *
+	 * @param location the location
+	 */
+	public void remove(String location) {
+		entries.remove(location);
+	}
+
+	/**
+	 * Returns every location and its entry.
+	 *
+	 * @return an unmodifiable sorted map of locations to entries
+	 */
+	public Map<String, Entry> entries() {
+		return Collections.unmodifiableMap(entries);
+	}
+
+	/**
+	 * Returns the number of locations in the manifest.
+	 *
+	 * @return the number of locations
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns where the manifest of an index file is stored.
+	 *
+	 * @param index the index file
+	 * @return the manifest file next to it
+	 */
+	public static Path of(Path index) {
+		return index.resolveSibling(index.getFileName() + ".manifest");
+	}
+
+	/**
+	 * Reads a manifest file.
+	 *
+	 * @param path the manifest file
+	 * @return the manifest
+	 * @throws IOException if unable to read the file, or it is not a valid manifest
+	 */
+	public static IndexManifest read(Path path) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				throw new IOException("Not a manifest file: " + path);
+			}
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// the path goes last since it could contain tabs
+				String[] parts = line.split("\t", 4);
+				if (parts.length != 4) {
+					throw new IOException("Manifest file is corrupt: " + path);
+				}
+
+				try {
+					manifest.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Manifest file is corrupt: " + path, e);
+				}
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes this manifest to a file, replacing the file if it already exists.
+	 *
+	 * @param path the manifest file
+	 * @throws IOException if unable to write the file
+	 */
+	public void write(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.write("\n");
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				writer.write(entry.getValue().toString());
+				writer.write("\t");
+				writer.write(entry.getKey());
+				writer.write("\n");
+			}
+		}
+	}
+
+	/**
+	 * Hashes the contents of a file.
+	 *
+	 * @param file the file to hash
+	 * @return the hash, in hex
+	 * @throws IOException if unable to read the file
+	 */
+	public static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every java platform is required to support this algorithm
+			throw new IllegalStateException(e);
+		}
+
+		byte[] buffer = new byte[8192];
+		try (InputStream input = Files.newInputStream(file)) {
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	@Override
+	public String toString() {
+		return entries.toString();
+	}
+}
@@ -1,8 +1,6 @@
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,24 +13,49 @@ import java.util.TreeSet;
  * @author University of San Francisco
  * @version Fall 2020
  */
-public class InvertedIndex {
+public class InvertedIndex implements InvertedIndexInterface {
 
 	/**
-	 * data structure for inverted index object
+	 * data structure for inverted index object, mapping each word to the ids of
+	 * the locations it is found in and its positions there
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private final TreeMap<String, TermPostings> index;
 
 	/**
-	 * map that records how many words in a text file
+	 * dictionary that assigns each location an id and records how many words are
+	 * in it
 	 */
-	private final TreeMap<String, Integer> countMap;
+	private final LocationDictionary locations;
+
+	/**
+	 * the number of changes made to the index, which is its generation number
+	 */
+	private long generation;
+
+	/**
+	 * the frozen copy of the index searched for anything but counted words, or
+	 * null until one is needed
+	 */
+	private FrozenIndex snapshot;
 
 	/**
 	 * inverted index class object constructor
 	 */
 	public InvertedIndex() {
-		this.index = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
-		this.countMap = new TreeMap<String, Integer>();
+		this(new LocationDictionary());
+	}
+
+	/**
+	 * inverted index constructor that uses an existing location dictionary, so
+	 * that several indexes can share the same location ids
+	 * 
+	 * @param locations the location dictionary to use
+	 */
+	InvertedIndex(LocationDictionary locations) {
+		this.index = new TreeMap<String, TermPostings>();
+		this.locations = locations;
+		this.generation = 0;
+		this.snapshot = null;
 	}
 
 	/**
@@ -43,10 +66,9 @@ public class InvertedIndex {
 	 * @param position positions where word is found in that location
 	 */
 	public void add(String word, String file, Integer position) {
-		index.putIfAbsent(word, new TreeMap<>());
-		index.get(word).putIfAbsent(file, new TreeSet<>());
-		index.get(word).get(file).add(position);
-		countMap.put(file, Math.max(wordCountGetter(file), position)); // update the countMap for this file
+		int id = locations.add(file);
+		addPosition(word, id, position);
+		locations.updateCount(id, position); // update the word count for this file
 	}
 
 	/**
@@ -56,32 +78,124 @@ public class InvertedIndex {
 	 * @param local the local index data to add to threadsafe index
 	 */
 	public void addAll(InvertedIndex local) {
+		int[] remap = addLocations(local.locations);
 
-		for (String stemWord : local.index.keySet()) {
-			// System.out.println("stemword : " + stemWord);
-			if (!this.index.containsKey(stemWord)) {
-				this.index.put(stemWord, local.index.get(stemWord));
-			} else {
-				// System.out.println("else contains");
-				for (String location : local.index.get(stemWord).keySet()) {
-					if (!this.index.get(stemWord).containsKey(location)) {
-						this.index.get(stemWord).put(location, local.index.get(stemWord).get(location));
-					} else {
-						this.index.get(stemWord).get(location).addAll(local.index.get(stemWord).get(location));
-					}
-				}
-			}
+		for (Map.Entry<String, TermPostings> entry : local.index.entrySet()) {
+			addPostings(entry.getKey(), entry.getValue(), remap);
 		}
-		// merge wordcounts
-		for (String filename : local.countMap.keySet()) {
-			if (!this.countMap.containsKey(filename)) {
-				this.countMap.put(filename, local.countMap.get(filename));
-			} else {
-				if (this.countMap.get(filename) < local.countMap.get(filename)) {
-					this.countMap.put(filename, local.countMap.get(filename));
-				}
-			}
+	}
+
+	/**
+	 * gives each location of another dictionary an id in this index and merges
+	 * their wordcounts
+	 * 
+	 * @param other the dictionary of the locations to add
+	 * @return the id in this index of each id in the other dictionary
+	 */
+	int[] addLocations(LocationDictionary other) {
+		int[] remap = new int[other.size()];
+		for (int i = 0; i < remap.length; i++) {
+			remap[i] = this.locations.add(other.get(i));
+			this.locations.updateCount(remap[i], other.count(i));
+		}
+		return remap;
+	}
+
+	/**
+	 * merges the postings of a word from another index into this index
+	 * 
+	 * @param word     the stem word
+	 * @param postings the postings of that word in the other index
+	 * @param remap    the id in this index of each location id in the postings
+	 * 
+	 * @see #addLocations(LocationDictionary)
+	 */
+	void addPostings(String word, TermPostings postings, int[] remap) {
+		TermPostings existing = this.index.get(word);
+		if (existing == null) {
+			existing = newWord(word);
+		}
+		existing.addAll(postings, remap);
+		generation++;
+	}
+
+	/**
+	 * adds a position for a location that already has an id in this index
+	 * 
+	 * @param word     stem word to be an index key
+	 * @param id       the location id
+	 * @param position position where word is found in that location
+	 */
+	void addPosition(String word, int id, int position) {
+		TermPostings postings = index.get(word);
+		if (postings == null) {
+			postings = newWord(word);
+		}
+		postings.getOrCreate(id).add(position);
+		generation++;
+	}
+
+	/**
+	 * adds a word that is not in the index yet
+	 * 
+	 * @param word the new stem word
+	 * @return the empty postings of the word
+	 */
+	private TermPostings newWord(String word) {
+		TermPostings postings = new TermPostings();
+		index.put(word, postings);
+		return postings;
+	}
+
+	/**
+	 * returns the underlying map of words to postings, for classes that combine
+	 * several indexes
+	 * 
+	 * @return the sorted map of words to postings (do not modify)
+	 */
+	Map<String, TermPostings> postings() {
+		return index;
+	}
+
+	/**
+	 * returns the location dictionary used by this index
+	 * 
+	 * @return the location dictionary (do not modify)
+	 */
+	LocationDictionary locations() {
+		return locations;
+	}
+
+	/**
+	 * compacts the index into an immutable, read-optimized copy once building is
+	 * done. Later changes to this index are not reflected in the copy.
+	 * 
+	 * @return the frozen copy of this index
+	 */
+	public FrozenIndex freeze() {
+		return new FrozenIndex(index, locations);
+	}
+
+	/**
+	 * returns a frozen copy of the index as of its current generation, which is
+	 * only frozen again once the index changes
+	 * 
+	 * @return the frozen copy of this index
+	 */
+	public FrozenIndex snapshot() {
+		if (snapshot == null || snapshot.generation() != generation) {
+			snapshot = new FrozenIndex(index, locations, generation);
 		}
+		return snapshot;
+	}
+
+	/**
+	 * returns the number of changes made to the index, which increases with
+	 * every word added
+	 */
+	@Override
+	public long generation() {
+		return generation;
 	}
 
 	/**
@@ -102,7 +216,7 @@ public class InvertedIndex {
 	public int size(String word) {
 
 		if (contains(word)) {
-			return index.get(word).keySet().size();
+			return index.get(word).size();
 		}
 		return 0;
 	}
@@ -115,10 +229,8 @@ public class InvertedIndex {
 	 * @return # of positions stored in that location
 	 */
 	public int size(String word, String location) {
-		if (contains(word, location)) {
-			return index.get(word).get(location).size();
-		}
-		return 0;
+		PostingList positions = positions(word, location);
+		return positions == null ? 0 : positions.size();
 	}
 
 	/**
@@ -139,7 +251,7 @@ public class InvertedIndex {
 	 * @return true if word can be found in that file (if file is in words key set)
 	 */
 	public boolean contains(String word, String location) {
-		return index.containsKey(word) && index.get(word).containsKey(location);
+		return positions(word, location) != null;
 	}
 
 	/**
@@ -152,8 +264,21 @@ public class InvertedIndex {
 	 * @return if word exists in file in that location
 	 */
 	public boolean contains(String word, String location, int position) {
-		return index.containsKey(word) && index.get(word).containsKey(location)
-				&& index.get(word).get(location).contains(position);
+		PostingList positions = positions(word, location);
+		return positions != null && positions.contains(position);
+	}
+
+	/**
+	 * finds the positions of a word in a location
+	 * 
+	 * @param word     stem
+	 * @param location file location
+	 * @return the positions, or null if the word is not found in that location
+	 */
+	private PostingList positions(String word, String location) {
+		TermPostings postings = index.get(word);
+		int id = locations.lookup(location);
+		return postings == null || id < 0 ? null : postings.get(id);
 	}
 
 	/**
@@ -163,7 +288,7 @@ public class InvertedIndex {
 	 * @throws IOException if encounter IO error
 	 */
 	public void toJson(Path path) throws IOException {
-		SimpleJsonWriter.asDoubleNestedStructure(index, path);
+		SimpleJsonWriter.asDoubleNestedStructure(index, locations, path);
 	}
 
 	/**
@@ -183,7 +308,12 @@ public class InvertedIndex {
 	 */
 	public Set<String> getLocations(String word) { // FILEGETTER REPLACEMENT
 		if (contains(word)) { // if word exists
-			return Collections.unmodifiableSet(index.get(word).keySet());
+			TermPostings postings = index.get(word);
+			TreeSet<String> resolved = new TreeSet<>();
+			for (int i = 0; i < postings.size(); i++) {
+				resolved.add(locations.get(postings.id(i)));
+			}
+			return Collections.unmodifiableSet(resolved);
 		}
 		return Collections.emptySet();
 	}
@@ -196,8 +326,9 @@ public class InvertedIndex {
 	 * @return set of locations where the stem is found
 	 */
 	public Set<Integer> getPositions(String word, String location) {
-		if (contains(word, location)) { // if word is present in file
-			return Collections.unmodifiableSet(index.get(word).get(location));
+		PostingList positions = positions(word, location);
+		if (positions != null) { // if word is present in file
+			return positions.asSet();
 		}
 		return Collections.emptySet();
 	}
@@ -207,7 +338,32 @@ public class InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		return index.toString();
+		return toString(index, locations);
+	}
+
+	/**
+	 * returns the string value of a map of words to postings, in the same format
+	 * as a nested map of words to locations to positions
+	 * 
+	 * @param index     the sorted map of words to postings
+	 * @param locations the dictionary used to resolve location ids
+	 * @return the string value of the postings
+	 */
+	static String toString(Map<String, TermPostings> index, LocationDictionary locations) {
+		StringBuilder builder = new StringBuilder("{");
+		for (Map.Entry<String, TermPostings> entry : index.entrySet()) {
+			if (builder.length() > 1) {
+				builder.append(", ");
+			}
+			builder.append(entry.getKey()).append("={");
+			TermPostings postings = entry.getValue();
+			for (int i = 0; i < postings.size(); i++) {
+				builder.append(i > 0 ? ", " : "").append(locations.get(postings.id(i))).append('=')
+						.append(postings.positions(i));
+			}
+			builder.append('}');
+		}
+		return builder.append('}').toString();
 	}
 
 	/**
@@ -218,13 +374,7 @@ public class InvertedIndex {
 	 * @return count of appearances of word in file
 	 */
 	public int wordGetter(String word, String file) {
-		if (index.get(word) == null) {
-			return 0;
-		}
-		if (index.get(word).get(file) == null) {
-			return 0;
-		}
-		return index.get(word).get(file).size(); // return how many times in file for this particular word
+		return size(word, file); // return how many times in file for this particular word
 	}
 
 	/**
@@ -234,32 +384,17 @@ public class InvertedIndex {
 	 * @return the number of words in the passed in file
 	 */
 	public int wordCountGetter(String filename) {
-		return countMap.getOrDefault(filename, 0);
+		int id = locations.lookup(filename);
+		return id < 0 ? 0 : locations.count(id);
 	}
 
 	/**
-	 * returns the countmap as an unmodifiable structure
+	 * returns the word counts of every location as an unmodifiable sorted map
 	 * 
 	 * @return the countMap created alongside the inverted index
 	 */
 	public Map<String, Integer> returnCountMap() {
-		return Collections.unmodifiableMap(countMap);
-	}
-
-	/**
-	 * a search convenience method that returns a list of search results for the
-	 * passed in queries
-	 * 
-	 * @param words the queries
-	 * @param exact whether its exact or partial search
-	 * @return a list of search results
-	 */
-	public List<SearchResult> search(Set<String> words, boolean exact) {
-		if (exact) {
-			return exactSearch(words);
-		} else {
-			return partialSearch(words);
-		}
+		return locations.asCountMap();
 	}
 
 	/**
@@ -269,17 +404,12 @@ public class InvertedIndex {
 	 * @return a sorted list of EXACT search results
 	 */
 	public List<SearchResult> exactSearch(Set<String> words) {
-		List<SearchResult> results = new ArrayList<>();
-		// string is location
-		Map<String, SearchResult> lookup = new HashMap<String, SearchResult>();
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
 
 		for (String query : words) {
-			if (index.containsKey(query)) {
-				commonSearch(query, results, lookup);
-			}
+			exactMatches(query, accumulator);
 		}
-		Collections.sort(results);
-		return results;
+		return accumulator.results(locations);
 	}
 
 	/**
@@ -290,41 +420,82 @@ public class InvertedIndex {
 	 * @return a sorted list of PARTIAL search results
 	 */
 	public List<SearchResult> partialSearch(Set<String> words) {
-		List<SearchResult> results = new ArrayList<>();
-		// string is location
-		Map<String, SearchResult> lookup = new HashMap<String, SearchResult>();
+		ScoreAccumulator accumulator = ScoreAccumulator.get(locations.size());
 
 		for (String query : words) {
-			for (String key : index.tailMap(query).keySet()) {
-				if (key.startsWith(query)) {
-					commonSearch(key, results, lookup);
-				} else {
-					break;
-				}
-			}
+			partialMatches(query, accumulator);
 		}
-		Collections.sort(results);
-		return results;
+		return accumulator.results(locations);
 	}
 
 	/**
-	 * the common functionality present in both exact and partial search, adds
-	 * results to results and a lookup map
+	 * ranks the results by count here, and with any other model by searching a
+	 * frozen copy of the index, which keeps the collection statistics
+	 */
+	@Override
+	public List<SearchResult> search(Set<String> words, boolean exact, int limit, Ranking ranking) {
+		return ranking == Ranking.COUNT ? search(words, exact, limit) : snapshot().search(words, exact, limit, ranking);
+	}
+
+	/**
+	 * searches for the words of a simple query here, and for wildcards, phrases
+	 * and operators by searching a frozen copy of the index
+	 */
+	@Override
+	public List<SearchResult> search(SearchQuery query, boolean exact, int limit, Ranking ranking) {
+		return query.isSimple() ? search(query.words(), exact, limit, ranking)
+				: snapshot().search(query, exact, limit, ranking);
+	}
+
+	/**
+	 * searches a frozen copy of the index, which has the term dictionary to walk
+	 * for misspelled words
+	 */
+	@Override
+	public List<SearchResult> fuzzySearch(Set<String> words, int distance, int limit, Ranking ranking) {
+		return snapshot().fuzzySearch(words, distance, limit, ranking);
+	}
+
+	/**
+	 * adds the results for a single word of an exact search
 	 * 
-	 * @param input   the specific input for the different searches (query for
-	 *                exact, key for partial)
-	 * @param results the search results list to add to
-	 * @param lookup  the lookup map to add results to
+	 * @param query       the word to search for
+	 * @param accumulator the accumulator to add matches to
 	 */
-	private void commonSearch(String input, List<SearchResult> results, Map<String, SearchResult> lookup) {
+	void exactMatches(String query, ScoreAccumulator accumulator) {
+		TermPostings postings = index.get(query);
+		if (postings != null) {
+			commonSearch(postings, accumulator);
+		}
+	}
 
-		for (String location : index.get(input).keySet()) {
-			if (!lookup.containsKey(location)) {
-				SearchResult current = new SearchResult(location);
-				results.add(current);
-				lookup.put(location, current);
+	/**
+	 * adds the results for a single word of a partial search
+	 * 
+	 * @param query       the prefix to search for
+	 * @param accumulator the accumulator to add matches to
+	 */
+	void partialMatches(String query, ScoreAccumulator accumulator) {
+		for (Map.Entry<String, TermPostings> entry : index.tailMap(query).entrySet()) {
+			if (entry.getKey().startsWith(query)) {
+				commonSearch(entry.getValue(), accumulator);
+			} else {
+				break;
 			}
-			lookup.get(location).update(input);
+		}
+	}
+
+	/**
+	 * the common functionality present in both exact and partial search, adds
+	 * the matches of every location to the accumulator
+	 * 
+	 * @param postings    the postings of the specific input for the different
+	 *                    searches (query for exact, key for partial)
+	 * @param accumulator the accumulator to add matches to
+	 */
+	private void commonSearch(TermPostings postings, ScoreAccumulator accumulator) {
+		for (int i = 0; i < postings.size(); i++) {
+			accumulator.add(postings.id(i), postings.positions(i).size());
 		}
 	}
 
@@ -334,11 +505,15 @@ public class InvertedIndex {
 	 * 
 	 * @author sarah
 	 */
-	public class SearchResult implements Comparable<SearchResult> {
+	public static class SearchResult implements Comparable<SearchResult> {
 		/**
-		 * location
+		 * dictionary used to resolve the location id
 		 */
-		private final String where;
+		private final LocationDictionary locations;
+		/**
+		 * location id
+		 */
+		private final int id;
 		/**
 		 * total matches within the text file
 		 */
@@ -351,22 +526,50 @@ public class InvertedIndex {
 		/**
 		 * search result constructor
 		 * 
-		 * @param location the file location of the result
+		 * @param locations the dictionary used to resolve the location id
+		 * @param id        the location id of the result
 		 */
-		public SearchResult(String location) {
+		public SearchResult(LocationDictionary locations, int id) {
 			this.count = 0;
 			this.score = 0;
-			this.where = location;
+			this.locations = locations;
+			this.id = id;
+		}
+
+		/**
+		 * search result constructor for a location whose matches were already counted
+		 * 
+		 * @param locations the dictionary used to resolve the location id
+		 * @param id        the location id of the result
+		 * @param count     the number of matches in the location
+		 */
+		SearchResult(LocationDictionary locations, int id, int count) {
+			this(locations, id);
+			update(count);
+		}
+
+		/**
+		 * search result constructor for a location scored by another ranking model
+		 * 
+		 * @param locations the dictionary used to resolve the location id
+		 * @param id        the location id of the result
+		 * @param count     the number of matches in the location
+		 * @param score     the score of the location
+		 */
+		SearchResult(LocationDictionary locations, int id, int count, double score) {
+			this(locations, id);
+			this.count = count;
+			this.score = score;
 		}
 
 		/**
 		 * updates the count and score of search result object
 		 * 
-		 * @param word the word to add
+		 * @param matches the number of new matches in this location
 		 */
-		private void update(String word) {
-			this.count += index.get(word).get(where).size();
-			this.score = this.count / (double) countMap.get(where);
+		void update(int matches) {
+			this.count += matches;
+			this.score = this.count / (double) locations.count(id);
 		}
 
 		/**
@@ -384,7 +587,16 @@ public class InvertedIndex {
 		 * @return location of result
 		 */
 		public String getWhere() {
-			return where;
+			return locations.get(id);
+		}
+
+		/**
+		 * grabs the location id for the search result
+		 * 
+		 * @return location id of result
+		 */
+		public int getId() {
+			return id;
 		}
 
 		/**
@@ -404,7 +616,7 @@ public class InvertedIndex {
 			// if equal in score
 			if (Double.compare(getScore(), o.score) == 0) {
 				if (Integer.compare(getCount(), o.count) == 0) {
-					return (getWhere()).compareToIgnoreCase((o.where));
+					return (getWhere()).compareToIgnoreCase((o.getWhere()));
 				}
 				return Integer.compare(o.count, getCount());
 			}
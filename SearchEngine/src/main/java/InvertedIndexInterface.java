@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interface for the read side of an inverted index, shared by the mutable index
+ * used while building and the compact frozen index used afterwards.
+ *
+ * @author sarah
+ *
+ */
+public interface InvertedIndexInterface {
+
+	/**
+	 * finds the number of stemmed words in the index
+	 *
+	 * @return number of words in index
+	 */
+	public int size();
+
+	/**
+	 * finds the number of files this word is found in index
+	 *
+	 * @param word the specific stem/word
+	 * @return # of paths stored for that word
+	 */
+	public int size(String word);
+
+	/**
+	 * finds the number of times the passed in word is in specific text file
+	 *
+	 * @param word     the stem word
+	 * @param location the specific text file
+	 * @return # of positions stored in that location
+	 */
+	public int size(String word, String location);
+
+	/**
+	 * finds if stem word is present in the inverted index
+	 *
+	 * @param stem the specific word being looked for
+	 * @return true if stem word is in index
+	 */
+	public boolean contains(String stem);
+
+	/**
+	 * finds if stem word is present in specified file
+	 *
+	 * @param word     the specific stem word
+	 * @param location the specific text file
+	 * @return true if word can be found in that file
+	 */
+	public boolean contains(String word, String location);
+
+	/**
+	 * finds if passed in word exists in the specified file at the specified
+	 * position
+	 *
+	 * @param word     stem
+	 * @param location file location
+	 * @param position location in file where word may be
+	 * @return if word exists in file in that location
+	 */
+	public boolean contains(String word, String location, int position);
+
+	/**
+	 * returns a number that increases every time the index changes in a way a
+	 * search could see, so that anything derived from a search (like cached
+	 * results) can tell when it is out of date
+	 *
+	 * @return the generation number
+	 */
+	public long generation();
+
+	/**
+	 * outputs the index to an output file in JSON format
+	 *
+	 * @param path output file path to write to
+	 * @throws IOException if encounter IO error
+	 */
+	public void toJson(Path path) throws IOException;
+
+	/**
+	 * grabs and returns all of the words in the index
+	 *
+	 * @return an unmodifiable sorted set of the words
+	 */
+	public Set<String> getWords();
+
+	/**
+	 * grabs and returns all of the locations/files for the specified word
+	 *
+	 * @param word the specified stem word
+	 * @return an unmodifiable sorted set of locations
+	 */
+	public Set<String> getLocations(String word);
+
+	/**
+	 * grabs and returns a set of positions for a specified word in a specified file
+	 *
+	 * @param word     the specified stem
+	 * @param location the filename
+	 * @return an unmodifiable sorted set of positions where the stem is found
+	 */
+	public Set<Integer> getPositions(String word, String location);
+
+	/**
+	 * grabs the number of appearances a word has in a particular file
+	 *
+	 * @param word the word to get count for
+	 * @param file the file in which to search for appearances of the word
+	 * @return count of appearances of word in file
+	 */
+	public int wordGetter(String word, String file);
+
+	/**
+	 * grabs how many words in a given file
+	 *
+	 * @param filename the file which to count the words
+	 * @return the number of words in the passed in file
+	 */
+	public int wordCountGetter(String filename);
+
+	/**
+	 * returns the word counts of every location as an unmodifiable sorted map
+	 *
+	 * @return the map of location to word count
+	 */
+	public Map<String, Integer> returnCountMap();
+
+	/**
+	 * a search convenience method that returns a list of search results for the
+	 * passed in queries
+	 *
+	 * @param words the queries
+	 * @param exact whether its exact or partial search
+	 * @return a list of search results
+	 */
+	public default List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact) {
+		if (exact) {
+			return exactSearch(words);
+		} else {
+			return partialSearch(words);
+		}
+	}
+
+	/**
+	 * a search convenience method that only returns the best results, in the same
+	 * order as the full search. by default the full search is sorted and cut
+	 * short, but indexes can override this to avoid sorting every result
+	 *
+	 * @param words the queries
+	 * @param exact whether its exact or partial search
+	 * @param limit the most results to return, or 0 (or less) for all of them
+	 * @return a list of at most limit search results
+	 */
+	public default List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit) {
+		List<InvertedIndex.SearchResult> results = search(words, exact);
+		if (limit > 0 && results.size() > limit) {
+			return new ArrayList<>(results.subList(0, limit));
+		}
+		return results;
+	}
+
+	/**
+	 * a search convenience method that ranks the results with the given model
+	 *
+	 * @param words   the queries
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @return a list of at most limit search results
+	 */
+	public List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit, Ranking ranking);
+
+	/**
+	 * a search convenience method for a parsed query line, which may have
+	 * wildcards, phrases and operators as well as words
+	 *
+	 * @param query   the parsed query line
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @return a list of at most limit search results
+	 */
+	public List<InvertedIndex.SearchResult> search(SearchQuery query, boolean exact, int limit, Ranking ranking);
+
+	/**
+	 * performs a typo-tolerant search, matching every word within an edit
+	 * distance of a query word
+	 *
+	 * @param words    the already parsed words from a single line of the query file
+	 * @param distance the most edits a match may be away from a query word
+	 * @param limit    the most results to return, or 0 (or less) for all of them
+	 * @param ranking  how to score the results
+	 * @return a sorted list of at most limit search results
+	 */
+	public List<InvertedIndex.SearchResult> fuzzySearch(Set<String> words, int distance, int limit, Ranking ranking);
+
+	/**
+	 * performs an exact search from a given set of words
+	 *
+	 * @param words the already parsed words from a single line of the query file
+	 * @return a sorted list of EXACT search results
+	 */
+	public List<InvertedIndex.SearchResult> exactSearch(Set<String> words);
+
+	/**
+	 * performs a partial search for a given set of words (if word is a prefix of a
+	 * key)
+	 *
+	 * @param words the already parsed words from a single line of the query file
+	 * @return a sorted list of PARTIAL search results
+	 */
+	public List<InvertedIndex.SearchResult> partialSearch(Set<String> words);
+}
@@ -0,0 +1,110 @@
+/**
+ * An automaton that accepts the words within an edit distance of a word, where
+ * each insertion, deletion, or substitution of a character is one edit.
+ *
+ * A state is a row of the edit distance table: how many edits it takes to turn
+ * each prefix of the word into the characters read so far, capped at one more
+ * than the distance. Reading a character computes the next row from the last
+ * one, so walking the automaton along the edges of a {@link TermTrie} shares
+ * the work for every word with the same prefix, and a state where every entry
+ * is past the distance means nothing under that prefix can match.
+ *
+ * States are arrays of {@link #width()} integers owned by the caller, so
+ * walking the automaton does not allocate.
+ *
+ * @author sarah
+ */
+public class LevenshteinAutomaton {
+
+	/** The largest distance worth searching; beyond it nearly everything matches. */
+	public static final int MAX_DISTANCE = 2;
+
+	/** The word to match. */
+	private final String word;
+
+	/** The most edits a match may be away from the word. */
+	private final int distance;
+
+	/**
+	 * Initializes an automaton.
+	 *
+	 * @param word     the word to match
+	 * @param distance the most edits a match may be away from the word
+	 */
+	public LevenshteinAutomaton(String word, int distance) {
+		this.word = word;
+		this.distance = Math.max(0, distance);
+	}
+
+	/**
+	 * Returns the number of entries in a state.
+	 *
+	 * @return the length of the word plus one
+	 */
+	public int width() {
+		return word.length() + 1;
+	}
+
+	/**
+	 * Returns the most edits a match may be away from the word.
+	 *
+	 * @return the distance
+	 */
+	public int distance() {
+		return distance;
+	}
+
+	/**
+	 * Fills in the state before any character is read.
+	 *
+	 * @param state the state to fill in
+	 */
+	public void start(int[] state) {
+		for (int i = 0; i < width(); i++) {
+			state[i] = Math.min(i, distance + 1);
+		}
+	}
+
+	/**
+	 * Fills in the state after reading a character.
+	 *
+	 * @param state the current state
+	 * @param c     the character to read
+	 * @param next  the state to fill in
+	 */
+	public void step(int[] state, char c, int[] next) {
+		int cap = distance + 1;
+		next[0] = Math.min(state[0] + 1, cap);
+		for (int i = 1; i < width(); i++) {
+			int substitute = state[i - 1] + (word.charAt(i - 1) == c ? 0 : 1);
+			int edits = Math.min(substitute, Math.min(next[i - 1], state[i]) + 1);
+			next[i] = Math.min(edits, cap);
+		}
+	}
+
+	/**
+	 * Determines whether reading more characters could still lead to a match.
+	 *
+	 * @param state the current state
+	 * @return true if some entry is within the distance
+	 */
+	public boolean canMatch(int[] state) {
+		for (int i = 0; i < width(); i++) {
+			if (state[i] <= distance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns how many edits the characters read so far are away from the word.
+	 *
+	 * @param state the current state
+	 * @return the number of edits, or -1 if more than the distance
+	 */
+	public int edits(int[] state) {
+		int edits = state[word.length()];
+		return edits <= distance ? edits : -1;
+	}
+}
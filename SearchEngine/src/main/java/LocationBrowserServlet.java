@@ -37,7 +37,7 @@ public class LocationBrowserServlet extends HttpServlet {
 	private final String htmlTemplate;
 
 	/** index to use **/
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndexInterface index;
 
 	/** The thread-safe data structure to use for the locations and their counts */
 	private final List<String> locations;
@@ -46,10 +46,10 @@ public class LocationBrowserServlet extends HttpServlet {
 	 * Initializes this servlet to be a web page displaying the locations of the
 	 * index
 	 * 
-	 * @param index the index to use/search
+	 * @param index the thread-safe index to use/search
 	 * @throws IOException if unable to read template
 	 */
-	public LocationBrowserServlet(ThreadSafeInvertedIndex index) throws IOException {
+	public LocationBrowserServlet(InvertedIndexInterface index) throws IOException {
 		super();
 		htmlTemplate = Files.readString(Path.of("html", "locations.html"), StandardCharsets.UTF_8);
 		this.index = index;
@@ -0,0 +1,182 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns each location (a file path or crawled URL) a dense integer id the
+ * first time it is added to an index, and stores the word count of every
+ * location in a flat array indexed by that id. Postings and search results
+ * refer to locations by id, and the location strings are only resolved again
+ * when output is written.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author sarah
+ */
+public class LocationDictionary {
+
+	/** The initial capacity of the location and count arrays. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The location for each id. */
+	private String[] locations;
+
+	/** The word count for each id. */
+	private int[] counts;
+
+	/** The id assigned to each location. */
+	private final HashMap<String, Integer> ids;
+
+	/** The number of ids assigned so far. */
+	private int size;
+
+	/**
+	 * The id of each location when sorted by location, or null if not calculated
+	 * since the last location was added.
+	 */
+	private int[] sorted;
+
+	/**
+	 * Initializes an empty location dictionary.
+	 */
+	public LocationDictionary() {
+		this.locations = new String[INITIAL_CAPACITY];
+		this.counts = new int[INITIAL_CAPACITY];
+		this.ids = new HashMap<>();
+		this.size = 0;
+		this.sorted = null;
+	}
+
+	/**
+	 * Returns the id for the location, assigning the next available id if the
+	 * location has not been seen before.
+	 *
+	 * @param location the location to add
+	 * @return the id of the location
+	 */
+	public int add(String location) {
+		Integer id = ids.get(location);
+		if (id != null) {
+			return id;
+		}
+
+		if (size == locations.length) {
+			locations = Arrays.copyOf(locations, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+
+		locations[size] = location;
+		ids.put(location, size);
+		sorted = null;
+		return size++;
+	}
+
+	/**
+	 * Returns the id for the location without assigning one.
+	 *
+	 * @param location the location to look up
+	 * @return the id of the location, or -1 if the location has not been added
+	 */
+	public int lookup(String location) {
+		return ids.getOrDefault(location, -1);
+	}
+
+	/**
+	 * Returns the location for an id.
+	 *
+	 * @param id the id to resolve
+	 * @return the location with that id
+	 */
+	public String get(int id) {
+		return locations[id];
+	}
+
+	/**
+	 * Returns the word count stored for an id.
+	 *
+	 * @param id the id of the location
+	 * @return the number of words in that location
+	 */
+	public int count(int id) {
+		return counts[id];
+	}
+
+	/**
+	 * Raises the word count stored for an id if the new count is larger.
+	 *
+	 * @param id    the id of the location
+	 * @param count the word count to record
+	 */
+	public void updateCount(int id, int count) {
+		counts[id] = Math.max(counts[id], count);
+	}
+
+	/**
+	 * Returns the number of ids assigned.
+	 *
+	 * @return the number of locations
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the ids of all locations in sorted location order. The order is
+	 * cached until another location is added.
+	 *
+	 * @return the ids sorted by location (do not modify)
+	 */
+	public int[] sortedIds() {
+		if (sorted == null) {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> locations[a].compareTo(locations[b]));
+
+			int[] result = new int[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = order[i];
+			}
+			sorted = result;
+		}
+		return sorted;
+	}
+
+	/**
+	 * Returns the rank of each id in sorted location order, such that comparing
+	 * ranks is the same as comparing the locations themselves.
+	 *
+	 * @return an array indexed by id of sorted ranks
+	 */
+	public int[] ranks() {
+		int[] order = sortedIds();
+		int[] ranks = new int[size];
+		for (int i = 0; i < order.length; i++) {
+			ranks[order[i]] = i;
+		}
+		return ranks;
+	}
+
+	/**
+	 * Returns a sorted map of every location to its word count. The strings are
+	 * resolved when this method is called, so it is meant for writing output.
+	 *
+	 * @return an unmodifiable map of location to word count
+	 */
+	public Map<String, Integer> asCountMap() {
+		TreeMap<String, Integer> map = new TreeMap<>();
+		for (int i = 0; i < size; i++) {
+			map.put(locations[i], counts[i]);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	@Override
+	public String toString() {
+		return asCountMap().toString();
+	}
+}
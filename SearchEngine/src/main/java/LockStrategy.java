@@ -0,0 +1,48 @@
+/**
+ * The locking strategies the thread-safe index can use.
+ *
+ * @author sarah
+ */
+public enum LockStrategy {
+
+	/** The original read/write lock, with no fairness policy. */
+	SIMPLE,
+
+	/** A read/write lock that makes new readers wait behind waiting writers. */
+	FAIR,
+
+	/** A lock that lets short reads run optimistically without locking. */
+	OPTIMISTIC;
+
+	/**
+	 * Creates a new lock using this strategy.
+	 *
+	 * @return the new lock
+	 */
+	public ReadWriteLockInterface create() {
+		switch (this) {
+			case FAIR:
+				return new FairReadWriteLock();
+			case OPTIMISTIC:
+				return new OptimisticReadWriteLock();
+			default:
+				return new ReadWriteLock();
+		}
+	}
+
+	/**
+	 * Finds the strategy with the given name, ignoring case.
+	 *
+	 * @param name         the name of the strategy
+	 * @param defaultValue the strategy to use if the name is missing or unknown
+	 * @return the matching strategy, or the default
+	 */
+	public static LockStrategy parse(String name, LockStrategy defaultValue) {
+		for (LockStrategy strategy : values()) {
+			if (strategy.name().equalsIgnoreCase(name)) {
+				return strategy;
+			}
+		}
+		return defaultValue;
+	}
+}
@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Keeps postings off the heap in a memory-mapped index file, and decodes them
+ * directly from the mapped buffers. The operating system pages the file in and
+ * out as needed, so the postings can be much larger than the heap.
+ *
+ * The postings are laid out in the file as written by
+ * {@link IndexFile#save(FrozenIndex, Path)}: the location ids and frequencies
+ * as ints, the position offsets as longs, the encoded positions, then the skip
+ * table: the first skip entry of each posting and the skipped positions as
+ * ints, and their byte offsets as longs.
+ *
+ * @author sarah
+ */
+public class MappedPostingStore implements PostingStore {
+
+	/** The number of postings. */
+	private final int size;
+
+	/** The location id of each posting. */
+	private final Section ids;
+
+	/** The number of positions in each posting. */
+	private final Section frequencies;
+
+	/** The first encoded byte of each posting, plus the total number of bytes. */
+	private final Section positionOffsets;
+
+	/** The variable-byte encoded positions of every posting. */
+	private final Section positions;
+
+	/** The first skip entry of each posting, plus the total number of entries. */
+	private final Section skipStarts;
+
+	/** The position of each skip entry. */
+	private final Section skipPositions;
+
+	/** The byte offset just after the encoded position of each skip entry. */
+	private final Section skipOffsets;
+
+	/**
+	 * Maps the postings of an index file.
+	 *
+	 * @param channel the open index file
+	 * @param start   the position of the first posting in the file
+	 * @param size    the number of postings
+	 * @param bytes   the number of encoded position bytes
+	 * @param skips   the number of skip entries
+	 * @throws IOException if unable to map the file
+	 */
+	public MappedPostingStore(FileChannel channel, long start, int size, long bytes, int skips) throws IOException {
+		this.size = size;
+		long offset = start;
+		this.ids = new Section(channel, offset, (long) Integer.BYTES * size);
+		offset += (long) Integer.BYTES * size;
+		this.frequencies = new Section(channel, offset, (long) Integer.BYTES * size);
+		offset += (long) Integer.BYTES * size;
+		this.positionOffsets = new Section(channel, offset, Long.BYTES * (size + 1L));
+		offset += Long.BYTES * (size + 1L);
+		this.positions = new Section(channel, offset, bytes);
+		offset += bytes;
+		this.skipStarts = new Section(channel, offset, Integer.BYTES * (size + 1L));
+		offset += Integer.BYTES * (size + 1L);
+		this.skipPositions = new Section(channel, offset, (long) Integer.BYTES * skips);
+		offset += (long) Integer.BYTES * skips;
+		this.skipOffsets = new Section(channel, offset, (long) Long.BYTES * skips);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int id(int posting) {
+		return ids.getInt((long) Integer.BYTES * posting);
+	}
+
+	@Override
+	public int frequency(int posting) {
+		return frequencies.getInt((long) Integer.BYTES * posting);
+	}
+
+	@Override
+	public long positionOffset(int posting) {
+		return positionOffsets.getLong((long) Long.BYTES * posting);
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt positions(int posting) {
+		return iterator(positionOffset(posting), positionOffset(posting + 1), 0);
+	}
+
+	@Override
+	public int skipStart(int posting) {
+		return skipStarts.getInt((long) Integer.BYTES * posting);
+	}
+
+	@Override
+	public int skipPosition(int skip) {
+		return skipPositions.getInt((long) Integer.BYTES * skip);
+	}
+
+	@Override
+	public long skipOffset(int skip) {
+		return skipOffsets.getLong((long) Long.BYTES * skip);
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt positions(int posting, int skip) {
+		return iterator(skipOffset(skip), positionOffset(posting + 1), skipPosition(skip));
+	}
+
+	@Override
+	public void copyPositions(long offset, byte[] destination, int start, int length) {
+		for (int i = 0; i < length; i++) {
+			destination[start + i] = positions.get(offset + i);
+		}
+	}
+
+	/**
+	 * Returns an iterator that decodes position deltas straight from the mapped
+	 * positions.
+	 *
+	 * @param start the first byte of the encoded deltas
+	 * @param end   the byte after the last encoded delta
+	 * @param base  the position the first delta is relative to
+	 * @return an iterator over the decoded positions
+	 */
+	private PrimitiveIterator.OfInt iterator(long start, long end, int base) {
+		return new PrimitiveIterator.OfInt() {
+			private long offset = start;
+			private int current = base;
+
+			@Override
+			public boolean hasNext() {
+				return offset < end;
+			}
+
+			@Override
+			public int nextInt() {
+				if (offset >= end) {
+					throw new NoSuchElementException();
+				}
+
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = positions.get(offset++);
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				current += delta;
+				return current;
+			}
+		};
+	}
+
+	/**
+	 * A section of the file mapped as a series of chunks, since a single mapped
+	 * buffer cannot be larger than 2 GB. The chunk size is a multiple of 8, so an
+	 * aligned int or long never spans two chunks.
+	 */
+	private static class Section {
+
+		/** The number of bits addressed within a chunk. */
+		private static final int SHIFT = 30;
+
+		/** The mask for the offset within a chunk. */
+		private static final long MASK = (1L << SHIFT) - 1;
+
+		/** The mapped chunks. */
+		private final MappedByteBuffer[] chunks;
+
+		/**
+		 * Maps a section of a file as read-only.
+		 *
+		 * @param channel the open file
+		 * @param start   the position of the section in the file
+		 * @param length  the length of the section in bytes
+		 * @throws IOException if unable to map the file
+		 */
+		public Section(FileChannel channel, long start, long length) throws IOException {
+			chunks = new MappedByteBuffer[(int) ((length + MASK) >>> SHIFT)];
+			for (int i = 0; i < chunks.length; i++) {
+				long offset = (long) i << SHIFT;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start + offset,
+						Math.min(MASK + 1, length - offset));
+			}
+		}
+
+		/**
+		 * Returns the byte at an offset.
+		 *
+		 * @param offset the offset within the section
+		 * @return the byte
+		 */
+		public byte get(long offset) {
+			return chunks[(int) (offset >>> SHIFT)].get((int) (offset & MASK));
+		}
+
+		/**
+		 * Returns the int at an offset.
+		 *
+		 * @param offset the offset within the section, which must be a multiple of 4
+		 * @return the int
+		 */
+		public int getInt(long offset) {
+			return chunks[(int) (offset >>> SHIFT)].getInt((int) (offset & MASK));
+		}
+
+		/**
+		 * Returns the long at an offset.
+		 *
+		 * @param offset the offset within the section, which must be a multiple of 8
+		 * @return the long
+		 */
+		public long getLong(long offset) {
+			return chunks[(int) (offset >>> SHIFT)].getLong((int) (offset & MASK));
+		}
+	}
+}
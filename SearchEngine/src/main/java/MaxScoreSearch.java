@@ -0,0 +1,424 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A document-at-a-time top-k search over a frozen index that uses MaxScore
+ * pruning to skip locations that cannot make it into the results. The score of
+ * a location is the sum of what each matched word contributes, so the highest
+ * contribution of each word over all of its locations (see
+ * {@link FrozenIndex#scoreBound(int, Ranking)}) bounds the score of any location it can
+ * add to.
+ *
+ * The words are sorted by their bounds. Once the heap of best results is full,
+ * the words with the smallest bounds whose bounds add up to less than the worst
+ * kept score are non-essential: a location only found in those words cannot get
+ * in, so the search only walks the postings of the essential words and looks up
+ * each candidate in the non-essential words, giving up on it as soon as its best
+ * possible score falls short. As the kept scores improve, more words become
+ * non-essential, so a common word that matches most locations is mostly skipped
+ * over by binary search instead of being scored.
+ *
+ * Results are always exactly the same as the best k of the exhaustive search,
+ * including ties.
+ *
+ * Warning: This class is not thread-safe, but each search creates its own.
+ *
+ * @author sarah
+ */
+public class MaxScoreSearch {
+
+	/**
+	 * How much a bound has to fall short of the threshold before it is trusted,
+	 * since the bounds are summed in a different order than the scores.
+	 */
+	private static final double SLACK = 1e-9;
+
+	/** The most words worth pruning, past which keeping cursors costs too much. */
+	public static final int MAX_WORDS = 16;
+
+	/** The index to search. */
+	private final FrozenIndex index;
+
+	/** The ids of deleted locations to skip, or null if none. */
+	private final BitSet deleted;
+
+	/** How to score the results. */
+	private final Ranking ranking;
+
+	/** The norm of each location in the ranking model. */
+	private final double[] norms;
+
+	/** The weight of the word of each cursor in the ranking model. */
+	private final double[] weights;
+
+	/** What each word adds to the current candidate, in query order. */
+	private final double[] parts;
+
+	/** The position of each cursor in the query, used to break ties. */
+	private final int[] origins;
+
+	/** The current posting of each cursor. */
+	private final int[] positions;
+
+	/** The posting after the last posting of each cursor. */
+	private final int[] ends;
+
+	/** The location id each cursor is at, or {@link Integer#MAX_VALUE} at the end. */
+	private final int[] ids;
+
+	/** The sum of the bounds of each cursor and every cursor before it. */
+	private final double[] sums;
+
+	/** The essential cursors with postings left, as a min-heap by location id. */
+	private final int[] heap;
+
+	/** The number of cursors in the heap. */
+	private int heapSize;
+
+	/** The number of non-essential cursors, which are the first ones. */
+	private int nonEssential;
+
+	/** The last location the current blocks are known to be worth scoring up to. */
+	private int checkedUntil;
+
+	/** The threshold the current blocks were checked against. */
+	private double checkedThreshold;
+
+	/**
+	 * Initializes a search.
+	 *
+	 * @param index   the index to search
+	 * @param terms   the indices of the words to search for, in query order (a
+	 *                word listed twice counts twice, like in the full search)
+	 * @param ranking how to score the results
+	 * @param deleted the ids of deleted locations to skip, or null if none
+	 */
+	private MaxScoreSearch(FrozenIndex index, int[] terms, Ranking ranking, BitSet deleted) {
+		this.index = index;
+		this.deleted = deleted;
+		this.ranking = ranking;
+		this.norms = index.statistics().norms(ranking);
+
+		int size = terms.length;
+		double[] bounds = new double[size];
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			bounds[i] = index.scoreBound(terms[i], ranking);
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(bounds[a], bounds[b]));
+
+		this.origins = new int[size];
+		this.positions = new int[size];
+		this.ends = new int[size];
+		this.ids = new int[size];
+		this.sums = new double[size];
+		this.heap = new int[size];
+		this.weights = new double[size];
+		this.parts = new double[size];
+
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			int term = terms[order[i]];
+			origins[i] = order[i];
+			weights[i] = index.weight(term, ranking);
+			ends[i] = index.end(term);
+			move(i, index.start(term));
+			sum += bounds[order[i]];
+			sums[i] = sum;
+		}
+
+		this.nonEssential = 0;
+		this.checkedUntil = -1;
+		this.checkedThreshold = Double.NEGATIVE_INFINITY;
+		rebuild();
+	}
+
+	/**
+	 * Finds the best locations for a list of words.
+	 *
+	 * @param index   the index to search
+	 * @param terms   the indices of the words to search for, in query order (a
+	 *                word listed twice counts twice, like in the full search)
+	 * @param limit   the most results to return
+	 * @param ranking how to score the results
+	 * @param deleted the ids of deleted locations to skip, or null if none
+	 * @return a sorted list of at most limit search results
+	 */
+	public static List<InvertedIndex.SearchResult> search(FrozenIndex index, int[] terms, int limit,
+			Ranking ranking, BitSet deleted) {
+		return new MaxScoreSearch(index, terms, ranking, deleted).run(limit);
+	}
+
+	/**
+	 * Determines whether pruning is likely to pay off for a list of words. The
+	 * words holding most of the postings can only be skipped once the best
+	 * results score more than they can add, which needs another word whose bound
+	 * is higher than all of theirs put together. Otherwise nearly every posting
+	 * gets scored anyway, and counting every posting is faster.
+	 *
+	 * @param index   the index to search
+	 * @param terms   the indices of the words to search for
+	 * @param ranking how the results will be scored
+	 * @return true if the words should be searched with pruning
+	 */
+	public static boolean isWorthwhile(FrozenIndex index, int[] terms, Ranking ranking) {
+		if (terms.length < 2 || terms.length > MAX_WORDS) {
+			return false;
+		}
+
+		int longest = 0;
+		for (int term : terms) {
+			longest = Math.max(longest, index.end(term) - index.start(term));
+		}
+
+		// the long lists are the ones with at least half as many postings as the longest
+		double expensive = 0;
+		double cheap = 0;
+		for (int term : terms) {
+			if (2 * (index.end(term) - index.start(term)) >= longest) {
+				expensive += index.scoreBound(term, ranking);
+			} else {
+				cheap = Math.max(cheap, index.scoreBound(term, ranking));
+			}
+		}
+		return expensive < cheap;
+	}
+
+	/**
+	 * Walks the essential postings in location order, scoring each candidate.
+	 *
+	 * @param limit the most results to return
+	 * @return a sorted list of at most limit search results
+	 */
+	private List<InvertedIndex.SearchResult> run(int limit) {
+		LocationDictionary locations = index.locations();
+		TopKHeap results = new TopKHeap(limit, locations);
+		double threshold = results.threshold();
+		boolean counting = ranking == Ranking.COUNT;
+
+		while (heapSize > 0) {
+			int id = ids[heap[0]];
+			if (skipBlocks(id, threshold)) {
+				continue;
+			}
+
+			int count = 0;
+			double partial = 0;
+			int origin = Integer.MAX_VALUE;
+			Arrays.fill(parts, 0);
+
+			// every essential cursor at this location moves past it
+			do {
+				int cursor = heap[0];
+				int frequency = index.frequency(positions[cursor]);
+				count += frequency;
+				if (!counting) {
+					partial += part(cursor, frequency, id);
+				}
+				origin = Math.min(origin, origins[cursor]);
+				move(cursor, positions[cursor] + 1);
+				if (ids[cursor] == Integer.MAX_VALUE) {
+					heap[0] = heap[--heapSize];
+				}
+				siftDown(0);
+			} while (heapSize > 0 && ids[heap[0]] == id);
+
+			if (deleted != null && deleted.get(id)) {
+				continue;
+			}
+
+			double words = locations.count(id);
+			boolean skipped = false;
+			for (int cursor = nonEssential - 1; cursor >= 0; cursor--) {
+				if (!possible((counting ? count / words : partial) + sums[cursor], threshold)) {
+					skipped = true;
+					break;
+				}
+				if (advance(cursor, id)) {
+					int frequency = index.frequency(positions[cursor]);
+					count += frequency;
+					if (!counting) {
+						partial += part(cursor, frequency, id);
+					}
+					origin = Math.min(origin, origins[cursor]);
+					move(cursor, positions[cursor] + 1);
+				}
+			}
+			if (skipped) {
+				continue;
+			}
+
+			// the full search ranks ties in the order it first matched them
+			long order = (long) origin * locations.size() + id;
+			if (results.offer(id, count, counting ? count / words : total(), order)) {
+				threshold = results.threshold();
+				int before = nonEssential;
+				while (nonEssential < sums.length && !possible(sums[nonEssential], threshold)) {
+					nonEssential++;
+				}
+				if (nonEssential > before) {
+					rebuild();
+				}
+			}
+		}
+		return results.toList();
+	}
+
+	/**
+	 * Scores a match of the current candidate, remembering the part it adds.
+	 *
+	 * @param cursor    the cursor of the word that matched
+	 * @param frequency the number of times the word is found in the location
+	 * @param id        the location id
+	 * @return the score the match adds
+	 */
+	private double part(int cursor, int frequency, int id) {
+		double part = ranking.score(weights[cursor], frequency, norms[id]);
+		parts[origins[cursor]] = part;
+		return part;
+	}
+
+	/**
+	 * Adds up the parts of the current candidate in query order, which is the
+	 * order the full search adds them up in, so the scores are exactly the same.
+	 *
+	 * @return the score of the current candidate
+	 */
+	private double total() {
+		double score = 0;
+		for (double part : parts) {
+			score += part;
+		}
+		return score;
+	}
+
+	/**
+	 * Determines whether a location with at most the given score could still be
+	 * among the best results.
+	 *
+	 * @param bound     the highest score the location could have
+	 * @param threshold the score to beat
+	 * @return false if the location can safely be skipped
+	 */
+	private static boolean possible(double bound, double threshold) {
+		return bound * (1 + SLACK) >= threshold;
+	}
+
+	/**
+	 * Skips ahead if no location in the current blocks of the essential cursors
+	 * can make it into the results. Until the first of those blocks ends, a
+	 * location can only get the bound of the block each essential cursor is in,
+	 * plus the bounds of the non-essential words.
+	 *
+	 * @param id        the lowest location id of the essential cursors
+	 * @param threshold the score to beat
+	 * @return true if the cursors were moved past the blocks
+	 */
+	private boolean skipBlocks(int id, double threshold) {
+		// the cursors stay in the same blocks until the first block ends
+		if (id <= checkedUntil && threshold == checkedThreshold) {
+			return false;
+		}
+
+		double bound = nonEssential > 0 ? sums[nonEssential - 1] : 0;
+		int last = Integer.MAX_VALUE;
+		for (int i = 0; i < heapSize; i++) {
+			int cursor = heap[i];
+			int position = positions[cursor];
+			bound += weights[cursor] * index.blockBound(position, ranking);
+			int blockEnd = Math.min(ends[cursor],
+					position - position % FrozenIndex.BLOCK_SIZE + FrozenIndex.BLOCK_SIZE);
+			last = Math.min(last, index.id(blockEnd - 1));
+		}
+
+		if (possible(bound, threshold)) {
+			checkedUntil = last;
+			checkedThreshold = threshold;
+			return false;
+		}
+
+		// every essential cursor moves past the last location of the first block to end
+		for (int i = 0; i < heapSize; i++) {
+			int cursor = heap[i];
+			if (ids[cursor] <= last) {
+				advance(cursor, last + 1);
+			}
+		}
+		rebuild();
+		return true;
+	}
+
+	/**
+	 * Moves a cursor to a posting.
+	 *
+	 * @param cursor   the cursor to move
+	 * @param position the posting, which may be the end
+	 */
+	private void move(int cursor, int position) {
+		positions[cursor] = position;
+		ids[cursor] = position < ends[cursor] ? index.id(position) : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Moves a cursor to the first posting at or after a location.
+	 *
+	 * @param cursor the cursor to move
+	 * @param id     the location id
+	 * @return true if the cursor is now at the location
+	 */
+	private boolean advance(int cursor, int id) {
+		if (ids[cursor] < id) {
+			int position = index.postings().find(positions[cursor], ends[cursor], id);
+			move(cursor, position < 0 ? -(position + 1) : position);
+		}
+		return ids[cursor] == id;
+	}
+
+	/**
+	 * Rebuilds the heap from the essential cursors with postings left. Cursors
+	 * that became non-essential are moved by lookups from now on, so they cannot
+	 * stay in the heap.
+	 */
+	private void rebuild() {
+		heapSize = 0;
+		for (int cursor = nonEssential; cursor < ids.length; cursor++) {
+			if (ids[cursor] != Integer.MAX_VALUE) {
+				heap[heapSize++] = cursor;
+			}
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Moves a cursor in the heap down until its children are at higher locations.
+	 *
+	 * @param slot the heap index of the cursor
+	 */
+	private void siftDown(int slot) {
+		if (heapSize == 0) {
+			return;
+		}
+
+		int cursor = heap[slot];
+		int id = ids[cursor];
+		while (true) {
+			int child = 2 * slot + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && ids[heap[child + 1]] < ids[heap[child]]) {
+				child++;
+			}
+			if (ids[heap[child]] >= id) {
+				break;
+			}
+			heap[slot] = heap[child];
+			slot = child;
+		}
+		heap[slot] = cursor;
+	}
+}
@@ -0,0 +1,86 @@
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A read/write lock backed by a {@link StampedLock}, which also supports
+ * optimistic reads. Optimistic reads never block writers, which makes them a
+ * good fit for very short reads like checking whether a word is in the index.
+ *
+ * The locks are not reentrant, and unlike {@link ReadWriteLock} the write lock
+ * does not check which thread releases it.
+ *
+ * @author sarah
+ */
+public class OptimisticReadWriteLock implements ReadWriteLockInterface {
+
+	/** The underlying stamped lock. */
+	private final StampedLock lock;
+
+	/** The lock used for reading. */
+	private final SimpleLock readerLock;
+
+	/** The lock used for writing. */
+	private final SimpleLock writerLock;
+
+	/**
+	 * Initializes a new optimistic read/write lock.
+	 */
+	public OptimisticReadWriteLock() {
+		lock = new StampedLock();
+		readerLock = new StampedView(lock.asReadLock());
+		writerLock = new StampedView(lock.asWriteLock());
+	}
+
+	@Override
+	public SimpleLock readLock() {
+		return readerLock;
+	}
+
+	@Override
+	public SimpleLock writeLock() {
+		return writerLock;
+	}
+
+	@Override
+	public long tryOptimisticRead() {
+		return lock.tryOptimisticRead();
+	}
+
+	@Override
+	public boolean validate(long stamp) {
+		return stamp != 0 && lock.validate(stamp);
+	}
+
+	/**
+	 * Adapts one of the lock views of the stamped lock.
+	 */
+	private static class StampedView implements SimpleLock {
+
+		/** The view being adapted. */
+		private final Lock view;
+
+		/**
+		 * Initializes this adapter.
+		 *
+		 * @param view the view to adapt
+		 */
+		public StampedView(Lock view) {
+			this.view = view;
+		}
+
+		@Override
+		public void lock() {
+			view.lock();
+		}
+
+		/**
+		 * Releases the lock.
+		 *
+		 * @throws IllegalMonitorStateException if the lock is not held
+		 */
+		@Override
+		public void unlock() throws IllegalMonitorStateException {
+			view.unlock();
+		}
+	}
+}
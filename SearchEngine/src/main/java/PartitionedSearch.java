@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits one expensive search of a frozen index, like a partial search for a
+ * single letter, across the threads of the common {@link ForkJoinPool}. The
+ * location ids are cut into ranges of about the same size, and every posting
+ * list is sorted by location id, so each partition binary searches every list
+ * for its own range and scores only those postings, into the accumulator of
+ * the thread running it.
+ *
+ * A location is only ever scored by one partition, adding the matches of each
+ * word in the same order as a search on one thread, so every partition finds
+ * exactly the scores the full search would have. Each partition sorts its own
+ * results (keeping only the best limit of them), and the sorted lists are
+ * merged k ways into the final ranking, taking ties from the partition with the
+ * smaller ids first.
+ *
+ * Splitting only pays off once there are enough postings to keep every thread
+ * busy for longer than it takes to hand out the work, see
+ * {@link #isWorthwhile(FrozenIndex, int[])}.
+ *
+ * @author sarah
+ */
+public class PartitionedSearch {
+
+	/** The default number of partitions, one for each processor. */
+	public static final int DEFAULT_PARTITIONS = Runtime.getRuntime().availableProcessors();
+
+	/** The fewest postings worth splitting a search over. */
+	public static final int MIN_POSTINGS = 1 << 16;
+
+	/** Prevents instantiating this class. */
+	private PartitionedSearch() {
+	}
+
+	/**
+	 * Determines whether the words have enough postings to be worth splitting.
+	 *
+	 * @param index the index to search
+	 * @param terms the indices of the words to search for
+	 * @return true if the search should be split into partitions
+	 */
+	public static boolean isWorthwhile(FrozenIndex index, int[] terms) {
+		long postings = 0;
+		for (int term : terms) {
+			postings += index.end(term) - index.start(term);
+		}
+		return postings >= MIN_POSTINGS;
+	}
+
+	/**
+	 * Scores every posting of the words in parallel, one range of location ids
+	 * per partition, and merges the results of the partitions.
+	 *
+	 * @param index      the index to search
+	 * @param terms      the indices of the words to search for, in query order
+	 * @param limit      the most results to return, or 0 (or less) for all of them
+	 * @param ranking    how to score the results
+	 * @param deleted    the ids of deleted locations to skip, or null if none
+	 * @param partitions the number of ranges to split the locations into
+	 * @return a sorted list of at most limit search results
+	 */
+	public static List<InvertedIndex.SearchResult> search(FrozenIndex index, int[] terms, int limit,
+			Ranking ranking, BitSet deleted, int partitions) {
+		int size = index.locations().size();
+		int count = Math.max(1, Math.min(partitions, size));
+
+		List<Partition> tasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int first = (int) ((long) size * i / count);
+			int last = (int) ((long) size * (i + 1) / count);
+			tasks.add(new Partition(index, terms, limit, ranking, deleted, first, last));
+		}
+
+		for (Partition task : tasks) {
+			ForkJoinPool.commonPool().execute(task);
+		}
+
+		List<List<InvertedIndex.SearchResult>> lists = new ArrayList<>(count);
+		for (Partition task : tasks) {
+			lists.add(task.join());
+		}
+		return merge(lists, limit);
+	}
+
+	/**
+	 * Merges sorted lists of results into one sorted list.
+	 *
+	 * @param lists the sorted results of each partition, in id order
+	 * @param limit the most results to return, or 0 (or less) for all of them
+	 * @return the merged results
+	 */
+	private static List<InvertedIndex.SearchResult> merge(List<List<InvertedIndex.SearchResult>> lists,
+			int limit) {
+		int total = 0;
+		for (List<InvertedIndex.SearchResult> list : lists) {
+			total += list.size();
+		}
+		if (limit > 0) {
+			total = Math.min(total, limit);
+		}
+
+		// the lists are ordered by the next result of each, then by partition
+		int[] cursors = new int[lists.size()];
+		PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, lists.size()), (a, b) -> {
+			int compared = lists.get(a).get(cursors[a]).compareTo(lists.get(b).get(cursors[b]));
+			return compared != 0 ? compared : Integer.compare(a, b);
+		});
+		for (int i = 0; i < lists.size(); i++) {
+			if (!lists.get(i).isEmpty()) {
+				heads.add(i);
+			}
+		}
+
+		List<InvertedIndex.SearchResult> merged = new ArrayList<>(total);
+		while (merged.size() < total) {
+			int list = heads.poll();
+			merged.add(lists.get(list).get(cursors[list]++));
+			if (cursors[list] < lists.get(list).size()) {
+				heads.add(list);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * The search of one range of location ids.
+	 */
+	private static class Partition extends RecursiveTask<List<InvertedIndex.SearchResult>> {
+
+		/** Only needed since tasks are serializable. */
+		private static final long serialVersionUID = 1L;
+
+		/** The index to search. */
+		private final FrozenIndex index;
+
+		/** The indices of the words to search for, in query order. */
+		private final int[] terms;
+
+		/** The most results to return, or 0 (or less) for all of them. */
+		private final int limit;
+
+		/** How to score the results. */
+		private final Ranking ranking;
+
+		/** The ids of deleted locations to skip, or null if none. */
+		private final BitSet deleted;
+
+		/** The first location id of the range. */
+		private final int first;
+
+		/** The location id after the last one of the range. */
+		private final int last;
+
+		/**
+		 * Initializes the search of a range.
+		 *
+		 * @param index   the index to search
+		 * @param terms   the indices of the words to search for, in query order
+		 * @param limit   the most results to return, or 0 (or less) for all of them
+		 * @param ranking how to score the results
+		 * @param deleted the ids of deleted locations to skip, or null if none
+		 * @param first   the first location id of the range
+		 * @param last    the location id after the last one of the range
+		 */
+		private Partition(FrozenIndex index, int[] terms, int limit, Ranking ranking, BitSet deleted, int first,
+				int last) {
+			this.index = index;
+			this.terms = terms;
+			this.limit = limit;
+			this.ranking = ranking;
+			this.deleted = deleted;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected List<InvertedIndex.SearchResult> compute() {
+			ScoreAccumulator accumulator = ScoreAccumulator.get(index.locations().size());
+			index.addMatches(terms, ranking, accumulator, deleted, first, last);
+			return limit > 0 ? accumulator.results(index.locations(), limit) : accumulator.results(index.locations());
+		}
+	}
+}
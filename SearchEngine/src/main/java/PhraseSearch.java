@@ -0,0 +1,458 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.PrimitiveIterator;
+
+/**
+ * Finds the locations of a phrase in a frozen index, and how many times the
+ * phrase occurs in each of them.
+ *
+ * A phrase can only occur in a location that has every one of its words, so
+ * the posting lists of the words are intersected first, starting from the
+ * rarest word and galloping ahead in the others (which, like skip pointers,
+ * jumps over whole runs of locations in a long list). Positions are only
+ * decoded for the locations that survive the intersection, and are then merged
+ * the same way, starting from the rarest word of the location. That way the
+ * positions of a phrase are only checked in locations that have all of its
+ * words, which are never more than the locations of its rarest word.
+ *
+ * Within a location, the positions of a word are decoded a block of
+ * {@value PostingStore#SKIP_INTERVAL} at a time, and only when they are looked
+ * at. Seeking a word ahead searches its skip table for the block the target is
+ * in, so the blocks it jumps over are never decoded.
+ *
+ * Warning: This class is not thread-safe, but each search creates its own.
+ *
+ * @see SearchQuery.Phrase
+ *
+ * @author sarah
+ */
+public class PhraseSearch {
+
+	/** The index to search. */
+	private final FrozenIndex index;
+
+	/** The most positions the words may be apart, or 0 for a phrase. */
+	private final int distance;
+
+	/** The ids of deleted locations to skip, or null if none. */
+	private final BitSet deleted;
+
+	/** The distinct words, rarest first, or null if one is not in the index. */
+	private final int[] terms;
+
+	/** The current posting of each distinct word. */
+	private final int[] cursors;
+
+	/** The distinct word at each place in the phrase. */
+	private final int[] slots;
+
+	/** The number of places in the phrase of each distinct word. */
+	private final int[] repeats;
+
+	/** The positions of each distinct word in the current location. */
+	private final int[][] positions;
+
+	/** The blocks of positions decoded so far for each distinct word. */
+	private final BitSet[] blocks;
+
+	/** The number of positions of each distinct word. */
+	private final int[] lengths;
+
+	/** The next position to look at, for each place in the phrase. */
+	private final int[] next;
+
+	/** The ids of the locations the phrase occurs in. */
+	private int[] ids;
+
+	/** The number of times the phrase occurs in each location. */
+	private int[] frequencies;
+
+	/** The number of locations the phrase occurs in. */
+	private int size;
+
+	/**
+	 * Prepares a search for a phrase.
+	 *
+	 * @param index   the index to search
+	 * @param phrase  the phrase to search for
+	 * @param deleted the ids of deleted locations to skip, or null if none
+	 */
+	private PhraseSearch(FrozenIndex index, SearchQuery.Phrase phrase, BitSet deleted) {
+		this.index = index;
+		this.distance = phrase.distance();
+		this.deleted = deleted;
+		this.ids = new int[0];
+		this.frequencies = new int[0];
+		this.size = 0;
+
+		int count = phrase.words().size();
+		int[] found = new int[count];
+		int unique = 0;
+		for (String word : phrase.words()) {
+			int term = index.find(word);
+			if (term < 0) {
+				found = null;
+				break;
+			}
+			boolean seen = false;
+			for (int i = 0; i < unique; i++) {
+				seen |= found[i] == term;
+			}
+			if (!seen) {
+				found[unique++] = term;
+			}
+		}
+
+		if (found == null) {
+			this.terms = null;
+		} else {
+			// sort the distinct words by the number of locations they are found in
+			long[] order = new long[unique];
+			for (int i = 0; i < unique; i++) {
+				order[i] = ((long) (index.end(found[i]) - index.start(found[i])) << 32) | found[i];
+			}
+			Arrays.sort(order);
+			this.terms = new int[unique];
+			for (int i = 0; i < unique; i++) {
+				terms[i] = (int) order[i];
+			}
+		}
+
+		unique = terms == null ? 0 : terms.length;
+		this.cursors = new int[unique];
+		this.positions = new int[unique][0];
+		this.blocks = new BitSet[unique];
+		this.lengths = new int[unique];
+		this.slots = new int[terms == null ? 0 : count];
+		this.repeats = new int[unique];
+		this.next = new int[Math.max(unique, slots.length)];
+
+		for (int j = 0; j < unique; j++) {
+			blocks[j] = new BitSet();
+		}
+
+		for (int i = 0; i < slots.length; i++) {
+			int term = index.find(phrase.words().get(i));
+			for (int j = 0; j < unique; j++) {
+				if (terms[j] == term) {
+					slots[i] = j;
+				}
+			}
+			repeats[slots[i]]++;
+		}
+	}
+
+	/**
+	 * Finds every location a phrase occurs in.
+	 *
+	 * @param index   the index to search
+	 * @param phrase  the phrase to search for
+	 * @param deleted the ids of deleted locations to skip, or null if none
+	 * @return the search, with its locations in increasing id order
+	 */
+	public static PhraseSearch search(FrozenIndex index, SearchQuery.Phrase phrase, BitSet deleted) {
+		PhraseSearch search = new PhraseSearch(index, phrase, deleted);
+		if (search.terms != null) {
+			search.run();
+		}
+		return search;
+	}
+
+	/**
+	 * Returns the number of locations the phrase occurs in.
+	 *
+	 * @return the number of locations
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of a location the phrase occurs in.
+	 *
+	 * @param i the index of the location, from 0 to {@link #size()}
+	 * @return the location id
+	 */
+	public int id(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * Returns the number of times the phrase occurs in a location.
+	 *
+	 * @param i the index of the location, from 0 to {@link #size()}
+	 * @return the number of occurrences
+	 */
+	public int frequency(int i) {
+		return frequencies[i];
+	}
+
+	/**
+	 * Intersects the posting lists of the words, and counts the occurrences of
+	 * the phrase in every location they are all found in.
+	 */
+	private void run() {
+		for (int j = 0; j < terms.length; j++) {
+			cursors[j] = index.start(terms[j]);
+		}
+
+		int lead = terms[0];
+		while (cursors[0] < index.end(lead)) {
+			int id = index.id(cursors[0]);
+			if (deleted != null && deleted.get(id)) {
+				cursors[0]++;
+				continue;
+			}
+
+			int j = 1;
+			while (j < terms.length && advance(j, id)) {
+				j++;
+			}
+
+			if (j < terms.length) {
+				// the rarest word jumps ahead to where the other word is found next
+				if (cursors[j] == index.end(terms[j])) {
+					return;
+				}
+				advance(0, index.id(cursors[j]));
+				continue;
+			}
+
+			int count = distance == 0 ? countPhrase() : countNear();
+			if (count > 0) {
+				if (size == ids.length) {
+					ids = Arrays.copyOf(ids, Math.max(16, size * 2));
+					frequencies = Arrays.copyOf(frequencies, ids.length);
+				}
+				ids[size] = id;
+				frequencies[size] = count;
+				size++;
+			}
+			cursors[0]++;
+		}
+	}
+
+	/**
+	 * Moves the cursor of a word to its first posting at or after a location,
+	 * galloping ahead and then searching back within the last jump.
+	 *
+	 * @param j  the distinct word to move
+	 * @param id the location id to move to
+	 * @return true if the word is found in that location
+	 */
+	private boolean advance(int j, int id) {
+		int low = cursors[j];
+		int end = index.end(terms[j]);
+		int bound = 1;
+		while (low + bound < end && index.id(low + bound) < id) {
+			bound <<= 1;
+		}
+
+		int found = index.postings().find(low, Math.min(low + bound + 1, end), id);
+		cursors[j] = found >= 0 ? found : -(found + 1);
+		return found >= 0;
+	}
+
+	/**
+	 * Prepares to look at the positions of every distinct word in the current
+	 * location, without decoding any of them yet.
+	 */
+	private void reset() {
+		for (int j = 0; j < terms.length; j++) {
+			int length = index.frequency(cursors[j]);
+			if (positions[j].length < length) {
+				positions[j] = new int[Math.max(length, positions[j].length * 2)];
+			}
+			lengths[j] = length;
+			blocks[j].clear();
+		}
+	}
+
+	/**
+	 * Returns a position of a distinct word in the current location, decoding its
+	 * block first if needed.
+	 *
+	 * @param j the distinct word
+	 * @param i the index of the position, less than its number of positions
+	 * @return the position
+	 */
+	private int position(int j, int i) {
+		decode(j, i / PostingStore.SKIP_INTERVAL);
+		return positions[j][i];
+	}
+
+	/**
+	 * Decodes a block of positions of a distinct word in the current location,
+	 * unless it already is. Every block after the first starts right after one
+	 * of the skip entries of the posting.
+	 *
+	 * @param j     the distinct word
+	 * @param block the block to decode
+	 */
+	private void decode(int j, int block) {
+		if (blocks[j].get(block)) {
+			return;
+		}
+
+		int posting = cursors[j];
+		PrimitiveIterator.OfInt iterator = block == 0 ? index.positions(posting)
+				: index.postings().positions(posting, index.postings().skipStart(posting) + block - 1);
+		int end = Math.min((block + 1) * PostingStore.SKIP_INTERVAL, lengths[j]);
+		for (int i = block * PostingStore.SKIP_INTERVAL; i < end; i++) {
+			positions[j][i] = iterator.nextInt();
+		}
+		blocks[j].set(block);
+	}
+
+	/**
+	 * Finds the first position of a distinct word at or after an index that is
+	 * at least the target. The skip entries are galloped over first to find the
+	 * block the target is in, since the last position of every block but the
+	 * last one is in the skip table, and then only that block is decoded and
+	 * searched.
+	 *
+	 * @param j      the distinct word
+	 * @param from   the index to start from
+	 * @param target the position to find
+	 * @return the index of the first position at least the target, or the number
+	 *         of positions
+	 */
+	private int seek(int j, int from, int target) {
+		if (from >= lengths[j]) {
+			return lengths[j];
+		}
+
+		PostingStore postings = index.postings();
+		int first = postings.skipStart(cursors[j]);
+		int skips = postings.skipStart(cursors[j] + 1) - first;
+
+		// the target is in the first block whose skipped position is at least it
+		int low = from / PostingStore.SKIP_INTERVAL;
+		int high = low;
+		int bound = 1;
+		while (high < skips && postings.skipPosition(first + high) < target) {
+			low = high + 1;
+			high += bound;
+			bound <<= 1;
+		}
+		high = Math.min(high, skips);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (postings.skipPosition(first + middle) < target) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		decode(j, low);
+		int start = Math.max(from, low * PostingStore.SKIP_INTERVAL);
+		int end = Math.min((low + 1) * PostingStore.SKIP_INTERVAL, lengths[j]);
+		return gallop(positions[j], start, end, target);
+	}
+
+	/**
+	 * Counts the places in the current location where the words are next to each
+	 * other in order. Every position of the rarest word is a possible start, and
+	 * the other words are looked up relative to it.
+	 *
+	 * @return the number of occurrences of the phrase
+	 */
+	private int countPhrase() {
+		reset();
+
+		int driver = 0;
+		for (int i = 1; i < slots.length; i++) {
+			if (lengths[slots[i]] < lengths[slots[driver]]) {
+				driver = i;
+			}
+		}
+
+		Arrays.fill(next, 0);
+		int count = 0;
+		for (int d = 0; d < lengths[slots[driver]]; d++) {
+			int start = position(slots[driver], d) - driver;
+			boolean found = true;
+			for (int i = 0; found && i < slots.length; i++) {
+				if (i != driver) {
+					int j = slots[i];
+					next[i] = seek(j, next[i], start + i);
+					if (next[i] == lengths[j]) {
+						return count;
+					}
+					found = position(j, next[i]) == start + i;
+				}
+			}
+			if (found) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the positions of the current location where one of the words is
+	 * found with every other word of the phrase at most the distance after it.
+	 * Every place in the phrase needs its own position, so a word that is in the
+	 * phrase more than once must be found that many times, counting the position
+	 * it starts from if it is the first word. The positions of each word are
+	 * taken in order, looking up the positions of every word at or after it, and
+	 * a word that is too far from the others jumps ahead to where they could be
+	 * close enough.
+	 *
+	 * @return the number of occurrences of the words close together
+	 */
+	private int countNear() {
+		reset();
+
+		int count = 0;
+		for (int anchor = 0; anchor < terms.length; anchor++) {
+			Arrays.fill(next, 0);
+			int d = 0;
+			while (d < lengths[anchor]) {
+				int start = position(anchor, d);
+				int farthest = start;
+				for (int j = 0; j < terms.length; j++) {
+					// the last of as many positions as the word has places
+					next[j] = j == anchor ? d : seek(j, next[j], start);
+					int last = next[j] + repeats[j] - 1;
+					if (last >= lengths[j]) {
+						farthest = Integer.MAX_VALUE;
+						break;
+					}
+					farthest = Math.max(farthest, position(j, last));
+				}
+
+				if (farthest == Integer.MAX_VALUE) {
+					break;
+				} else if ((long) farthest - start <= distance) {
+					count++;
+					d++;
+				} else {
+					d = seek(anchor, d + 1, farthest - distance);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the first value at or after an index that is at least the target,
+	 * galloping ahead and then searching back within the last jump.
+	 *
+	 * @param values the sorted values
+	 * @param from   the index to start from
+	 * @param length the number of values
+	 * @param target the value to find
+	 * @return the index of the first value at least the target, or the length
+	 */
+	private static int gallop(int[] values, int from, int length, int target) {
+		int bound = 1;
+		while (from + bound < length && values[from + bound] < target) {
+			bound <<= 1;
+		}
+
+		int found = Arrays.binarySearch(values, from, Math.min(from + bound + 1, length), target);
+		return found >= 0 ? found : -(found + 1);
+	}
+}
@@ -0,0 +1,471 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * A compact list of the positions where a word appears in a single location.
+ * Positions are stored as variable-byte encoded deltas in a growable primitive
+ * array instead of boxed {@link Integer} objects in a tree set. Since positions
+ * are almost always appended in increasing order, each position usually costs
+ * one or two bytes. Every {@value #SKIP_INTERVAL}-th position is also kept in a
+ * small skip table along with where its encoding ends, so looking up a position
+ * only decodes the positions after the nearest skip instead of the whole list.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author sarah
+ */
+public class PostingList {
+
+	/** The initial capacity of the encoded byte array. */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** The number of positions between the entries of the skip table. */
+	private static final int SKIP_INTERVAL = 64;
+
+	/** The variable-byte encoded position deltas. */
+	private byte[] bytes;
+
+	/** The number of bytes in use. */
+	private int length;
+
+	/** The number of positions stored. */
+	private int size;
+
+	/** The last (largest) position stored. */
+	private int last;
+
+	/**
+	 * Every {@value #SKIP_INTERVAL}-th position, or null until there are that
+	 * many. Only the first {@code size / SKIP_INTERVAL} entries are in use.
+	 */
+	private int[] skipPositions;
+
+	/** The byte offset just after each position in the skip table. */
+	private int[] skipOffsets;
+
+	/**
+	 * Initializes an empty posting list.
+	 */
+	public PostingList() {
+		this.bytes = new byte[INITIAL_CAPACITY];
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Initializes a posting list with a single position.
+	 *
+	 * @param position the first position to store
+	 */
+	public PostingList(int position) {
+		this();
+		add(position);
+	}
+
+	/**
+	 * Adds a position to this list. Positions larger than the last position are
+	 * appended directly; anything else falls back to a (slower) sorted insert.
+	 *
+	 * @param position the position to add
+	 * @return true if the position was not already present
+	 */
+	public boolean add(int position) {
+		if (size == 0 || position > last) {
+			appendPosition(position);
+			return true;
+		}
+
+		if (contains(position)) {
+			return false;
+		}
+
+		int[] merged = merge(toArray(), new int[] { position });
+		rebuild(merged);
+		return true;
+	}
+
+	/**
+	 * Adds all of the positions from another list to this one. If the other list
+	 * starts after this one ends, its encoded bytes are copied over directly.
+	 *
+	 * @param other the list to add
+	 */
+	public void addAll(PostingList other) {
+		if (other.size == 0) {
+			return;
+		}
+
+		if (size == 0 || other.first() > last) {
+			// only the first delta of the other list needs to be re-encoded
+			int current = other.first();
+			int skip = encodedLength(current);
+			appendPosition(current);
+			ensureCapacity(length + other.length - skip);
+			System.arraycopy(other.bytes, skip, bytes, length, other.length - skip);
+
+			// the copied positions still need their skip table entries
+			int end = length + other.length - skip;
+			while (length < end) {
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[length++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				current += delta;
+				addSkip(current);
+				size++;
+			}
+			last = other.last;
+			return;
+		}
+
+		rebuild(merge(toArray(), other.toArray()));
+	}
+
+	/**
+	 * Returns the number of positions stored.
+	 *
+	 * @return the number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the first (smallest) position stored.
+	 *
+	 * @return the first position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int first() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return iterator().nextInt();
+	}
+
+	/**
+	 * Returns the last (largest) position stored.
+	 *
+	 * @return the last position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	/**
+	 * Determines whether the position is stored in this list. The skip table is
+	 * searched for the last skipped position before it, and decoding starts
+	 * there and stops as soon as a larger position is found, so at most
+	 * {@value #SKIP_INTERVAL} positions are decoded.
+	 *
+	 * @param position the position to look for
+	 * @return true if the position is stored
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position > last) {
+			return false;
+		}
+
+		int base = 0;
+		int offset = 0;
+		int skips = size / SKIP_INTERVAL;
+		if (skips > 0) {
+			int found = Arrays.binarySearch(skipPositions, 0, skips, position);
+			if (found >= 0) {
+				return true;
+			}
+
+			int before = -(found + 1) - 1;
+			if (before >= 0) {
+				base = skipPositions[before];
+				offset = skipOffsets[before];
+			}
+		}
+
+		// the deltas decoded from a skip are relative to the skipped position
+		PrimitiveIterator.OfInt iterator = iterator(bytes, offset, length);
+		while (iterator.hasNext()) {
+			int current = base + iterator.nextInt();
+			if (current >= position) {
+				return current == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes all of the positions into a new sorted array.
+	 *
+	 * @return the positions in increasing order
+	 */
+	public int[] toArray() {
+		int[] positions = new int[size];
+		PrimitiveIterator.OfInt iterator = iterator();
+		for (int i = 0; i < size; i++) {
+			positions[i] = iterator.nextInt();
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns the number of bytes used to encode the positions, which is useful
+	 * for estimating memory use.
+	 *
+	 * @return the number of encoded bytes
+	 */
+	public int encodedSize() {
+		return length;
+	}
+
+	/**
+	 * Releases any unused capacity in the encoded byte array and the skip table.
+	 */
+	public void trim() {
+		if (bytes.length > length) {
+			bytes = Arrays.copyOf(bytes, length);
+		}
+
+		int skips = size / SKIP_INTERVAL;
+		if (skipPositions != null && skipPositions.length > skips) {
+			skipPositions = skips == 0 ? null : Arrays.copyOf(skipPositions, skips);
+			skipOffsets = skips == 0 ? null : Arrays.copyOf(skipOffsets, skips);
+		}
+	}
+
+	/**
+	 * Returns an iterator that decodes the positions in increasing order.
+	 *
+	 * @return an iterator over the positions
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		return iterator(bytes, 0, length);
+	}
+
+	/**
+	 * Copies the encoded positions into another array. The copied bytes can be
+	 * decoded on their own with {@link #iterator(byte[], int, int)}.
+	 *
+	 * @param destination the array to copy into
+	 * @param offset      the offset to start copying at
+	 */
+	public void copyTo(byte[] destination, int offset) {
+		System.arraycopy(bytes, 0, destination, offset, length);
+	}
+
+	/**
+	 * Returns an iterator that decodes variable-byte encoded position deltas from
+	 * a range of a byte array, such as one written by {@link #copyTo(byte[], int)}.
+	 *
+	 * @param bytes the encoded bytes
+	 * @param start the first byte of the encoded positions
+	 * @param end   the byte after the last encoded position
+	 * @return an iterator over the decoded positions
+	 */
+	public static PrimitiveIterator.OfInt iterator(byte[] bytes, int start, int end) {
+		return iterator(bytes, start, end, 0);
+	}
+
+	/**
+	 * Returns an iterator that decodes variable-byte encoded position deltas from
+	 * a range of a byte array, starting from a position other than 0, such as a
+	 * skipped position.
+	 *
+	 * @param bytes the encoded bytes
+	 * @param start the first byte of the encoded deltas
+	 * @param end   the byte after the last encoded delta
+	 * @param base  the position the first delta is relative to
+	 * @return an iterator over the decoded positions
+	 */
+	public static PrimitiveIterator.OfInt iterator(byte[] bytes, int start, int end, int base) {
+		return new PrimitiveIterator.OfInt() {
+			private int offset = start;
+			private int current = base;
+
+			@Override
+			public boolean hasNext() {
+				return offset < end;
+			}
+
+			@Override
+			public int nextInt() {
+				if (offset >= end) {
+					throw new NoSuchElementException();
+				}
+
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[offset++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				current += delta;
+				return current;
+			}
+		};
+	}
+
+	/**
+	 * Returns an unmodifiable set view of the positions. The view decodes the
+	 * positions on demand and reflects later changes to this list. Membership
+	 * checks go through {@link #contains(int)} and its skip table.
+	 *
+	 * @return an unmodifiable set of positions
+	 */
+	public Set<Integer> asSet() {
+		return new AbstractSet<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return PostingList.this.iterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof Integer && PostingList.this.contains((Integer) o);
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/**
+	 * Appends a position larger than the last one, adding it to the skip table if
+	 * it is due.
+	 *
+	 * @param position the position to append
+	 */
+	private void appendPosition(int position) {
+		append(position - last);
+		addSkip(position);
+		last = position;
+		size++;
+	}
+
+	/**
+	 * Adds the position just encoded to the skip table if it is the
+	 * {@value #SKIP_INTERVAL}-th since the last entry. Must be called before the
+	 * size is incremented and right after the position's bytes are written.
+	 *
+	 * @param position the position just encoded
+	 */
+	private void addSkip(int position) {
+		if ((size + 1) % SKIP_INTERVAL != 0) {
+			return;
+		}
+
+		int skip = size / SKIP_INTERVAL;
+		if (skipPositions == null) {
+			skipPositions = new int[INITIAL_CAPACITY];
+			skipOffsets = new int[INITIAL_CAPACITY];
+		} else if (skip == skipPositions.length) {
+			skipPositions = Arrays.copyOf(skipPositions, Math.max(INITIAL_CAPACITY, skip + (skip >> 1)));
+			skipOffsets = Arrays.copyOf(skipOffsets, Math.max(INITIAL_CAPACITY, skip + (skip >> 1)));
+		}
+		skipPositions[skip] = position;
+		skipOffsets[skip] = length;
+	}
+
+	/**
+	 * Appends a single variable-byte encoded value.
+	 *
+	 * @param value the non-negative value to encode
+	 */
+	private void append(int value) {
+		ensureCapacity(length + 5);
+		while ((value & ~0x7F) != 0) {
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte) value;
+	}
+
+	/**
+	 * Makes sure the byte array can hold at least the specified number of bytes.
+	 *
+	 * @param capacity the minimum capacity needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length + (bytes.length >> 1)));
+		}
+	}
+
+	/**
+	 * Replaces the contents of this list with the sorted positions provided.
+	 *
+	 * @param positions the sorted unique positions to store
+	 */
+	private void rebuild(int[] positions) {
+		length = 0;
+		size = 0;
+		last = 0;
+		for (int position : positions) {
+			appendPosition(position);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes needed to encode the value.
+	 *
+	 * @param value the non-negative value to encode
+	 * @return the number of bytes needed
+	 */
+	private static int encodedLength(int value) {
+		int count = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Merges two sorted arrays into one sorted array without duplicates.
+	 *
+	 * @param first  the first sorted array
+	 * @param second the second sorted array
+	 * @return the merged sorted array
+	 */
+	private static int[] merge(int[] first, int[] second) {
+		int[] merged = new int[first.length + second.length];
+		int i = 0, j = 0, k = 0;
+
+		while (i < first.length || j < second.length) {
+			int next;
+			if (j >= second.length || (i < first.length && first[i] <= second[j])) {
+				next = first[i++];
+			} else {
+				next = second[j++];
+			}
+
+			if (k == 0 || merged[k - 1] != next) {
+				merged[k++] = next;
+			}
+		}
+		return Arrays.copyOf(merged, k);
+	}
+}
@@ -0,0 +1,169 @@
+import java.util.PrimitiveIterator;
+
+/**
+ * Interface for where a frozen index keeps its postings. Postings are numbered
+ * from 0, and each one has a location id, a frequency, and its variable-byte
+ * encoded positions, which are stored back to back. The postings can live on
+ * the heap, or somewhere else like a memory-mapped file.
+ *
+ * Every {@value #SKIP_INTERVAL}-th position of a posting is also kept in a skip
+ * table along with where its encoding ends, the same way {@link PostingList}
+ * does, so a position can be found without decoding every position before it.
+ * The skip entries of every posting are stored back to back too.
+ *
+ * @see FrozenIndex
+ *
+ * @author sarah
+ */
+public interface PostingStore {
+
+	/** The number of positions between the skip entries of a posting. */
+	public static final int SKIP_INTERVAL = 64;
+
+	/**
+	 * Returns the number of postings.
+	 *
+	 * @return the number of postings
+	 */
+	public int size();
+
+	/**
+	 * Returns the location id of a posting.
+	 *
+	 * @param posting the index of the posting
+	 * @return the location id
+	 */
+	public int id(int posting);
+
+	/**
+	 * Returns the number of positions in a posting.
+	 *
+	 * @param posting the index of the posting
+	 * @return the number of positions
+	 */
+	public int frequency(int posting);
+
+	/**
+	 * Returns the first encoded byte of a posting. The offset of posting
+	 * {@link #size()} is the total number of encoded bytes.
+	 *
+	 * @param posting the index of the posting
+	 * @return the offset of its encoded positions
+	 */
+	public long positionOffset(int posting);
+
+	/**
+	 * Returns an iterator that decodes the positions of a posting.
+	 *
+	 * @param posting the index of the posting
+	 * @return the positions in increasing order
+	 */
+	public PrimitiveIterator.OfInt positions(int posting);
+
+	/**
+	 * Returns the first skip entry of a posting. A posting has one entry for
+	 * every {@value #SKIP_INTERVAL} positions, and the first entry of posting
+	 * {@link #size()} is the total number of entries.
+	 *
+	 * @param posting the index of the posting
+	 * @return the index of its first skip entry
+	 */
+	public int skipStart(int posting);
+
+	/**
+	 * Returns the position of a skip entry.
+	 *
+	 * @param skip the index of the skip entry
+	 * @return the skipped position
+	 */
+	public int skipPosition(int skip);
+
+	/**
+	 * Returns the byte offset just after the encoded position of a skip entry.
+	 *
+	 * @param skip the index of the skip entry
+	 * @return the offset of the positions after the skipped one
+	 */
+	public long skipOffset(int skip);
+
+	/**
+	 * Returns an iterator that decodes the positions of a posting after one of
+	 * its skip entries.
+	 *
+	 * @param posting the index of the posting
+	 * @param skip    the index of the skip entry to start after, which must
+	 *                belong to the posting
+	 * @return the positions after the skipped one in increasing order
+	 */
+	public PrimitiveIterator.OfInt positions(int posting, int skip);
+
+	/**
+	 * Determines whether a posting has a position. Decoding starts after the last
+	 * skipped position before it, so at most {@value #SKIP_INTERVAL} positions are
+	 * decoded.
+	 *
+	 * @param posting  the index of the posting
+	 * @param position the position to look for
+	 * @return true if the posting has the position
+	 */
+	public default boolean contains(int posting, int position) {
+		int low = skipStart(posting);
+		int high = skipStart(posting + 1) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int current = skipPosition(middle);
+			if (current < position) {
+				low = middle + 1;
+			} else if (current > position) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+
+		PrimitiveIterator.OfInt iterator = low == skipStart(posting) ? positions(posting) : positions(posting, low - 1);
+		while (iterator.hasNext()) {
+			int current = iterator.nextInt();
+			if (current >= position) {
+				return current == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copies encoded position bytes into an array.
+	 *
+	 * @param offset      the offset of the first byte to copy
+	 * @param destination the array to copy into
+	 * @param start       the index in the array to start copying at
+	 * @param length      the number of bytes to copy
+	 */
+	public void copyPositions(long offset, byte[] destination, int start, int length);
+
+	/**
+	 * Finds the posting for a location id within a range of postings sorted by
+	 * location id.
+	 *
+	 * @param start the first posting in the range
+	 * @param end   the posting after the last one in the range
+	 * @param id    the location id to find
+	 * @return the index of the posting, or a negative number if not found
+	 */
+	public default int find(int start, int end, int id) {
+		int low = start;
+		int high = end - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int current = id(middle);
+			if (current < id) {
+				low = middle + 1;
+			} else if (current > id) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+}
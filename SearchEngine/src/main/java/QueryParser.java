@@ -1,8 +1,5 @@
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * class that deals with query file and produces search results
@@ -15,36 +12,58 @@ public class QueryParser implements QueryParserInterface {
 	/**
 	 * index to use
 	 */
-	private final InvertedIndex index;
+	private final InvertedIndexInterface index;
 	/**
-	 * map containing search results from query
+	 * the search results of each query, sorted by query
 	 */
-	private final TreeMap<String, List<InvertedIndex.SearchResult>> searchResults;
+	private final ResultSpool searchResults;
+	/**
+	 * the most results to keep per query, or 0 for all of them
+	 */
+	private final int limit;
+	/**
+	 * how to score the results
+	 */
+	private final Ranking ranking;
+	/**
+	 * the most edits a match may be away from a query word, or 0 to not search
+	 * for misspelled words
+	 */
+	private final int distance;
 
 	/**
 	 * query parser constructor
 	 * 
-	 * @param index the index to use for this class
+	 * @param index    the index to use for this class
+	 * @param settings how many results to keep, how to rank them, whether to
+	 *                 match misspelled words, and where to keep the results
 	 */
-	public QueryParser(InvertedIndex index) {
+	public QueryParser(InvertedIndexInterface index, QuerySettings settings) {
 		this.index = index;
-		this.searchResults = new TreeMap<String, List<InvertedIndex.SearchResult>>();
+		this.searchResults = settings.results();
+		this.limit = settings.limit();
+		this.ranking = settings.ranking();
+		this.distance = settings.distance();
 	}
 
 	@Override
 	public void parseQueryLine(String line, boolean exact) {
-		TreeSet<String> stems = TextFileStemmer.uniqueStems(line);
-		String query = String.join(" ", stems);
+		SearchQuery parsed = SearchQuery.parse(line);
+		String query = parsed.toString();
 
-		if (stems.size() != 0) {
+		if (!parsed.isEmpty()) {
 			if (!searchResults.containsKey(query)) {
-				searchResults.put(query, index.search(stems, exact));
+				if (distance > 0 && parsed.isSimple()) {
+					searchResults.put(query, index.fuzzySearch(parsed.words(), distance, limit, ranking));
+				} else {
+					searchResults.put(query, index.search(parsed, exact, limit, ranking));
+				}
 			}
 		}
 	}
 
 	@Override
 	public void writeJson(Path path) throws IOException {
-		SimpleJsonWriter.asFullResults(searchResults, path);
+		searchResults.writeJson(path);
 	}
 }
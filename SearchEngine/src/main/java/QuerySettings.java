@@ -0,0 +1,156 @@
+/**
+ * The settings of a query parser: how many results to keep per query, how to
+ * rank them, whether to also match misspelled words, and where the results are
+ * cached and kept until they are written. Every setting starts out at its
+ * default, and each setter returns the settings so they can be chained:
+ *
+ * <pre>
+ * new QuerySettings().limit(10).ranking(Ranking.BM25)
+ * </pre>
+ *
+ * A parser reads its settings when it is constructed, so changing them later
+ * does not change the parser. Parsers constructed with the same settings share
+ * the same cache and the same results.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @see QueryParserInterface
+ *
+ * @author sarah
+ */
+public class QuerySettings {
+
+	/** The most results to keep per query, or 0 for all of them. */
+	private int limit;
+
+	/** How to score the results. */
+	private Ranking ranking;
+
+	/** The most edits a match may be away from a query word, or 0 for none. */
+	private int distance;
+
+	/** The cache of search results of the index. */
+	private ResultCache cache;
+
+	/** Where to keep the search results until they are written. */
+	private ResultSpool results;
+
+	/**
+	 * Initializes the default settings: every result is kept and ranked by
+	 * count, misspelled words are not matched, nothing is cached, and the results
+	 * are kept in memory.
+	 */
+	public QuerySettings() {
+		this.limit = 0;
+		this.ranking = Ranking.COUNT;
+		this.distance = 0;
+		this.cache = new ResultCache(0);
+		this.results = new ResultSpool();
+	}
+
+	/**
+	 * Only keeps the best results of each query.
+	 *
+	 * @param limit the most results to keep per query, or 0 (or less) for all of
+	 *              them
+	 * @return these settings
+	 */
+	public QuerySettings limit(int limit) {
+		this.limit = Math.max(0, limit);
+		return this;
+	}
+
+	/**
+	 * Ranks the results with a model other than counting the matches.
+	 *
+	 * @param ranking how to score the results
+	 * @return these settings
+	 */
+	public QuerySettings ranking(Ranking ranking) {
+		this.ranking = ranking;
+		return this;
+	}
+
+	/**
+	 * Also matches misspelled words in simple queries. Phrases and operators are
+	 * still matched like before.
+	 *
+	 * @param distance the most edits a match may be away from a query word, or 0
+	 *                 to not search for misspelled words
+	 * @return these settings
+	 */
+	public QuerySettings distance(int distance) {
+		this.distance = distance;
+		return this;
+	}
+
+	/**
+	 * Looks up the results of queries searched before, by any parser or servlet
+	 * sharing the cache, before searching. Only used by parsers that search one
+	 * query at a time from several threads.
+	 *
+	 * @param cache the cache of search results of the same index
+	 * @return these settings
+	 */
+	public QuerySettings cache(ResultCache cache) {
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * Keeps the search results in a spool, such as one that spills them to disk so
+	 * huge query files fit in memory.
+	 *
+	 * @param results where to keep the search results until they are written
+	 * @return these settings
+	 */
+	public QuerySettings results(ResultSpool results) {
+		this.results = results;
+		return this;
+	}
+
+	/**
+	 * Returns the most results to keep per query.
+	 *
+	 * @return the limit, or 0 for all of them
+	 */
+	public int limit() {
+		return limit;
+	}
+
+	/**
+	 * Returns how to score the results.
+	 *
+	 * @return the ranking model
+	 */
+	public Ranking ranking() {
+		return ranking;
+	}
+
+	/**
+	 * Returns the most edits a match may be away from a query word.
+	 *
+	 * @return the distance, or 0 to not search for misspelled words
+	 */
+	public int distance() {
+		return distance;
+	}
+
+	/**
+	 * Returns the cache of search results.
+	 *
+	 * @return the cache
+	 */
+	public ResultCache cache() {
+		return cache;
+	}
+
+	/**
+	 * Returns where to keep the search results until they are written.
+	 *
+	 * @return the results
+	 */
+	public ResultSpool results() {
+		return results;
+	}
+}
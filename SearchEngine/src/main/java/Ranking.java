@@ -0,0 +1,106 @@
+/**
+ * The ways search results can be ranked. Every model scores a location as the
+ * sum of what each matched word contributes, which is
+ *
+ * <pre>
+ * weight * frequency / (saturation * frequency + norm)
+ * </pre>
+ *
+ * where the weight only depends on the word, the norm only depends on the
+ * location, and the saturation is a constant of the model. That way weights and
+ * norms are computed once (see {@link CollectionStatistics}), and scoring is a
+ * tight loop over the postings.
+ *
+ * @author sarah
+ */
+public enum Ranking {
+
+	/** The original ranking: the matches divided by the words in the location. */
+	COUNT(0),
+
+	/** Term frequency (relative to the location length) times inverse document frequency. */
+	TFIDF(0),
+
+	/** Okapi BM25, with the usual k1 = 1.2 and b = 0.75. */
+	BM25(1);
+
+	/** How quickly repeated matches stop adding to the BM25 score. */
+	public static final double K1 = 1.2;
+
+	/** How much the BM25 score depends on the length of the location. */
+	public static final double B = 0.75;
+
+	/** How much the frequency counts against itself, 0 for linear models. */
+	private final double saturation;
+
+	/**
+	 * Initializes a ranking model.
+	 *
+	 * @param saturation how much the frequency counts against itself
+	 */
+	private Ranking(double saturation) {
+		this.saturation = saturation;
+	}
+
+	/**
+	 * Returns the weight of a word.
+	 *
+	 * @param frequency the number of locations the word is found in
+	 * @param locations the number of locations in the index
+	 * @return the weight of the word
+	 */
+	public double weight(int frequency, int locations) {
+		switch (this) {
+			case TFIDF:
+				return Math.log(1 + locations / (double) frequency);
+			case BM25:
+				return Math.log(1 + (locations - frequency + 0.5) / (frequency + 0.5)) * (K1 + 1);
+			default:
+				return 1;
+		}
+	}
+
+	/**
+	 * Returns the norm of a location.
+	 *
+	 * @param length  the number of words in the location
+	 * @param average the average number of words in a location
+	 * @return the norm of the location
+	 */
+	public double norm(int length, double average) {
+		switch (this) {
+			case BM25:
+				return K1 * (1 - B + B * length / average);
+			default:
+				return length;
+		}
+	}
+
+	/**
+	 * Returns what a word contributes to the score of a location.
+	 *
+	 * @param weight    the weight of the word
+	 * @param frequency the number of times the word is found in the location
+	 * @param norm      the norm of the location
+	 * @return the contribution to the score
+	 */
+	public double score(double weight, int frequency, double norm) {
+		return weight * frequency / (saturation * frequency + norm);
+	}
+
+	/**
+	 * Finds the ranking with the given name, ignoring case.
+	 *
+	 * @param name         the name of the ranking
+	 * @param defaultValue the ranking to use if the name is missing or unknown
+	 * @return the matching ranking, or the default
+	 */
+	public static Ranking parse(String name, Ranking defaultValue) {
+		for (Ranking ranking : values()) {
+			if (ranking.name().equalsIgnoreCase(name)) {
+				return ranking;
+			}
+		}
+		return defaultValue;
+	}
+}
@@ -15,7 +15,7 @@ import java.util.concurrent.locks.Lock;
  * @author University of San Francisco
  * @version Fall 2020
  */
-public class ReadWriteLock {
+public class ReadWriteLock implements ReadWriteLockInterface {
 
 	/** The lock used for reading. */
 	private final SimpleLock readerLock;
@@ -53,6 +53,7 @@ public class ReadWriteLock {
 	 *
 	 * @return the reader lock
 	 */
+	@Override
 	public SimpleLock readLock() {
 		return readerLock;
 	}
@@ -62,6 +63,7 @@ public class ReadWriteLock {
 	 *
 	 * @return the writer lock
 	 */
+	@Override
 	public SimpleLock writeLock() {
 		return writerLock;
 	}
@@ -142,14 +144,7 @@ public class ReadWriteLock {
 					throw new IllegalStateException();
 				}
 
-				while (writers > 0) {
-					try {
-						lock.wait();
-					} catch (InterruptedException ex) {
-						Thread.currentThread().interrupt();
-					}
-				}
-
+				// no writer can be active while this reader holds the lock
 				assert writers == 0;
 				readers--;
 				// overnotification fixed i think?
@@ -224,13 +219,7 @@ public class ReadWriteLock {
 					throw new ConcurrentModificationException();
 				}
 
-				while (readers > 0) {
-					try {
-						lock.wait();
-					} catch (InterruptedException ex) {
-						Thread.currentThread().interrupt();
-					}
-				}
+				// no reader can be active while this writer holds the lock
 				assert readers == 0;
 				writers--;
 				writeLockHolder = null; // reset thread that holds write lock??
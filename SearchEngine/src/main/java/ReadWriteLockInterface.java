@@ -0,0 +1,49 @@
+/**
+ * Interface for a pair of associated read and write locks, so the index can
+ * switch between different locking strategies. Implementations may also
+ * support optimistic reads, where a plain field is read without any lock and
+ * the value is only used if no writer got in the way. Anything more than a few
+ * field reads, such as walking a map, must hold the read lock instead.
+ *
+ * @see LockStrategy
+ *
+ * @author sarah
+ */
+public interface ReadWriteLockInterface {
+
+	/**
+	 * Returns the reader lock.
+	 *
+	 * @return the reader lock
+	 */
+	public SimpleLock readLock();
+
+	/**
+	 * Returns the writer lock.
+	 *
+	 * @return the writer lock
+	 */
+	public SimpleLock writeLock();
+
+	/**
+	 * Starts an optimistic read, if supported. The stamp returned must be checked
+	 * with {@link #validate(long)} after reading.
+	 *
+	 * @return a non-zero stamp, or 0 if optimistic reads are not supported or a
+	 *         writer currently holds the lock
+	 */
+	public default long tryOptimisticRead() {
+		return 0;
+	}
+
+	/**
+	 * Checks that no writer has held the lock since the stamp was returned by
+	 * {@link #tryOptimisticRead()}.
+	 *
+	 * @param stamp the stamp to check
+	 * @return true if whatever was read since then is consistent
+	 */
+	public default boolean validate(long stamp) {
+		return false;
+	}
+}
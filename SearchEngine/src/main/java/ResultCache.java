@@ -0,0 +1,532 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of search results, shared by every thread that searches the
+ * same index. Results are keyed by the normalized query (see
+ * {@link SearchQuery#toString()}), whether the search was exact or partial, how
+ * the results were ranked, and how many of them were kept.
+ *
+ * Every entry remembers the generation of the index it was computed from (see
+ * {@link InvertedIndexInterface#generation()}). Once the index moves on to a
+ * new generation, the whole cache is out of date and is cleared the next time
+ * it is used, so a search never sees results from before the last change.
+ *
+ * Which results are kept depends on how often their query is asked for, not
+ * just how recently. The cache estimates the frequency of every query it sees
+ * (including the ones it does not keep) in a small count-min sketch, which is
+ * halved every so often so that old popularity fades. When the cache is full,
+ * new results only replace the least recently used entry if their query is
+ * asked for more often, so a burst of one-off queries cannot push out the
+ * popular ones.
+ *
+ * Identical searches that run at the same time are only done once: the first
+ * one searches, and the others wait for its results instead of repeating the
+ * same work (even if the cache does not keep any results).
+ *
+ * Looking up and keeping results holds the lock of the cache, which is only
+ * ever held for a constant amount of work. The searches themselves run without
+ * it.
+ *
+ * @author sarah
+ */
+public class ResultCache {
+
+	/** The default number of result lists to keep. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/** The most result lists to keep. */
+	private final int capacity;
+
+	/** The cached results, least recently used first. */
+	private final LinkedHashMap<Key, List<InvertedIndex.SearchResult>> entries;
+
+	/** The searches running right now, which identical searches wait for. */
+	private final HashMap<Key, Flight> inFlight;
+
+	/** The estimated number of times each query was asked for. */
+	private final FrequencySketch sketch;
+
+	/** The generation of the index the cached results are from. */
+	private long generation;
+
+	/** The number of lookups that found results. */
+	private long hits;
+
+	/** The number of lookups that did not find results. */
+	private long misses;
+
+	/** The number of lookups that waited for an identical search to finish. */
+	private long waits;
+
+	/** The number of results that replaced another entry. */
+	private long evictions;
+
+	/** The number of results that were not kept, since their query is rarer. */
+	private long rejections;
+
+	/**
+	 * Initializes a cache with the default capacity.
+	 */
+	public ResultCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Initializes a cache.
+	 *
+	 * @param capacity the most result lists to keep, or 0 to not keep any
+	 */
+	public ResultCache(int capacity) {
+		this.capacity = Math.max(0, capacity);
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.inFlight = new HashMap<>();
+		this.sketch = new FrequencySketch(this.capacity);
+		this.generation = Long.MIN_VALUE;
+		this.hits = 0;
+		this.misses = 0;
+		this.waits = 0;
+		this.evictions = 0;
+		this.rejections = 0;
+	}
+
+	/**
+	 * Searches an index for a parsed query line, or returns the results of the
+	 * same search if they are cached and the index has not changed since. If the
+	 * same search is already running, this waits for its results instead. A
+	 * simple query also matches misspelled words if a distance is given, like
+	 * the query parsers do.
+	 *
+	 * @param index    the index to search
+	 * @param query    the parsed query line
+	 * @param exact    whether its exact or partial search
+	 * @param limit    the most results to return, or 0 (or less) for all of them
+	 * @param ranking  how to score the results
+	 * @param distance the most edits a match may be away from a query word, or 0
+	 *                 to not search for misspelled words
+	 * @return an unmodifiable sorted list of at most limit search results
+	 */
+	public List<InvertedIndex.SearchResult> search(InvertedIndexInterface index, SearchQuery query, boolean exact,
+			int limit, Ranking ranking, int distance) {
+		boolean fuzzy = distance > 0 && query.isSimple();
+		Key key = new Key(query.toString(), exact, ranking, Math.max(0, limit), fuzzy ? distance : 0);
+
+		// read before searching, so results that race with a change are never newer
+		// than the generation they are kept under
+		long current = index.generation();
+		Flight flight;
+		synchronized (this) {
+			List<InvertedIndex.SearchResult> results = get(key, current);
+			if (results != null) {
+				return results;
+			}
+
+			flight = inFlight.get(key);
+			if (flight != null && flight.generation == current) {
+				waits++;
+			} else {
+				flight = new Flight(current, Thread.currentThread());
+				inFlight.put(key, flight);
+			}
+		}
+
+		if (flight.leader != Thread.currentThread()) {
+			List<InvertedIndex.SearchResult> results = flight.await();
+			// unless the wait was interrupted, or the search failed with an error
+			return results != null ? results : search(index, query, key);
+		}
+
+		List<InvertedIndex.SearchResult> results = null;
+		RuntimeException failure = null;
+		try {
+			results = search(index, query, key);
+			return results;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			synchronized (this) {
+				if (inFlight.get(key) == flight) {
+					inFlight.remove(key);
+				}
+				if (results != null) {
+					put(key, current, results);
+				}
+			}
+			flight.finish(results, failure);
+		}
+	}
+
+	/**
+	 * Searches an index without the cache.
+	 *
+	 * @param index the index to search
+	 * @param query the parsed query line
+	 * @param key   what to search for
+	 * @return an unmodifiable sorted list of search results
+	 */
+	private static List<InvertedIndex.SearchResult> search(InvertedIndexInterface index, SearchQuery query, Key key) {
+		return Collections.unmodifiableList(key.distance > 0
+				? index.fuzzySearch(query.words(), key.distance, key.limit, key.ranking)
+				: index.search(query, key.exact, key.limit, key.ranking));
+	}
+
+	/**
+	 * Looks up cached results, and counts the query as asked for. The lock must
+	 * be held.
+	 *
+	 * @param key        the search
+	 * @param generation the current generation of the index
+	 * @return the cached results, or null if there are none for this generation
+	 */
+	private List<InvertedIndex.SearchResult> get(Key key, long generation) {
+		invalidate(generation);
+		sketch.increment(key.hashCode());
+
+		List<InvertedIndex.SearchResult> results = entries.get(key);
+		if (results != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return results;
+	}
+
+	/**
+	 * Keeps the results of a search if there is room, or if they are asked for
+	 * more often than the least recently used results. The lock must be held.
+	 *
+	 * @param key        the search
+	 * @param generation the generation of the index the results are from
+	 * @param results    the results
+	 */
+	private void put(Key key, long generation, List<InvertedIndex.SearchResult> results) {
+		if (generation != this.generation || capacity == 0) {
+			return;
+		}
+
+		if (entries.size() >= capacity && !entries.containsKey(key)) {
+			Iterator<Map.Entry<Key, List<InvertedIndex.SearchResult>>> eldest = entries.entrySet().iterator();
+			Key victim = eldest.next().getKey();
+			if (sketch.frequency(key.hashCode()) <= sketch.frequency(victim.hashCode())) {
+				rejections++;
+				return;
+			}
+			eldest.remove();
+			evictions++;
+		}
+		entries.put(key, results);
+	}
+
+	/**
+	 * Clears the cached results if the index has moved on to a newer generation.
+	 * The frequencies are kept, since popular queries tend to stay popular.
+	 *
+	 * @param generation the current generation of the index
+	 */
+	private void invalidate(long generation) {
+		if (generation > this.generation) {
+			entries.clear();
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Removes every cached result.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of cached result lists.
+	 *
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found cached results.
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that had to search.
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of lookups that waited for an identical search that was
+	 * already running, instead of searching.
+	 *
+	 * @return the number of waits
+	 */
+	public synchronized long waits() {
+		return waits;
+	}
+
+	/**
+	 * Returns the number of cached results that were replaced by more popular
+	 * ones.
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of results that were not cached, since their query was
+	 * asked for less often than the results they would have replaced.
+	 *
+	 * @return the number of rejections
+	 */
+	public synchronized long rejections() {
+		return rejections;
+	}
+
+	/**
+	 * Returns the fraction of lookups that found cached results.
+	 *
+	 * @return the hit rate, from 0 to 1 (or 0 if nothing was looked up)
+	 */
+	public synchronized double hitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"%d/%d results cached, %d hits, %d misses (%.1f%% hit rate), %d waited, %d evicted, %d rejected",
+				entries.size(), capacity, hits, misses, hitRate() * 100, waits, evictions, rejections);
+	}
+
+	/**
+	 * What a search was for, which decides its results.
+	 */
+	private static class Key {
+
+		/** The normalized query. */
+		private final String query;
+
+		/** Whether the search was exact or partial. */
+		private final boolean exact;
+
+		/** How the results were ranked. */
+		private final Ranking ranking;
+
+		/** The most results kept, or 0 for all of them. */
+		private final int limit;
+
+		/** The most edits a match may be away from a query word, or 0. */
+		private final int distance;
+
+		/**
+		 * Initializes a key.
+		 *
+		 * @param query    the normalized query
+		 * @param exact    whether the search was exact or partial
+		 * @param ranking  how the results were ranked
+		 * @param limit    the most results kept, or 0 for all of them
+		 * @param distance the most edits a match may be away from a query word, or 0
+		 */
+		private Key(String query, boolean exact, Ranking ranking, int limit, int distance) {
+			this.query = query;
+			this.exact = exact;
+			this.ranking = ranking;
+			this.limit = limit;
+			this.distance = distance;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return query.equals(key.query) && exact == key.exact && ranking == key.ranking && limit == key.limit
+					&& distance == key.distance;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(query, exact, ranking, limit, distance);
+		}
+	}
+
+	/**
+	 * A search that is running, which identical searches wait for.
+	 */
+	private static class Flight {
+
+		/** The generation of the index being searched. */
+		private final long generation;
+
+		/** The thread doing the search. */
+		private final Thread leader;
+
+		/** Whether the search has finished. */
+		private boolean done;
+
+		/** The results, or null if the search failed. */
+		private List<InvertedIndex.SearchResult> results;
+
+		/** Why the search failed, or null if it did not. */
+		private RuntimeException failure;
+
+		/**
+		 * Initializes a search that is about to run.
+		 *
+		 * @param generation the generation of the index being searched
+		 * @param leader     the thread doing the search
+		 */
+		private Flight(long generation, Thread leader) {
+			this.generation = generation;
+			this.leader = leader;
+			this.done = false;
+			this.results = null;
+			this.failure = null;
+		}
+
+		/**
+		 * Hands the outcome of the search to every thread waiting for it.
+		 *
+		 * @param results the results, or null if the search failed
+		 * @param failure why the search failed, or null if it did not
+		 */
+		private synchronized void finish(List<InvertedIndex.SearchResult> results, RuntimeException failure) {
+			this.results = results;
+			this.failure = failure;
+			this.done = true;
+			this.notifyAll();
+		}
+
+		/**
+		 * Waits for the search to finish.
+		 *
+		 * @return the results, or null if the wait was interrupted or the search
+		 *         failed with an error
+		 * @throws RuntimeException the same exception the search failed with
+		 */
+		private synchronized List<InvertedIndex.SearchResult> await() {
+			while (!done) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * Estimates how often each key was seen with a count-min sketch: a few rows
+	 * of small counters, where each key increments one counter in every row and
+	 * its estimate is the smallest of them. Keys that share a counter can only
+	 * make an estimate too high, never too low. After about ten times as many
+	 * increments as there are cached entries, every counter is halved.
+	 */
+	private static class FrequencySketch {
+
+		/** The number of rows of counters. */
+		private static final int ROWS = 4;
+
+		/** The largest value of a counter. */
+		private static final int MAX_COUNT = 15;
+
+		/** The seed of the hash of each row. */
+		private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+		/** The counters of every row, one row after the other. */
+		private final byte[] counters;
+
+		/** The number of counters in each row, a power of two. */
+		private final int width;
+
+		/** The number of increments before the counters are halved. */
+		private final int period;
+
+		/** The number of increments since the counters were last halved. */
+		private int increments;
+
+		/**
+		 * Initializes a sketch.
+		 *
+		 * @param capacity the number of entries of the cache
+		 */
+		private FrequencySketch(int capacity) {
+			this.width = Integer.highestOneBit(Math.max(16, capacity) * 4 - 1) << 1;
+			this.counters = new byte[ROWS * width];
+			this.period = Math.max(16, capacity) * 10;
+			this.increments = 0;
+		}
+
+		/**
+		 * Returns the counter of a key in a row.
+		 *
+		 * @param hash the hash of the key
+		 * @param row  the row
+		 * @return the index of the counter
+		 */
+		private int index(int hash, int row) {
+			int mixed = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+			return row * width + ((mixed ^ (mixed >>> 16)) & (width - 1));
+		}
+
+		/**
+		 * Counts a key as seen once more.
+		 *
+		 * @param hash the hash of the key
+		 */
+		private void increment(int hash) {
+			for (int row = 0; row < ROWS; row++) {
+				int i = index(hash, row);
+				if (counters[i] < MAX_COUNT) {
+					counters[i]++;
+				}
+			}
+
+			if (++increments >= period) {
+				for (int i = 0; i < counters.length; i++) {
+					counters[i] >>= 1;
+				}
+				increments = 0;
+			}
+		}
+
+		/**
+		 * Estimates how often a key was seen.
+		 *
+		 * @param hash the hash of the key
+		 * @return the estimated frequency
+		 */
+		private int frequency(int hash) {
+			int frequency = MAX_COUNT;
+			for (int row = 0; row < ROWS; row++) {
+				frequency = Math.min(frequency, counters[index(hash, row)]);
+			}
+			return frequency;
+		}
+	}
+}
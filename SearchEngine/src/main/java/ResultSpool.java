@@ -0,0 +1,444 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Holds the search results of every query of a query file until they are
+ * written out as JSON, sorted by query. The results are written in sorted
+ * query order, but a query file can list its queries in any order, so no query
+ * is known to be next until the whole file has been searched. Instead of
+ * keeping every result list until then, the spool sorts them externally:
+ *
+ * <ul>
+ * <li>Results are kept in memory, sorted by query, until they hold more than a
+ * budget of search results.</li>
+ * <li>Then they are encoded as the JSON bytes they will be written as, and
+ * spilled to a temporary file as a sorted run.</li>
+ * <li>Writing the results merges the runs and whatever is still in memory, so
+ * memory stays bounded by the budget no matter how large the query file
+ * is.</li>
+ * </ul>
+ *
+ * Runs are grouped into tiers by size, like the segments of a
+ * {@link SegmentedIndex}. Whenever a tier has {@link #MERGE_FACTOR} runs, they
+ * are merged into one run of the next tier, so only a few runs per tier are
+ * ever open at once, and every result is only copied a few times.
+ *
+ * Only the queries themselves are kept for good, so that a query already in the
+ * spool is never added twice. The output is byte for byte the same as
+ * {@link SimpleJsonWriter#asFullResults(TreeMap, Path)} writes for the same
+ * results. By default nothing is spilled, which is exactly like keeping every
+ * result in a sorted map. If a run cannot be written (for example if the disk
+ * is full), the spool stops spilling and keeps the rest of the results in
+ * memory instead of losing any of them.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author sarah
+ */
+public class ResultSpool {
+
+	/** The default most search results to keep in memory when spilling. */
+	public static final int DEFAULT_BUDGET = 1 << 20;
+
+	/** The number of runs in a tier that triggers a merge. */
+	public static final int MERGE_FACTOR = 16;
+
+	/** The size of the buffer used to encode one entry of a run, in bytes. */
+	private static final int ENTRY_BUFFER_SIZE = 1 << 13;
+
+	/** The most search results to keep in memory before spilling a run. */
+	private final long budget;
+
+	/** The results not spilled yet, by query. */
+	private final TreeMap<String, List<InvertedIndex.SearchResult>> buffer;
+
+	/** The number of search results in the buffer, counting each query as one. */
+	private long buffered;
+
+	/** The queries already spilled. */
+	private final HashSet<String> spilled;
+
+	/** The files of the sorted runs, from the highest tier to the lowest. */
+	private final List<Path> runs;
+
+	/** The tier of each run. */
+	private final List<Integer> tiers;
+
+	/** Whether spilling failed, after which everything is kept in memory. */
+	private boolean failed;
+
+	/**
+	 * Initializes a spool that keeps every result in memory.
+	 */
+	public ResultSpool() {
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Initializes a spool that spills sorted runs to temporary files.
+	 *
+	 * @param budget the most search results to keep in memory before spilling
+	 */
+	public ResultSpool(long budget) {
+		this.budget = Math.max(1, budget);
+		this.buffer = new TreeMap<>();
+		this.buffered = 0;
+		this.spilled = new HashSet<>();
+		this.runs = new ArrayList<>();
+		this.tiers = new ArrayList<>();
+		this.failed = false;
+	}
+
+	/**
+	 * Determines whether the results of a query were added.
+	 *
+	 * @param query the query, as it is written in the results
+	 * @return true if the query was added
+	 */
+	public boolean containsKey(String query) {
+		return buffer.containsKey(query) || spilled.contains(query);
+	}
+
+	/**
+	 * Adds the results of a query, unless the query was already added. Spills
+	 * the results in memory once they are over the budget.
+	 *
+	 * @param query   the query, as it is written in the results
+	 * @param results the sorted results of the query
+	 */
+	public void put(String query, List<InvertedIndex.SearchResult> results) {
+		if (containsKey(query)) {
+			return;
+		}
+
+		buffer.put(query, results);
+		buffered += results.size() + 1;
+		if (buffered > budget && !failed) {
+			try {
+				spill();
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+	}
+
+	/**
+	 * Adds the results of every query in a map, skipping the queries that were
+	 * already added.
+	 *
+	 * @param results the sorted results of each query
+	 */
+	public void putAll(Map<String, List<InvertedIndex.SearchResult>> results) {
+		for (Map.Entry<String, List<InvertedIndex.SearchResult>> entry : results.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the number of sorted runs on disk.
+	 *
+	 * @return the number of runs
+	 */
+	public int runs() {
+		return runs.size();
+	}
+
+	/**
+	 * Writes the results in memory to a new sorted run, and forgets them. Then
+	 * merges the runs of every tier that is full.
+	 *
+	 * @throws IOException if unable to write a run
+	 */
+	private void spill() throws IOException {
+		Path run = Files.createTempFile("results", ".run");
+		run.toFile().deleteOnExit();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)));
+				ByteJsonWriter writer = new ByteJsonWriter(Channels.newChannel(bytes), ENTRY_BUFFER_SIZE)) {
+			for (Map.Entry<String, List<InvertedIndex.SearchResult>> entry : buffer.entrySet()) {
+				write(output, entry.getKey());
+
+				bytes.reset();
+				SimpleJsonWriter.asResultEntry(entry.getKey(), entry.getValue(), writer, 1);
+				writer.flush();
+				output.writeInt(bytes.size());
+				bytes.writeTo(output);
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(run);
+			throw e;
+		}
+
+		runs.add(run);
+		tiers.add(0);
+		spilled.addAll(buffer.keySet());
+		buffer.clear();
+		buffered = 0;
+
+		// the lowest tier is always last, and a merge may fill the tier above it
+		int tier = 0;
+		while (runs.size() >= MERGE_FACTOR && tiers.get(runs.size() - MERGE_FACTOR) == tier) {
+			merge(MERGE_FACTOR);
+			tier++;
+		}
+	}
+
+	/**
+	 * Merges the last runs into one run of the next tier.
+	 *
+	 * @param count the number of runs to merge
+	 * @throws IOException if unable to read a run or write the merged run
+	 */
+	private void merge(int count) throws IOException {
+		List<Path> merging = new ArrayList<>(runs.subList(runs.size() - count, runs.size()));
+		int tier = tiers.get(runs.size() - 1) + 1;
+
+		Path run = Files.createTempFile("results", ".run");
+		run.toFile().deleteOnExit();
+
+		List<Run> opened = new ArrayList<>();
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+			PriorityQueue<Run> heads = open(merging, null, opened);
+			while (!heads.isEmpty()) {
+				Run next = heads.poll();
+				write(output, next.query);
+				output.writeInt(next.entry.length);
+				output.write(next.entry);
+				if (next.advance()) {
+					heads.add(next);
+				}
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(run);
+			throw e;
+		} finally {
+			for (Run next : opened) {
+				next.close();
+			}
+		}
+
+		for (Path path : merging) {
+			Files.deleteIfExists(path);
+		}
+		runs.subList(runs.size() - count, runs.size()).clear();
+		tiers.subList(tiers.size() - count, tiers.size()).clear();
+		runs.add(run);
+		tiers.add(tier);
+	}
+
+	/**
+	 * Writes every result to a file in sorted query order, the same way as
+	 * {@link SimpleJsonWriter#asFullResults(TreeMap, Path)}.
+	 *
+	 * @param path the file to write to
+	 * @throws IOException if unable to read a run or write the file
+	 */
+	public void writeJson(Path path) throws IOException {
+		if (runs.isEmpty()) {
+			SimpleJsonWriter.asFullResults(buffer, path);
+			return;
+		}
+
+		List<Run> opened = new ArrayList<>();
+		try (ByteJsonWriter writer = new ByteJsonWriter(path)) {
+			PriorityQueue<Run> heads = open(runs, buffer, opened);
+			boolean first = true;
+			writer.write('{');
+			while (!heads.isEmpty()) {
+				Run next = heads.poll();
+				writer.write(first ? "\n\t" : ",\n\t");
+				next.write(writer);
+				first = false;
+
+				if (next.advance()) {
+					heads.add(next);
+				}
+			}
+			writer.write('\n');
+			writer.write('}');
+		} finally {
+			for (Run next : opened) {
+				next.close();
+			}
+		}
+	}
+
+	/**
+	 * Opens runs to merge, ordered by their first entries.
+	 *
+	 * @param files  the files of the runs
+	 * @param memory the results in memory to merge as the newest run, or null
+	 * @param opened the list to add every opened run to, so the caller can close
+	 *               them
+	 * @return the runs that are not empty
+	 * @throws IOException if unable to open or read a run
+	 */
+	private static PriorityQueue<Run> open(List<Path> files,
+			TreeMap<String, List<InvertedIndex.SearchResult>> memory, List<Run> opened) throws IOException {
+		PriorityQueue<Run> heads = new PriorityQueue<>();
+		for (int i = 0; i < files.size(); i++) {
+			Run run = new Run(files.get(i), i);
+			opened.add(run);
+			if (run.advance()) {
+				heads.add(run);
+			}
+		}
+		if (memory != null) {
+			Run run = new Run(memory, files.size());
+			if (run.advance()) {
+				heads.add(run);
+			}
+		}
+		return heads;
+	}
+
+	/**
+	 * Writes a string of any length as its length followed by its UTF-8 bytes.
+	 *
+	 * @param output the stream to write to
+	 * @param text   the string to write
+	 * @throws IOException if unable to write
+	 */
+	private static void write(DataOutputStream output, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * Reads bytes written as their length followed by the bytes.
+	 *
+	 * @param input the stream to read from
+	 * @return the bytes
+	 * @throws IOException if unable to read
+	 */
+	private static byte[] read(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * A sorted run being merged, either read back from its file or taken from
+	 * the results still in memory, which are newer than every spilled run.
+	 */
+	private static class Run implements Comparable<Run> {
+
+		/** The file the run is read from, or null for the results in memory. */
+		private final DataInputStream input;
+
+		/** The results in memory still to merge, or null for a spilled run. */
+		private final Iterator<Map.Entry<String, List<InvertedIndex.SearchResult>>> memory;
+
+		/** The order of the run, which breaks ties in favor of older runs. */
+		private final int order;
+
+		/** The query of the current entry. */
+		private String query;
+
+		/** The current entry of a spilled run, encoded as JSON. */
+		private byte[] entry;
+
+		/** The results of the current entry of the results in memory. */
+		private List<InvertedIndex.SearchResult> results;
+
+		/**
+		 * Opens a spilled run.
+		 *
+		 * @param path  the file of the run
+		 * @param order the order of the run
+		 * @throws IOException if unable to open the file
+		 */
+		private Run(Path path, int order) throws IOException {
+			this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+			this.memory = null;
+			this.order = order;
+		}
+
+		/**
+		 * Merges the results still in memory as the newest run.
+		 *
+		 * @param buffer the results in memory
+		 * @param order  the order of the run
+		 */
+		private Run(TreeMap<String, List<InvertedIndex.SearchResult>> buffer, int order) {
+			this.input = null;
+			this.memory = buffer.entrySet().iterator();
+			this.order = order;
+		}
+
+		/**
+		 * Moves on to the next entry of the run.
+		 *
+		 * @return true if there is one, false if the run is done
+		 * @throws IOException if unable to read the run
+		 */
+		private boolean advance() throws IOException {
+			if (input == null) {
+				if (!memory.hasNext()) {
+					return false;
+				}
+				Map.Entry<String, List<InvertedIndex.SearchResult>> next = memory.next();
+				query = next.getKey();
+				results = next.getValue();
+				return true;
+			}
+
+			try {
+				query = new String(read(input), StandardCharsets.UTF_8);
+			} catch (EOFException e) {
+				return false;
+			}
+			entry = read(input);
+			return true;
+		}
+
+		/**
+		 * Writes the current entry as a member of the results object.
+		 *
+		 * @param writer the writer to use
+		 * @throws IOException if unable to write
+		 */
+		private void write(ByteJsonWriter writer) throws IOException {
+			if (input == null) {
+				SimpleJsonWriter.asResultEntry(query, results, writer, 1);
+			} else {
+				writer.write(entry, 0, entry.length);
+			}
+		}
+
+		/**
+		 * Closes the file of the run, if it has one.
+		 *
+		 * @throws IOException if unable to close the file
+		 */
+		private void close() throws IOException {
+			if (input != null) {
+				input.close();
+			}
+		}
+
+		@Override
+		public int compareTo(Run other) {
+			int compared = query.compareTo(other.query);
+			return compared != 0 ? compared : Integer.compare(order, other.order);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Adds up the matches of a search in primitive arrays indexed by location id,
+ * so that scoring a posting is a single array update. Search result objects
+ * are only created (and scores only computed) once every posting has been
+ * counted, and the arrays are reused by every search on the same thread.
+ *
+ * Locations are remembered in the order they were first matched, so sorting
+ * the results gives exactly the same order as updating a search result for
+ * every posting did.
+ *
+ * Warning: This class is not thread-safe. Use {@link #get(int)} to borrow the
+ * accumulator of the current thread, and finish with it before searching again.
+ *
+ * @author sarah
+ */
+public class ScoreAccumulator {
+
+	/** The accumulator of each thread. */
+	private static final ThreadLocal<ScoreAccumulator> LOCAL = ThreadLocal.withInitial(ScoreAccumulator::new);
+
+	/** The number of matches of each location, indexed by location id. */
+	private int[] counts;
+
+	/** The score of each location, indexed by location id, if scores are added. */
+	private double[] scores;
+
+	/** The ids of the matched locations, in the order they were first matched. */
+	private int[] matched;
+
+	/** The number of matched locations. */
+	private int size;
+
+	/** Whether scores were added, instead of computed from the counts. */
+	private boolean scored;
+
+	/**
+	 * Initializes an empty accumulator.
+	 */
+	public ScoreAccumulator() {
+		this.counts = new int[0];
+		this.scores = new double[0];
+		this.matched = new int[0];
+		this.size = 0;
+		this.scored = false;
+	}
+
+	/**
+	 * Returns the cleared accumulator of the current thread, with room for a
+	 * number of locations.
+	 *
+	 * @param capacity the number of locations
+	 * @return the accumulator
+	 */
+	public static ScoreAccumulator get(int capacity) {
+		ScoreAccumulator accumulator = LOCAL.get();
+		accumulator.clear();
+		if (accumulator.counts.length < capacity) {
+			accumulator.counts = new int[capacity];
+			accumulator.scores = new double[capacity];
+			accumulator.matched = new int[capacity];
+		}
+		return accumulator;
+	}
+
+	/**
+	 * Adds matches to a location.
+	 *
+	 * @param id      the location id
+	 * @param matches the number of new matches in this location
+	 */
+	public void add(int id, int matches) {
+		if (counts[id] == 0) {
+			matched[size++] = id;
+		}
+		counts[id] += matches;
+	}
+
+	/**
+	 * Adds matches and their score to a location. Once scores are added, the
+	 * results use them instead of the matches divided by the location length.
+	 *
+	 * @param id      the location id
+	 * @param matches the number of new matches in this location
+	 * @param score   the score the matches add
+	 */
+	public void add(int id, int matches, double score) {
+		add(id, matches);
+		scores[id] += score;
+		scored = true;
+	}
+
+	/**
+	 * Returns the number of matched locations.
+	 *
+	 * @return the number of matched locations
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the sorted search results, and clears the accumulator.
+	 *
+	 * @param locations the dictionary used to resolve location ids
+	 * @return a sorted list of search results
+	 */
+	public List<InvertedIndex.SearchResult> results(LocationDictionary locations) {
+		List<InvertedIndex.SearchResult> results = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			int id = matched[i];
+			results.add(scored ? new InvertedIndex.SearchResult(locations, id, counts[id], scores[id])
+					: new InvertedIndex.SearchResult(locations, id, counts[id]));
+		}
+		clear();
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Returns the best sorted search results, and clears the accumulator.
+	 *
+	 * @param locations the dictionary used to resolve location ids
+	 * @param limit     the most results to return
+	 * @return a sorted list of at most limit search results
+	 */
+	public List<InvertedIndex.SearchResult> results(LocationDictionary locations, int limit) {
+		TopKHeap heap = new TopKHeap(limit, locations);
+		for (int i = 0; i < size; i++) {
+			int id = matched[i];
+			heap.offer(id, counts[id], scored ? scores[id] : counts[id] / (double) locations.count(id));
+		}
+		clear();
+		return heap.toList();
+	}
+
+	/**
+	 * Forgets every match, only touching the locations that were matched.
+	 */
+	private void clear() {
+		for (int i = 0; i < size; i++) {
+			counts[matched[i]] = 0;
+			scores[matched[i]] = 0;
+		}
+		size = 0;
+		scored = false;
+	}
+}
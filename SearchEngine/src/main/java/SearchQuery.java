@@ -0,0 +1,544 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed query line. Words outside of quotes are searched for like before,
+ * each one matching any location it (or in a partial search, any word it is a
+ * prefix of) is found in. Quoted words are a phrase, which only matches where
+ * the words are found next to each other in the same order, and a phrase
+ * followed by {@code ~N} only matches where every word is found within N
+ * positions of each other, in any order:
+ *
+ * <pre>
+ * apple "new york" "pizza pasta"~5
+ * </pre>
+ *
+ * The words of a phrase are always matched exactly, since a prefix does not
+ * have positions of its own. Each phrase adds its number of occurrences to the
+ * matches of a location, like a word adds its number of appearances.
+ *
+ * A word outside of quotes with a {@code *} is a wildcard pattern instead,
+ * where the {@code *} matches any number of letters, and which matches every
+ * word of the index that fits the pattern (see {@link TrigramIndex}). Patterns
+ * are not stemmed, since the start or end of a word is what they are about:
+ *
+ * <pre>
+ * *ing s*ion *ear*
+ * </pre>
+ *
+ * A line with the (upper case) operators {@code AND}, {@code OR} or {@code NOT}
+ * is a boolean query instead, which only matches the locations that satisfy it.
+ * {@code NOT} binds tightest and {@code AND} next, and words or phrases without
+ * an operator between them are still joined by {@code OR}. A {@code NOT}
+ * without an operator before it joins the words before it by {@code AND}, so
+ * both of these are the same:
+ *
+ * <pre>
+ * apple AND NOT pie OR "new york"
+ * apple NOT pie "new york"
+ * </pre>
+ *
+ * A group of words joined by {@code AND} needs at least one word that is not
+ * negated to match anything. The locations that match are ranked by the matches
+ * of the words and phrases that are not negated.
+ *
+ * @author sarah
+ */
+public class SearchQuery {
+
+	/** Matches a quoted phrase, optionally followed by a distance. */
+	public static final Pattern PHRASE_REGEX = Pattern.compile("\"([^\"]*)\"(?:~(\\d+))?");
+
+	/** Matches a quoted phrase or a word outside of quotes. */
+	public static final Pattern TOKEN_REGEX = Pattern.compile(PHRASE_REGEX.pattern() + "|[^\\s\"]+");
+
+	/** Matches the wildcards of a pattern. */
+	public static final Pattern WILDCARD_REGEX = Pattern.compile("\\*+");
+
+	/** The stemmed words outside of quotes. */
+	private final TreeSet<String> words;
+
+	/** The wildcard patterns, cleaned but not stemmed. */
+	private final TreeSet<String> wildcards;
+
+	/** The phrases, sorted by how they are written. */
+	private final TreeSet<Phrase> phrases;
+
+	/** The groups of clauses joined by AND, which are joined by OR. */
+	private final List<List<Clause>> groups;
+
+	/**
+	 * Initializes a query from its parts.
+	 *
+	 * @param words     the stemmed words outside of quotes
+	 * @param wildcards the wildcard patterns
+	 * @param phrases   the phrases
+	 */
+	public SearchQuery(Set<String> words, Set<String> wildcards, Set<Phrase> phrases) {
+		this.words = new TreeSet<>(words);
+		this.wildcards = new TreeSet<>(wildcards);
+		this.phrases = new TreeSet<>(phrases);
+		this.groups = Collections.emptyList();
+	}
+
+	/**
+	 * Initializes a query without wildcards.
+	 *
+	 * @param words   the stemmed words outside of quotes
+	 * @param phrases the phrases
+	 */
+	public SearchQuery(Set<String> words, Set<Phrase> phrases) {
+		this(words, Collections.emptySet(), phrases);
+	}
+
+	/**
+	 * Initializes a boolean query.
+	 *
+	 * @param groups the groups of clauses joined by AND, which are joined by OR
+	 */
+	public SearchQuery(List<List<Clause>> groups) {
+		this.words = new TreeSet<>();
+		this.wildcards = new TreeSet<>();
+		this.phrases = new TreeSet<>();
+		List<List<Clause>> copy = new ArrayList<>();
+		for (List<Clause> group : groups) {
+			if (!group.isEmpty()) {
+				copy.add(List.copyOf(group));
+			}
+		}
+		this.groups = Collections.unmodifiableList(copy);
+	}
+
+	/**
+	 * Initializes a query without phrases.
+	 *
+	 * @param words the stemmed words
+	 */
+	public SearchQuery(Set<String> words) {
+		this(words, Collections.emptySet());
+	}
+
+	/**
+	 * Parses a query line into its words, wildcards and phrases. Phrases without
+	 * any words left after stemming are ignored, and so are wildcards without any
+	 * letters and a quote without a match.
+	 *
+	 * @param line the query line
+	 * @return the parsed query
+	 */
+	public static SearchQuery parse(String line) {
+		Matcher tokens = TOKEN_REGEX.matcher(line);
+		while (tokens.find()) {
+			if (isOperator(tokens.group())) {
+				return parseBoolean(line);
+			}
+		}
+
+		TreeSet<Phrase> phrases = new TreeSet<>();
+		StringBuilder rest = new StringBuilder();
+
+		Matcher matcher = PHRASE_REGEX.matcher(line);
+		int last = 0;
+		while (matcher.find()) {
+			rest.append(line, last, matcher.start()).append(' ');
+			last = matcher.end();
+
+			Phrase phrase = phrase(matcher);
+			if (phrase != null) {
+				phrases.add(phrase);
+			}
+		}
+		rest.append(line, last, line.length());
+
+		TreeSet<String> wildcards = new TreeSet<>();
+		StringBuilder plain = new StringBuilder();
+		for (String token : TextParser.split(rest.toString())) {
+			if (WILDCARD_REGEX.matcher(token).find()) {
+				String wildcard = wildcard(token);
+				if (wildcard != null) {
+					wildcards.add(wildcard);
+				}
+			} else {
+				plain.append(token).append(' ');
+			}
+		}
+
+		return new SearchQuery(TextFileStemmer.uniqueStems(plain.toString()), wildcards, phrases);
+	}
+
+	/**
+	 * Cleans the letters of a wildcard pattern, keeping its wildcards.
+	 *
+	 * @param token the word with wildcards
+	 * @return the cleaned pattern, or null if there are no letters in it
+	 */
+	private static String wildcard(String token) {
+		String[] pieces = WILDCARD_REGEX.split(token, -1);
+		for (int i = 0; i < pieces.length; i++) {
+			pieces[i] = TextParser.clean(pieces[i]);
+		}
+
+		// wildcards next to each other (or around left out characters) are one
+		String pattern = WILDCARD_REGEX.matcher(String.join("*", pieces)).replaceAll("*");
+		return pattern.chars().anyMatch(Character::isLetter) ? pattern : null;
+	}
+
+	/**
+	 * Parses a query line with operators into groups of clauses.
+	 *
+	 * @param line the query line
+	 * @return the parsed query
+	 */
+	private static SearchQuery parseBoolean(String line) {
+		List<List<Clause>> groups = new ArrayList<>();
+		List<Clause> group = null;
+		boolean and = false;
+		boolean or = false;
+		boolean not = false;
+
+		Matcher matcher = TOKEN_REGEX.matcher(line);
+		while (matcher.find()) {
+			String token = matcher.group();
+			if (token.equals("AND")) {
+				and = true;
+				continue;
+			} else if (token.equals("OR")) {
+				and = false;
+				or = true;
+				continue;
+			} else if (token.equals("NOT")) {
+				and |= group != null && !or;
+				not = true;
+				continue;
+			}
+
+			List<Clause> clauses = new ArrayList<>();
+			if (matcher.group(1) != null) {
+				Phrase phrase = phrase(matcher);
+				if (phrase != null) {
+					clauses.add(new Clause(phrase, not));
+				}
+			} else {
+				for (String stem : TextFileStemmer.listStems(token)) {
+					clauses.add(new Clause(stem, not));
+				}
+			}
+
+			// a word that is left out (like a number) keeps the operator before it
+			if (!clauses.isEmpty()) {
+				if (group == null || !and) {
+					group = new ArrayList<>();
+					groups.add(group);
+				}
+				group.addAll(clauses);
+				and = false;
+				or = false;
+				not = false;
+			}
+		}
+		return new SearchQuery(groups);
+	}
+
+	/**
+	 * Creates the phrase matched by {@link #PHRASE_REGEX}.
+	 *
+	 * @param matcher the matcher that found the phrase
+	 * @return the phrase, or null if no words are left after stemming
+	 */
+	private static Phrase phrase(Matcher matcher) {
+		List<String> stems = TextFileStemmer.listStems(matcher.group(1));
+		int distance = 0;
+		if (matcher.group(2) != null) {
+			try {
+				distance = Integer.parseInt(matcher.group(2));
+			} catch (NumberFormatException e) {
+				distance = Integer.MAX_VALUE;
+			}
+		}
+		return stems.isEmpty() ? null : new Phrase(stems, distance);
+	}
+
+	/**
+	 * Determines whether a word outside of quotes is an operator.
+	 *
+	 * @param token the word
+	 * @return true if the word is AND, OR or NOT
+	 */
+	private static boolean isOperator(String token) {
+		return token.equals("AND") || token.equals("OR") || token.equals("NOT");
+	}
+
+	/**
+	 * Returns the stemmed words outside of quotes.
+	 *
+	 * @return an unmodifiable sorted set of words
+	 */
+	public SortedSet<String> words() {
+		return Collections.unmodifiableSortedSet(words);
+	}
+
+	/**
+	 * Returns the wildcard patterns.
+	 *
+	 * @return an unmodifiable sorted set of patterns
+	 */
+	public SortedSet<String> wildcards() {
+		return Collections.unmodifiableSortedSet(wildcards);
+	}
+
+	/**
+	 * Returns the phrases.
+	 *
+	 * @return an unmodifiable sorted set of phrases
+	 */
+	public SortedSet<Phrase> phrases() {
+		return Collections.unmodifiableSortedSet(phrases);
+	}
+
+	/**
+	 * Returns the groups of clauses of a boolean query.
+	 *
+	 * @return an unmodifiable list of the groups of clauses joined by AND, which
+	 *         are joined by OR, or an empty list if there are no operators
+	 */
+	public List<List<Clause>> groups() {
+		return groups;
+	}
+
+	/**
+	 * Determines whether there is anything to search for.
+	 *
+	 * @return true if there are no words, wildcards, phrases or clauses
+	 */
+	public boolean isEmpty() {
+		return words.isEmpty() && wildcards.isEmpty() && phrases.isEmpty() && groups.isEmpty();
+	}
+
+	/**
+	 * Determines whether this is a boolean query.
+	 *
+	 * @return true if there are operators
+	 */
+	public boolean hasOperators() {
+		return !groups.isEmpty();
+	}
+
+	/**
+	 * Determines whether the query is only words, which every index can search
+	 * for.
+	 *
+	 * @return true if there are no wildcards, phrases or operators
+	 */
+	public boolean isSimple() {
+		return wildcards.isEmpty() && phrases.isEmpty() && groups.isEmpty();
+	}
+
+	/**
+	 * Determines whether any words are wildcard patterns.
+	 *
+	 * @return true if there are wildcards
+	 */
+	public boolean hasWildcards() {
+		return !wildcards.isEmpty();
+	}
+
+	/**
+	 * Determines whether any part of the query depends on positions.
+	 *
+	 * @return true if there are phrases
+	 */
+	public boolean hasPhrases() {
+		return !phrases.isEmpty();
+	}
+
+	/**
+	 * Returns the query as it is written in the results, which is the words
+	 * joined by spaces followed by the wildcards and the phrases, so a line
+	 * without quotes or wildcards is written like before. A boolean query is
+	 * written with every operator instead, its clauses joined by AND and its
+	 * groups joined by OR.
+	 */
+	@Override
+	public String toString() {
+		if (hasOperators()) {
+			List<String> joined = new ArrayList<>();
+			for (List<Clause> group : groups) {
+				List<String> clauses = new ArrayList<>();
+				for (Clause clause : group) {
+					clauses.add(clause.toString());
+				}
+				joined.add(String.join(" AND ", clauses));
+			}
+			return String.join(" OR ", joined);
+		}
+
+		List<String> parts = new ArrayList<>(words);
+		parts.addAll(wildcards);
+		for (Phrase phrase : phrases) {
+			parts.add(phrase.toString());
+		}
+		return String.join(" ", parts);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof SearchQuery && toString().equals(other.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	/**
+	 * A quoted phrase: stemmed words in order, and how far apart they may be.
+	 */
+	public static class Phrase implements Comparable<Phrase> {
+
+		/** The stemmed words in order. */
+		private final List<String> words;
+
+		/** The most positions the words may be apart, or 0 for a phrase. */
+		private final int distance;
+
+		/**
+		 * Initializes a phrase.
+		 *
+		 * @param words    the stemmed words in order
+		 * @param distance the most positions the words may be apart, or 0 if they
+		 *                 have to be next to each other in order
+		 */
+		public Phrase(List<String> words, int distance) {
+			this.words = List.copyOf(words);
+			this.distance = Math.max(0, distance);
+		}
+
+		/**
+		 * Returns the stemmed words in order.
+		 *
+		 * @return an unmodifiable list of words
+		 */
+		public List<String> words() {
+			return words;
+		}
+
+		/**
+		 * Returns how many positions the words may be apart.
+		 *
+		 * @return the distance, or 0 if the words have to be next to each other in
+		 *         order
+		 */
+		public int distance() {
+			return distance;
+		}
+
+		@Override
+		public int compareTo(Phrase other) {
+			return toString().compareTo(other.toString());
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Phrase && toString().equals(other.toString());
+		}
+
+		@Override
+		public int hashCode() {
+			return toString().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			String quoted = '"' + String.join(" ", words) + '"';
+			return distance > 0 ? quoted + "~" + distance : quoted;
+		}
+	}
+
+	/**
+	 * A word or phrase of a boolean query, which may be negated.
+	 */
+	public static class Clause {
+
+		/** The stemmed word, or null if this is a phrase. */
+		private final String word;
+
+		/** The phrase, or null if this is a word. */
+		private final Phrase phrase;
+
+		/** Whether the clause is negated. */
+		private final boolean negated;
+
+		/**
+		 * Initializes a word clause.
+		 *
+		 * @param word    the stemmed word
+		 * @param negated whether the clause is negated
+		 */
+		public Clause(String word, boolean negated) {
+			this.word = word;
+			this.phrase = null;
+			this.negated = negated;
+		}
+
+		/**
+		 * Initializes a phrase clause.
+		 *
+		 * @param phrase  the phrase
+		 * @param negated whether the clause is negated
+		 */
+		public Clause(Phrase phrase, boolean negated) {
+			this.word = null;
+			this.phrase = phrase;
+			this.negated = negated;
+		}
+
+		/**
+		 * Returns the stemmed word.
+		 *
+		 * @return the word, or null if this is a phrase
+		 */
+		public String word() {
+			return word;
+		}
+
+		/**
+		 * Returns the phrase.
+		 *
+		 * @return the phrase, or null if this is a word
+		 */
+		public Phrase phrase() {
+			return phrase;
+		}
+
+		/**
+		 * Determines whether the clause is negated.
+		 *
+		 * @return true if the locations must not match the clause
+		 */
+		public boolean isNegated() {
+			return negated;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Clause && toString().equals(other.toString());
+		}
+
+		@Override
+		public int hashCode() {
+			return toString().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			String text = word != null ? word : phrase.toString();
+			return negated ? "NOT " + text : text;
+		}
+	}
+}
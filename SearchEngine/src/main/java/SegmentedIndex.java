@@ -0,0 +1,788 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A thread-safe index made of immutable segments, in the style of a
+ * log-structured merge tree. Local indexes are merged into a small in-memory
+ * buffer, and every time the buffer holds enough locations it is frozen into a
+ * new segment. Since the buffer never grows past the flush size, adding to the
+ * index costs the same no matter how large the index already is.
+ *
+ * Segments are grouped into tiers by size. Whenever a tier has
+ * {@link #MERGE_FACTOR} segments, they are merged into one segment of the next
+ * tier in the background on a work queue.
+ *
+ * Every location lives in at most one segment. Deleting a location only marks
+ * it as deleted in its segment, and the location is dropped for good the next
+ * time that segment is merged. Adding a location that is already in the index
+ * replaces it, so a changed file or page can be updated.
+ *
+ * Searches query every live segment without locking, using the latest
+ * published list of segments. Since no location is in two segments, the results
+ * of each segment can simply be combined. Changes in the buffer are not visible
+ * to any of the accessors until the buffer is flushed by {@link #publish()}.
+ *
+ * Searches ranked by a model that depends on the statistics of the whole
+ * collection (like TF-IDF or BM25) cannot be answered segment by segment, so
+ * they search every live segment combined into one snapshot instead. The
+ * snapshot is built at most once per generation, and searching it never
+ * flushes the buffer or otherwise changes the index.
+ *
+ * @author sarah
+ */
+public class SegmentedIndex implements ThreadSafeIndexInterface {
+
+	/** The default number of locations to buffer before flushing a segment. */
+	public static final int DEFAULT_FLUSH_SIZE = 64;
+
+	/** The number of segments in a tier that triggers a merge. */
+	public static final int MERGE_FACTOR = 4;
+
+	/** The live segments, replaced as a whole every time they change. */
+	private volatile List<Segment> segments;
+
+	/** The buffer of changes not yet flushed into a segment. */
+	private InvertedIndex buffer;
+
+	/** The number of locations to buffer before flushing a segment. */
+	private final int flushSize;
+
+	/** The work queue to run merges on, or null to merge in the calling thread. */
+	private final WorkQueue mergeQueue;
+
+	/** The segments currently being merged. */
+	private final Set<FrozenIndex> merging;
+
+	/** The lock protecting the buffer and changes to the segment list. */
+	private final Object lock;
+
+	/** The generation number, which increases every time the segments change. */
+	private long generation;
+
+	/**
+	 * The live segments combined into one index as of its generation, or null
+	 * if not combined yet.
+	 */
+	private volatile FrozenIndex snapshot;
+
+	/** The lock held while combining a snapshot, so only one thread does it. */
+	private final Object snapshotLock;
+
+	/**
+	 * Initializes an empty segmented index.
+	 *
+	 * @param flushSize  the number of locations to buffer before flushing a
+	 *                   segment
+	 * @param mergeQueue the work queue to run merges on, or null to merge in the
+	 *                   thread that flushed
+	 */
+	public SegmentedIndex(int flushSize, WorkQueue mergeQueue) {
+		this.segments = Collections.emptyList();
+		this.buffer = new InvertedIndex();
+		this.flushSize = Math.max(1, flushSize);
+		this.mergeQueue = mergeQueue;
+		this.merging = new HashSet<>();
+		this.lock = new Object();
+		this.generation = 0;
+		this.snapshot = null;
+		this.snapshotLock = new Object();
+	}
+
+	/**
+	 * One immutable segment and the ids of its deleted locations.
+	 */
+	private static class Segment {
+
+		/** The postings of this segment. */
+		private final FrozenIndex index;
+
+		/** The ids of the deleted locations, which must not be modified. */
+		private final BitSet deleted;
+
+		/**
+		 * Initializes a segment.
+		 *
+		 * @param index   the postings of this segment
+		 * @param deleted the ids of the deleted locations
+		 */
+		public Segment(FrozenIndex index, BitSet deleted) {
+			this.index = index;
+			this.deleted = deleted;
+		}
+
+		/**
+		 * Returns the id of a location if it is live in this segment.
+		 *
+		 * @param location the location
+		 * @return the id of the location, or -1 if not here or deleted
+		 */
+		public int live(String location) {
+			int id = index.locations().lookup(location);
+			return id < 0 || deleted.get(id) ? -1 : id;
+		}
+
+		/**
+		 * Returns the number of live locations in this segment.
+		 *
+		 * @return the number of live locations
+		 */
+		public int size() {
+			return index.locations().size() - deleted.cardinality();
+		}
+
+		/**
+		 * Returns a copy of this segment with another location deleted.
+		 *
+		 * @param id the id of the location to delete
+		 * @return the new segment
+		 */
+		public Segment delete(int id) {
+			BitSet copy = (BitSet) deleted.clone();
+			copy.set(id);
+			return new Segment(index, copy);
+		}
+	}
+
+	/**
+	 * merges a local index into the buffer, replacing any locations already in the
+	 * index, and flushes the buffer into a new segment if it is full
+	 *
+	 * @param local the local index data to add
+	 */
+	@Override
+	public void addAll(InvertedIndex local) {
+		synchronized (lock) {
+			LocationDictionary added = local.locations();
+			for (int id = 0; id < added.size(); id++) {
+				delete(added.get(id));
+			}
+
+			buffer.addAll(local);
+			if (buffer.locations().size() >= flushSize) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Adds an existing frozen index, such as one loaded from a file, as a segment.
+	 * Its locations must not already be in this index.
+	 *
+	 * @param index the index to add
+	 */
+	public void addSegment(FrozenIndex index) {
+		synchronized (lock) {
+			List<Segment> updated = new ArrayList<>(segments);
+			updated.add(new Segment(index, new BitSet()));
+			segments = Collections.unmodifiableList(updated);
+			generation++;
+			scheduleMerges();
+		}
+	}
+
+	/**
+	 * Deletes a location from the index. The change is visible to searches right
+	 * away, unless the location is still in the buffer.
+	 *
+	 * @param location the location to delete
+	 * @return true if the location was in the index
+	 */
+	public boolean delete(String location) {
+		synchronized (lock) {
+			// the buffer cannot remove locations, so flush it first
+			if (buffer.locations().lookup(location) >= 0) {
+				flush();
+			}
+
+			List<Segment> updated = new ArrayList<>(segments);
+			for (int i = 0; i < updated.size(); i++) {
+				int id = updated.get(i).live(location);
+				if (id >= 0) {
+					updated.set(i, updated.get(i).delete(id));
+					segments = Collections.unmodifiableList(updated);
+					generation++;
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * flushes the buffer into a new segment, making it visible to searches
+	 */
+	@Override
+	public void publish() {
+		synchronized (lock) {
+			flush();
+		}
+	}
+
+	/**
+	 * Freezes the buffer into a new segment if it is not empty, then starts any
+	 * merges that are needed. The lock must be held.
+	 */
+	private void flush() {
+		if (buffer.locations().size() == 0) {
+			return;
+		}
+
+		List<Segment> updated = new ArrayList<>(segments);
+		updated.add(new Segment(new FrozenIndex(buffer.postings(), buffer.locations(), ++generation), new BitSet()));
+		segments = Collections.unmodifiableList(updated);
+		buffer = new InvertedIndex();
+		scheduleMerges();
+	}
+
+	/**
+	 * Returns the tier of a segment, where each tier holds segments about
+	 * {@link #MERGE_FACTOR} times larger than the tier before.
+	 *
+	 * @param segment the segment
+	 * @return the tier of the segment
+	 */
+	private int tier(Segment segment) {
+		int tier = 0;
+		for (long size = (long) flushSize * MERGE_FACTOR; segment.size() >= size; size *= MERGE_FACTOR) {
+			tier++;
+		}
+		return tier;
+	}
+
+	/**
+	 * Starts a merge for every tier with enough segments that are not already
+	 * being merged. The lock must be held.
+	 */
+	private void scheduleMerges() {
+		TreeMap<Integer, List<FrozenIndex>> tiers = new TreeMap<>();
+		for (Segment segment : segments) {
+			if (!merging.contains(segment.index)) {
+				tiers.computeIfAbsent(tier(segment), tier -> new ArrayList<>()).add(segment.index);
+			}
+		}
+
+		for (List<FrozenIndex> tier : tiers.values()) {
+			if (tier.size() >= MERGE_FACTOR) {
+				List<FrozenIndex> sources = tier.subList(0, MERGE_FACTOR);
+				merging.addAll(sources);
+				if (mergeQueue != null) {
+					mergeQueue.execute(() -> merge(sources));
+				} else {
+					merge(sources);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merges segments into one, dropping their deleted locations, then swaps the
+	 * merged segment in for them. Only the swap holds the lock, so adds and
+	 * searches carry on while merging.
+	 *
+	 * @param sources the segments to merge
+	 */
+	private void merge(List<FrozenIndex> sources) {
+		List<Segment> before;
+		long version;
+		synchronized (lock) {
+			before = find(segments, sources);
+			version = generation;
+		}
+		FrozenIndex merged = combine(before, version);
+
+		synchronized (lock) {
+			// anything deleted from the sources during the merge is deleted here too
+			BitSet deleted = new BitSet();
+			for (Segment segment : find(segments, sources)) {
+				for (int id = segment.deleted.nextSetBit(0); id >= 0; id = segment.deleted.nextSetBit(id + 1)) {
+					int moved = merged.locations().lookup(segment.index.locations().get(id));
+					if (moved >= 0) {
+						deleted.set(moved);
+					}
+				}
+			}
+
+			List<Segment> updated = new ArrayList<>();
+			boolean added = false;
+			for (Segment segment : segments) {
+				if (!sources.contains(segment.index)) {
+					updated.add(segment);
+				} else if (!added) {
+					// keep the merged segment where the oldest source was
+					updated.add(new Segment(merged, deleted));
+					added = true;
+				}
+			}
+			segments = Collections.unmodifiableList(updated);
+			generation++;
+			merging.removeAll(sources);
+			scheduleMerges();
+		}
+	}
+
+	/**
+	 * Finds the current segments for a list of segment indexes.
+	 *
+	 * @param segments the segments to search
+	 * @param indexes  the indexes to find
+	 * @return the matching segments
+	 */
+	private static List<Segment> find(List<Segment> segments, List<FrozenIndex> indexes) {
+		List<Segment> found = new ArrayList<>();
+		for (Segment segment : segments) {
+			if (indexes.contains(segment.index)) {
+				found.add(segment);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Combines the live locations of several segments into one frozen index. The
+	 * frozen postings are merged directly: the live locations are renumbered in
+	 * sorted order, the sorted words of the segments are merged, and the encoded
+	 * positions of every live posting are copied as they are.
+	 *
+	 * @param segments   the segments to combine
+	 * @param generation the generation number of the combined index
+	 * @return the combined index
+	 */
+	private static FrozenIndex combine(List<Segment> segments, long generation) {
+		// collect the live locations, then renumber them in sorted order
+		LocationDictionary live = new LocationDictionary();
+		int[][] remap = new int[segments.size()][];
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+			LocationDictionary from = segment.index.locations();
+			remap[i] = new int[from.size()];
+			for (int id = 0; id < from.size(); id++) {
+				remap[i][id] = -1;
+				if (!segment.deleted.get(id)) {
+					remap[i][id] = live.add(from.get(id));
+					live.updateCount(remap[i][id], from.count(id));
+				}
+			}
+		}
+
+		int[] sorted = live.sortedIds();
+		int[] ranks = live.ranks();
+		LocationDictionary locations = new LocationDictionary();
+		for (int id : sorted) {
+			locations.updateCount(locations.add(live.get(id)), live.count(id));
+		}
+
+		int postingCount = 0;
+		long byteCount = 0;
+		int termBound = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			FrozenIndex index = segments.get(i).index;
+			PostingStore store = index.postings();
+			termBound += index.termCount();
+			for (int posting = 0; posting < store.size(); posting++) {
+				if (remap[i][store.id(posting)] >= 0) {
+					postingCount++;
+					byteCount += store.positionOffset(posting + 1) - store.positionOffset(posting);
+				}
+			}
+		}
+
+		if (byteCount > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many positions to combine on the heap: " + byteCount + " bytes");
+		}
+
+		List<String> terms = new ArrayList<>();
+		int[] termOffsets = new int[termBound + 1];
+		int[] ids = new int[postingCount];
+		int[] frequencies = new int[postingCount];
+		int[] positionOffsets = new int[postingCount + 1];
+		byte[] positions = new byte[(int) byteCount];
+
+		// the next word of each segment, merged in sorted order
+		int[] cursors = new int[segments.size()];
+		long[] order = new long[16];
+		int[] sources = new int[16];
+		int[] found = new int[16];
+		int p = 0;
+		int offset = 0;
+
+		while (true) {
+			String term = null;
+			for (int i = 0; i < segments.size(); i++) {
+				FrozenIndex index = segments.get(i).index;
+				if (cursors[i] < index.termCount()
+						&& (term == null || index.term(cursors[i]).compareTo(term) < 0)) {
+					term = index.term(cursors[i]);
+				}
+			}
+			if (term == null) {
+				break;
+			}
+
+			// gather the live postings of this word from every segment
+			int size = 0;
+			for (int i = 0; i < segments.size(); i++) {
+				FrozenIndex index = segments.get(i).index;
+				if (cursors[i] >= index.termCount() || !index.term(cursors[i]).equals(term)) {
+					continue;
+				}
+
+				for (int posting = index.start(cursors[i]); posting < index.end(cursors[i]); posting++) {
+					int id = remap[i][index.id(posting)];
+					if (id < 0) {
+						continue;
+					}
+					if (size == order.length) {
+						order = Arrays.copyOf(order, size * 2);
+						sources = Arrays.copyOf(sources, size * 2);
+						found = Arrays.copyOf(found, size * 2);
+					}
+					order[size] = ((long) ranks[id] << 32) | size;
+					sources[size] = i;
+					found[size] = posting;
+					size++;
+				}
+				cursors[i]++;
+			}
+
+			// words without any live postings are dropped
+			if (size == 0) {
+				continue;
+			}
+
+			Arrays.sort(order, 0, size);
+			termOffsets[terms.size()] = p;
+			terms.add(term);
+			for (int k = 0; k < size; k++) {
+				int index = (int) order[k];
+				PostingStore store = segments.get(sources[index]).index.postings();
+				int posting = found[index];
+				int length = (int) (store.positionOffset(posting + 1) - store.positionOffset(posting));
+
+				ids[p] = (int) (order[k] >>> 32);
+				frequencies[p] = store.frequency(posting);
+				positionOffsets[p] = offset;
+				store.copyPositions(store.positionOffset(posting), positions, offset, length);
+				offset += length;
+				p++;
+			}
+		}
+
+		termOffsets[terms.size()] = p;
+		positionOffsets[p] = offset;
+		PostingStore postings = new HeapPostingStore(ids, frequencies, positionOffsets, positions);
+		return new FrozenIndex(terms.toArray(new String[0]), Arrays.copyOf(termOffsets, terms.size() + 1), postings,
+				locations, generation);
+	}
+
+	/**
+	 * Returns the number of live segments, which is useful for monitoring merges.
+	 *
+	 * @return the number of live segments
+	 */
+	public int segmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Returns the generation number, which increases every time a segment is
+	 * flushed or merged, or a location is deleted.
+	 *
+	 * @return the current generation number
+	 */
+	@Override
+	public long generation() {
+		synchronized (lock) {
+			return generation;
+		}
+	}
+
+	/**
+	 * flushes the buffer and combines every live segment into one immutable,
+	 * read-optimized copy
+	 *
+	 * @return the frozen copy of this index
+	 */
+	@Override
+	public FrozenIndex freeze() {
+		synchronized (lock) {
+			flush();
+		}
+		return snapshot();
+	}
+
+	/**
+	 * Returns every live segment combined into one index, without flushing the
+	 * buffer. The combined index is kept until the generation changes, so it is
+	 * only built once no matter how many searches use it, and the next one starts
+	 * from its grams if a wildcard search indexed them.
+	 *
+	 * @return the live segments as one index
+	 */
+	@Override
+	public FrozenIndex snapshot() {
+		synchronized (snapshotLock) {
+			List<Segment> current;
+			long version;
+			synchronized (lock) {
+				current = segments;
+				version = generation;
+			}
+
+			FrozenIndex cached = snapshot;
+			if (cached == null || cached.generation() != version) {
+				FrozenIndex combined = combine(current, version);
+				if (cached != null) {
+					combined.carryGrams(cached);
+				}
+				cached = combined;
+				snapshot = cached;
+			}
+			return cached;
+		}
+	}
+
+	/**
+	 * Finds the segment a location is live in.
+	 *
+	 * @param location the location
+	 * @return the segment, or null if the location is not in the index
+	 */
+	private Segment segment(String location) {
+		for (Segment segment : segments) {
+			if (segment.live(location) >= 0) {
+				return segment;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return getWords().size();
+	}
+
+	@Override
+	public int size(String word) {
+		return getLocations(word).size();
+	}
+
+	@Override
+	public int size(String word, String location) {
+		Segment segment = segment(location);
+		return segment == null ? 0 : segment.index.size(word, location);
+	}
+
+	@Override
+	public boolean contains(String stem) {
+		return size(stem) > 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		Segment segment = segment(location);
+		return segment != null && segment.index.contains(word, location);
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		Segment segment = segment(location);
+		return segment != null && segment.index.contains(word, location, position);
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException {
+		freeze().toJson(path);
+	}
+
+	@Override
+	public Set<String> getWords() {
+		TreeSet<String> words = new TreeSet<>();
+		for (Segment segment : segments) {
+			FrozenIndex index = segment.index;
+			for (int term = 0; term < index.termCount(); term++) {
+				for (int posting = index.start(term); posting < index.end(term); posting++) {
+					if (!segment.deleted.get(index.id(posting))) {
+						words.add(index.term(term));
+						break;
+					}
+				}
+			}
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		TreeSet<String> locations = new TreeSet<>();
+		for (Segment segment : segments) {
+			for (String location : segment.index.getLocations(word)) {
+				if (segment.live(location) >= 0) {
+					locations.add(location);
+				}
+			}
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		Segment segment = segment(location);
+		return segment == null ? Collections.emptySet() : segment.index.getPositions(word, location);
+	}
+
+	@Override
+	public int wordGetter(String word, String file) {
+		return size(word, file);
+	}
+
+	@Override
+	public int wordCountGetter(String filename) {
+		Segment segment = segment(filename);
+		return segment == null ? 0 : segment.index.wordCountGetter(filename);
+	}
+
+	@Override
+	public Map<String, Integer> returnCountMap() {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (Segment segment : segments) {
+			LocationDictionary locations = segment.index.locations();
+			for (int id = 0; id < locations.size(); id++) {
+				if (!segment.deleted.get(id)) {
+					counts.put(locations.get(id), locations.count(id));
+				}
+			}
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> exactSearch(Set<String> words) {
+		List<InvertedIndex.SearchResult> results = new ArrayList<>();
+		for (Segment segment : segments) {
+			results.addAll(segment.index.exactSearch(words, segment.deleted));
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	@Override
+	public List<InvertedIndex.SearchResult> partialSearch(Set<String> words) {
+		List<InvertedIndex.SearchResult> results = new ArrayList<>();
+		for (Segment segment : segments) {
+			results.addAll(segment.index.partialSearch(words, segment.deleted));
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * performs a search that only returns the best results. every location is live
+	 * in at most one segment, so the best results overall are among the best
+	 * results of each segment
+	 *
+	 * @param words the already parsed words from a single line of the query file
+	 * @param exact whether its exact or partial search
+	 * @param limit the most results to return, or 0 (or less) for all of them
+	 * @return a sorted list of at most limit search results
+	 */
+	@Override
+	public List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit) {
+		if (limit <= 0) {
+			return search(words, exact);
+		}
+
+		List<InvertedIndex.SearchResult> results = new ArrayList<>();
+		for (Segment segment : segments) {
+			results.addAll(segment.index.search(words, exact, limit, Ranking.COUNT, segment.deleted));
+		}
+		Collections.sort(results);
+		return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+	}
+
+	/**
+	 * performs a search ranked with the given model. the other models depend on
+	 * the statistics of the whole collection, which differ from segment to
+	 * segment, so they search the combined snapshot of the segments instead
+	 *
+	 * @param words   the already parsed words from a single line of the query file
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @return a sorted list of at most limit search results
+	 */
+	@Override
+	public List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit, Ranking ranking) {
+		if (ranking == Ranking.COUNT) {
+			return search(words, exact, limit);
+		}
+		return snapshot().search(words, exact, limit, ranking);
+	}
+
+	/**
+	 * performs a search for a parsed query line. phrases and operators only
+	 * depend on a single location at a time, so when ranked by count they are
+	 * searched segment by segment like words are
+	 *
+	 * @param query   the parsed query line
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @return a sorted list of at most limit search results
+	 */
+	@Override
+	public List<InvertedIndex.SearchResult> search(SearchQuery query, boolean exact, int limit, Ranking ranking) {
+		if (query.isSimple()) {
+			return search(query.words(), exact, limit, ranking);
+		} else if (ranking != Ranking.COUNT) {
+			return snapshot().search(query, exact, limit, ranking);
+		}
+
+		List<InvertedIndex.SearchResult> results = new ArrayList<>();
+		for (Segment segment : segments) {
+			results.addAll(segment.index.search(query, exact, limit, Ranking.COUNT, segment.deleted));
+		}
+		Collections.sort(results);
+		return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+	}
+
+	/**
+	 * performs a typo-tolerant search. the words within the distance of a query
+	 * word do not depend on the other words, so when ranked by count each segment
+	 * is searched on its own
+	 *
+	 * @param words    the already parsed words from a single line of the query file
+	 * @param distance the most edits a match may be away from a query word
+	 * @param limit    the most results to return, or 0 (or less) for all of them
+	 * @param ranking  how to score the results
+	 * @return a sorted list of at most limit search results
+	 */
+	@Override
+	public List<InvertedIndex.SearchResult> fuzzySearch(Set<String> words, int distance, int limit,
+			Ranking ranking) {
+		if (ranking != Ranking.COUNT) {
+			return snapshot().fuzzySearch(words, distance, limit, ranking);
+		}
+
+		List<InvertedIndex.SearchResult> results = new ArrayList<>();
+		for (Segment segment : segments) {
+			results.addAll(segment.index.fuzzySearch(words, distance, limit, Ranking.COUNT, segment.deleted));
+		}
+		Collections.sort(results);
+		return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+}
@@ -8,12 +8,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.text.StringSubstitutor;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -42,22 +40,37 @@ public class Servlet extends HttpServlet {
 	private final String htmlTemplate;
 
 	/** storing last inputted queries for partial search toggle **/
-	private Set<String> oldQueries;
+	private SearchQuery oldQueries;
 
 	/** index to use **/
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndexInterface index;
+
+	/** results of recent searches, so popular queries are not searched again **/
+	private final ResultCache cache;
 
 	/**
 	 * Initializes this servlet to be a web page
 	 * 
-	 * @param index the index to use/search
+	 * @param index the thread-safe index to use/search
 	 * @throws IOException if unable to read template
 	 */
-	public Servlet(ThreadSafeInvertedIndex index) throws IOException {
+	public Servlet(InvertedIndexInterface index) throws IOException {
+		this(index, new ResultCache());
+	}
+
+	/**
+	 * Initializes this servlet to be a web page that shares its cached results
+	 * 
+	 * @param index the thread-safe index to use/search
+	 * @param cache the cache of search results of the same index
+	 * @throws IOException if unable to read template
+	 */
+	public Servlet(InvertedIndexInterface index, ResultCache cache) throws IOException {
 		super();
 		searchResults = new ArrayList<>();
 		htmlTemplate = Files.readString(Path.of("html", "index.html"), StandardCharsets.UTF_8);
 		this.index = index;
+		this.cache = cache;
 	}
 
 	@Override
@@ -105,6 +118,10 @@ public class Servlet extends HttpServlet {
 		String partialToggleExact = request.getParameter("partialToggleExact");
 		String reverse = request.getParameter("reverse");
 		String lucky = request.getParameter("lucky");
+		// how to rank the results, by count unless another ranking was selected
+		Ranking ranking = Ranking.parse(request.getParameter("rank"), Ranking.COUNT);
+		// how many typos to allow in each word, none unless selected
+		int distance = distance(request.getParameter("fuzzy"));
 
 		// if reverse order was pressed, reverse list and send back to doPost
 		if (reverse != null) {
@@ -113,28 +130,30 @@ public class Servlet extends HttpServlet {
 		} else if (partialTogglePartial != null || partialToggleExact != null) {
 			// toggle between partial and exact search depending on which option pressed
 			if (partialTogglePartial != null) {
-				handlePartialToggle(true); // partial results
+				handlePartialToggle(true, ranking); // partial results
 			} else {
-				handlePartialToggle(false); // exact results
+				handlePartialToggle(false, ranking); // exact results
 			}
 
 		} else {
 			query = query == null ? "" : query;
 
-			// avoid xss attacks using apache commons text
-			query = StringEscapeUtils.escapeHtml4(query);
-
-			// separate into queries and partial search the index
-			Set<String> queries = TextFileStemmer.uniqueStems(query);
+			// only letters are left of the words once stemmed, so the query is safe to
+			// parse as is (escaping it first would turn the quotes of a phrase into words)
+			// separate into queries and phrases and partial search the index
+			SearchQuery queries = SearchQuery.parse(query);
 			// store queries/search data incase need
 			oldQueries = queries;
 
-			List<InvertedIndex.SearchResult> results = index.partialSearch(queries);
-
 			// if i'm feeling lucky instead of result list
 			if (lucky != null) {
-				response.sendRedirect(results.get(0).getWhere());
+				// only the best result is needed, so the rest are never sorted
+				List<InvertedIndex.SearchResult> best = search(queries, 1, ranking, distance);
+				if (!best.isEmpty()) {
+					response.sendRedirect(best.get(0).getWhere());
+				}
 			} else {
+				List<InvertedIndex.SearchResult> results = search(queries, 0, ranking, distance);
 				// make sure get fresh results
 				synchronized (searchResults) {
 					searchResults.clear();
@@ -148,6 +167,39 @@ public class Servlet extends HttpServlet {
 		response.sendRedirect(request.getServletPath());
 	}
 
+	/**
+	 * partial searches the index, or also matches misspelled words if a distance
+	 * was selected (phrases and operators are still matched like before). the
+	 * results come from the cache if the same search was done since the index
+	 * last changed
+	 * 
+	 * @param queries  the parsed query
+	 * @param limit    the most results to return, or 0 for all of them
+	 * @param ranking  how to rank the results
+	 * @param distance the most edits a match may be away from a query word, or 0
+	 * @return the sorted search results
+	 */
+	private List<InvertedIndex.SearchResult> search(SearchQuery queries, int limit, Ranking ranking,
+			int distance) {
+		List<InvertedIndex.SearchResult> results = cache.search(index, queries, false, limit, ranking, distance);
+		log.info("Result cache: " + cache);
+		return results;
+	}
+
+	/**
+	 * reads the selected number of typos to allow in each word
+	 * 
+	 * @param fuzzy the request parameter
+	 * @return the distance, from 0 to {@link LevenshteinAutomaton#MAX_DISTANCE}
+	 */
+	private static int distance(String fuzzy) {
+		try {
+			return Math.max(0, Math.min(Integer.parseInt(fuzzy), LevenshteinAutomaton.MAX_DISTANCE));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
 	/**
 	 * adds the search results as clickable html links to the results list for the
 	 * web page output
@@ -168,18 +220,19 @@ public class Servlet extends HttpServlet {
 	 * on which type of results was last returned
 	 * 
 	 * @param partial if the toggle was on partial button or not (exact otherwise)
+	 * @param ranking how to rank the results
 	 */
-	protected void handlePartialToggle(Boolean partial) {
+	protected void handlePartialToggle(Boolean partial, Ranking ranking) {
 		List<InvertedIndex.SearchResult> results;
 		synchronized (searchResults) {
 			searchResults.clear();
 		}
 		if (partial == true) {
 			// partial search
-			results = index.partialSearch(oldQueries);
+			results = cache.search(index, oldQueries, false, 0, ranking, 0);
 		} else {
 			// exact search
-			results = index.exactSearch(oldQueries);
+			results = cache.search(index, oldQueries, true, 0, ranking, 0);
 		}
 		// outputting search results to html
 		outputToHTML(results);
@@ -5,13 +5,13 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.Map.Entry;
 
 /**
@@ -89,16 +89,42 @@ public class SimpleJsonWriter {
 	}
 
 	/**
-	 * Writes the elements as a pretty JSON object with a set. The generic notation
-	 * used allows this method to be used for any type of map with any type of
-	 * nested collection of integer objects.
+	 * writes the elements of a map out in JSON format, in the same format as
+	 * {@link #asMap(Map, Writer, int)}
+	 * 
+	 * @param map    the map to write
+	 * @param writer the writer to use
+	 * @param level  the initial indent to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asMap(Map<String, Integer> map, ByteJsonWriter writer, int level) throws IOException {
+		writer.write('{');
+
+		boolean first = true;
+		for (Map.Entry<String, Integer> entry : map.entrySet()) {
+			writer.write(first ? "\n\t" : ",\n\t");
+			first = false;
+			writer.indent(level + 1);
+			writer.string(entry.getKey());
+			writer.write(": ");
+			writer.number(entry.getValue());
+		}
+
+		writer.write('\n');
+		writer.indent(level);
+		writer.write('}');
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with a set. Each nested posting
+	 * list is written as an array of its positions.
 	 *
 	 * @param elements the elements to write
 	 * @param writer   the writer to use
 	 * @param level    the initial indent level
 	 * @throws IOException if an IO error occurs
 	 */
-	public static void asNestedSet(Map<String, TreeSet<Integer>> elements, Writer writer, int level)
+	public static void asNestedSet(Map<String, PostingList> elements, Writer writer, int level)
 			throws IOException {
 
 		Iterator<String> iterator = elements.keySet().iterator();
@@ -109,7 +135,7 @@ public class SimpleJsonWriter {
 			var i = iterator.next();
 			indent(i, writer, level + 1);
 			writer.write(": ");
-			asCollection(elements.get(i), writer, level + 2);// write out the integers of path
+			asCollection(elements.get(i).asSet(), writer, level + 2);// write out the integers of path
 		}
 
 		while (iterator.hasNext()) {
@@ -117,7 +143,45 @@ public class SimpleJsonWriter {
 			var i = iterator.next();
 			indent(i, writer, level + 1);
 			writer.write(": ");
-			asCollection(elements.get(i), writer, level + 2);// write out the integers of path
+			asCollection(elements.get(i).asSet(), writer, level + 2);// write out the integers of path
+		}
+
+		writer.write("\n");
+		indent(writer, level);
+		writer.write("}");
+	}
+
+	/**
+	 * Writes the postings of a single word as a pretty JSON object of location to
+	 * positions, with the locations resolved from their ids and written in sorted
+	 * order.
+	 *
+	 * @param postings  the postings to write
+	 * @param locations the dictionary used to resolve location ids
+	 * @param ranks     the sorted rank of each location id
+	 * @param writer    the writer to use
+	 * @param level     the initial indent level
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see LocationDictionary#ranks()
+	 */
+	public static void asPostings(TermPostings postings, LocationDictionary locations, int[] ranks, Writer writer,
+			int level) throws IOException {
+
+		// sort the indexes of this word's postings by location rank
+		long[] order = new long[postings.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = ((long) ranks[postings.id(i)] << 32) | i;
+		}
+		Arrays.sort(order);
+
+		writer.write("{");
+		for (int i = 0; i < order.length; i++) {
+			writer.write(i == 0 ? "\n\t" : ",\n\t");
+			int index = (int) order[i];
+			indent(locations.get(postings.id(index)), writer, level + 1);
+			writer.write(": ");
+			asCollection(postings.positions(index).asSet(), writer, level + 2);// write out the integers of path
 		}
 
 		writer.write("\n");
@@ -127,34 +191,36 @@ public class SimpleJsonWriter {
 
 	/**
 	 * * Writes the elements as a pretty JSON object with a double nested map then
-	 * array. The generic notation used allows this method to be used for any type
-	 * of map with any type of nested collection of integer objects.
+	 * array. The location ids of the nested postings are resolved to locations
+	 * and the positions are written as arrays.
 	 * 
-	 * @param elements the elements to print
-	 * @param writer   the writer to use
-	 * @param level    initial indent level
+	 * @param elements  the elements to print
+	 * @param locations the dictionary used to resolve location ids
+	 * @param writer    the writer to use
+	 * @param level     initial indent level
 	 * @throws IOException if an IO error occurs
 	 */
-	public static void asDoubleNestedStructure(Map<String, TreeMap<String, TreeSet<Integer>>> elements, Writer writer,
-			int level) throws IOException {
+	public static void asDoubleNestedStructure(Map<String, TermPostings> elements, LocationDictionary locations,
+			Writer writer, int level) throws IOException {
 
-		java.util.Iterator<String> iterator = elements.keySet().iterator();
+		int[] ranks = locations.ranks();
+		java.util.Iterator<Map.Entry<String, TermPostings>> iterator = elements.entrySet().iterator();
 		writer.write("{");
 
 		if (iterator.hasNext()) {
 			writer.write("\n\t");
 			var i = iterator.next();
-			indent(i, writer, level + 1);
+			indent(i.getKey(), writer, level + 1);
 			writer.write(": ");
-			asNestedSet(elements.get(i), writer, level + 2);// write out the integers of path
+			asPostings(i.getValue(), locations, ranks, writer, level + 2);// write out the integers of path
 		}
 
 		while (iterator.hasNext()) {
 			writer.write(",\n\t");
 			var i = iterator.next();
-			indent(i, writer, level + 1);
+			indent(i.getKey(), writer, level + 1);
 			writer.write(": ");
-			asNestedSet(elements.get(i), writer, level + 2);// write out the integers of path
+			asPostings(i.getValue(), locations, ranks, writer, level + 2);// write out the integers of path
 		}
 
 		writer.write("\n");
@@ -162,6 +228,151 @@ public class SimpleJsonWriter {
 		writer.write("}");
 	}
 
+	/**
+	 * Writes the positions as a pretty JSON array, in the same format as
+	 * {@link #asCollection(Collection, Writer, int)}.
+	 *
+	 * @param positions the positions to write
+	 * @param writer    the writer to use
+	 * @param level     the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asArray(PrimitiveIterator.OfInt positions, Writer writer, int level) throws IOException {
+		writer.write("[");
+
+		if (positions.hasNext()) {
+			writer.write("\n\t");
+			indent(writer, level + 1);
+			writer.write(Integer.toString(positions.nextInt()));
+		}
+
+		while (positions.hasNext()) {
+			writer.write(",\n\t");
+			indent(writer, level + 1);
+			writer.write(Integer.toString(positions.nextInt()));
+		}
+
+		writer.write("\n");
+		indent(writer, level);
+		writer.write("]");
+	}
+
+	/**
+	 * Writes a frozen index as a pretty JSON object with a double nested map then
+	 * array, in the same format as
+	 * {@link #asDoubleNestedStructure(Map, LocationDictionary, Writer, int)}. The
+	 * postings of a frozen index are already in sorted location order.
+	 *
+	 * @param index  the index to write
+	 * @param writer the writer to use
+	 * @param level  the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asFrozenIndex(FrozenIndex index, Writer writer, int level) throws IOException {
+		LocationDictionary locations = index.locations();
+		writer.write("{");
+
+		for (int term = 0; term < index.termCount(); term++) {
+			writer.write(term == 0 ? "\n\t" : ",\n\t");
+			indent(index.term(term), writer, level + 1);
+			writer.write(": {");
+
+			for (int posting = index.start(term); posting < index.end(term); posting++) {
+				writer.write(posting == index.start(term) ? "\n\t" : ",\n\t");
+				indent(locations.get(index.id(posting)), writer, level + 3);
+				writer.write(": ");
+				asArray(index.positions(posting), writer, level + 4);
+			}
+
+			writer.write("\n");
+			indent(writer, level + 2);
+			writer.write("}");
+		}
+
+		writer.write("\n");
+		indent(writer, level);
+		writer.write("}");
+	}
+
+	/**
+	 * Writes the positions as a pretty JSON array, in the same format as
+	 * {@link #asArray(PrimitiveIterator.OfInt, Writer, int)}.
+	 *
+	 * @param positions the positions to write
+	 * @param writer    the writer to use
+	 * @param level     the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asArray(PrimitiveIterator.OfInt positions, ByteJsonWriter writer, int level)
+			throws IOException {
+		writer.write('[');
+
+		boolean first = true;
+		while (positions.hasNext()) {
+			writer.write(first ? "\n\t" : ",\n\t");
+			first = false;
+			writer.indent(level + 1);
+			writer.number(positions.nextInt());
+		}
+
+		writer.write('\n');
+		writer.indent(level);
+		writer.write(']');
+	}
+
+	/**
+	 * Writes a frozen index as a pretty JSON object, in the same format as
+	 * {@link #asFrozenIndex(FrozenIndex, Writer, int)}. Each location is only
+	 * encoded the first time it is written.
+	 *
+	 * @param index  the index to write
+	 * @param writer the writer to use
+	 * @param level  the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asFrozenIndex(FrozenIndex index, ByteJsonWriter writer, int level) throws IOException {
+		LocationDictionary locations = index.locations();
+		writer.write('{');
+
+		for (int term = 0; term < index.termCount(); term++) {
+			writer.write(term == 0 ? "\n\t" : ",\n\t");
+			writer.indent(level + 1);
+			writer.string(index.term(term));
+			writer.write(": {");
+
+			for (int posting = index.start(term); posting < index.end(term); posting++) {
+				writer.write(posting == index.start(term) ? "\n\t" : ",\n\t");
+				writer.indent(level + 3);
+				writer.location(locations.get(index.id(posting)));
+				writer.write(": ");
+				asArray(index.positions(posting), writer, level + 4);
+			}
+
+			writer.write('\n');
+			writer.indent(level + 2);
+			writer.write('}');
+		}
+
+		writer.write('\n');
+		writer.indent(level);
+		writer.write('}');
+	}
+
+	/**
+	 * Writes a frozen index as a pretty JSON object to file.
+	 *
+	 * @param index the index to write
+	 * @param path  the file path to use
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see #asFrozenIndex(FrozenIndex, ByteJsonWriter, int)
+	 */
+	public static void asFrozenIndex(FrozenIndex index, Path path) throws IOException {
+		try (ByteJsonWriter writer = new ByteJsonWriter(path)) {
+			asFrozenIndex(index, writer, 0);
+		}
+	}
+
 	/**
 	 * writes a map of search results for specific queries in JSON format
 	 * 
@@ -179,17 +390,13 @@ public class SimpleJsonWriter {
 		if (iterator.hasNext()) {
 			writer.write("\n\t");
 			var i = iterator.next();
-			indent(i.replaceAll("[\\[\\]\\,]", ""), writer, level + 1); // print "key"/non-nested array element
-			writer.write(": ");
-			asObjectList(elements.get(i), writer, level + 1);// write out the content of the nested array
+			asResultEntry(i, elements.get(i), writer, level + 1);
 		}
 
 		while (iterator.hasNext()) {
 			writer.write(",\n\t");
 			var i = iterator.next();
-			indent(i.replaceAll("[\\[\\]\\,]", ""), writer, level + 1); // print "key"/non-nested array element
-			writer.write(": ");
-			asObjectList(elements.get(i), writer, level + 1);// write out the content of the nested array
+			asResultEntry(i, elements.get(i), writer, level + 1);
 		}
 
 		writer.write("\n");
@@ -197,6 +404,23 @@ public class SimpleJsonWriter {
 		writer.write("}");
 	}
 
+	/**
+	 * writes the search results of one query as a member of the results object,
+	 * which lets the results be written one query at a time
+	 * 
+	 * @param query    the query
+	 * @param elements the search results of the query
+	 * @param writer   writer to use
+	 * @param level    indentation level
+	 * @throws IOException if IO error occurs
+	 */
+	public static void asResultEntry(String query, List<InvertedIndex.SearchResult> elements, Writer writer,
+			int level) throws IOException {
+		indent(escape(query.replaceAll("[\\[\\]\\,]", "")), writer, level); // print "key"/non-nested array element
+		writer.write(": ");
+		asObjectList(elements, writer, level);// write out the content of the nested array
+	}
+
 	/**
 	 * Writes the a list of the search result objects in JSON array format
 	 * 
@@ -245,14 +469,82 @@ public class SimpleJsonWriter {
 		indent(writer, level + 1);
 		writer.write("\"count\": " + i.getCount() + ",\n");
 		indent(writer, level + 1);
-		DecimalFormat FORMATTER = new DecimalFormat("0.00000000");
-		writer.write("\"score\": " + FORMATTER.format(i.getScore()) + "\n");
+		writer.write("\"score\": " + ByteJsonWriter.format(i.getScore()) + "\n");
 
 		indent(writer, level);
 		writer.write("}");
 
 	}
 
+	/**
+	 * writes a map of search results for specific queries in JSON format, in the
+	 * same format as {@link #asFullResults(TreeMap, Writer, int)}
+	 * 
+	 * @param elements elements to format
+	 * @param writer   writer to use
+	 * @param level    indentation level
+	 * @throws IOException if IO error occurs
+	 */
+	public static void asFullResults(TreeMap<String, List<InvertedIndex.SearchResult>> elements,
+			ByteJsonWriter writer, int level) throws IOException {
+		writer.write('{');
+
+		boolean first = true;
+		for (Map.Entry<String, List<InvertedIndex.SearchResult>> entry : elements.entrySet()) {
+			writer.write(first ? "\n\t" : ",\n\t");
+			first = false;
+			asResultEntry(entry.getKey(), entry.getValue(), writer, level + 1);
+		}
+
+		writer.write('\n');
+		writer.indent(level);
+		writer.write('}');
+	}
+
+	/**
+	 * writes the search results of one query as a member of the results object,
+	 * in the same format as {@link #asResultEntry(String, List, Writer, int)}
+	 * 
+	 * @param query    the query
+	 * @param elements the search results of the query
+	 * @param writer   writer to use
+	 * @param level    indentation level
+	 * @throws IOException if IO error occurs
+	 */
+	public static void asResultEntry(String query, List<InvertedIndex.SearchResult> elements,
+			ByteJsonWriter writer, int level) throws IOException {
+		writer.indent(level);
+		writer.query(query);
+		writer.write(": [");
+
+		boolean first = true;
+		for (InvertedIndex.SearchResult result : elements) {
+			writer.write(first ? "\n\t" : ",\n\t");
+			first = false;
+
+			writer.indent(level + 1);
+			writer.write("{\n");
+			writer.indent(level + 2);
+			writer.write("\"where\": ");
+			writer.location(result.getWhere());
+			writer.write(",\n");
+			writer.indent(level + 2);
+			writer.write("\"count\": ");
+			writer.number(result.getCount());
+			writer.write(",\n");
+			writer.indent(level + 2);
+			writer.write("\"score\": ");
+			writer.score(result.getScore());
+			writer.write('\n');
+			writer.indent(level + 1);
+			writer.write('}');
+		}
+
+		writer.write('\n');
+		writer.indent(level);
+		writer.write(']');
+	}
+
 	/**
 	 * Indents using a tab character by the number of times specified.
 	 *
@@ -317,6 +609,17 @@ public class SimpleJsonWriter {
 		writer.write('"');
 	}
 
+	/**
+	 * escapes the quotes and backslashes of a string so it can be written as a
+	 * JSON string, such as a query with a quoted phrase
+	 *
+	 * @param element the string to escape
+	 * @return the escaped string
+	 */
+	private static String escape(String element) {
+		return element.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
 	/**
 	 * Writes a map entry in pretty JSON format.
 	 *
@@ -374,7 +677,7 @@ public class SimpleJsonWriter {
 	 *
 	 */
 	public static void asMap(Map<String, Integer> map, Path path) throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+		try (ByteJsonWriter writer = new ByteJsonWriter(path)) {
 			asMap(map, writer, 0);
 		}
 	}
@@ -387,7 +690,7 @@ public class SimpleJsonWriter {
 	 *
 	 * @see #asNestedSet(Map, Writer, int)
 	 */
-	public static String asNestedSet(Map<String, TreeSet<Integer>> elements) {
+	public static String asNestedSet(Map<String, PostingList> elements) {
 		try {
 			StringWriter writer = new StringWriter();
 			asNestedSet(elements, writer, 0);
@@ -400,16 +703,17 @@ public class SimpleJsonWriter {
 	/**
 	 * Writes the elements as a double nested pretty JSON object to file.
 	 *
-	 * @param elements the elements to write
-	 * @param path     the file path to use
+	 * @param elements  the elements to write
+	 * @param locations the dictionary used to resolve location ids
+	 * @param path      the file path to use
 	 * @throws IOException if an IO error occurs
 	 *
-	 * @see #asDoubleNestedStructure(Map, Writer, int)
+	 * @see #asDoubleNestedStructure(Map, LocationDictionary, Writer, int)
 	 */
-	public static void asDoubleNestedStructure(Map<String, TreeMap<String, TreeSet<Integer>>> elements, Path path)
-			throws IOException {
+	public static void asDoubleNestedStructure(Map<String, TermPostings> elements, LocationDictionary locations,
+			Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			asDoubleNestedStructure(elements, writer, 0);
+			asDoubleNestedStructure(elements, locations, writer, 0);
 		}
 	}
 
@@ -423,7 +727,7 @@ public class SimpleJsonWriter {
 	public static void asFullResults(TreeMap<String, List<InvertedIndex.SearchResult>> elements, Path path)
 			throws IOException {
 
-		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+		try (ByteJsonWriter writer = new ByteJsonWriter(path)) {
 			asFullResults(elements, writer, 0);
 		}
 	}
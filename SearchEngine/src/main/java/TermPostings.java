@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * The postings for a single word: the ids of every location the word appears
+ * in, kept in increasing order in a primitive array, along with the positions
+ * of the word in each of those locations.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author sarah
+ */
+public class TermPostings {
+
+	/** The initial capacity of the arrays. */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/** The sorted location ids. */
+	private int[] ids;
+
+	/** The positions in each location, parallel to {@link #ids}. */
+	private PostingList[] positions;
+
+	/** The number of locations stored. */
+	private int size;
+
+	/**
+	 * Initializes empty postings.
+	 */
+	public TermPostings() {
+		this.ids = new int[INITIAL_CAPACITY];
+		this.positions = new PostingList[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of locations stored.
+	 *
+	 * @return the number of locations
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the location id at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the location id
+	 */
+	public int id(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Returns the positions at an index.
+	 *
+	 * @param index the index between 0 and {@link #size()}
+	 * @return the positions for that location
+	 */
+	public PostingList positions(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * Returns the positions for a location id.
+	 *
+	 * @param id the location id
+	 * @return the positions, or null if the word is not in that location
+	 */
+	public PostingList get(int id) {
+		int index = indexOf(id);
+		return index < 0 ? null : positions[index];
+	}
+
+	/**
+	 * Returns the positions for a location id, adding empty positions if the
+	 * location is not already stored. Ids are normally added in increasing order,
+	 * in which case this is a constant-time append.
+	 *
+	 * @param id the location id
+	 * @return the positions for that location
+	 */
+	public PostingList getOrCreate(int id) {
+		int index = indexOf(id);
+		if (index >= 0) {
+			return positions[index];
+		}
+
+		PostingList list = new PostingList();
+		insert(-(index + 1), id, list);
+		return list;
+	}
+
+	/**
+	 * Merges the postings of another word into these postings, converting the
+	 * location ids of the other postings with the provided mapping. Position lists
+	 * for new locations are shared rather than copied.
+	 *
+	 * @param other the postings to merge in
+	 * @param remap the id in these postings of each id in the other postings
+	 */
+	public void addAll(TermPostings other, int[] remap) {
+		for (int i = 0; i < other.size; i++) {
+			int id = remap[other.ids[i]];
+			int index = indexOf(id);
+
+			if (index >= 0) {
+				positions[index].addAll(other.positions[i]);
+			} else {
+				insert(-(index + 1), id, other.positions[i]);
+			}
+		}
+	}
+
+	/**
+	 * Releases any unused capacity in the arrays and position lists.
+	 */
+	public void trim() {
+		ids = Arrays.copyOf(ids, size);
+		positions = Arrays.copyOf(positions, size);
+		for (int i = 0; i < size; i++) {
+			positions[i].trim();
+		}
+	}
+
+	/**
+	 * Finds the index of a location id.
+	 *
+	 * @param id the location id
+	 * @return the index of the id, or {@code -(insertion point) - 1} if absent
+	 *
+	 * @see Arrays#binarySearch(int[], int, int, int)
+	 */
+	private int indexOf(int id) {
+		if (size == 0 || id > ids[size - 1]) {
+			return -(size + 1);
+		}
+		return Arrays.binarySearch(ids, 0, size, id);
+	}
+
+	/**
+	 * Inserts a location id and its positions at an index.
+	 *
+	 * @param index the index to insert at
+	 * @param id    the location id
+	 * @param list  the positions for that location
+	 */
+	private void insert(int index, int id, PostingList list) {
+		if (size == ids.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+			ids = Arrays.copyOf(ids, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+
+		System.arraycopy(ids, index, ids, index + 1, size - index);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		ids[index] = id;
+		positions[index] = list;
+		size++;
+	}
+}
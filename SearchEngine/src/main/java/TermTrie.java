@@ -0,0 +1,304 @@
+import java.util.Arrays;
+
+/**
+ * A compressed trie over a sorted array of words, used as the term dictionary
+ * of a frozen index. Each node stands for a prefix shared by a contiguous range
+ * of the sorted words, so looking up a prefix finds the whole range of matching
+ * words by walking at most one node per character, without comparing against
+ * any word that does not match.
+ *
+ * Chains of nodes with a single child are collapsed, so there are fewer nodes
+ * than twice the number of words. Edge labels are not stored; they are read
+ * from the words themselves. Nodes are kept in parallel primitive arrays, and
+ * the children of a node are stored next to each other sorted by their first
+ * character.
+ *
+ * Besides words and prefixes, the trie finds the words within an edit distance
+ * of a word by walking a {@link LevenshteinAutomaton} along its edges, which
+ * skips every subtree the automaton can no longer match instead of comparing
+ * against every word.
+ *
+ * @author sarah
+ */
+public class TermTrie {
+
+	/** The sorted words. */
+	private final String[] terms;
+
+	/** The first word under each node. */
+	private final int[] low;
+
+	/** The word after the last word under each node. */
+	private final int[] high;
+
+	/** The length of the prefix each node stands for. */
+	private final int[] depth;
+
+	/** The first child of each node. */
+	private final int[] firstChild;
+
+	/** The number of children of each node. */
+	private final int[] childCount;
+
+	/** The first character on the edge into each node. */
+	private final char[] label;
+
+	/** The number of nodes. */
+	private final int size;
+
+	/** The length of the longest word. */
+	private final int longest;
+
+	/**
+	 * Receives the words found by a fuzzy lookup.
+	 *
+	 * @see TermTrie#fuzzy(LevenshteinAutomaton, FuzzyConsumer)
+	 */
+	public interface FuzzyConsumer {
+
+		/**
+		 * Receives a word within the distance.
+		 *
+		 * @param term  the index of the word
+		 * @param edits the number of edits the word is away from the query
+		 */
+		public void accept(int term, int edits);
+	}
+
+	/**
+	 * Builds a trie over sorted words.
+	 *
+	 * @param terms the sorted words, without duplicates (used as is, not copied)
+	 */
+	public TermTrie(String[] terms) {
+		this.terms = terms;
+
+		int capacity = Math.max(1, terms.length * 2);
+		int[] low = new int[capacity];
+		int[] high = new int[capacity];
+		int[] depth = new int[capacity];
+		int[] firstChild = new int[capacity];
+		int[] childCount = new int[capacity];
+		char[] label = new char[capacity];
+		int size = 0;
+
+		if (terms.length > 0) {
+			low[0] = 0;
+			high[0] = terms.length;
+			depth[0] = commonPrefix(terms[0], terms[terms.length - 1]);
+			size = 1;
+		}
+
+		// nodes are processed in the order they are added, so children stay together
+		for (int node = 0; node < size; node++) {
+			int d = depth[node];
+			int i = low[node];
+
+			// the word equal to the prefix, if any, sorts first and has no child
+			if (terms[i].length() == d) {
+				i++;
+			}
+
+			firstChild[node] = size;
+			while (i < high[node]) {
+				char c = terms[i].charAt(d);
+				int j = i + 1;
+				while (j < high[node] && terms[j].charAt(d) == c) {
+					j++;
+				}
+
+				low[size] = i;
+				high[size] = j;
+				depth[size] = commonPrefix(terms[i], terms[j - 1]);
+				label[size] = c;
+				size++;
+				i = j;
+			}
+			childCount[node] = size - firstChild[node];
+		}
+
+		this.low = Arrays.copyOf(low, size);
+		this.high = Arrays.copyOf(high, size);
+		this.depth = Arrays.copyOf(depth, size);
+		this.firstChild = Arrays.copyOf(firstChild, size);
+		this.childCount = Arrays.copyOf(childCount, size);
+		this.label = Arrays.copyOf(label, size);
+		this.size = size;
+
+		int longest = 0;
+		for (int node = 0; node < size; node++) {
+			longest = Math.max(longest, depth[node]);
+		}
+		this.longest = longest;
+	}
+
+	/**
+	 * Finds the node for all of the words starting with a prefix.
+	 *
+	 * @param prefix the prefix
+	 * @return the node, or -1 if no word starts with the prefix
+	 *
+	 * @see #start(int)
+	 * @see #end(int)
+	 */
+	public int prefix(String prefix) {
+		if (size == 0) {
+			return -1;
+		}
+
+		int node = 0;
+		int matched = 0;
+		while (true) {
+			// the rest of the edge into this node must match
+			int limit = Math.min(depth[node], prefix.length());
+			if (!terms[low[node]].regionMatches(matched, prefix, matched, limit - matched)) {
+				return -1;
+			}
+
+			if (prefix.length() <= depth[node]) {
+				return node;
+			}
+
+			matched = depth[node];
+			node = child(node, prefix.charAt(matched));
+			if (node < 0) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Finds the index of a word.
+	 *
+	 * @param word the word to find
+	 * @return the index of the word, or -1 if not found
+	 */
+	public int find(String word) {
+		int node = prefix(word);
+		if (node < 0) {
+			return -1;
+		}
+
+		// the word itself sorts first among the words it is a prefix of
+		int term = low[node];
+		return terms[term].length() == word.length() ? term : -1;
+	}
+
+	/**
+	 * Finds every word the automaton accepts, in sorted order.
+	 *
+	 * @param automaton the automaton of the word and distance to match
+	 * @param consumer  receives each word within the distance
+	 */
+	public void fuzzy(LevenshteinAutomaton automaton, FuzzyConsumer consumer) {
+		if (size == 0) {
+			return;
+		}
+
+		// the state after each character along the current path
+		int[][] states = new int[longest + 1][automaton.width()];
+		automaton.start(states[0]);
+		fuzzy(0, 0, automaton, states, consumer);
+	}
+
+	/**
+	 * Walks the automaton along the edge into a node, and then into each of its
+	 * children while a match is still possible.
+	 *
+	 * @param node      the node
+	 * @param from      the number of characters already read
+	 * @param automaton the automaton of the word and distance to match
+	 * @param states    the state after each character along the current path
+	 * @param consumer  receives each word within the distance
+	 */
+	private void fuzzy(int node, int from, LevenshteinAutomaton automaton, int[][] states,
+			FuzzyConsumer consumer) {
+		String first = terms[low[node]];
+		for (int d = from; d < depth[node]; d++) {
+			automaton.step(states[d], first.charAt(d), states[d + 1]);
+			if (!automaton.canMatch(states[d + 1])) {
+				return;
+			}
+		}
+
+		// the word equal to the prefix, if any, sorts first
+		if (first.length() == depth[node]) {
+			int edits = automaton.edits(states[depth[node]]);
+			if (edits >= 0) {
+				consumer.accept(low[node], edits);
+			}
+		}
+
+		for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+			fuzzy(child, depth[node], automaton, states, consumer);
+		}
+	}
+
+	/**
+	 * Returns the first word under a node.
+	 *
+	 * @param node the node
+	 * @return the index of the first word
+	 */
+	public int start(int node) {
+		return low[node];
+	}
+
+	/**
+	 * Returns the word after the last word under a node.
+	 *
+	 * @param node the node
+	 * @return the index after the last word
+	 */
+	public int end(int node) {
+		return high[node];
+	}
+
+	/**
+	 * Returns the number of nodes, which is useful for estimating memory use.
+	 *
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the child of a node whose edge starts with a character.
+	 *
+	 * @param node the node
+	 * @param c    the first character of the edge
+	 * @return the child, or -1 if there is none
+	 */
+	private int child(int node, char c) {
+		int lo = firstChild[node];
+		int hi = lo + childCount[node] - 1;
+		while (lo <= hi) {
+			int middle = (lo + hi) >>> 1;
+			if (label[middle] < c) {
+				lo = middle + 1;
+			} else if (label[middle] > c) {
+				hi = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the length of the common prefix of two words.
+	 *
+	 * @param first  the first word
+	 * @param second the second word
+	 * @return the length of their common prefix
+	 */
+	private static int commonPrefix(String first, String second) {
+		int length = Math.min(first.length(), second.length());
+		int i = 0;
+		while (i < length && first.charAt(i) == second.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+}
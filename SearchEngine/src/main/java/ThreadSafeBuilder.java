@@ -22,7 +22,7 @@ public class ThreadSafeBuilder {
 	 * @param workQueue the workqueue to use
 	 * @throws IOException if IO error encountered
 	 */
-	public static void build(Path path, ThreadSafeInvertedIndex index, WorkQueue workQueue) throws IOException {
+	public static void build(Path path, ThreadSafeIndexInterface index, WorkQueue workQueue) throws IOException {
 		log.debug("inside thread safe build");
 		try {
 			if (Files.isDirectory(path)) {
@@ -40,6 +40,8 @@ public class ThreadSafeBuilder {
 			}
 		} finally {
 			workQueue.finish();
+			// make the new data visible to searches
+			index.publish();
 		}
 	}
 
@@ -52,7 +54,7 @@ public class ThreadSafeBuilder {
 		/**
 		 * thread safe index to add to
 		 */
-		private final ThreadSafeInvertedIndex safeIndex;
+		private final ThreadSafeIndexInterface safeIndex;
 
 		/**
 		 * Initializes this task.
@@ -61,7 +63,7 @@ public class ThreadSafeBuilder {
 		 * @param index the index to use
 		 *
 		 */
-		public Task(Path path, ThreadSafeInvertedIndex index) {
+		public Task(Path path, ThreadSafeIndexInterface index) {
 			this.path = path;
 			this.safeIndex = index;
 			// log.debug("builder task just created : task of path " + path.toString());
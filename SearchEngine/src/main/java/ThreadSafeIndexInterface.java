@@ -0,0 +1,36 @@
+/**
+ * Interface for an index that many worker threads can build at once, such as
+ * while building from a directory or crawling the web. Workers build a local
+ * index for each file or page and merge it in with {@link #addAll(InvertedIndex)}.
+ *
+ * @author sarah
+ */
+public interface ThreadSafeIndexInterface extends InvertedIndexInterface {
+
+	/**
+	 * merges a local index into this index
+	 *
+	 * @param local the local index data to add
+	 */
+	public void addAll(InvertedIndex local);
+
+	/**
+	 * makes everything added so far visible to searches
+	 */
+	public void publish();
+
+	/**
+	 * returns the most recently published snapshot, without publishing anything
+	 *
+	 * @return the latest snapshot
+	 */
+	public FrozenIndex snapshot();
+
+	/**
+	 * publishes any pending changes and returns an immutable, read-optimized copy
+	 * of the whole index
+	 *
+	 * @return the frozen copy of this index
+	 */
+	public FrozenIndex freeze();
+}
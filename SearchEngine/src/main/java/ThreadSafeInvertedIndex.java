@@ -1,212 +1,1013 @@
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
- * Inverted Index class that is thread safe
- * 
+ * Inverted Index class that is thread safe. Words are partitioned by hash into
+ * several independently locked shards, so workers merging their local indexes
+ * only block each other when they touch the same shard at the same time. The
+ * shards share a single location dictionary with its own lock.
+ *
+ * Searches never take a lock. Instead, writers publish immutable snapshots of
+ * the index through a volatile reference, and searches always run against the
+ * latest published snapshot. Writers batch their changes: a new snapshot
+ * generation is swapped in after every batch of merges (if a batch size is
+ * set) or whenever {@link #publish()} is called, such as at the end of a build.
+ * Publishing is incremental: writers mark the shards they change while holding
+ * their locks, and a publish only freezes those shards, one at a time under its
+ * own read lock. The words of every other shard are copied straight from the
+ * last snapshot without locking anything, so writers to other shards are never
+ * held up and an unchanged shard is never frozen twice.
+ * The other accessors read the live shards under their locks. The kind of lock
+ * used is pluggable (see {@link LockStrategy}); with optimistic locks, the
+ * short accessors {@link #size()}, {@link #size(String)} and
+ * {@link #contains(String)} read without locking and only fall back to the read
+ * lock if a writer got in the way. To make that safe, every shard also keeps the
+ * number of locations of each of its words in a flat hash table of plain arrays
+ * (see {@link Frequencies}). Anything that walks a map or a posting list always
+ * holds the read lock.
+ *
+ * Lock ordering: the location lock may be held while taking a shard lock, but
+ * never the other way around.
+ *
  * @author sarah
  */
-public class ThreadSafeInvertedIndex extends InvertedIndex {
+public class ThreadSafeInvertedIndex implements ThreadSafeIndexInterface {
 
 	/** Logger to use for this class. */
 	// private static final Logger log = LogManager.getLogger();
-	/** The lock used to protect concurrent access to the underlying set. */
-	private final ReadWriteLock lock;
+
+	/** The default number of shards. */
+	public static final int DEFAULT_SHARDS = 16;
+
+	/** The shards, each holding the words that hash to it. */
+	private final InvertedIndex[] shards;
+
+	/** The locks used to protect concurrent access to each shard. */
+	private final ReadWriteLockInterface[] locks;
+
+	/** The location dictionary shared by every shard. */
+	private final LocationDictionary locations;
+
+	/** The lock used to protect concurrent access to the location dictionary. */
+	private final ReadWriteLockInterface locationLock;
+
+	/** The most recently published snapshot, which all searches use. */
+	private volatile FrozenIndex snapshot;
+
+	/** The number of changes made since the last snapshot was taken. */
+	private final AtomicInteger pending;
+
+	/** The number of locations of every word of each shard, guarded by its lock. */
+	private final Frequencies[] frequencies;
+
+	/** Whether each shard changed since the last snapshot, guarded by its lock. */
+	private final boolean[] dirty;
+
+	/** Whether the locations changed since the last snapshot, guarded by their lock. */
+	private boolean locationsDirty;
+
+	/** The live id of each location id in the last snapshot. */
+	private int[] publishedIds;
+
+	/** The number of changes after which a writer publishes a snapshot. */
+	private final int batchSize;
+
+	/** The lock used so only one writer publishes a snapshot at a time. */
+	private final Object publishLock;
+
+	/** The generation number of the most recent snapshot. */
+	private long generation;
 
 	/**
-	 * Initializes a thread-safe index
+	 * Initializes a thread-safe index with the default number of shards
 	 *
+	 * @see #DEFAULT_SHARDS
 	 */
 	public ThreadSafeInvertedIndex() {
-		super();
-		lock = new ReadWriteLock();
+		this(DEFAULT_SHARDS);
 	}
 
-	@Override
-	public void add(String word, String file, Integer position) {
-		lock.writeLock().lock();
-		try {
-			super.add(word, file, position);
-		} finally {
-			lock.writeLock().unlock();
+	/**
+	 * Initializes a thread-safe index that only publishes snapshots when
+	 * {@link #publish()} is called
+	 *
+	 * @param shards the number of independently locked shards to use
+	 */
+	public ThreadSafeInvertedIndex(int shards) {
+		this(shards, 0);
+	}
+
+	/**
+	 * Initializes a thread-safe index
+	 *
+	 * @param shards    the number of independently locked shards to use
+	 * @param batchSize the number of changes after which a new snapshot is
+	 *                  published automatically, or 0 to only publish when
+	 *                  {@link #publish()} is called
+	 */
+	public ThreadSafeInvertedIndex(int shards, int batchSize) {
+		this(shards, batchSize, LockStrategy.SIMPLE);
+	}
+
+	/**
+	 * Initializes a thread-safe index
+	 *
+	 * @param shards    the number of independently locked shards to use
+	 * @param batchSize the number of changes after which a new snapshot is
+	 *                  published automatically, or 0 to only publish when
+	 *                  {@link #publish()} is called
+	 * @param strategy  the kind of lock to protect each shard and the locations
+	 *                  with
+	 */
+	public ThreadSafeInvertedIndex(int shards, int batchSize, LockStrategy strategy) {
+		this.snapshot = new FrozenIndex();
+		this.pending = new AtomicInteger();
+		this.batchSize = batchSize;
+		this.publishLock = new Object();
+		this.generation = 0;
+		this.locations = new LocationDictionary();
+		this.locationLock = strategy.create();
+		this.locationsDirty = false;
+		this.publishedIds = new int[0];
+		this.shards = new InvertedIndex[Math.max(1, shards)];
+		this.locks = new ReadWriteLockInterface[this.shards.length];
+		this.dirty = new boolean[this.shards.length];
+		this.frequencies = new Frequencies[this.shards.length];
+
+		for (int i = 0; i < this.shards.length; i++) {
+			this.shards[i] = new InvertedIndex(locations);
+			this.locks[i] = strategy.create();
+			this.frequencies[i] = new Frequencies(Frequencies.INITIAL_CAPACITY);
 		}
 	}
 
-	@Override
-	public int size() {
+	/**
+	 * Reads a single plain field, optimistically without locking if the lock
+	 * supports it. The value is only used once the stamp is validated, and if a
+	 * writer got in the way, the field is read again under the read lock. Only
+	 * use this for reads that cannot fail or loop on half updated data, like a
+	 * field or a {@link Frequencies} lookup, never to traverse a map or a posting
+	 * list.
+	 *
+	 * @param lock  the lock protecting the field being read
+	 * @param field the field to read
+	 * @return the value read
+	 */
+	private static int read(ReadWriteLockInterface lock, IntSupplier field) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			int value = field.getAsInt();
+			if (lock.validate(stamp)) {
+				return value;
+			}
+		}
+
 		lock.readLock().lock();
 		try {
-			return super.size();
+			return field.getAsInt();
 		} finally {
 			lock.readLock().unlock();
 		}
 	}
 
-	@Override
-	public int size(String word) {
+	/**
+	 * Runs a read under the read lock.
+	 *
+	 * @param <T>    the type of value read
+	 * @param lock   the lock protecting the data being read
+	 * @param reader the read to run, which must not modify anything
+	 * @return the value read
+	 */
+	private static <T> T locked(ReadWriteLockInterface lock, Supplier<T> reader) {
 		lock.readLock().lock();
 		try {
-			return super.size(word);
+			return reader.get();
 		} finally {
 			lock.readLock().unlock();
 		}
 	}
 
+	/**
+	 * Returns the shard a word belongs to.
+	 *
+	 * @param word the word
+	 * @return the index of its shard
+	 */
+	private int shard(String word) {
+		return Math.floorMod(word.hashCode(), shards.length);
+	}
+
+	/**
+	 * adds a set of specific data to the index
+	 *
+	 * @param word     stem word to be an index key
+	 * @param file     location to add to index
+	 * @param position positions where word is found in that location
+	 */
+	public void add(String word, String file, Integer position) {
+		int id;
+		locationLock.writeLock().lock();
+		try {
+			id = locations.add(file);
+			locations.updateCount(id, position);
+			locationsDirty = true;
+		} finally {
+			locationLock.writeLock().unlock();
+		}
+
+		int shard = shard(word);
+		locks[shard].writeLock().lock();
+		try {
+			shards[shard].addPosition(word, id, position);
+			frequencies[shard] = frequencies[shard].put(word, shards[shard].size(word));
+			dirty[shard] = true;
+			pending.incrementAndGet();
+		} finally {
+			locks[shard].writeLock().unlock();
+		}
+		publishIfDue();
+	}
+
+	/**
+	 * merges a local index into this index one shard at a time, so that other
+	 * workers can merge into different shards at the same time
+	 *
+	 * @param local the local index data to add to threadsafe index
+	 */
 	@Override
-	public int size(String word, String location) {
-		lock.readLock().lock();
+	public void addAll(InvertedIndex local) {
+		// group the local words by shard first so each shard lock is taken once
+		List<List<Map.Entry<String, TermPostings>>> partitions = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			partitions.add(new ArrayList<>());
+		}
+		int last = -1;
+		for (Map.Entry<String, TermPostings> entry : local.postings().entrySet()) {
+			int shard = shard(entry.getKey());
+			partitions.get(shard).add(entry);
+			last = Math.max(last, shard);
+		}
+
+		int[] remap;
+		locationLock.writeLock().lock();
 		try {
-			return super.size(word, location);
+			remap = shards[0].addLocations(local.locations());
+			locationsDirty = true;
+			if (last < 0) {
+				pending.incrementAndGet();
+			}
 		} finally {
-			lock.readLock().unlock();
+			locationLock.writeLock().unlock();
+		}
+
+		for (int shard = 0; shard < shards.length; shard++) {
+			List<Map.Entry<String, TermPostings>> partition = partitions.get(shard);
+			if (partition.isEmpty()) {
+				continue;
+			}
+
+			locks[shard].writeLock().lock();
+			try {
+				for (Map.Entry<String, TermPostings> entry : partition) {
+					String word = entry.getKey();
+					shards[shard].addPostings(word, entry.getValue(), remap);
+					frequencies[shard] = frequencies[shard].put(word, shards[shard].size(word));
+				}
+				dirty[shard] = true;
+				if (shard == last) {
+					pending.incrementAndGet();
+				}
+			} finally {
+				locks[shard].writeLock().unlock();
+			}
+		}
+		publishIfDue();
+	}
+
+	/**
+	 * Publishes a new snapshot if a full batch of changes has been made since the
+	 * last one.
+	 */
+	private void publishIfDue() {
+		if (batchSize > 0 && pending.get() >= batchSize) {
+			synchronized (publishLock) {
+				// another writer may have published this batch in the meantime
+				if (pending.get() >= batchSize) {
+					publish();
+				}
+			}
 		}
 	}
 
+	/**
+	 * Publishes a new snapshot generation of the index if anything changed since
+	 * the last one. Only the shards that changed are frozen, and the rest of the
+	 * words are copied from the last snapshot, along with the grams of its words
+	 * if a wildcard search indexed them. Searches switch over to the new snapshot
+	 * atomically.
+	 */
 	@Override
-	public boolean contains(String stem) {
-		lock.readLock().lock();
+	public void publish() {
+		synchronized (publishLock) {
+			// every change is counted after its shard is marked dirty, so a change
+			// counted after this reset is either published now or by the next batch
+			pending.set(0);
+
+			FrozenIndex previous = snapshot;
+			Piece[] pieces = new Piece[shards.length];
+			LocationDictionary published = new LocationDictionary();
+			int[] sorted;
+			int[] moved = null;
+
+			locationLock.readLock().lock();
+			try {
+				boolean changed = locationsDirty;
+				int[] ranks = null;
+				for (int i = 0; i < shards.length; i++) {
+					locks[i].readLock().lock();
+					try {
+						if (dirty[i]) {
+							if (ranks == null) {
+								ranks = locations.ranks();
+							}
+							pieces[i] = new Piece(shards[i].postings(), ranks);
+							dirty[i] = false;
+							changed = true;
+						}
+					} finally {
+						locks[i].readLock().unlock();
+					}
+				}
+
+				if (!changed) {
+					return;
+				}
+				locationsDirty = false;
+
+				// renumber the locations in sorted order, as freezing does
+				sorted = locations.sortedIds();
+				for (int id : sorted) {
+					published.updateCount(published.add(locations.get(id)), locations.count(id));
+				}
+
+				// locations are never removed, so the ids only move if some were added
+				if (sorted.length != publishedIds.length) {
+					if (ranks == null) {
+						ranks = locations.ranks();
+					}
+					moved = new int[publishedIds.length];
+					for (int id = 0; id < moved.length; id++) {
+						moved[id] = ranks[publishedIds[id]];
+					}
+				}
+			} finally {
+				locationLock.readLock().unlock();
+			}
+
+			// the snapshots never change, so the rest is done without any locks
+			List<Piece> parts = new ArrayList<>(shards.length + 1);
+			if (previous.termCount() > 0) {
+				parts.add(new Piece(previous, word -> pieces[shard(word)] != null, moved));
+			}
+			for (Piece piece : pieces) {
+				if (piece != null) {
+					parts.add(piece);
+				}
+			}
+
+			FrozenIndex next = assemble(parts, published, ++generation);
+			next.carryGrams(previous);
+			snapshot = next;
+			publishedIds = sorted;
+		}
+	}
+
+	/**
+	 * Copies the words of several pieces into one snapshot. No word may be in
+	 * more than one piece.
+	 *
+	 * @param pieces     the pieces to copy
+	 * @param locations  the locations of the snapshot, in sorted order
+	 * @param generation the generation number of the snapshot
+	 * @return the snapshot
+	 */
+	private static FrozenIndex assemble(List<Piece> pieces, LocationDictionary locations, long generation) {
+		int termCount = 0;
+		int postingCount = 0;
+		long byteCount = 0;
+		for (Piece piece : pieces) {
+			termCount += piece.terms.length;
+			for (int term = 0; term < piece.terms.length; term++) {
+				postingCount += piece.ends[term] - piece.starts[term];
+				byteCount += piece.postings.positionOffset(piece.ends[term])
+						- piece.postings.positionOffset(piece.starts[term]);
+			}
+		}
+
+		if (byteCount > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many positions to publish on the heap: " + byteCount + " bytes");
+		}
+
+		String[] terms = new String[termCount];
+		int[] termOffsets = new int[termCount + 1];
+		int[] ids = new int[postingCount];
+		int[] frequencies = new int[postingCount];
+		int[] positionOffsets = new int[postingCount + 1];
+		byte[] positions = new byte[(int) byteCount];
+
+		int[] cursors = new int[pieces.size()];
+		int p = 0;
+		int offset = 0;
+		for (int t = 0; t < termCount; t++) {
+			// the next word is the smallest next word of any piece
+			int next = -1;
+			for (int i = 0; i < pieces.size(); i++) {
+				Piece piece = pieces.get(i);
+				if (cursors[i] < piece.terms.length && (next < 0
+						|| piece.terms[cursors[i]].compareTo(pieces.get(next).terms[cursors[next]]) < 0)) {
+					next = i;
+				}
+			}
+
+			Piece piece = pieces.get(next);
+			int term = cursors[next]++;
+			terms[t] = piece.terms[term];
+			termOffsets[t] = p;
+
+			// the postings of a word are already in location order, even if renumbered
+			long base = piece.postings.positionOffset(piece.starts[term]);
+			for (int posting = piece.starts[term]; posting < piece.ends[term]; posting++) {
+				int id = piece.postings.id(posting);
+				ids[p] = piece.remap == null ? id : piece.remap[id];
+				frequencies[p] = piece.postings.frequency(posting);
+				positionOffsets[p] = offset + (int) (piece.postings.positionOffset(posting) - base);
+				p++;
+			}
+
+			int length = (int) (piece.postings.positionOffset(piece.ends[term]) - base);
+			piece.postings.copyPositions(base, positions, offset, length);
+			offset += length;
+		}
+
+		termOffsets[termCount] = p;
+		positionOffsets[p] = offset;
+		PostingStore postings = new HeapPostingStore(ids, frequencies, positionOffsets, positions);
+		return new FrozenIndex(terms, termOffsets, postings, locations, generation);
+	}
+
+	/**
+	 * Some of the words of the index and their postings, which a snapshot is
+	 * assembled from: either a freshly frozen shard, or the words of the last
+	 * snapshot that are in shards that did not change.
+	 */
+	private static class Piece {
+
+		/** The sorted words. */
+		private final String[] terms;
+
+		/** The first posting of each word. */
+		private final int[] starts;
+
+		/** The posting after the last posting of each word. */
+		private final int[] ends;
+
+		/** The postings of the words. */
+		private final PostingStore postings;
+
+		/** The new id of each location id used by the postings, or null if unchanged. */
+		private final int[] remap;
+
+		/**
+		 * Freezes the words of a shard, numbering the locations by their rank in
+		 * sorted order. The read locks of the shard and the locations must be held.
+		 *
+		 * @param index the sorted map of the words of the shard to their postings
+		 * @param ranks the rank of each location id in sorted order
+		 */
+		public Piece(Map<String, TermPostings> index, int[] ranks) {
+			int postingCount = 0;
+			long byteCount = 0;
+			for (TermPostings postings : index.values()) {
+				postingCount += postings.size();
+				for (int i = 0; i < postings.size(); i++) {
+					byteCount += postings.positions(i).encodedSize();
+				}
+			}
+
+			if (byteCount > Integer.MAX_VALUE) {
+				throw new IllegalStateException("Too many positions to freeze on the heap: " + byteCount + " bytes");
+			}
+
+			this.terms = new String[index.size()];
+			this.starts = new int[terms.length];
+			this.ends = new int[terms.length];
+			int[] ids = new int[postingCount];
+			int[] frequencies = new int[postingCount];
+			int[] positionOffsets = new int[postingCount + 1];
+			byte[] positions = new byte[(int) byteCount];
+
+			int t = 0;
+			int p = 0;
+			int offset = 0;
+			for (Map.Entry<String, TermPostings> entry : index.entrySet()) {
+				TermPostings postings = entry.getValue();
+				terms[t] = entry.getKey();
+				starts[t] = p;
+
+				// order the postings of this word by their new location ids
+				long[] order = new long[postings.size()];
+				for (int i = 0; i < order.length; i++) {
+					order[i] = ((long) ranks[postings.id(i)] << 32) | i;
+				}
+				Arrays.sort(order);
+
+				for (long packed : order) {
+					PostingList list = postings.positions((int) packed);
+					ids[p] = (int) (packed >>> 32);
+					frequencies[p] = list.size();
+					positionOffsets[p] = offset;
+					list.copyTo(positions, offset);
+					offset += list.encodedSize();
+					p++;
+				}
+				ends[t] = p;
+				t++;
+			}
+
+			positionOffsets[p] = offset;
+			this.postings = new HeapPostingStore(ids, frequencies, positionOffsets, positions);
+			this.remap = null;
+		}
+
+		/**
+		 * Keeps the words of a snapshot that did not change since it was published.
+		 *
+		 * @param snapshot the snapshot
+		 * @param changed  whether a word is in a shard that changed
+		 * @param remap    the new id of each location id of the snapshot, or null if
+		 *                 unchanged
+		 */
+		public Piece(FrozenIndex snapshot, Predicate<String> changed, int[] remap) {
+			int count = 0;
+			for (int term = 0; term < snapshot.termCount(); term++) {
+				if (!changed.test(snapshot.term(term))) {
+					count++;
+				}
+			}
+
+			this.terms = new String[count];
+			this.starts = new int[count];
+			this.ends = new int[count];
+			int t = 0;
+			for (int term = 0; term < snapshot.termCount(); term++) {
+				if (!changed.test(snapshot.term(term))) {
+					terms[t] = snapshot.term(term);
+					starts[t] = snapshot.start(term);
+					ends[t] = snapshot.end(term);
+					t++;
+				}
+			}
+
+			this.postings = snapshot.postings();
+			this.remap = remap;
+		}
+	}
+
+	/**
+	 * The number of locations of every word of a shard, in an open addressing
+	 * hash table of plain arrays, updated under the shard's write lock. A lookup
+	 * racing with a writer may read a wrong count, but it only reads arrays that
+	 * never change size, never reads past their ends and gives up after one pass,
+	 * so it can never fail or loop. That makes lookups safe to run optimistically,
+	 * where the stamp decides whether the count can be used. Growing the table
+	 * fills a new one, which the shard then switches to.
+	 */
+	private static class Frequencies {
+
+		/** The capacity of a new table, which must be a power of two. */
+		private static final int INITIAL_CAPACITY = 16;
+
+		/** The word in each slot, or null if the slot is free. */
+		private final String[] words;
+
+		/** The number of locations of the word in each slot. */
+		private final int[] counts;
+
+		/** The number of words in the table. */
+		private int size;
+
+		/**
+		 * Initializes an empty table.
+		 *
+		 * @param capacity the number of slots, which must be a power of two
+		 */
+		public Frequencies(int capacity) {
+			this.words = new String[capacity];
+			this.counts = new int[capacity];
+			this.size = 0;
+		}
+
+		/**
+		 * Returns the number of locations of a word.
+		 *
+		 * @param word the word to look up
+		 * @return the number of locations, or 0 if the word is not in the table
+		 */
+		public int get(String word) {
+			int mask = words.length - 1;
+			int slot = slot(word, mask);
+			for (int probe = 0; probe <= mask; probe++) {
+				String current = words[slot];
+				if (current == null) {
+					return 0;
+				}
+				if (current.equals(word)) {
+					return counts[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return 0;
+		}
+
+		/**
+		 * Sets the number of locations of a word, growing the table if it gets more
+		 * than half full.
+		 *
+		 * @param word  the word
+		 * @param count the number of locations of the word
+		 * @return this table, or the larger table to use from now on
+		 */
+		public Frequencies put(String word, int count) {
+			if (2 * (size + 1) > words.length) {
+				Frequencies larger = new Frequencies(words.length * 2);
+				for (int slot = 0; slot < words.length; slot++) {
+					if (words[slot] != null) {
+						larger.put(words[slot], counts[slot]);
+					}
+				}
+				return larger.put(word, count);
+			}
+
+			int mask = words.length - 1;
+			int slot = slot(word, mask);
+			while (words[slot] != null && !words[slot].equals(word)) {
+				slot = (slot + 1) & mask;
+			}
+
+			counts[slot] = count;
+			if (words[slot] == null) {
+				words[slot] = word;
+				size++;
+			}
+			return this;
+		}
+
+		/**
+		 * Returns the first slot to look for a word in. The hash is spread out,
+		 * since every word of a shard has the same hash modulo the number of
+		 * shards.
+		 *
+		 * @param word the word
+		 * @param mask the number of slots minus one
+		 * @return the first slot
+		 */
+		private static int slot(String word, int mask) {
+			int hash = word.hashCode() * 0x9E3779B9;
+			return (hash ^ (hash >>> 16)) & mask;
+		}
+	}
+
+	/**
+	 * Returns the most recently published snapshot. The snapshot never changes, so
+	 * it always gives a consistent view of the index.
+	 *
+	 * @return the latest snapshot
+	 */
+	@Override
+	public FrozenIndex snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the generation number of the most recently published snapshot, which
+	 * increases every time a new snapshot is published.
+	 *
+	 * @return the current generation number
+	 */
+	@Override
+	public long generation() {
+		return snapshot.generation();
+	}
+
+	/**
+	 * publishes any pending changes and returns the resulting immutable,
+	 * read-optimized snapshot
+	 *
+	 * @return the frozen copy of this index
+	 *
+	 * @see #publish()
+	 */
+	@Override
+	public FrozenIndex freeze() {
+		publish();
+		return snapshot;
+	}
+
+	/**
+	 * Takes the read lock of every shard in order.
+	 */
+	private void lockAll() {
+		for (ReadWriteLockInterface lock : locks) {
+			lock.readLock().lock();
+		}
+	}
+
+	/**
+	 * Releases the read lock of every shard in reverse order.
+	 */
+	private void unlockAll() {
+		for (int i = locks.length - 1; i >= 0; i--) {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Combines the words of every shard into one sorted map. The read lock of every
+	 * shard must be held while the map is in use.
+	 *
+	 * @return a sorted map of every word to its postings
+	 */
+	private TreeMap<String, TermPostings> combined() {
+		TreeMap<String, TermPostings> combined = new TreeMap<>();
+		for (InvertedIndex shard : shards) {
+			combined.putAll(shard.postings());
+		}
+		return combined;
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < shards.length; i++) {
+			InvertedIndex shard = shards[i];
+			size += read(locks[i], () -> shard.size());
+		}
+		return size;
+	}
+
+	@Override
+	public int size(String word) {
+		int shard = shard(word);
+		return read(locks[shard], () -> frequencies[shard].get(word));
+	}
+
+	@Override
+	public int size(String word, String location) {
+		locationLock.readLock().lock();
 		try {
-			return super.contains(stem);
+			int shard = shard(word);
+			locks[shard].readLock().lock();
+			try {
+				return shards[shard].size(word, location);
+			} finally {
+				locks[shard].readLock().unlock();
+			}
 		} finally {
-			lock.readLock().unlock();
+			locationLock.readLock().unlock();
 		}
 	}
 
+	@Override
+	public boolean contains(String stem) {
+		// words are never removed, so every word is in at least one location
+		return size(stem) > 0;
+	}
+
 	@Override
 	public boolean contains(String word, String location) {
-		lock.readLock().lock();
+		locationLock.readLock().lock();
 		try {
-			return super.contains(word, location);
+			int shard = shard(word);
+			locks[shard].readLock().lock();
+			try {
+				return shards[shard].contains(word, location);
+			} finally {
+				locks[shard].readLock().unlock();
+			}
 		} finally {
-			lock.readLock().unlock();
+			locationLock.readLock().unlock();
 		}
 	}
 
 	@Override
 	public boolean contains(String word, String location, int position) {
-		lock.readLock().lock();
+		locationLock.readLock().lock();
 		try {
-			return super.contains(word, location, position);
+			int shard = shard(word);
+			locks[shard].readLock().lock();
+			try {
+				return shards[shard].contains(word, location, position);
+			} finally {
+				locks[shard].readLock().unlock();
+			}
 		} finally {
-			lock.readLock().unlock();
+			locationLock.readLock().unlock();
 		}
 	}
 
 	@Override
 	public void toJson(Path path) throws IOException {
-		lock.readLock().lock();
-		try {
-			super.toJson(path);
-		} finally {
-			lock.readLock().unlock();
-		}
+		freeze().toJson(path);
 	}
 
 	@Override
 	public Set<String> getWords() {
-		lock.readLock().lock();
-		try {
-			return super.getWords();
-		} finally {
-			lock.readLock().unlock();
+		TreeSet<String> words = new TreeSet<>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				words.addAll(shards[i].getWords());
+			} finally {
+				locks[i].readLock().unlock();
+			}
 		}
+		return Collections.unmodifiableSet(words);
 	}
 
 	@Override
 	public Set<String> getLocations(String word) {
-		lock.readLock().lock();
+		locationLock.readLock().lock();
 		try {
-			return super.getLocations(word);
+			int shard = shard(word);
+			locks[shard].readLock().lock();
+			try {
+				return shards[shard].getLocations(word);
+			} finally {
+				locks[shard].readLock().unlock();
+			}
 		} finally {
-			lock.readLock().unlock();
+			locationLock.readLock().unlock();
 		}
 	}
 
 	@Override
 	public Set<Integer> getPositions(String word, String location) {
-		lock.readLock().lock();
+		locationLock.readLock().lock();
 		try {
-			return super.getPositions(word, location);
+			int shard = shard(word);
+			locks[shard].readLock().lock();
+			try {
+				// copy, since the view would otherwise be read outside of the lock
+				return Collections.unmodifiableSet(new TreeSet<>(shards[shard].getPositions(word, location)));
+			} finally {
+				locks[shard].readLock().unlock();
+			}
 		} finally {
-			lock.readLock().unlock();
+			locationLock.readLock().unlock();
 		}
 	}
 
 	@Override
 	public String toString() {
-		lock.readLock().lock();
+		locationLock.readLock().lock();
+		lockAll();
 		try {
-			return super.toString();
+			return InvertedIndex.toString(combined(), locations);
 		} finally {
-			lock.readLock().unlock();
+			unlockAll();
+			locationLock.readLock().unlock();
 		}
 	}
 
 	@Override
 	public int wordGetter(String word, String file) {
-		lock.readLock().lock();
-		try {
-			return super.wordGetter(word, file);
-		} finally {
-			lock.readLock().unlock();
-		}
+		return size(word, file);
 	}
 
+	/**
+	 * performs an exact search against the most recently published snapshot,
+	 * without taking any locks
+	 *
+	 * @param words the already parsed words from a single line of the query file
+	 * @return a sorted list of EXACT search results
+	 *
+	 * @see #publish()
+	 */
 	@Override
-	public List<SearchResult> exactSearch(Set<String> words) {
-		// log.debug("inside exact search safe index");
+	public List<InvertedIndex.SearchResult> exactSearch(Set<String> words) {
+		return snapshot.exactSearch(words);
+	}
 
-		lock.readLock().lock();
-		try {
-			return super.exactSearch(words);
-		} finally {
-			lock.readLock().unlock();
-		}
+	/**
+	 * performs a partial search against the most recently published snapshot,
+	 * without taking any locks
+	 *
+	 * @param words the already parsed words from a single line of the query file
+	 * @return a sorted list of PARTIAL search results
+	 *
+	 * @see #publish()
+	 */
+	@Override
+	public List<InvertedIndex.SearchResult> partialSearch(Set<String> words) {
+		return snapshot.partialSearch(words);
 	}
 
+	/**
+	 * performs a search that only returns the best results against the most
+	 * recently published snapshot, without taking any locks
+	 *
+	 * @param words the already parsed words from a single line of the query file
+	 * @param exact whether its exact or partial search
+	 * @param limit the most results to return, or 0 (or less) for all of them
+	 * @return a sorted list of at most limit search results
+	 *
+	 * @see #publish()
+	 */
 	@Override
-	public List<SearchResult> partialSearch(Set<String> words) {
-		// log.debug("inside partial search safe index");
-		lock.readLock().lock();
-		try {
-			return super.partialSearch(words);
-		} finally {
-			lock.readLock().unlock();
-		}
+	public List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit) {
+		return snapshot.search(words, exact, limit);
 	}
 
+	/**
+	 * performs a ranked search against the most recently published snapshot,
+	 * without taking any locks
+	 *
+	 * @param words   the already parsed words from a single line of the query file
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @return a sorted list of at most limit search results
+	 *
+	 * @see #publish()
+	 */
 	@Override
-	public int wordCountGetter(String filename) {
-		lock.readLock().lock();
-		try {
-			return super.wordCountGetter(filename);
-		} finally {
-			lock.readLock().unlock();
-		}
+	public List<InvertedIndex.SearchResult> search(Set<String> words, boolean exact, int limit, Ranking ranking) {
+		return snapshot.search(words, exact, limit, ranking);
 	}
 
+	/**
+	 * performs a search for a parsed query line against the most recently
+	 * published snapshot, without taking any locks
+	 *
+	 * @param query   the parsed query line
+	 * @param exact   whether its exact or partial search
+	 * @param limit   the most results to return, or 0 (or less) for all of them
+	 * @param ranking how to score the results
+	 * @return a sorted list of at most limit search results
+	 *
+	 * @see #publish()
+	 */
 	@Override
-	public Map<String, Integer> returnCountMap() {
-		lock.readLock().lock();
-		try {
-			return super.returnCountMap();
-		} finally {
-			lock.readLock().unlock();
-		}
+	public List<InvertedIndex.SearchResult> search(SearchQuery query, boolean exact, int limit, Ranking ranking) {
+		return snapshot.search(query, exact, limit, ranking);
 	}
 
+	/**
+	 * performs a typo-tolerant search against the most recently published
+	 * snapshot, without taking any locks
+	 *
+	 * @param words    the already parsed words from a single line of the query file
+	 * @param distance the most edits a match may be away from a query word
+	 * @param limit    the most results to return, or 0 (or less) for all of them
+	 * @param ranking  how to score the results
+	 * @return a sorted list of at most limit search results
+	 *
+	 * @see #publish()
+	 */
 	@Override
-	public void addAll(InvertedIndex local) {
-		// loop thru local and add all values to threadsafe?
-		lock.writeLock().lock();
+	public List<InvertedIndex.SearchResult> fuzzySearch(Set<String> words, int distance, int limit,
+			Ranking ranking) {
+		return snapshot.fuzzySearch(words, distance, limit, ranking);
+	}
+
+	@Override
+	public int wordCountGetter(String filename) {
+		return locked(locationLock, () -> {
+			int id = locations.lookup(filename);
+			return id < 0 ? 0 : locations.count(id);
+		});
+	}
+
+	@Override
+	public Map<String, Integer> returnCountMap() {
+		locationLock.readLock().lock();
 		try {
-			super.addAll(local);
+			return locations.asCountMap();
 		} finally {
-			lock.writeLock().unlock();
+			locationLock.readLock().unlock();
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -1,8 +1,7 @@
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeMap;
-import java.util.TreeSet;
 // import org.apache.logging.log4j.LogManager;
 // import org.apache.logging.log4j.Logger;
 
@@ -19,24 +18,56 @@ public class ThreadSafeQueryParser implements QueryParserInterface {
 	 */
 	private final WorkQueue workQueue;
 	/**
-	 * index to use
+	 * index to use (must be safe to search from multiple threads)
 	 */
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndexInterface index;
 	/**
-	 * map containing search results from query
+	 * the search results of each query, sorted by query
 	 */
-	private final TreeMap<String, List<InvertedIndex.SearchResult>> searchResults;
+	private final ResultSpool searchResults;
+	/**
+	 * the normalized queries that already have a task, so that duplicate lines
+	 * never become tasks of their own (guarded by the searchResults lock)
+	 */
+	private final HashSet<String> dispatched;
+	/**
+	 * the most results to keep per query, or 0 for all of them
+	 */
+	private final int limit;
+	/**
+	 * how to score the results
+	 */
+	private final Ranking ranking;
+	/**
+	 * the most edits a match may be away from a query word, or 0 to not search
+	 * for misspelled words
+	 */
+	private final int distance;
+	/**
+	 * results of searches done before, which may be shared with other parsers
+	 * and servlets searching the same index
+	 */
+	private final ResultCache cache;
 
 	/**
 	 * thread safe query parser constructor
 	 * 
-	 * @param index     the safe index to use for the constructor
+	 * @param index     the safe index to use for the constructor, such as a
+	 *                  {@link ThreadSafeInvertedIndex} or {@link FrozenIndex}
 	 * @param workQueue the workqueue to use
+	 * @param settings  how many results to keep, how to rank them, whether to
+	 *                  match misspelled words, the cache of search results of the
+	 *                  same index, and where to keep the results
 	 */
-	public ThreadSafeQueryParser(ThreadSafeInvertedIndex index, WorkQueue workQueue) {
+	public ThreadSafeQueryParser(InvertedIndexInterface index, WorkQueue workQueue, QuerySettings settings) {
 		this.index = index;
-		this.searchResults = new TreeMap<String, List<InvertedIndex.SearchResult>>();
+		this.searchResults = settings.results();
+		this.dispatched = new HashSet<>();
 		this.workQueue = workQueue;
+		this.limit = settings.limit();
+		this.ranking = settings.ranking();
+		this.distance = settings.distance();
+		this.cache = settings.cache();
 	}
 
 	@Override
@@ -45,15 +76,31 @@ public class ThreadSafeQueryParser implements QueryParserInterface {
 		workQueue.finish();
 	}
 
+	/**
+	 * parses and normalizes the query line right away, and only hands it to a
+	 * worker if no other line had the same stems before. a duplicate that is
+	 * searched at the same time some other way (like by a servlet sharing the
+	 * cache) waits for that search instead of repeating it
+	 */
 	@Override
 	public void parseQueryLine(String line, boolean exact) {
-		workQueue.execute(new Task(line, exact));
+		SearchQuery parsed = SearchQuery.parse(line);
+		String query = parsed.toString();
+
+		if (!parsed.isEmpty()) {
+			synchronized (searchResults) {
+				if (!dispatched.add(query)) {
+					return;
+				}
+			}
+			workQueue.execute(new Task(parsed, query, exact));
+		}
 	}
 
 	@Override
 	public void writeJson(Path path) throws IOException {
 		synchronized (searchResults) {
-			SimpleJsonWriter.asFullResults(searchResults, path);
+			searchResults.writeJson(path);
 		}
 	}
 
@@ -68,19 +115,26 @@ public class ThreadSafeQueryParser implements QueryParserInterface {
 		private boolean exact;
 
 		/**
-		 * the query line
+		 * the parsed query line
 		 */
-		private String line;
+		private SearchQuery parsed;
+
+		/**
+		 * the normalized query, which the results are stored under
+		 */
+		private String query;
 
 		/**
 		 * Initializes this task.
 		 * 
-		 * @param line  the query line
-		 * @param exact whether exact or partial search
+		 * @param parsed the parsed query line
+		 * @param query  the normalized query
+		 * @param exact  whether exact or partial search
 		 * 
 		 */
-		public Task(String line, boolean exact) {
-			this.line = line;
+		public Task(SearchQuery parsed, String query, boolean exact) {
+			this.parsed = parsed;
+			this.query = query;
 			this.exact = exact;
 			// log.debug("query parser task just created : query line of task = " + line);
 		}
@@ -92,19 +146,9 @@ public class ThreadSafeQueryParser implements QueryParserInterface {
 		public void run() {
 			// log.debug("starting to run query task of: " + line);
 			// parseQueryLine(line, exact);
-			TreeSet<String> stems = TextFileStemmer.uniqueStems(line);
-			String query = String.join(" ", stems);
-
-			if (stems.size() != 0) {
-				synchronized (searchResults) {
-					if (searchResults.containsKey(query)) {
-						return;
-					}
-				}
-				List<InvertedIndex.SearchResult> result = index.search(stems, exact);
-				synchronized (searchResults) {
-					searchResults.put(query, result);
-				}
+			List<InvertedIndex.SearchResult> result = cache.search(index, parsed, exact, limit, ranking, distance);
+			synchronized (searchResults) {
+				searchResults.put(query, result);
 			}
 			// log.debug("finished running query task of:" + line);
 		}
@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounded min-heap that keeps the k best search results seen so far, so that
+ * a search only has to build result objects for the locations that make the
+ * cut. Candidates are ranked the same way as {@link InvertedIndex.SearchResult}:
+ * by score, then count, then location ignoring case. Candidates that tie on all
+ * three are ranked in the order they were offered (unless an explicit order is
+ * given), which matches the stable sort used by the full searches.
+ *
+ * The worst kept candidate is at the root of the heap, so a new candidate only
+ * has to beat the root to get in. Offering n candidates costs O(n log k).
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author sarah
+ */
+public class TopKHeap {
+
+	/** The maximum number of candidates to keep. */
+	private final int k;
+
+	/** The dictionary used to resolve location ids. */
+	private final LocationDictionary locations;
+
+	/** The location id of each kept candidate, in heap order. */
+	private final int[] ids;
+
+	/** The count of each kept candidate, in heap order. */
+	private final int[] counts;
+
+	/** The score of each kept candidate, in heap order. */
+	private final double[] scores;
+
+	/** The order each kept candidate was offered in, in heap order. */
+	private final long[] orders;
+
+	/** The number of candidates kept. */
+	private int size;
+
+	/** The number of candidates offered so far. */
+	private int offered;
+
+	/**
+	 * Initializes an empty heap.
+	 *
+	 * @param k         the maximum number of candidates to keep (at least 1)
+	 * @param locations the dictionary used to resolve location ids
+	 */
+	public TopKHeap(int k, LocationDictionary locations) {
+		this.k = Math.max(1, k);
+		this.locations = locations;
+		int capacity = Math.min(this.k, Math.max(1, locations.size()));
+		this.ids = new int[capacity];
+		this.counts = new int[capacity];
+		this.scores = new double[capacity];
+		this.orders = new long[capacity];
+		this.size = 0;
+		this.offered = 0;
+	}
+
+	/**
+	 * Offers a candidate result, which is kept if it is among the best k so far.
+	 *
+	 * @param id    the location id
+	 * @param count the number of matches in the location
+	 * @param score the score of the location
+	 * @return true if the candidate was kept
+	 */
+	public boolean offer(int id, int count, double score) {
+		return offer(id, count, score, offered++);
+	}
+
+	/**
+	 * Offers a candidate result with an explicit tie-breaking order, for callers
+	 * that do not see candidates in the order the full search would have.
+	 *
+	 * @param id    the location id
+	 * @param count the number of matches in the location
+	 * @param score the score of the location
+	 * @param order the order of the candidate among candidates that tie on
+	 *              everything else (lower ranks first)
+	 * @return true if the candidate was kept
+	 */
+	public boolean offer(int id, int count, double score, long order) {
+
+		if (size < k) {
+			if (size == ids.length) {
+				throw new IllegalStateException("More candidates than locations");
+			}
+			set(size, id, count, score, order);
+			siftUp(size++);
+			return true;
+		}
+
+		if (compare(score, count, id, order, 0) <= 0) {
+			return false;
+		}
+
+		set(0, id, count, score, order);
+		siftDown(0);
+		return true;
+	}
+
+	/**
+	 * Returns the number of candidates kept.
+	 *
+	 * @return the number of candidates kept
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Determines whether the heap already holds k candidates.
+	 *
+	 * @return true if the heap is full
+	 */
+	public boolean isFull() {
+		return size == k;
+	}
+
+	/**
+	 * Returns the score a new candidate has to beat to get in, which is the score
+	 * of the worst kept candidate once the heap is full.
+	 *
+	 * @return the lowest kept score, or negative infinity if not full yet
+	 */
+	public double threshold() {
+		return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+	}
+
+	/**
+	 * Returns the kept candidates as search results, best first.
+	 *
+	 * @return the sorted search results
+	 */
+	public List<InvertedIndex.SearchResult> toList() {
+		Integer[] sorted = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, (a, b) -> compare(scores[b], counts[b], ids[b], orders[b], a));
+
+		List<InvertedIndex.SearchResult> results = new ArrayList<>(size);
+		for (int i : sorted) {
+			results.add(new InvertedIndex.SearchResult(locations, ids[i], counts[i], scores[i]));
+		}
+		return results;
+	}
+
+	/**
+	 * Compares a candidate with a kept candidate.
+	 *
+	 * @param score the score of the candidate
+	 * @param count the count of the candidate
+	 * @param id    the location id of the candidate
+	 * @param order the order the candidate was offered in
+	 * @param other the heap index of the kept candidate
+	 * @return a positive number if the candidate ranks better, negative if worse
+	 */
+	private int compare(double score, int count, int id, long order, int other) {
+		int compare = Double.compare(score, scores[other]);
+		if (compare != 0) {
+			return compare;
+		}
+
+		compare = Integer.compare(count, counts[other]);
+		if (compare != 0) {
+			return compare;
+		}
+
+		compare = locations.get(ids[other]).compareToIgnoreCase(locations.get(id));
+		if (compare != 0) {
+			return compare;
+		}
+
+		return Long.compare(orders[other], order);
+	}
+
+	/**
+	 * Stores a candidate at a heap index.
+	 *
+	 * @param index the heap index
+	 * @param id    the location id
+	 * @param count the number of matches
+	 * @param score the score
+	 * @param order the order the candidate was offered in
+	 */
+	private void set(int index, int id, int count, double score, long order) {
+		ids[index] = id;
+		counts[index] = count;
+		scores[index] = score;
+		orders[index] = order;
+	}
+
+	/**
+	 * Swaps two candidates in the heap.
+	 *
+	 * @param a the first heap index
+	 * @param b the second heap index
+	 */
+	private void swap(int a, int b) {
+		int id = ids[a];
+		int count = counts[a];
+		double score = scores[a];
+		long order = orders[a];
+		set(a, ids[b], counts[b], scores[b], orders[b]);
+		set(b, id, count, score, order);
+	}
+
+	/**
+	 * Moves a candidate up until its parent ranks worse than it.
+	 *
+	 * @param index the heap index of the candidate
+	 */
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (compare(scores[index], counts[index], ids[index], orders[index], parent) >= 0) {
+				return;
+			}
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	/**
+	 * Moves a candidate down until both of its children rank better than it.
+	 *
+	 * @param index the heap index of the candidate
+	 */
+	private void siftDown(int index) {
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				return;
+			}
+			if (child + 1 < size && compare(scores[child + 1], counts[child + 1], ids[child + 1], orders[child + 1],
+					child) < 0) {
+				child++;
+			}
+			if (compare(scores[index], counts[index], ids[index], orders[index], child) <= 0) {
+				return;
+			}
+			swap(index, child);
+			index = child;
+		}
+	}
+}
@@ -0,0 +1,314 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A secondary index over the words of a term dictionary, which finds the words
+ * matching a wildcard pattern like {@code *ing} or {@code s*ing} without
+ * looking at every word. A {@code *} in a pattern matches any number of
+ * characters, including none.
+ *
+ * Every word is broken into its grams, which are its runs of three characters
+ * after marking the start and end of the word, and each gram lists the ids of
+ * the words that have it. The pieces of a pattern between its wildcards have
+ * grams of their own, so a word can only match if it has every one of them.
+ * Intersecting those lists, starting from the rarest gram, narrows the words
+ * down to a few candidates, and only the candidates are checked against the
+ * pattern. A pattern without any gram (like {@code *ab*}) has to check every
+ * word.
+ *
+ * Words get increasing ids as they are added, so adding the words of a sorted
+ * dictionary in order gives every word the same id it has there. A copy of an
+ * index shares its lists of ids until words are added to them, so a copy with a
+ * few more words only pays for the grams of those words.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author sarah
+ */
+public class TrigramIndex {
+
+	/** The character in a pattern that matches any number of characters. */
+	public static final char WILDCARD = '*';
+
+	/** Marks the start and end of a word, and is never part of one. */
+	private static final char BOUNDARY = '\0';
+
+	/** The words, by id. */
+	private final List<String> words;
+
+	/** The ids of the words that have each gram, in increasing order. */
+	private final HashMap<Long, Ids> grams;
+
+	/**
+	 * Initializes an empty index.
+	 */
+	public TrigramIndex() {
+		this.words = new ArrayList<>();
+		this.grams = new HashMap<>();
+	}
+
+	/**
+	 * Initializes an index with the words and ids of another index, sharing its
+	 * lists of ids. A list is only copied the first time a word is added to it, so
+	 * the other index never changes and can still be searched at the same time.
+	 *
+	 * @param other the index to start from
+	 */
+	public TrigramIndex(TrigramIndex other) {
+		this.words = new ArrayList<>(other.words);
+		this.grams = new HashMap<>(other.grams);
+	}
+
+	/**
+	 * Initializes an index of words, giving each word its index in the array as
+	 * its id.
+	 *
+	 * @param words the words to add
+	 */
+	public TrigramIndex(String[] words) {
+		this();
+		for (String word : words) {
+			add(word);
+		}
+	}
+
+	/**
+	 * Adds a word to the index. Adding a word that is already in the index gives
+	 * it another id.
+	 *
+	 * @param word the word to add
+	 * @return the id of the word
+	 */
+	public int add(String word) {
+		int id = words.size();
+		words.add(word);
+
+		String marked = BOUNDARY + word + BOUNDARY;
+		for (int i = 0; i + 3 <= marked.length(); i++) {
+			long gram = gram(marked, i);
+			Ids ids = grams.get(gram);
+			if (ids == null || ids.owner != this) {
+				// a list shared with the index this one was copied from is copied first
+				ids = ids == null ? new Ids(this) : ids.copy(this);
+				grams.put(gram, ids);
+			}
+			// a gram found twice in the same word is only listed once
+			if (ids.size == 0 || ids.ids[ids.size - 1] != id) {
+				ids.add(id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the number of words in the index.
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return words.size();
+	}
+
+	/**
+	 * Returns the number of distinct grams, which is useful for estimating memory
+	 * use.
+	 *
+	 * @return the number of grams
+	 */
+	public int gramCount() {
+		return grams.size();
+	}
+
+	/**
+	 * Returns a word of the index.
+	 *
+	 * @param id the id of the word
+	 * @return the word
+	 */
+	public String word(int id) {
+		return words.get(id);
+	}
+
+	/**
+	 * Finds every word matching a wildcard pattern.
+	 *
+	 * @param pattern the pattern, where {@link #WILDCARD} matches any number of
+	 *                characters
+	 * @return the ids of the matching words, in increasing order
+	 */
+	public int[] find(String pattern) {
+		String[] pieces = pattern.split("\\" + WILDCARD, -1);
+		List<Ids> lists = new ArrayList<>();
+		for (int p = 0; p < pieces.length; p++) {
+			// the first and last pieces are anchored to the ends of the word
+			String piece = pieces[p];
+			if (p == 0) {
+				piece = BOUNDARY + piece;
+			}
+			if (p == pieces.length - 1) {
+				piece = piece + BOUNDARY;
+			}
+
+			for (int i = 0; i + 3 <= piece.length(); i++) {
+				Ids ids = grams.get(gram(piece, i));
+				if (ids == null) {
+					return new int[0];
+				}
+				lists.add(ids);
+			}
+		}
+
+		int[] candidates;
+		int size;
+		if (lists.isEmpty()) {
+			candidates = null;
+			size = words.size();
+		} else {
+			lists.sort((a, b) -> Integer.compare(a.size, b.size));
+			candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+			size = intersect(candidates, lists);
+		}
+
+		int[] found = new int[Math.min(size, 16)];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			int id = candidates == null ? i : candidates[i];
+			if (matches(pieces, words.get(id))) {
+				if (count == found.length) {
+					found = Arrays.copyOf(found, count * 2);
+				}
+				found[count++] = id;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Keeps the candidates found in every other list, galloping ahead in each
+	 * list since the candidates only get fewer.
+	 *
+	 * @param candidates the ids of the rarest list, which are narrowed in place
+	 * @param lists      the lists of ids, rarest first
+	 * @return the number of candidates left
+	 */
+	private static int intersect(int[] candidates, List<Ids> lists) {
+		int size = candidates.length;
+		for (int l = 1; l < lists.size() && size > 0; l++) {
+			Ids list = lists.get(l);
+			int cursor = 0;
+			int kept = 0;
+			for (int i = 0; i < size && cursor < list.size; i++) {
+				int bound = 1;
+				while (cursor + bound < list.size && list.ids[cursor + bound] < candidates[i]) {
+					bound <<= 1;
+				}
+
+				int found = Arrays.binarySearch(list.ids, cursor, Math.min(cursor + bound + 1, list.size),
+						candidates[i]);
+				if (found >= 0) {
+					candidates[kept++] = candidates[i];
+					cursor = found + 1;
+				} else {
+					cursor = -(found + 1);
+				}
+			}
+			size = kept;
+		}
+		return size;
+	}
+
+	/**
+	 * Determines whether a word matches a pattern, by finding each piece between
+	 * the wildcards as early as it can be.
+	 *
+	 * @param pieces the pieces of the pattern between its wildcards
+	 * @param word   the word to check
+	 * @return true if the word matches
+	 */
+	private static boolean matches(String[] pieces, String word) {
+		if (pieces.length == 1) {
+			return word.equals(pieces[0]);
+		}
+
+		String first = pieces[0];
+		String last = pieces[pieces.length - 1];
+		if (word.length() < first.length() + last.length() || !word.startsWith(first) || !word.endsWith(last)) {
+			return false;
+		}
+
+		int from = first.length();
+		int to = word.length() - last.length();
+		for (int p = 1; p < pieces.length - 1; p++) {
+			int found = word.indexOf(pieces[p], from);
+			if (found < 0 || found + pieces[p].length() > to) {
+				return false;
+			}
+			from = found + pieces[p].length();
+		}
+		return true;
+	}
+
+	/**
+	 * Packs the three characters at an index into a key.
+	 *
+	 * @param text  the text
+	 * @param index the index of the first character
+	 * @return the gram as a number
+	 */
+	private static long gram(String text, int index) {
+		return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+	}
+
+	/**
+	 * A growable list of word ids, which only the index that owns it may change.
+	 */
+	private static class Ids {
+
+		/** The index allowed to add to this list. */
+		private final TrigramIndex owner;
+
+		/** The ids, of which only the first size are used. */
+		private int[] ids;
+
+		/** The number of ids. */
+		private int size;
+
+		/**
+		 * Initializes an empty list.
+		 *
+		 * @param owner the index allowed to add to the list
+		 */
+		private Ids(TrigramIndex owner) {
+			this.owner = owner;
+			this.ids = new int[2];
+			this.size = 0;
+		}
+
+		/**
+		 * Copies the list for another index to add to.
+		 *
+		 * @param owner the index allowed to add to the copy
+		 * @return the copy
+		 */
+		private Ids copy(TrigramIndex owner) {
+			Ids copy = new Ids(owner);
+			copy.ids = Arrays.copyOf(ids, size + 2);
+			copy.size = size;
+			return copy;
+		}
+
+		/**
+		 * Adds an id to the end of the list.
+		 *
+		 * @param id the id to add
+		 */
+		private void add(int id) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+	}
+}
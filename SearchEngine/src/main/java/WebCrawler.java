@@ -28,7 +28,7 @@ public class WebCrawler {
 	/**
 	 * the index to populate/build on
 	 */
-	ThreadSafeInvertedIndex safeIndex;
+	ThreadSafeIndexInterface safeIndex;
 
 	/**
 	 * web crawler class constructor
@@ -37,7 +37,7 @@ public class WebCrawler {
 	 * @param total     the total number of URLs to crawl
 	 * @param safeIndex the index to populate/build on
 	 */
-	public WebCrawler(WorkQueue workQueue, int total, ThreadSafeInvertedIndex safeIndex) {
+	public WebCrawler(WorkQueue workQueue, int total, ThreadSafeIndexInterface safeIndex) {
 		this.workQueue = workQueue;
 		this.total = total;
 		this.safeIndex = safeIndex;
@@ -54,6 +54,8 @@ public class WebCrawler {
 		parsedURLs.add(seed); // marked as parsed
 		workQueue.execute(new Task(seed));
 		workQueue.finish();
+		// make the crawled pages visible to searches
+		safeIndex.publish();
 	}
 
 	/**